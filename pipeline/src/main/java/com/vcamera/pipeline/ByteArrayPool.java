@@ -0,0 +1,169 @@
+package com.vcamera.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * مجمع مصفوفات بايتات مفهرس بفئات الحجم
+ * تُقرَّب الأحجام لأعلى إلى أربع فئات لكل قوة من اثنين (هدر أقصى 25%)، فتتشارك الأحجام المتقاربة المصفوفات نفسها
+ */
+public class ByteArrayPool {
+    private static final int SUB_CLASS_BITS = 2;
+    private static final int MIN_CLASS_SIZE = 1024;
+
+    private final String mName;
+    private final Map<Integer, ArrayDeque<byte[]>> mFreeArrays = new HashMap<>();
+    private long mMaxRetainedBytes;
+    private long mRetainedBytes;
+    private int mRetainedCount;
+    private long mHits;
+    private long mMisses;
+
+    private volatile LeakTracker<byte[]> mLeakTracker;
+
+    public ByteArrayPool(String name, long maxRetainedBytes) {
+        mName = name;
+        mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * الحجم الفعلي للفئة التي تتسع للطول المطلوب
+     */
+    public static int sizeClass(int minLength) {
+        if (minLength <= MIN_CLASS_SIZE) {
+            return MIN_CLASS_SIZE;
+        }
+        int shift = 31 - Integer.numberOfLeadingZeros(minLength - 1) - SUB_CLASS_BITS;
+        long size = ((long) (minLength - 1 >> shift) + 1) << shift;
+        return size <= Integer.MAX_VALUE ? (int) size : minLength;
+    }
+
+    /**
+     * تفعيل كشف التسرب أو تعطيله
+     * @param listener مستمع التسرب، أو null للتعطيل
+     */
+    public void setLeakTracking(LeakTracker.Listener listener) {
+        mLeakTracker = listener != null ? new LeakTracker<byte[]>(mName, listener) : null;
+    }
+
+    /**
+     * استعارة مصفوفة بطول لا يقل عن المطلوب
+     */
+    public byte[] acquire(int minLength) {
+        int size = sizeClass(minLength);
+        byte[] array = null;
+
+        synchronized (this) {
+            ArrayDeque<byte[]> free = mFreeArrays.get(size);
+            if (free != null) {
+                array = free.pollFirst();
+            }
+            if (array != null) {
+                mHits++;
+                mRetainedBytes -= size;
+                mRetainedCount--;
+            } else {
+                mMisses++;
+            }
+        }
+
+        if (array == null) {
+            array = new byte[size];
+        }
+
+        LeakTracker<byte[]> tracker = mLeakTracker;
+        if (tracker != null) {
+            tracker.track(array);
+        }
+        return array;
+    }
+
+    /**
+     * إعادة مصفوفة إلى المجمع؛ يجب ألا يستخدمها المستدعي بعد ذلك
+     */
+    public void release(byte[] array) {
+        if (array == null) {
+            return;
+        }
+
+        LeakTracker<byte[]> tracker = mLeakTracker;
+        if (tracker != null) {
+            tracker.untrack(array);
+        }
+
+        int size = array.length;
+        if (size != sizeClass(size)) {
+            return; // ليست من فئات هذا المجمع
+        }
+
+        synchronized (this) {
+            if (mRetainedBytes + size > mMaxRetainedBytes) {
+                return; // تجاوز الحد: يُترك لجامع القمامة
+            }
+            ArrayDeque<byte[]> free = mFreeArrays.get(size);
+            if (free == null) {
+                free = new ArrayDeque<>();
+                mFreeArrays.put(size, free);
+            }
+            free.addFirst(array);
+            mRetainedBytes += size;
+            mRetainedCount++;
+        }
+    }
+
+    /**
+     * تقليص المجمع إلى الحد المحدد بتحرير أكبر المصفوفات أولاً
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        while (mRetainedBytes > maxBytes) {
+            int largest = -1;
+            for (Map.Entry<Integer, ArrayDeque<byte[]>> entry : mFreeArrays.entrySet()) {
+                if (!entry.getValue().isEmpty() && entry.getKey() > largest) {
+                    largest = entry.getKey();
+                }
+            }
+            if (largest < 0) {
+                break;
+            }
+            mFreeArrays.get(largest).pollLast();
+            mRetainedBytes -= largest;
+            mRetainedCount--;
+        }
+    }
+
+    /**
+     * تحرير جميع المصفوفات المحتفظ بها
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * تعيين الحد الأقصى للحجم المحتفظ به
+     */
+    public void setMaxRetainedBytes(long maxRetainedBytes) {
+        synchronized (this) {
+            mMaxRetainedBytes = maxRetainedBytes;
+        }
+        trimToSize(maxRetainedBytes);
+    }
+
+    /**
+     * الحصول على لقطة من إحصاءات المجمع
+     */
+    public PoolSnapshot snapshot() {
+        LeakTracker<byte[]> tracker = mLeakTracker;
+        int outstanding = 0;
+        long leaks = 0;
+        if (tracker != null) {
+            tracker.poll();
+            outstanding = tracker.getOutstanding();
+            leaks = tracker.getLeakCount();
+        }
+
+        synchronized (this) {
+            return new PoolSnapshot(mName, mHits, mMisses, mRetainedBytes, mRetainedCount, outstanding, leaks);
+        }
+    }
+}
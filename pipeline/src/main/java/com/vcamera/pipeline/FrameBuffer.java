@@ -0,0 +1,96 @@
+package com.vcamera.pipeline;
+
+/**
+ * مخزن إطار بصيغة NV21
+ * مصفوفة بايتات أولية مع الأبعاد والطابع الزمني، قابلة لإعادة الاستخدام بين الإطارات
+ */
+public class FrameBuffer {
+    private byte[] mData;
+    private int mWidth;
+    private int mHeight;
+    private long mTimestampNanos;
+    private long mSequence;
+
+    public FrameBuffer(int width, int height) {
+        mData = new byte[nv21Size(width, height)];
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * حجم إطار NV21 بالأبعاد المحددة
+     */
+    public static int nv21Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * تغيير أبعاد المخزن، مع إعادة تخصيص المصفوفة فقط إذا لم تكفِ السعة الحالية
+     */
+    public void resize(int width, int height) {
+        int size = nv21Size(width, height);
+        if (mData.length < size) {
+            mData = new byte[size];
+        }
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * تقليص المصفوفة إلى حجم الإطار الحالي إذا زادت سعتها عليه (بعد تصغير الإطارات تحت ضغط الذاكرة)
+     * المحتوى الصالح يبقى كما هو
+     */
+    public void trim() {
+        int size = getSize();
+        if (mData.length > size) {
+            byte[] data = new byte[size];
+            System.arraycopy(mData, 0, data, 0, size);
+            mData = data;
+        }
+    }
+
+    /**
+     * نسخ محتوى إطار آخر إلى هذا المخزن
+     */
+    public void copyFrom(FrameBuffer other) {
+        resize(other.mWidth, other.mHeight);
+        System.arraycopy(other.mData, 0, mData, 0, other.getSize());
+        mTimestampNanos = other.mTimestampNanos;
+        mSequence = other.mSequence;
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * عدد البايتات الصالحة في المصفوفة
+     */
+    public int getSize() {
+        return nv21Size(mWidth, mHeight);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    public void setTimestampNanos(long timestampNanos) {
+        mTimestampNanos = timestampNanos;
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public void setSequence(long sequence) {
+        mSequence = sequence;
+    }
+}
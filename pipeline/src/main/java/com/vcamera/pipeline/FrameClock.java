@@ -0,0 +1,34 @@
+package com.vcamera.pipeline;
+
+/**
+ * ساعة خط معالجة الإطارات
+ * تُحقن في خط المعالجة ليمكن تشغيله بزمن حقيقي أو بزمن محاكى في الاختبارات وقياس الأداء
+ */
+public interface FrameClock {
+    /**
+     * الوقت الحالي بالنانوثانية (رتيب، غير مرتبط بتوقيت النظام)
+     */
+    long nanoTime();
+
+    /**
+     * الانتظار لمدة محددة بالنانوثانية
+     */
+    void sleepNanos(long nanos) throws InterruptedException;
+
+    /**
+     * ساعة النظام الحقيقية
+     */
+    FrameClock SYSTEM = new FrameClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            if (nanos > 0) {
+                Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+            }
+        }
+    };
+}
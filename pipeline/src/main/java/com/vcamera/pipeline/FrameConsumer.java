@@ -0,0 +1,9 @@
+package com.vcamera.pipeline;
+
+/**
+ * مستهلك إطارات
+ * المخزن المسلَّم صالح فقط خلال الاستدعاء، وعلى المستهلك نسخه إذا أراد الاحتفاظ به
+ */
+public interface FrameConsumer {
+    void onFrame(FrameBuffer frame);
+}
@@ -0,0 +1,79 @@
+package com.vcamera.pipeline;
+
+/**
+ * صندوق تسليم إطارات بين خيط المنتج وخيط مستهلك بطيء (تخزين ثلاثي)
+ * المنتج لا ينتظر أبداً: إذا لم يأخذ المستهلك الإطار السابق يُستبدل بالأحدث ويُحتسب مسقطاً
+ */
+public class FrameMailbox {
+    private FrameBuffer mBack;
+    private FrameBuffer mPending;
+    private FrameBuffer mFront;
+    private boolean mHasPending;
+    private boolean mClosed;
+    private long mDropped;
+
+    public FrameMailbox(int width, int height) {
+        mBack = new FrameBuffer(width, height);
+        mPending = new FrameBuffer(width, height);
+        mFront = new FrameBuffer(width, height);
+    }
+
+    /**
+     * نسخ الإطار إلى الصندوق دون انتظار (من خيط المنتج فقط)
+     * @param timestampNanos الطابع الزمني الذي يُسجل على النسخة
+     * @return false إذا استُبدل إطار لم يأخذه المستهلك بعد، أو كان الصندوق مغلقاً
+     */
+    public boolean offer(FrameBuffer frame, long timestampNanos) {
+        // النسخ خارج القفل: المخزن الخلفي ملك المنتج وحده
+        mBack.copyFrom(frame);
+        mBack.setTimestampNanos(timestampNanos);
+
+        synchronized (this) {
+            if (mClosed) {
+                return false;
+            }
+            FrameBuffer swap = mPending;
+            mPending = mBack;
+            mBack = swap;
+
+            boolean replaced = mHasPending;
+            if (replaced) {
+                mDropped++;
+            }
+            mHasPending = true;
+            notifyAll();
+            return !replaced;
+        }
+    }
+
+    /**
+     * انتظار الإطار التالي (من خيط المستهلك فقط)
+     * المخزن المعاد صالح حتى الاستدعاء التالي
+     * @return الإطار، أو null إذا أُغلق الصندوق
+     */
+    public synchronized FrameBuffer take() throws InterruptedException {
+        while (!mHasPending && !mClosed) {
+            wait();
+        }
+        if (mClosed) {
+            return null;
+        }
+        FrameBuffer swap = mFront;
+        mFront = mPending;
+        mPending = swap;
+        mHasPending = false;
+        return mFront;
+    }
+
+    /**
+     * إغلاق الصندوق وإيقاظ المستهلك المنتظر
+     */
+    public synchronized void close() {
+        mClosed = true;
+        notifyAll();
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+}
@@ -0,0 +1,362 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * خط معالجة الإطارات
+ * يسحب الإطارات من المصدر ويوزعها على المستهلكين، كل مستهلك بمعدله الخاص، بساعة محقونة ومخزن واحد معاد استخدامه
+ * يُقرأ المصدر فقط عندما يستحق مستهلك ما إطاراً؛ ويُعاد تسليم الإطار نفسه إذا طلب مستهلك معدلاً أعلى من معدل المصدر الأصلي
+ */
+public class FramePipeline {
+    private static final Logger LOGGER = Logger.getLogger("FramePipeline");
+    // هامش اعتبار المستهلك مستحقاً، كي تشترك المعدلات المتقاربة في قراءة واحدة
+    private static final long DUE_TOLERANCE_NANOS = 1000000L;
+    private static final ConsumerSlot[] NO_CONSUMERS = new ConsumerSlot[0];
+    // أقصى انتظار لانتهاء خيط خط المعالجة عند الإيقاف
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private final FrameSource mSource;
+    private final FrameClock mClock;
+    private final FramePipelineMetrics mMetrics;
+    // نسخة عند الكتابة بمصفوفة عادية كي لا يخصص المرور عليها أي كائن في كل إطار
+    private volatile ConsumerSlot[] mConsumers = NO_CONSUMERS;
+    private final FrameBuffer mBuffer;
+
+    private volatile int mFrameRate;
+    // الخيط الذي يملك الحلقة حالياً؛ الحلقة تتوقف حين لا تعود مالكة، فإعادة التشغيل لا تتأثر بانتهاء حلقة سابقة
+    private volatile Thread mRunningThread;
+    private Thread mThread;
+    private long mSequence = 0;
+
+    // وقت آخر قراءة فعلية من المصدر
+    private boolean mHasFrame = false;
+    private long mLastReadNanos;
+
+    public FramePipeline(FrameSource source, int width, int height, int frameRate,
+                         FrameClock clock, FramePipelineMetrics metrics) {
+        mSource = source;
+        mClock = clock != null ? clock : FrameClock.SYSTEM;
+        mMetrics = metrics != null ? metrics : new FramePipelineMetrics();
+        mBuffer = new FrameBuffer(width, height);
+        mFrameRate = frameRate;
+    }
+
+    /**
+     * إضافة مستهلك بمعدل خط المعالجة الافتراضي
+     */
+    public void addConsumer(FrameConsumer consumer) {
+        addConsumer(consumer, 0);
+    }
+
+    /**
+     * إضافة مستهلك بمعدل إطارات خاص به
+     * @param frameRate المعدل المطلوب، أو 0 لاستخدام معدل خط المعالجة
+     */
+    public void addConsumer(FrameConsumer consumer, int frameRate) {
+        if (consumer == null) {
+            return;
+        }
+
+        synchronized (this) {
+            ConsumerSlot slot = findSlot(consumer);
+            if (slot != null) {
+                slot.frameRate = Math.max(0, frameRate);
+                return;
+            }
+            slot = new ConsumerSlot(consumer, Math.max(0, frameRate));
+            slot.nextDueNanos = mClock.nanoTime();
+
+            ConsumerSlot[] consumers = Arrays.copyOf(mConsumers, mConsumers.length + 1);
+            consumers[consumers.length - 1] = slot;
+            mConsumers = consumers;
+        }
+    }
+
+    /**
+     * إزالة مستهلك
+     */
+    public void removeConsumer(FrameConsumer consumer) {
+        synchronized (this) {
+            ConsumerSlot[] consumers = mConsumers;
+            for (int i = 0; i < consumers.length; i++) {
+                if (consumers[i].consumer == consumer) {
+                    ConsumerSlot[] remaining = new ConsumerSlot[consumers.length - 1];
+                    System.arraycopy(consumers, 0, remaining, 0, i);
+                    System.arraycopy(consumers, i + 1, remaining, i, consumers.length - i - 1);
+                    mConsumers = remaining;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * تعيين معدل الإطارات لمستهلك موجود
+     * @return false إذا لم يكن المستهلك مسجلاً
+     */
+    public boolean setConsumerFrameRate(FrameConsumer consumer, int frameRate) {
+        ConsumerSlot slot = findSlot(consumer);
+        if (slot == null) {
+            return false;
+        }
+        slot.frameRate = Math.max(0, frameRate);
+        return true;
+    }
+
+    /**
+     * تعيين معدل الإطارات الافتراضي للمستهلكين الذين لم يطلبوا معدلاً
+     */
+    public void setFrameRate(int frameRate) {
+        if (frameRate > 0) {
+            mFrameRate = frameRate;
+        }
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    public FramePipelineMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * تنفيذ دورة واحدة: قراءة إطار من المصدر وتوزيعه على جميع المستهلكين دون اعتبار معدلاتهم
+     * @return true إذا تم توزيع إطار
+     */
+    public boolean step() throws IOException {
+        if (!readSource()) {
+            return false;
+        }
+
+        long deliverStart = mClock.nanoTime();
+        for (ConsumerSlot slot : mConsumers) {
+            slot.consumer.onFrame(mBuffer);
+            mMetrics.onFrameDelivered();
+        }
+        mMetrics.recordStage(FramePipelineMetrics.STAGE_DELIVER, mClock.nanoTime() - deliverStart);
+        return true;
+    }
+
+    /**
+     * تسليم الإطار للمستهلكين المستحقين فقط في اللحظة المحددة
+     * @return true إذا استحق مستهلك واحد على الأقل إطاراً
+     */
+    private boolean tick(long now) throws IOException {
+        boolean anyDue = false;
+        for (ConsumerSlot slot : mConsumers) {
+            if (slot.nextDueNanos - now <= DUE_TOLERANCE_NANOS) {
+                anyDue = true;
+                break;
+            }
+        }
+        if (!anyDue) {
+            return false;
+        }
+
+        // إعادة استخدام الإطار الحالي إذا لم يحن موعد إطار جديد من المصدر (تكرار دون تحويل إضافي)
+        int nativeRate = mSource.getNativeFrameRate();
+        boolean fresh = mHasFrame && nativeRate > 0
+                && now - mLastReadNanos < 1000000000L / nativeRate - DUE_TOLERANCE_NANOS;
+        if (!fresh && !readSource()) {
+            // لا إطار في هذه الدورة: تأجيل المستحقين إلى موعدهم التالي بدلاً من إعادة المحاولة فوراً
+            mHasFrame = false;
+            for (ConsumerSlot slot : mConsumers) {
+                if (slot.nextDueNanos - now <= DUE_TOLERANCE_NANOS) {
+                    slot.nextDueNanos = now + intervalOf(slot);
+                }
+            }
+            return true;
+        }
+        mHasFrame = true;
+
+        long deliverStart = mClock.nanoTime();
+        for (ConsumerSlot slot : mConsumers) {
+            if (slot.nextDueNanos - now > DUE_TOLERANCE_NANOS) {
+                continue; // تخطي: هذا المستهلك يطلب معدلاً أقل
+            }
+            slot.consumer.onFrame(mBuffer);
+            mMetrics.onFrameDelivered();
+
+            long interval = intervalOf(slot);
+            slot.nextDueNanos += interval;
+            if (slot.nextDueNanos - now <= 0) {
+                // تأخرنا عن جدول هذا المستهلك: احتساب الدورات الفائتة كإطارات مسقطة
+                mMetrics.onFramesDropped((now - slot.nextDueNanos) / interval + 1);
+                slot.nextDueNanos = now + interval;
+            }
+        }
+        mMetrics.recordStage(FramePipelineMetrics.STAGE_DELIVER, mClock.nanoTime() - deliverStart);
+        return true;
+    }
+
+    /**
+     * قراءة إطار جديد من المصدر إلى المخزن
+     * زمن القراءة لا يُسجل هنا: المصدر يسجل مراحله (فك التشفير، التحويل) حيث تحدث، فلا تُحتسب مرتين
+     */
+    private boolean readSource() throws IOException {
+        long readStart = mClock.nanoTime();
+        boolean hasFrame = mSource.read(mBuffer);
+        long readEnd = mClock.nanoTime();
+
+        if (!hasFrame) {
+            mMetrics.onFramesDropped(1);
+            return false;
+        }
+
+        mMetrics.onFrameProduced();
+
+        mBuffer.setTimestampNanos(readEnd);
+        mBuffer.setSequence(mSequence++);
+        mLastReadNanos = readStart;
+        return true;
+    }
+
+    /**
+     * تشغيل خط المعالجة على الخيط الحالي حتى الإيقاف أو بلوغ عدد الإطارات المحدد
+     * @param maxFrames الحد الأقصى للدورات، أو قيمة سالبة للتشغيل المستمر
+     */
+    public void run(long maxFrames) throws IOException, InterruptedException {
+        mRunningThread = Thread.currentThread();
+        runLoop(maxFrames);
+    }
+
+    /**
+     * حلقة خط المعالجة: النوم حتى موعد أقرب مستهلك ثم التسليم للمستحقين
+     */
+    private void runLoop(long maxFrames) throws IOException, InterruptedException {
+        Thread self = Thread.currentThread();
+        long openStart = mClock.nanoTime();
+        mSource.open();
+        mHasFrame = false;
+
+        try {
+            long start = mClock.nanoTime();
+            for (ConsumerSlot slot : mConsumers) {
+                slot.nextDueNanos = start;
+            }
+            long ticks = 0;
+            boolean awaitingFirstFrame = true;
+
+            while (mRunningThread == self && (maxFrames < 0 || ticks < maxFrames)) {
+                long now = mClock.nanoTime();
+                tick(now);
+                ticks++;
+
+                // زمن أول إطار يشمل فتح المصدر وأي تجهيز كسول خلفه
+                if (awaitingFirstFrame && mHasFrame) {
+                    mMetrics.recordTimeToFirstFrame(mClock.nanoTime() - openStart);
+                    awaitingFirstFrame = false;
+                }
+
+                long nextDue = now + 1000000000L / Math.max(1, mFrameRate);
+                for (ConsumerSlot slot : mConsumers) {
+                    if (slot.nextDueNanos - nextDue < 0) {
+                        nextDue = slot.nextDueNanos;
+                    }
+                }
+                long wait = nextDue - mClock.nanoTime();
+                if (wait > 0) {
+                    mClock.sleepNanos(wait);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (mRunningThread == self) {
+                    mRunningThread = null;
+                }
+            }
+            mSource.close();
+        }
+    }
+
+    /**
+     * تشغيل خط المعالجة على خيط خلفي
+     */
+    public synchronized void start(String threadName) {
+        if (mThread != null) {
+            return;
+        }
+
+        mThread = new Thread(() -> {
+            try {
+                runLoop(-1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // المصدر غير قابل للقراءة: يتوقف خط المعالجة
+                LOGGER.log(Level.WARNING, "Frame source failed: " + Thread.currentThread().getName(), e);
+            } catch (RuntimeException e) {
+                // خطأ من المصدر أو أحد المستهلكين: يتوقف خط المعالجة بدل إنهاء العملية
+                LOGGER.log(Level.SEVERE, "Frame pipeline crashed: " + Thread.currentThread().getName(), e);
+            }
+        }, threadName);
+        mThread.setDaemon(true);
+        mRunningThread = mThread;
+        mThread.start();
+    }
+
+    /**
+     * إيقاف خط المعالجة وانتظار انتهاء خيطه (بمهلة محددة) كي يُغلق المصدر قبل العودة
+     * الاستدعاء من خيط خط المعالجة نفسه (من مستهلك مثلاً) يوقف الحلقة دون انتظار
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            mRunningThread = null;
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+
+        thread.interrupt();
+        if (thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            LOGGER.warning("Frame pipeline thread did not stop within " + STOP_TIMEOUT_MS + "ms: " + thread.getName());
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunningThread != null;
+    }
+
+    private long intervalOf(ConsumerSlot slot) {
+        int frameRate = slot.frameRate > 0 ? slot.frameRate : mFrameRate;
+        return 1000000000L / Math.max(1, frameRate);
+    }
+
+    private ConsumerSlot findSlot(FrameConsumer consumer) {
+        for (ConsumerSlot slot : mConsumers) {
+            if (slot.consumer == consumer) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * مستهلك مسجل مع معدله وموعد إطاره التالي
+     */
+    private static class ConsumerSlot {
+        final FrameConsumer consumer;
+        volatile int frameRate;
+        long nextDueNanos;
+
+        ConsumerSlot(FrameConsumer consumer, int frameRate) {
+            this.consumer = consumer;
+            this.frameRate = frameRate;
+        }
+    }
+}
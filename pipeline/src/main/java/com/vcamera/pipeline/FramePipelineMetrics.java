@@ -0,0 +1,225 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * مقاييس خط معالجة الإطارات
+ * تجمع زمن كل مرحلة (فك التشفير، التحويل، التسليم) وعدادات الإطارات دون تخصيص للذاكرة
+ * كل مرحلة تُسجل مرة واحدة لكل إطار في المكان الذي تحدث فيه: المصدر يسجل فك التشفير والتحويل، وخط المعالجة التسليم
+ * وزمن أول إطار لكل تشغيل لخط المعالجة (من البدء حتى أول إطار من المصدر)
+ */
+public class FramePipelineMetrics {
+    // مراحل خط المعالجة
+    public static final int STAGE_DECODE = 0;
+    public static final int STAGE_CONVERT = 1;
+    public static final int STAGE_DELIVER = 2;
+    public static final int STAGE_COUNT = 3;
+
+    private static final String[] STAGE_NAMES = {"decode", "convert", "deliver"};
+
+    private static final String DUMP_FILE_NAME = "frame_metrics.log";
+
+    private final LatencyHistogram[] mStageHistograms = new LatencyHistogram[STAGE_COUNT];
+    private final LatencyHistogram mFirstFrameHistogram = new LatencyHistogram();
+    private final AtomicLong mFramesProduced = new AtomicLong();
+    private final AtomicLong mFramesDelivered = new AtomicLong();
+    private final AtomicLong mFramesDropped = new AtomicLong();
+    private final AtomicLong mConversionBytes = new AtomicLong();
+    private volatile long mStartTimeMs = System.currentTimeMillis();
+
+    public FramePipelineMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mStageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * تسجيل زمن مرحلة بالنانوثانية
+     */
+    public void recordStage(int stage, long elapsedNanos) {
+        mStageHistograms[stage].recordNanos(elapsedNanos);
+    }
+
+    /**
+     * تسجيل الزمن من بدء خط المعالجة حتى أول إطار من المصدر
+     */
+    public void recordTimeToFirstFrame(long elapsedNanos) {
+        mFirstFrameHistogram.recordNanos(elapsedNanos);
+    }
+
+    /**
+     * تسجيل إطار منتج من المصدر
+     */
+    public void onFrameProduced() {
+        mFramesProduced.incrementAndGet();
+    }
+
+    /**
+     * تسجيل إطار تم تسليمه للمستهلك
+     */
+    public void onFrameDelivered() {
+        mFramesDelivered.incrementAndGet();
+    }
+
+    /**
+     * تسجيل إطارات مسقطة
+     */
+    public void onFramesDropped(long count) {
+        if (count > 0) {
+            mFramesDropped.addAndGet(count);
+        }
+    }
+
+    /**
+     * تسجيل حجم البيانات المحولة
+     */
+    public void onBytesConverted(long bytes) {
+        mConversionBytes.addAndGet(bytes);
+    }
+
+    /**
+     * إعادة تعيين جميع المقاييس
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : mStageHistograms) {
+            histogram.reset();
+        }
+        mFirstFrameHistogram.reset();
+        mFramesProduced.set(0);
+        mFramesDelivered.set(0);
+        mFramesDropped.set(0);
+        mConversionBytes.set(0);
+        mStartTimeMs = System.currentTimeMillis();
+    }
+
+    /**
+     * أخذ لقطة من المقاييس الحالية
+     */
+    public Snapshot snapshot() {
+        LatencyHistogram.Snapshot[] stages = new LatencyHistogram.Snapshot[STAGE_COUNT];
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stages[i] = mStageHistograms[i].snapshot();
+        }
+        return new Snapshot(stages,
+                mFirstFrameHistogram.snapshot(),
+                mFramesProduced.get(),
+                mFramesDelivered.get(),
+                mFramesDropped.get(),
+                mConversionBytes.get(),
+                System.currentTimeMillis() - mStartTimeMs);
+    }
+
+    /**
+     * إلحاق لقطة من المقاييس بملف في مجلد السجلات
+     */
+    public void dumpTo(File logDir) throws IOException {
+        if (logDir == null) {
+            return;
+        }
+        if (!logDir.exists()) {
+            logDir.mkdirs();
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.getDefault());
+        String timestamp = dateFormat.format(new Date());
+
+        FileWriter writer = new FileWriter(new File(logDir, DUMP_FILE_NAME), true);
+        try {
+            writer.append(timestamp)
+                  .append(" | ")
+                  .append(snapshot().toString())
+                  .append("\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * الحصول على اسم المرحلة
+     */
+    public static String getStageName(int stage) {
+        return stage >= 0 && stage < STAGE_COUNT ? STAGE_NAMES[stage] : "unknown";
+    }
+
+    /**
+     * لقطة ثابتة من مقاييس خط المعالجة
+     */
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot[] stages;
+        private final LatencyHistogram.Snapshot timeToFirstFrame;
+        private final long framesProduced;
+        private final long framesDelivered;
+        private final long framesDropped;
+        private final long conversionBytes;
+        private final long uptimeMs;
+
+        Snapshot(LatencyHistogram.Snapshot[] stages, LatencyHistogram.Snapshot timeToFirstFrame,
+                 long framesProduced, long framesDelivered, long framesDropped, long conversionBytes, long uptimeMs) {
+            this.stages = stages;
+            this.timeToFirstFrame = timeToFirstFrame;
+            this.framesProduced = framesProduced;
+            this.framesDelivered = framesDelivered;
+            this.framesDropped = framesDropped;
+            this.conversionBytes = conversionBytes;
+            this.uptimeMs = uptimeMs;
+        }
+
+        public LatencyHistogram.Snapshot getStage(int stage) {
+            return stages[stage];
+        }
+
+        public LatencyHistogram.Snapshot getTimeToFirstFrame() {
+            return timeToFirstFrame;
+        }
+
+        public long getFramesProduced() {
+            return framesProduced;
+        }
+
+        public long getFramesDelivered() {
+            return framesDelivered;
+        }
+
+        public long getFramesDropped() {
+            return framesDropped;
+        }
+
+        public long getConversionBytes() {
+            return conversionBytes;
+        }
+
+        public long getUptimeMs() {
+            return uptimeMs;
+        }
+
+        public float getDeliveredFps() {
+            return uptimeMs > 0 ? framesDelivered * 1000f / uptimeMs : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("produced=").append(framesProduced)
+                   .append(" delivered=").append(framesDelivered)
+                   .append(" dropped=").append(framesDropped)
+                   .append(" convertedBytes=").append(conversionBytes)
+                   .append(" fps=").append(String.format(Locale.US, "%.1f", getDeliveredFps()));
+            for (int i = 0; i < stages.length; i++) {
+                if (stages[i].getCount() > 0) {
+                    builder.append(" [").append(getStageName(i)).append(": ")
+                           .append(stages[i]).append("]");
+                }
+            }
+            if (timeToFirstFrame.getCount() > 0) {
+                builder.append(" [first-frame: ").append(timeToFirstFrame).append("]");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * صيغة ملف تسجيل الإطارات
+ * ترويسة ثابتة ثم سجلات متتالية: [طول الحمولة، الطول الأصلي، الطابع الزمني] ثم بيانات NV21 (خام أو مضغوطة بـ LZ4)
+ * سجل بطول حمولة صفري يعني نهاية البيانات، لذا يبقى الملف قابلاً للقراءة حتى لو انقطع التسجيل فجأة
+ */
+final class FrameRecordFormat {
+    static final int MAGIC = 0x56434652; // "VCFR"
+    static final short VERSION = 1;
+    static final short FLAG_LZ4 = 1;
+
+    static final int FILE_HEADER_SIZE = 32;
+    static final int RECORD_HEADER_SIZE = 16;
+
+    private FrameRecordFormat() {
+    }
+
+    /**
+     * كتابة ترويسة الملف
+     */
+    static void writeFileHeader(ByteBuffer buffer, int width, int height, boolean compressed) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putShort(6, compressed ? FLAG_LZ4 : 0);
+        buffer.putInt(8, width);
+        buffer.putInt(12, height);
+    }
+
+    /**
+     * قراءة ترويسة الملف والتحقق منها
+     * @return {العرض، الارتفاع، العلامات}
+     */
+    static int[] readFileHeader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < FILE_HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a frame record file");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported frame record version: " + buffer.getShort(4));
+        }
+        return new int[] {buffer.getInt(8), buffer.getInt(12), buffer.getShort(6)};
+    }
+}
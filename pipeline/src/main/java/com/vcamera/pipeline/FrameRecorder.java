@@ -0,0 +1,257 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * مسجل الإطارات
+ * يلحق إطارات NV21 مع طوابعها الزمنية بملف مقسّم إلى مقاطع معيّنة في الذاكرة (mmap)
+ * الاستدعاء offer لا يحجب أبداً: ينسخ الإطار إلى خانة حرة ويتركه لخيط الكتابة، أو يسقطه إذا امتلأت الخانات
+ */
+public class FrameRecorder {
+    private static final int DEFAULT_SLOT_COUNT = 8;
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private final File mFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private final boolean mCompress;
+
+    private final ArrayBlockingQueue<Slot> mFreeSlots;
+    private final ArrayBlockingQueue<Slot> mPendingSlots;
+    private final AtomicLong mFramesWritten = new AtomicLong();
+    private final AtomicLong mFramesDropped = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private MappedByteBuffer mSegment;
+    private long mSegmentStart;
+    private long mWritePosition;
+
+    private Lz4BlockCodec mCodec;
+    private byte[] mCompressBuffer;
+
+    private volatile boolean mIsRecording = false;
+    private Thread mWriterThread;
+    private volatile IOException mWriteError;
+
+    public FrameRecorder(File file, int width, int height, boolean compress) {
+        this(file, width, height, compress, DEFAULT_SLOT_COUNT);
+    }
+
+    public FrameRecorder(File file, int width, int height, boolean compress, int slotCount) {
+        mFile = file;
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = FrameBuffer.nv21Size(width, height);
+        mCompress = compress;
+        mFreeSlots = new ArrayBlockingQueue<>(slotCount);
+        mPendingSlots = new ArrayBlockingQueue<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            mFreeSlots.add(new Slot(mFrameSize));
+        }
+    }
+
+    /**
+     * فتح الملف وبدء خيط الكتابة
+     */
+    public synchronized void start() throws IOException {
+        if (mIsRecording) {
+            return;
+        }
+
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mRandomAccessFile.setLength(0);
+        mChannel = mRandomAccessFile.getChannel();
+        mSegmentStart = 0;
+        mapSegment(FrameRecordFormat.FILE_HEADER_SIZE);
+        FrameRecordFormat.writeFileHeader(mSegment, mWidth, mHeight, mCompress);
+        mWritePosition = FrameRecordFormat.FILE_HEADER_SIZE;
+
+        if (mCompress) {
+            mCodec = new Lz4BlockCodec();
+            mCompressBuffer = new byte[Lz4BlockCodec.maxCompressedLength(mFrameSize)];
+        }
+
+        mIsRecording = true;
+        mWriterThread = new Thread(this::writerLoop, "FrameRecorder");
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    /**
+     * تقديم إطار للتسجيل دون حجب
+     * @return false إذا أُسقط الإطار (لا توجد خانة حرة، أو أبعاد مختلفة، أو التسجيل متوقف)
+     */
+    public boolean offer(byte[] nv21, int length, long timestampNanos) {
+        if (!mIsRecording || length != mFrameSize) {
+            mFramesDropped.incrementAndGet();
+            return false;
+        }
+
+        Slot slot = mFreeSlots.poll();
+        if (slot == null) {
+            mFramesDropped.incrementAndGet();
+            return false;
+        }
+
+        System.arraycopy(nv21, 0, slot.data, 0, mFrameSize);
+        slot.timestampNanos = timestampNanos;
+        mPendingSlots.offer(slot);
+        return true;
+    }
+
+    /**
+     * إيقاف التسجيل بعد كتابة الإطارات المعلقة وإغلاق الملف
+     */
+    public void stop() throws IOException {
+        Thread writer;
+        synchronized (this) {
+            if (!mIsRecording) {
+                return;
+            }
+            mIsRecording = false;
+            writer = mWriterThread;
+            mWriterThread = null;
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (mSegment != null) {
+                mSegment.force();
+            }
+            // قص الجزء غير المستخدم من آخر مقطع
+            mChannel.truncate(mWritePosition);
+        } finally {
+            mSegment = null;
+            mChannel = null;
+            mRandomAccessFile.close();
+            mRandomAccessFile = null;
+        }
+
+        if (mWriteError != null) {
+            throw mWriteError;
+        }
+    }
+
+    /**
+     * حلقة خيط الكتابة
+     */
+    private void writerLoop() {
+        try {
+            while (mIsRecording || !mPendingSlots.isEmpty()) {
+                Slot slot = mPendingSlots.poll(50, TimeUnit.MILLISECONDS);
+                if (slot == null) {
+                    continue;
+                }
+                try {
+                    writeRecord(slot);
+                } finally {
+                    mFreeSlots.offer(slot);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            mWriteError = e;
+            mIsRecording = false;
+        }
+    }
+
+    /**
+     * كتابة سجل إطار واحد
+     */
+    private void writeRecord(Slot slot) throws IOException {
+        byte[] payload = slot.data;
+        int payloadLength = mFrameSize;
+        if (mCompress) {
+            payloadLength = mCodec.compress(slot.data, 0, mFrameSize, mCompressBuffer, 0);
+            payload = mCompressBuffer;
+        }
+
+        int recordSize = FrameRecordFormat.RECORD_HEADER_SIZE + payloadLength;
+        ensureSegmentCapacity(recordSize);
+
+        int offset = (int) (mWritePosition - mSegmentStart);
+        mSegment.putInt(offset, payloadLength);
+        mSegment.putInt(offset + 4, mFrameSize);
+        mSegment.putLong(offset + 8, slot.timestampNanos);
+        mSegment.position(offset + FrameRecordFormat.RECORD_HEADER_SIZE);
+        mSegment.put(payload, 0, payloadLength);
+
+        mWritePosition += recordSize;
+        mFramesWritten.incrementAndGet();
+        mBytesWritten.addAndGet(recordSize);
+    }
+
+    /**
+     * التأكد من أن المقطع الحالي يتسع للسجل، وإلا تعيين مقطع جديد يبدأ من موضع الكتابة
+     */
+    private void ensureSegmentCapacity(int recordSize) throws IOException {
+        long segmentEnd = mSegmentStart + mSegment.capacity();
+        if (mWritePosition + recordSize <= segmentEnd) {
+            return;
+        }
+
+        mSegment.force();
+        mSegmentStart = mWritePosition;
+        mapSegment(recordSize);
+    }
+
+    private void mapSegment(int minSize) throws IOException {
+        long size = Math.max(SEGMENT_SIZE, minSize);
+        mSegment = mChannel.map(FileChannel.MapMode.READ_WRITE, mSegmentStart, size);
+        mSegment.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public boolean isRecording() {
+        return mIsRecording;
+    }
+
+    public long getFramesWritten() {
+        return mFramesWritten.get();
+    }
+
+    public long getFramesDropped() {
+        return mFramesDropped.get();
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten.get();
+    }
+
+    /**
+     * خانة إطار معاد استخدامها بين الاستدعاءات
+     */
+    private static class Slot {
+        final byte[] data;
+        long timestampNanos;
+
+        Slot(int size) {
+            data = new byte[size];
+        }
+    }
+}
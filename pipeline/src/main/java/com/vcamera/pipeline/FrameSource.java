@@ -0,0 +1,31 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+
+/**
+ * مصدر إطارات
+ * يكتب الإطارات بصيغة NV21 في مخزن يقدمه خط المعالجة
+ */
+public interface FrameSource {
+    /**
+     * تحضير المصدر قبل قراءة أول إطار
+     */
+    void open() throws IOException;
+
+    /**
+     * قراءة الإطار التالي في المخزن
+     * @return false إذا لم يتوفر إطار في هذه الدورة
+     */
+    boolean read(FrameBuffer out) throws IOException;
+
+    /**
+     * معدل الإطارات الأصلي للمصدر
+     * @return عدد الإطارات في الثانية، أو 0 إذا كان المصدر يتبع معدل الطلب
+     */
+    int getNativeFrameRate();
+
+    /**
+     * تحرير موارد المصدر
+     */
+    void close();
+}
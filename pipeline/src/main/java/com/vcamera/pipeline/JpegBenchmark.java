@@ -0,0 +1,67 @@
+package com.vcamera.pipeline;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * قياس أداء ترميز JPEG بالشرائح المتوازية مقابل خط الأساس أحادي الخيط على JVM
+ * الاستخدام: gradle :pipeline:jpegBenchmark -Pargs="4000 3000 20 [threads]"
+ */
+public class JpegBenchmark {
+    private static final int QUALITY = 90;
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height, 30,
+                SyntheticFrameSource.PATTERN_GRADIENT_SWEEP, 42L);
+        FrameBuffer frame = new FrameBuffer(width, height);
+        source.open();
+        try {
+            source.read(frame);
+        } finally {
+            source.close();
+        }
+
+        TileJpegEncoder baseline = new TileJpegEncoder(1);
+        TileJpegEncoder parallel = new TileJpegEncoder(threads);
+        try {
+            double baselineMillis = run("baseline", baseline, frame, iterations);
+            double parallelMillis = run("parallel", parallel, frame, iterations);
+            System.out.printf("speedup=%.2fx threads=%d cores=%d%n", baselineMillis / parallelMillis,
+                    parallel.getParallelism(), Runtime.getRuntime().availableProcessors());
+        } finally {
+            baseline.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * @return متوسط زمن الترميز بالميلي ثانية
+     */
+    private static double run(String name, TileJpegEncoder encoder, FrameBuffer frame, int iterations)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+
+        // الإحماء
+        for (int i = 0; i < Math.max(3, iterations / 4); i++) {
+            out.reset();
+            encoder.encodeNv21(frame.getData(), frame.getWidth(), frame.getHeight(), QUALITY, out);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            out.reset();
+            encoder.encodeNv21(frame.getData(), frame.getWidth(), frame.getHeight(), QUALITY, out);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        double megapixels = frame.getWidth() * (double) frame.getHeight() / 1e6;
+        System.out.printf("%s threads=%d %dx%d avg=%.1fms %.1fMP/s bytes=%d%n",
+                name, encoder.getParallelism(), frame.getWidth(), frame.getHeight(),
+                millis, megapixels * 1000.0 / millis, out.size());
+        return millis;
+    }
+}
@@ -0,0 +1,168 @@
+package com.vcamera.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * مدرج تكراري لزمن الاستجابة بأسلوب HDR
+ * دلاء خطية داخل كل قوة للعدد 2، بدقة نسبية تقارب 6% ودون أي تخصيص للذاكرة أثناء التسجيل
+ */
+public class LatencyHistogram {
+    // عدد البتات للدلاء الفرعية (32 دلواً فرعياً لكل قوة للعدد 2)
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+
+    // أعلى قيمة قابلة للتسجيل (2^40 ميكروثانية)، ما يزيد عنها يُسجل في الدلو الأخير
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKET_COUNT =
+            SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalMicros = new AtomicLong();
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /**
+     * تسجيل قيمة بالنانوثانية
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000L);
+    }
+
+    /**
+     * تسجيل قيمة بالميكروثانية
+     */
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+
+        mBuckets.incrementAndGet(bucketIndex(micros));
+        mCount.incrementAndGet();
+        mTotalMicros.addAndGet(micros);
+
+        // تحديث القيمة القصوى
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    /**
+     * إعادة تعيين المدرج
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    /**
+     * أخذ لقطة ثابتة من المدرج
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mBuckets.get(i);
+        }
+        return new Snapshot(counts, mCount.get(), mTotalMicros.get(), mMaxMicros.get());
+    }
+
+    /**
+     * حساب رقم الدلو للقيمة
+     */
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        if (msb > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int shift = msb - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (micros >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+    }
+
+    /**
+     * الحد الأعلى للقيم في الدلو
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF + 1;
+        long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * لقطة ثابتة من المدرج التكراري
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+
+        Snapshot(long[] counts, long count, long totalMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public double getMeanMicros() {
+            return count > 0 ? (double) totalMicros / count : 0;
+        }
+
+        /**
+         * الحصول على قيمة النسبة المئوية (مثلاً 99.0) بالميكروثانية
+         */
+        public long getPercentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0);
+            if (target < 1) {
+                target = 1;
+            }
+
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + " mean=" + Math.round(getMeanMicros()) + "us"
+                    + " p50=" + getPercentileMicros(50) + "us"
+                    + " p90=" + getPercentileMicros(90) + "us"
+                    + " p99=" + getPercentileMicros(99) + "us"
+                    + " max=" + maxMicros + "us";
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.vcamera.pipeline;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * كاشف تسرب لعناصر المجمعات (لبناءات التصحيح)
+ * يحتفظ بمرجع ضعيف ومكان الاستعارة لكل عنصر مستعار؛ إذا جُمع العنصر قبل إعادته يُبلغ عنه كتسرب
+ */
+public class LeakTracker<T> {
+
+    /**
+     * مستمع التسرب
+     */
+    public interface Listener {
+        void onLeak(String poolName, Throwable acquireSite);
+    }
+
+    private final String mPoolName;
+    private final Listener mListener;
+    private final ReferenceQueue<T> mQueue = new ReferenceQueue<>();
+    private final List<TrackedReference<T>> mTracked = new ArrayList<>();
+    private long mLeakCount;
+
+    public LeakTracker(String poolName, Listener listener) {
+        mPoolName = poolName;
+        mListener = listener;
+    }
+
+    /**
+     * تسجيل عنصر مستعار مع مكان استعارته
+     */
+    public synchronized void track(T item) {
+        poll();
+        mTracked.add(new TrackedReference<>(item, mQueue, new Throwable("Acquired from " + mPoolName)));
+    }
+
+    /**
+     * إلغاء تتبع عنصر أعيد إلى المجمع
+     * @return false إذا لم يكن العنصر مستعاراً من هذا المجمع
+     */
+    public synchronized boolean untrack(T item) {
+        for (int i = mTracked.size() - 1; i >= 0; i--) {
+            TrackedReference<T> reference = mTracked.get(i);
+            if (reference.get() == item) {
+                reference.clear();
+                mTracked.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * فحص العناصر التي جمعها جامع القمامة دون إعادتها
+     */
+    public synchronized void poll() {
+        Object reference;
+        while ((reference = mQueue.poll()) != null) {
+            if (mTracked.remove(reference)) {
+                mLeakCount++;
+                if (mListener != null) {
+                    mListener.onLeak(mPoolName, ((TrackedReference<?>) reference).acquireSite);
+                }
+            }
+        }
+    }
+
+    public synchronized int getOutstanding() {
+        return mTracked.size();
+    }
+
+    public synchronized long getLeakCount() {
+        return mLeakCount;
+    }
+
+    private static class TrackedReference<T> extends WeakReference<T> {
+        final Throwable acquireSite;
+
+        TrackedReference(T referent, ReferenceQueue<? super T> queue, Throwable acquireSite) {
+            super(referent, queue);
+            this.acquireSite = acquireSite;
+        }
+    }
+}
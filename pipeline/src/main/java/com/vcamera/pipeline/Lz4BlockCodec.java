@@ -0,0 +1,205 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ضاغط سريع بصيغة كتل LZ4
+ * مطابقة جشعة بجدول تجزئة معاد الاستخدام، متوافق مع صيغة LZ4 block القياسية
+ * الكائن غير آمن للاستخدام من عدة خيوط في الوقت نفسه بسبب جدول التجزئة
+ */
+public class Lz4BlockCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int RUN_MASK = 15;
+
+    private final int[] mHashTable = new int[1 << HASH_LOG];
+
+    /**
+     * أقصى حجم ممكن للبيانات المضغوطة
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * ضغط البيانات
+     * @return حجم البيانات المضغوطة في dst
+     */
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+        int srcEnd = srcOff + srcLen;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int mfLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOff;
+        int ip = srcOff;
+        int op = dstOff;
+
+        if (srcLen >= MF_LIMIT + 1) {
+            Arrays.fill(mHashTable, -1);
+
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int hash = hash(sequence);
+                int ref = mHashTable[hash];
+                mHashTable[hash] = ip;
+
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+
+                // توسيع المطابقة للخلف
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+
+                // توسيع المطابقة للأمام
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen]) {
+                    matchLen++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLen, dst, op);
+                ip += matchLen;
+                anchor = ip;
+            }
+        }
+
+        // الحرفيات الأخيرة
+        op = writeLastLiterals(src, anchor, srcEnd - anchor, dst, op);
+        return op - dstOff;
+    }
+
+    /**
+     * فك ضغط البيانات من مصفوفة
+     * @return حجم البيانات بعد فك الضغط
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+            throws IOException {
+        return decompress(ByteBuffer.wrap(src), srcOff, srcLen, dst, dstOff, dstLen);
+    }
+
+    /**
+     * فك ضغط البيانات مباشرة من مخزن (مثل ملف معيّن في الذاكرة) دون نسخ وسيط
+     * @return حجم البيانات بعد فك الضغط
+     */
+    public static int decompress(ByteBuffer src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen)
+            throws IOException {
+        int ip = srcOff;
+        int srcEnd = srcOff + srcLen;
+        int op = dstOff;
+        int dstEnd = dstOff + dstLen;
+
+        while (ip < srcEnd) {
+            int token = src.get(ip++) & 0xff;
+
+            // نسخ الحرفيات
+            int literalLen = token >>> 4;
+            if (literalLen == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw new IOException("LZ4 block truncated");
+                    }
+                    b = src.get(ip++) & 0xff;
+                    literalLen += b;
+                } while (b == 255);
+            }
+            if (ip + literalLen > srcEnd || op + literalLen > dstEnd) {
+                throw new IOException("LZ4 literal run out of bounds");
+            }
+            for (int i = 0; i < literalLen; i++) {
+                dst[op++] = src.get(ip++);
+            }
+
+            if (ip >= srcEnd) {
+                break; // آخر تسلسل لا يحتوي على مطابقة
+            }
+
+            // نسخ المطابقة
+            if (ip + 2 > srcEnd) {
+                throw new IOException("LZ4 block truncated");
+            }
+            int offset = (src.get(ip) & 0xff) | ((src.get(ip + 1) & 0xff) << 8);
+            ip += 2;
+
+            int matchLen = token & RUN_MASK;
+            if (matchLen == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw new IOException("LZ4 block truncated");
+                    }
+                    b = src.get(ip++) & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+
+            int ref = op - offset;
+            if (offset == 0 || ref < dstOff || op + matchLen > dstEnd) {
+                throw new IOException("LZ4 match out of bounds");
+            }
+            // نسخ بايتاً بايتاً لأن المطابقة قد تتداخل مع الناتج
+            for (int i = 0; i < matchLen; i++) {
+                dst[op++] = dst[ref++];
+            }
+        }
+
+        return op - dstOff;
+    }
+
+    private static int writeSequence(byte[] src, int literalOff, int literalLen, int offset, int matchLen,
+                                     byte[] dst, int op) {
+        int tokenPos = op++;
+        int matchCode = matchLen - MIN_MATCH;
+        int token = (Math.min(literalLen, RUN_MASK) << 4) | Math.min(matchCode, RUN_MASK);
+
+        op = writeLength(literalLen, dst, op);
+        System.arraycopy(src, literalOff, dst, op, literalLen);
+        op += literalLen;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+
+        op = writeLength(matchCode, dst, op);
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOff, int literalLen, byte[] dst, int op) {
+        dst[op++] = (byte) (Math.min(literalLen, RUN_MASK) << 4);
+        op = writeLength(literalLen, dst, op);
+        System.arraycopy(src, literalOff, dst, op, literalLen);
+        return op + literalLen;
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length < RUN_MASK) {
+            return op;
+        }
+        int remaining = length - RUN_MASK;
+        while (remaining >= 255) {
+            dst[op++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[op++] = (byte) remaining;
+        return op;
+    }
+
+    private static int readInt(byte[] buf, int off) {
+        return (buf[off] & 0xff)
+                | ((buf[off + 1] & 0xff) << 8)
+                | ((buf[off + 2] & 0xff) << 16)
+                | ((buf[off + 3] & 0xff) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,38 @@
+package com.vcamera.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ساعة يدوية يتقدم زمنها فقط عند الطلب
+ * الانتظار فيها لا يحجب الخيط بل يقدّم الزمن مباشرة، مما يجعل المحاكاة حتمية وسريعة
+ */
+public class ManualFrameClock implements FrameClock {
+    private final AtomicLong mNowNanos;
+
+    public ManualFrameClock() {
+        this(0);
+    }
+
+    public ManualFrameClock(long startNanos) {
+        mNowNanos = new AtomicLong(startNanos);
+    }
+
+    @Override
+    public long nanoTime() {
+        return mNowNanos.get();
+    }
+
+    @Override
+    public void sleepNanos(long nanos) {
+        if (nanos > 0) {
+            mNowNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * تقديم الزمن بمقدار محدد
+     */
+    public void advanceNanos(long nanos) {
+        mNowNanos.addAndGet(nanos);
+    }
+}
@@ -0,0 +1,312 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * قارئ جداول العينات في ملفات MP4/MOV (ISO BMFF) دون فك تشفير
+ * يتخطى صناديق البيانات بترويساتها ويقرأ صندوق moov وحده، ثم يحسب لكل عينة فيديو زمن العرض والموقع والحجم والإطارات المفتاحية
+ * الملفات المجزأة (moof) وغير MP4 غير مدعومة: يعود null ويبني المستدعي الفهرس بطريقة أخرى
+ */
+public final class Mp4SampleTable {
+    // صندوق moov أكبر من هذا غير معتاد؛ لا نحمله في الذاكرة
+    private static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+
+    private static final int BOX_MOOV = type("moov");
+    private static final int BOX_MVEX = type("mvex");
+    private static final int BOX_TRAK = type("trak");
+    private static final int BOX_EDTS = type("edts");
+    private static final int BOX_ELST = type("elst");
+    private static final int BOX_MDIA = type("mdia");
+    private static final int BOX_MDHD = type("mdhd");
+    private static final int BOX_HDLR = type("hdlr");
+    private static final int BOX_MINF = type("minf");
+    private static final int BOX_STBL = type("stbl");
+    private static final int BOX_STTS = type("stts");
+    private static final int BOX_CTTS = type("ctts");
+    private static final int BOX_STSS = type("stss");
+    private static final int BOX_STSZ = type("stsz");
+    private static final int BOX_STSC = type("stsc");
+    private static final int BOX_STCO = type("stco");
+    private static final int BOX_CO64 = type("co64");
+    private static final int HANDLER_VIDEO = type("vide");
+
+    private Mp4SampleTable() {
+    }
+
+    /**
+     * قراءة جدول عينات أول مسار فيديو
+     * @return منشئ الفهرس بكل العينات، أو null إذا لم يكن الملف MP4 عادياً بمسار فيديو
+     */
+    public static SampleIndex.Builder parse(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+
+            long position = 0;
+            boolean first = true;
+            while (position + 8 <= length) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                if (header.remaining() < 8) {
+                    return null;
+                }
+                long size = header.getInt() & 0xFFFFFFFFL;
+                int boxType = header.getInt();
+                int headerSize = 8;
+                if (size == 1) {
+                    if (header.remaining() < 8) {
+                        return null;
+                    }
+                    size = header.getLong();
+                    headerSize = 16;
+                } else if (size == 0) {
+                    size = length - position;
+                }
+                if (size < headerSize || (first && !isPrintable(boxType))) {
+                    return null; // ليس ISO BMFF
+                }
+                first = false;
+
+                if (boxType == BOX_MOOV) {
+                    long payloadSize = size - headerSize;
+                    if (payloadSize > MAX_MOOV_SIZE || position + size > length) {
+                        return null;
+                    }
+                    ByteBuffer moov = ByteBuffer.allocate((int) payloadSize).order(ByteOrder.BIG_ENDIAN);
+                    while (moov.hasRemaining()) {
+                        if (channel.read(moov, position + headerSize + moov.position()) < 0) {
+                            return null;
+                        }
+                    }
+                    moov.flip();
+                    return parseMoov(moov);
+                }
+                position += size;
+            }
+        }
+        return null;
+    }
+
+    private static SampleIndex.Builder parseMoov(ByteBuffer moov) {
+        if (findChild(moov, BOX_MVEX) != null) {
+            return null; // ملف مجزأ: العينات في صناديق moof
+        }
+
+        int position = moov.position();
+        while (position + 8 <= moov.limit()) {
+            long size = moov.getInt(position) & 0xFFFFFFFFL;
+            int boxType = moov.getInt(position + 4);
+            if (size < 8 || position + size > moov.limit()) {
+                return null;
+            }
+            if (boxType == BOX_TRAK) {
+                SampleIndex.Builder builder = parseTrak(slice(moov, position + 8, (int) size - 8));
+                if (builder != null) {
+                    return builder;
+                }
+            }
+            position += (int) size;
+        }
+        return null;
+    }
+
+    /**
+     * @return عينات المسار إذا كان مسار فيديو، وإلا null
+     */
+    private static SampleIndex.Builder parseTrak(ByteBuffer trak) {
+        ByteBuffer mdia = findChild(trak, BOX_MDIA);
+        ByteBuffer hdlr = mdia != null ? findChild(mdia, BOX_HDLR) : null;
+        if (hdlr == null || hdlr.getInt(hdlr.position() + 8) != HANDLER_VIDEO) {
+            return null;
+        }
+
+        ByteBuffer mdhd = findChild(mdia, BOX_MDHD);
+        ByteBuffer minf = findChild(mdia, BOX_MINF);
+        ByteBuffer stbl = minf != null ? findChild(minf, BOX_STBL) : null;
+        if (mdhd == null || stbl == null) {
+            return null;
+        }
+        int version = mdhd.get(mdhd.position()) & 0xFF;
+        long timescale = mdhd.getInt(mdhd.position() + (version == 1 ? 20 : 12)) & 0xFFFFFFFFL;
+        if (timescale == 0) {
+            return null;
+        }
+
+        ByteBuffer stts = findChild(stbl, BOX_STTS);
+        ByteBuffer stsz = findChild(stbl, BOX_STSZ);
+        ByteBuffer stsc = findChild(stbl, BOX_STSC);
+        ByteBuffer stco = findChild(stbl, BOX_STCO);
+        ByteBuffer co64 = stco == null ? findChild(stbl, BOX_CO64) : null;
+        if (stts == null || stsz == null || stsc == null || (stco == null && co64 == null)) {
+            return null; // stz2 وغيرها غير مدعومة
+        }
+        ByteBuffer ctts = findChild(stbl, BOX_CTTS);
+        ByteBuffer stss = findChild(stbl, BOX_STSS);
+
+        // الأحجام
+        int base = stsz.position();
+        int uniformSize = stsz.getInt(base + 4);
+        int sampleCount = stsz.getInt(base + 8);
+        if (sampleCount <= 0) {
+            return null;
+        }
+
+        // إزاحة قائمة التحرير: أزمنة العرض تبدأ من الصفر كما يعيدها MediaExtractor
+        long mediaStart = editMediaStart(findChild(trak, BOX_EDTS));
+
+        // الجداول المضغوطة تُفك تدريجياً أثناء المرور على العينات
+        RunCursor timeToSample = new RunCursor(stts);
+        RunCursor compositionOffsets = ctts != null ? new RunCursor(ctts) : null;
+        int syncBase = stss != null ? stss.position() : 0;
+        int syncCount = stss != null ? stss.getInt(syncBase + 4) : 0;
+        int syncCursor = 0;
+
+        int chunkBase = stco != null ? stco.position() : co64.position();
+        int chunkCount = (stco != null ? stco : co64).getInt(chunkBase + 4);
+        int stscBase = stsc.position();
+        int stscCount = stsc.getInt(stscBase + 4);
+        int stscEntry = 0;
+
+        SampleIndex.Builder builder = new SampleIndex.Builder();
+        long decodeTime = 0;
+        int sample = 0;
+        for (int chunk = 1; chunk <= chunkCount && sample < sampleCount; chunk++) {
+            // مدخل stsc الساري على هذه الكتلة
+            while (stscEntry + 1 < stscCount && stsc.getInt(stscBase + 8 + (stscEntry + 1) * 12) <= chunk) {
+                stscEntry++;
+            }
+            int samplesInChunk = stsc.getInt(stscBase + 8 + stscEntry * 12 + 4);
+            long offset = stco != null
+                    ? stco.getInt(chunkBase + 8 + (chunk - 1) * 4) & 0xFFFFFFFFL
+                    : co64.getLong(chunkBase + 8 + (chunk - 1) * 8);
+
+            for (int i = 0; i < samplesInChunk && sample < sampleCount; i++, sample++) {
+                int size = uniformSize != 0 ? uniformSize : stsz.getInt(base + 12 + sample * 4);
+                long composition = compositionOffsets != null ? compositionOffsets.next() : 0;
+                long presentation = decodeTime + composition - mediaStart;
+
+                boolean keyframe;
+                if (stss == null) {
+                    keyframe = true; // غياب stss يعني أن كل العينات مفتاحية
+                } else {
+                    while (syncCursor < syncCount && stss.getInt(syncBase + 8 + syncCursor * 4) < sample + 1) {
+                        syncCursor++;
+                    }
+                    keyframe = syncCursor < syncCount && stss.getInt(syncBase + 8 + syncCursor * 4) == sample + 1;
+                }
+
+                builder.addSample(presentation * 1000000L / timescale, offset, size, keyframe);
+                offset += size;
+                decodeTime += timeToSample.next();
+            }
+        }
+        return builder.getSampleCount() == sampleCount ? builder : null;
+    }
+
+    /**
+     * زمن بداية الوسائط في أول تحرير غير فارغ، بمقياس المسار
+     */
+    private static long editMediaStart(ByteBuffer edts) {
+        ByteBuffer elst = edts != null ? findChild(edts, BOX_ELST) : null;
+        if (elst == null) {
+            return 0;
+        }
+        int base = elst.position();
+        int version = elst.get(base) & 0xFF;
+        int entries = elst.getInt(base + 4);
+        int entrySize = version == 1 ? 20 : 12;
+        for (int i = 0; i < entries; i++) {
+            int entry = base + 8 + i * entrySize;
+            long mediaTime = version == 1 ? elst.getLong(entry + 8) : elst.getInt(entry + 4);
+            if (mediaTime >= 0) {
+                return mediaTime;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * مؤشر على جدول مضغوط بمدخلات (عدد، قيمة) مثل stts وctts
+     */
+    private static class RunCursor {
+        private final ByteBuffer mTable;
+        private final int mEntryCount;
+        private int mEntry;
+        private long mRemaining;
+
+        RunCursor(ByteBuffer table) {
+            mTable = table;
+            mEntryCount = table.getInt(table.position() + 4);
+            mEntry = -1;
+        }
+
+        /**
+         * قيمة العينة التالية (القيمة الأخيرة تتكرر إذا انتهى الجدول)
+         */
+        long next() {
+            while (mRemaining == 0 && mEntry + 1 < mEntryCount) {
+                mEntry++;
+                mRemaining = mTable.getInt(entry()) & 0xFFFFFFFFL;
+            }
+            if (mEntry < 0) {
+                return 0;
+            }
+            if (mRemaining > 0) {
+                mRemaining--;
+            }
+            // ctts بالإصدار 1 قيم بإشارة؛ والإصدار 0 يُعامل كذلك كما تفعل معظم المكتبات
+            return mTable.getInt(entry() + 4);
+        }
+
+        private int entry() {
+            return mTable.position() + 8 + mEntry * 8;
+        }
+    }
+
+    /**
+     * حمولة أول صندوق ابن من النوع المحدد، أو null
+     */
+    private static ByteBuffer findChild(ByteBuffer parent, int boxType) {
+        int position = parent.position();
+        while (position + 8 <= parent.limit()) {
+            long size = parent.getInt(position) & 0xFFFFFFFFL;
+            int type = parent.getInt(position + 4);
+            if (size < 8 || position + size > parent.limit()) {
+                return null;
+            }
+            if (type == boxType) {
+                return slice(parent, position + 8, (int) size - 8);
+            }
+            position += (int) size;
+        }
+        return null;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static boolean isPrintable(int boxType) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int c = (boxType >>> shift) & 0xFF;
+            if (c < 0x20 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int type(String fourCc) {
+        return (fourCc.charAt(0) << 24) | (fourCc.charAt(1) << 16) | (fourCc.charAt(2) << 8) | fourCc.charAt(3);
+    }
+}
@@ -0,0 +1,170 @@
+package com.vcamera.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * محول الألوان بين ARGB و NV21
+ * تحويل BT.601 بحساب صحيح، يكتب في مصفوفات يقدمها المستدعي دون أي تخصيص للذاكرة
+ */
+public final class Nv21Converter {
+
+    private Nv21Converter() {
+    }
+
+    /**
+     * تحويل بكسلات ARGB إلى NV21
+     */
+    public static void argbToNv21(int[] argb, int width, int height, byte[] nv21) {
+        int frameSize = width * height;
+        int uvIndex = frameSize;
+        int index = 0;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[index];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+
+                int yValue = ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
+                nv21[index++] = (byte) clamp(yValue);
+
+                // عينة لونية واحدة لكل كتلة 2x2 (V ثم U)
+                if ((y & 1) == 0 && (x & 1) == 0) {
+                    int uValue = ((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128;
+                    int vValue = ((112 * r - 94 * g - 18 * b + 128) >> 8) + 128;
+                    nv21[uvIndex++] = (byte) clamp(vValue);
+                    nv21[uvIndex++] = (byte) clamp(uValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * تحويل NV21 إلى بكسلات ARGB
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height, int[] argb) {
+        int frameSize = width * height;
+        int chromaStride = ((width + 1) / 2) * 2;
+
+        for (int y = 0; y < height; y++) {
+            int uvRow = frameSize + (y >> 1) * chromaStride;
+            for (int x = 0; x < width; x++) {
+                int yValue = (nv21[y * width + x] & 0xff) - 16;
+                int uvOffset = uvRow + (x & ~1);
+                int v = (nv21[uvOffset] & 0xff) - 128;
+                int u = (nv21[uvOffset + 1] & 0xff) - 128;
+
+                int c = 298 * (yValue < 0 ? 0 : yValue);
+                int r = clamp((c + 409 * v + 128) >> 8);
+                int g = clamp((c - 100 * u - 208 * v + 128) >> 8);
+                int b = clamp((c + 516 * u + 128) >> 8);
+
+                argb[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /**
+     * نسخ مستويات YUV 4:2:0 بخطوات صفوف وبكسلات عشوائية (مثل YUV_420_888 من المفكك) إلى NV21
+     * @param uvRowStride خطوة الصف المشتركة لمستويي U و V
+     * @param uvPixelStride المسافة بين عينتين متتاليتين (1 مستوٍ منفصل، 2 متداخل)
+     */
+    public static void planesToNv21(ByteBuffer yPlane, int yRowStride, ByteBuffer uPlane, ByteBuffer vPlane,
+                                    int uvRowStride, int uvPixelStride, int width, int height, byte[] nv21) {
+        planesToNv21(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride, width, height, 1, nv21);
+    }
+
+    /**
+     * نسخ المستويات مع أخذ عينة واحدة من كل step بكسل في كل بعد (تصغير دون استيفاء، أرخص من النسخ الكامل)
+     * الناتج بأبعاد width / step × height / step
+     */
+    public static void planesToNv21(ByteBuffer yPlane, int yRowStride, ByteBuffer uPlane, ByteBuffer vPlane,
+                                    int uvRowStride, int uvPixelStride, int width, int height, int step,
+                                    byte[] nv21) {
+        int outWidth = width / step;
+        int outHeight = height / step;
+        int yBase = yPlane.position();
+        for (int y = 0; y < outHeight; y++) {
+            int row = yBase + y * step * yRowStride;
+            if (step == 1) {
+                // الصف كاملاً بنسخة واحدة (البكسلات متتالية في مستوى Y)
+                yPlane.position(row);
+                yPlane.get(nv21, y * outWidth, outWidth);
+            } else {
+                int out = y * outWidth;
+                for (int x = 0; x < outWidth; x++) {
+                    nv21[out++] = yPlane.get(row + x * step);
+                }
+            }
+        }
+        yPlane.position(yBase);
+
+        int chromaWidth = (outWidth + 1) / 2;
+        int chromaHeight = (outHeight + 1) / 2;
+        int out = outWidth * outHeight;
+        int uBase = uPlane.position();
+        int vBase = vPlane.position();
+        for (int y = 0; y < chromaHeight; y++) {
+            int row = y * step * uvRowStride;
+            for (int x = 0; x < chromaWidth; x++) {
+                int offset = row + x * step * uvPixelStride;
+                nv21[out++] = vPlane.get(vBase + offset);
+                nv21[out++] = uPlane.get(uBase + offset);
+            }
+        }
+    }
+
+    /**
+     * تغيير أبعاد إطار NV21 باستيفاء ثنائي الخطية لكل مستوى (السطوع ثم أزواج V/U)
+     * تُحاذى مراكز البكسلات بين الشبكتين، فلا تنزاح الصورة عند التصغير أو التكبير
+     */
+    public static void scaleNv21(byte[] src, int srcWidth, int srcHeight,
+                                 byte[] dst, int dstWidth, int dstHeight) {
+        scalePlane(src, 0, srcWidth, srcHeight, dst, 0, dstWidth, dstHeight, 1);
+        scalePlane(src, srcWidth * srcHeight, (srcWidth + 1) / 2, (srcHeight + 1) / 2,
+                dst, dstWidth * dstHeight, (dstWidth + 1) / 2, (dstHeight + 1) / 2, 2);
+    }
+
+    /**
+     * استيفاء مستوى واحد بنقطة ثابتة 16.16
+     * @param channels عدد العينات المتداخلة لكل بكسل (1 للسطوع، 2 لأزواج اللون)
+     */
+    private static void scalePlane(byte[] src, int srcOffset, int srcWidth, int srcHeight,
+                                   byte[] dst, int dstOffset, int dstWidth, int dstHeight, int channels) {
+        int srcStride = srcWidth * channels;
+        int xStep = (int) (((long) srcWidth << 16) / dstWidth);
+        int yStep = (int) (((long) srcHeight << 16) / dstHeight);
+        int out = dstOffset;
+
+        int fy = (yStep >> 1) - (1 << 15);
+        for (int y = 0; y < dstHeight; y++, fy += yStep) {
+            int sy = fy < 0 ? 0 : fy;
+            int y0 = sy >> 16;
+            int wy = (sy >> 8) & 0xff;
+            int row0 = srcOffset + y0 * srcStride;
+            int row1 = srcOffset + Math.min(y0 + 1, srcHeight - 1) * srcStride;
+
+            int fx = (xStep >> 1) - (1 << 15);
+            for (int x = 0; x < dstWidth; x++, fx += xStep) {
+                int sx = fx < 0 ? 0 : fx;
+                int x0 = (sx >> 16) * channels;
+                int x1 = Math.min((sx >> 16) + 1, srcWidth - 1) * channels;
+                int wx = (sx >> 8) & 0xff;
+                for (int c = 0; c < channels; c++) {
+                    int a = src[row0 + x0 + c] & 0xff;
+                    int b = src[row0 + x1 + c] & 0xff;
+                    int d = src[row1 + x0 + c] & 0xff;
+                    int e = src[row1 + x1 + c] & 0xff;
+                    int top = (a << 8) + (b - a) * wx;
+                    int bottom = (d << 8) + (e - d) * wx;
+                    dst[out++] = (byte) (((top << 8) + (bottom - top) * wy + (1 << 15)) >> 16);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
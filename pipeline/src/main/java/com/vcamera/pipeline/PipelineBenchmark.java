@@ -0,0 +1,52 @@
+package com.vcamera.pipeline;
+
+/**
+ * قياس أداء خط المعالجة على JVM
+ * يشغّل خط المعالجة بمصدر اصطناعي دون أي إدخال/إخراج ودون انتظار بين الإطارات، ويطبع الإنتاجية والمقاييس
+ * الاستخدام: gradle :pipeline:benchmark -Pargs="1280 720 3000"
+ */
+public class PipelineBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1280;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 720;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 3000;
+
+        for (int pattern = SyntheticFrameSource.PATTERN_COLOR_BARS;
+             pattern <= SyntheticFrameSource.PATTERN_GRADIENT_SWEEP; pattern++) {
+            runPattern(pattern, width, height, frames);
+        }
+    }
+
+    private static void runPattern(int pattern, int width, int height, int frames) throws Exception {
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height, 30, pattern, 42L);
+        FramePipeline pipeline = new FramePipeline(source, width, height, 30, FrameClock.SYSTEM, null);
+
+        // مستهلك يقرأ البيانات فعلاً كي لا يحذف JIT العمل
+        final long[] checksum = {0};
+        pipeline.addConsumer(frame -> checksum[0] += frame.getData()[frame.getSize() / 2]);
+
+        source.open();
+        try {
+            // الإحماء
+            for (int i = 0; i < Math.min(frames, 300); i++) {
+                pipeline.step();
+            }
+            pipeline.getMetrics().reset();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                pipeline.step();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double fps = frames * 1e9 / elapsed;
+            double megabytesPerSecond = fps * FrameBuffer.nv21Size(width, height) / (1024.0 * 1024.0);
+            System.out.printf("pattern=%d %dx%d frames=%d fps=%.1f throughput=%.1fMB/s checksum=%d%n",
+                    pattern, width, height, frames, fps, megabytesPerSecond, checksum[0]);
+            System.out.println("  " + pipeline.getMetrics().snapshot());
+        } finally {
+            source.close();
+        }
+    }
+}
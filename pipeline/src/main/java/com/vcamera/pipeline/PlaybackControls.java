@@ -0,0 +1,148 @@
+package com.vcamera.pipeline;
+
+/**
+ * أدوات التحكم في تشغيل فيديو: منطقة التكرار والسرعة وطلبات القفز
+ * تُعدَّل من أي خيط، ويقرؤها كل مصدر فيديو عبر مؤشره الخاص (Cursor) في كل قراءة
+ */
+public class PlaybackControls {
+    public static final float MIN_SPEED = 0.1f;
+    public static final float MAX_SPEED = 8f;
+
+    private long mLoopStartUs = 0;
+    // نهاية المنطقة، أو قيمة سالبة للتكرار حتى نهاية الملف
+    private long mLoopEndUs = -1;
+    private float mSpeed = 1f;
+    private long mSeekUs;
+    private int mSeekGeneration;
+
+    /**
+     * تكرار المنطقة المحددة فقط
+     * @param endUs نهاية المنطقة (غير مشمولة)، أو قيمة سالبة حتى نهاية الملف
+     */
+    public synchronized void setLoopRegion(long startUs, long endUs) {
+        if (startUs < 0 || (endUs >= 0 && endUs <= startUs)) {
+            throw new IllegalArgumentException("Invalid loop region " + startUs + ".." + endUs);
+        }
+        mLoopStartUs = startUs;
+        mLoopEndUs = endUs;
+    }
+
+    /**
+     * تكرار الملف كاملاً
+     */
+    public synchronized void clearLoopRegion() {
+        mLoopStartUs = 0;
+        mLoopEndUs = -1;
+    }
+
+    /**
+     * طلب القفز إلى زمن؛ يُقيَّد بمنطقة التكرار عند تطبيقه
+     */
+    public synchronized void seekTo(long positionUs) {
+        mSeekUs = Math.max(0, positionUs);
+        mSeekGeneration++;
+    }
+
+    public synchronized void setSpeed(float speed) {
+        if (!(speed >= MIN_SPEED && speed <= MAX_SPEED)) {
+            throw new IllegalArgumentException("Speed out of range: " + speed);
+        }
+        mSpeed = speed;
+    }
+
+    public synchronized long getLoopStartUs() {
+        return mLoopStartUs;
+    }
+
+    public synchronized long getLoopEndUs() {
+        return mLoopEndUs;
+    }
+
+    public synchronized float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * مؤشر موضع جديد لمصدر واحد، يبدأ من بداية منطقة التكرار
+     */
+    public Cursor newCursor(FrameClock clock) {
+        return new Cursor(clock);
+    }
+
+    /**
+     * موضع التشغيل لمصدر واحد: يتقدم بزمن الساعة مضروباً في السرعة ويلتف داخل منطقة التكرار
+     */
+    public class Cursor {
+        private final FrameClock mClock;
+        private long mDurationUs = Long.MAX_VALUE;
+        private long mPositionUs = -1;
+        private long mLastNanos;
+        private int mSeenSeekGeneration;
+
+        Cursor(FrameClock clock) {
+            mClock = clock != null ? clock : FrameClock.SYSTEM;
+            synchronized (PlaybackControls.this) {
+                mSeenSeekGeneration = mSeekGeneration;
+            }
+        }
+
+        /**
+         * تعيين مدة الملف والعودة لبداية المنطقة
+         */
+        public void reset(long durationUs) {
+            mDurationUs = durationUs > 0 ? durationUs : Long.MAX_VALUE;
+            mPositionUs = -1;
+        }
+
+        /**
+         * تقديم الموضع حتى اللحظة الحالية
+         * @return زمن العرض المطلوب الآن، داخل منطقة التكرار دائماً
+         */
+        public long advance() {
+            long now = mClock.nanoTime();
+            long startUs;
+            long endUs;
+            float speed;
+            long seekUs = -1;
+            synchronized (PlaybackControls.this) {
+                startUs = Math.min(mLoopStartUs, mDurationUs - 1);
+                endUs = mLoopEndUs >= 0 ? Math.min(mLoopEndUs, mDurationUs) : mDurationUs;
+                speed = mSpeed;
+                if (mSeekGeneration != mSeenSeekGeneration) {
+                    mSeenSeekGeneration = mSeekGeneration;
+                    seekUs = mSeekUs;
+                }
+            }
+            if (endUs <= startUs) {
+                endUs = startUs + 1; // منطقة خارج الملف: تثبيت على إطار واحد
+            }
+
+            if (seekUs >= 0) {
+                mPositionUs = seekUs;
+            } else if (mPositionUs < 0) {
+                mPositionUs = startUs;
+            } else {
+                mPositionUs += (long) ((now - mLastNanos) / 1000L * (double) speed);
+            }
+            mLastNanos = now;
+
+            if (mPositionUs < startUs) {
+                mPositionUs = startUs;
+            } else if (mPositionUs >= endUs) {
+                mPositionUs = endUs == Long.MAX_VALUE ? startUs : startUs + (mPositionUs - startUs) % (endUs - startUs);
+            }
+            return mPositionUs;
+        }
+
+        /**
+         * العودة لبداية منطقة التكرار (عند بلوغ نهاية الملف قبل الموضع المطلوب)
+         * @return الموضع الجديد
+         */
+        public long restart() {
+            synchronized (PlaybackControls.this) {
+                mPositionUs = Math.min(mLoopStartUs, mDurationUs - 1);
+            }
+            return mPositionUs;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.vcamera.pipeline;
+
+import java.util.Locale;
+
+/**
+ * لقطة ثابتة من إحصاءات مجمع
+ */
+public class PoolSnapshot {
+    private final String mName;
+    private final long mHits;
+    private final long mMisses;
+    private final long mRetainedBytes;
+    private final int mRetainedCount;
+    private final int mOutstanding;
+    private final long mLeaks;
+
+    public PoolSnapshot(String name, long hits, long misses, long retainedBytes, int retainedCount,
+                        int outstanding, long leaks) {
+        mName = name;
+        mHits = hits;
+        mMisses = misses;
+        mRetainedBytes = retainedBytes;
+        mRetainedCount = retainedCount;
+        mOutstanding = outstanding;
+        mLeaks = leaks;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public long getHits() {
+        return mHits;
+    }
+
+    public long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * نسبة الطلبات التي خُدمت من المجمع دون تخصيص جديد
+     */
+    public double getHitRate() {
+        long total = mHits + mMisses;
+        return total > 0 ? (double) mHits / total : 0;
+    }
+
+    /**
+     * حجم العناصر المحتفظ بها في المجمع حالياً
+     */
+    public long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    public int getRetainedCount() {
+        return mRetainedCount;
+    }
+
+    /**
+     * عدد العناصر المستعارة حالياً (يُتتبع فقط عند تفعيل كشف التسرب)
+     */
+    public int getOutstanding() {
+        return mOutstanding;
+    }
+
+    /**
+     * عدد العناصر التي جمعها جامع القمامة دون إعادتها إلى المجمع
+     */
+    public long getLeaks() {
+        return mLeaks;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: hits=%d misses=%d hitRate=%.1f%% retained=%d (%dKB) outstanding=%d leaks=%d",
+                mName, mHits, mMisses, getHitRate() * 100, mRetainedCount, mRetainedBytes / 1024,
+                mOutstanding, mLeaks);
+    }
+}
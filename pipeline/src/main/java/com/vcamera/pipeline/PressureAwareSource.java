@@ -0,0 +1,17 @@
+package com.vcamera.pipeline;
+
+/**
+ * مصدر يخفف استهلاكه للذاكرة عند ضغط الذاكرة في العملية
+ * المستويات متصاعدة، ولا يعود المصدر إلى استهلاكه الطبيعي إلا بإعادة المستوى إلى PRESSURE_NONE
+ */
+public interface PressureAwareSource {
+    int PRESSURE_NONE = 0;
+    // التخلي عن الإطارات المخزنة مسبقاً أمام موضع التشغيل
+    int PRESSURE_SHED_LOOKAHEAD = 1;
+    // نصف الدقة في كل بعد (ربع الذاكرة لكل إطار)
+    int PRESSURE_DOWNGRADE = 2;
+    // الإطار الحالي وحده
+    int PRESSURE_ON_DEMAND = 3;
+
+    void setPressureLevel(int level);
+}
@@ -0,0 +1,210 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * مصدر إعادة تشغيل جلسة مسجلة
+ * يعيّن ملف التسجيل في الذاكرة ويعيد الإطارات كما هي (بت ببت) وفق توقيتها الأصلي، مع التكرار عند النهاية
+ */
+public class RecordedFrameSource implements FrameSource {
+    // أقصى حجم لمقطع معيّن واحد (MappedByteBuffer محدود بـ 2 جيجابايت)
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 30;
+
+    private final File mFile;
+    private final FrameClock mClock;
+
+    private int mWidth;
+    private int mHeight;
+    private boolean mCompressed;
+
+    // فهرس السجلات
+    private MappedByteBuffer[] mSegments;
+    private int[] mRecordSegment;
+    private int[] mRecordOffset;
+    private int[] mPayloadLength;
+    private long[] mTimestamps;
+    private int mFrameCount;
+    private long mDurationNanos;
+    private int mNativeFrameRate;
+
+    private long mStartNanos = -1;
+
+    public RecordedFrameSource(File file, FrameClock clock) {
+        mFile = file;
+        mClock = clock != null ? clock : FrameClock.SYSTEM;
+    }
+
+    @Override
+    public void open() throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mFile, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long fileSize = channel.size();
+
+            ByteBuffer header = ByteBuffer.allocate(FrameRecordFormat.FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            int[] fileHeader = FrameRecordFormat.readFileHeader(header);
+            mWidth = fileHeader[0];
+            mHeight = fileHeader[1];
+            mCompressed = (fileHeader[2] & FrameRecordFormat.FLAG_LZ4) != 0;
+
+            buildIndex(channel, fileSize);
+        } finally {
+            // التعيين يبقى صالحاً بعد إغلاق الملف
+            randomAccessFile.close();
+        }
+
+        mStartNanos = -1;
+    }
+
+    /**
+     * بناء فهرس السجلات بقراءة الترويسات فقط، ثم تعيين الملف على مقاطع تبدأ عند حدود السجلات
+     */
+    private void buildIndex(FileChannel channel, long fileSize) throws IOException {
+        List<Long> segmentStarts = new ArrayList<>();
+        List<Long> segmentEnds = new ArrayList<>();
+        int capacity = 256;
+        int[] recordSegment = new int[capacity];
+        int[] recordOffset = new int[capacity];
+        int[] payloadLength = new int[capacity];
+        long[] timestamps = new long[capacity];
+        int count = 0;
+
+        ByteBuffer recordHeader = ByteBuffer.allocate(FrameRecordFormat.RECORD_HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long position = FrameRecordFormat.FILE_HEADER_SIZE;
+        long segmentStart = position;
+
+        while (position + FrameRecordFormat.RECORD_HEADER_SIZE <= fileSize) {
+            recordHeader.clear();
+            channel.read(recordHeader, position);
+            int length = recordHeader.getInt(0);
+            long recordEnd = position + FrameRecordFormat.RECORD_HEADER_SIZE + length;
+            if (length <= 0 || recordEnd > fileSize) {
+                break; // نهاية البيانات أو سجل مبتور
+            }
+
+            if (recordEnd - segmentStart > MAX_SEGMENT_SIZE) {
+                segmentStarts.add(segmentStart);
+                segmentEnds.add(position);
+                segmentStart = position;
+            }
+
+            if (count == capacity) {
+                capacity *= 2;
+                recordSegment = Arrays.copyOf(recordSegment, capacity);
+                recordOffset = Arrays.copyOf(recordOffset, capacity);
+                payloadLength = Arrays.copyOf(payloadLength, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            recordSegment[count] = segmentStarts.size();
+            recordOffset[count] = (int) (position + FrameRecordFormat.RECORD_HEADER_SIZE - segmentStart);
+            payloadLength[count] = length;
+            timestamps[count] = recordHeader.getLong(8);
+            count++;
+
+            position = recordEnd;
+        }
+        segmentStarts.add(segmentStart);
+        segmentEnds.add(position);
+
+        if (count == 0) {
+            throw new IOException("Frame record file has no frames: " + mFile);
+        }
+
+        mSegments = new MappedByteBuffer[segmentStarts.size()];
+        for (int i = 0; i < mSegments.length; i++) {
+            long start = segmentStarts.get(i);
+            mSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, segmentEnds.get(i) - start);
+        }
+
+        mRecordSegment = recordSegment;
+        mRecordOffset = recordOffset;
+        mPayloadLength = payloadLength;
+        mTimestamps = timestamps;
+        mFrameCount = count;
+
+        long span = timestamps[count - 1] - timestamps[0];
+        long averageInterval = count > 1 ? span / (count - 1) : DEFAULT_FRAME_INTERVAL_NANOS;
+        mDurationNanos = span + averageInterval;
+        mNativeFrameRate = averageInterval > 0 ? (int) Math.round(1e9 / averageInterval) : 0;
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) throws IOException {
+        if (mSegments == null) {
+            return false;
+        }
+
+        long now = mClock.nanoTime();
+        if (mStartNanos < 0) {
+            mStartNanos = now;
+        }
+
+        // اختيار الإطار المطابق للتوقيت الأصلي مع التكرار عند نهاية التسجيل
+        long target = mTimestamps[0] + (now - mStartNanos) % mDurationNanos;
+        int index = Arrays.binarySearch(mTimestamps, 0, mFrameCount, target);
+        if (index < 0) {
+            index = Math.max(0, -index - 2);
+        }
+
+        readFrame(index, out);
+        return true;
+    }
+
+    /**
+     * نسخ إطار محدد من الملف المعيّن إلى المخزن
+     */
+    public void readFrame(int index, FrameBuffer out) throws IOException {
+        out.resize(mWidth, mHeight);
+        ByteBuffer segment = mSegments[mRecordSegment[index]];
+        int offset = mRecordOffset[index];
+        int length = mPayloadLength[index];
+
+        if (mCompressed) {
+            Lz4BlockCodec.decompress(segment, offset, length, out.getData(), 0, out.getSize());
+        } else {
+            ByteBuffer view = segment.duplicate();
+            view.position(offset);
+            view.get(out.getData(), 0, Math.min(length, out.getSize()));
+        }
+        out.setTimestampNanos(mTimestamps[index]);
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        return mNativeFrameRate;
+    }
+
+    @Override
+    public void close() {
+        mSegments = null;
+        mStartNanos = -1;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+}
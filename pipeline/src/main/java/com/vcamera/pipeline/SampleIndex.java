@@ -0,0 +1,295 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * فهرس عينات ملف فيديو محفوظ في ملف ثنائي ويُحمَّل بتعيين واحد في الذاكرة
+ * لكل عينة (بترتيب الحاوية، أي رقم الإطار): زمن العرض وموقعها في الملف وحجمها وهل هي إطار مفتاحي
+ * ويليها جدول الإطارات المفتاحية مرتباً بزمن العرض للبحث الثنائي، فالوصول لأي إطار أو أقرب إطار مفتاحي O(1) أو O(log n)
+ * دون تحليل أو تخصيص عند التحميل
+ */
+public class SampleIndex {
+    private static final int MAGIC = 0x56435349; // "VCSI"
+    private static final int VERSION = 1;
+
+    // الترويسة: السحري، الإصدار، حجم الملف المصدر، وقت تعديله، المدة، عدد العينات، عدد الإطارات المفتاحية
+    private static final int HEADER_SIZE = 64;
+    private static final int OFFSET_SOURCE_LENGTH = 8;
+    private static final int OFFSET_SOURCE_MODIFIED = 16;
+    private static final int OFFSET_DURATION = 24;
+    private static final int OFFSET_SAMPLE_COUNT = 32;
+    private static final int OFFSET_KEYFRAME_COUNT = 36;
+    // سجل العينة: زمن العرض (8)، الموقع (8)، الحجم (4)، العلامات (4)
+    private static final int SAMPLE_RECORD_SIZE = 24;
+    // سجل الإطار المفتاحي: زمن العرض (8)، رقم العينة (4)، محجوز (4)
+    private static final int KEYFRAME_RECORD_SIZE = 16;
+    private static final int FLAG_KEYFRAME = 1;
+
+    private final ByteBuffer mBuffer;
+    private final int mSampleCount;
+    private final int mKeyframeCount;
+    private final int mKeyframeTableOffset;
+
+    private SampleIndex(ByteBuffer buffer) {
+        mBuffer = buffer;
+        mSampleCount = buffer.getInt(OFFSET_SAMPLE_COUNT);
+        mKeyframeCount = buffer.getInt(OFFSET_KEYFRAME_COUNT);
+        mKeyframeTableOffset = HEADER_SIZE + mSampleCount * SAMPLE_RECORD_SIZE;
+    }
+
+    /**
+     * تحميل فهرس محفوظ بتعيين واحد للقراءة فقط
+     * @return الفهرس، أو null إذا لم يوجد أو بُني لنسخة أخرى من الملف المصدر
+     */
+    public static SampleIndex open(File file, long sourceLength, long sourceModified) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+        if (buffer.getLong(OFFSET_SOURCE_LENGTH) != sourceLength
+                || buffer.getLong(OFFSET_SOURCE_MODIFIED) != sourceModified) {
+            return null; // فهرس لنسخة سابقة من الملف
+        }
+        long sampleCount = buffer.getInt(OFFSET_SAMPLE_COUNT);
+        long keyframeCount = buffer.getInt(OFFSET_KEYFRAME_COUNT);
+        if (sampleCount <= 0 || keyframeCount <= 0 || keyframeCount > sampleCount
+                || HEADER_SIZE + sampleCount * SAMPLE_RECORD_SIZE + keyframeCount * KEYFRAME_RECORD_SIZE
+                > buffer.capacity()) {
+            throw new IOException("Corrupt sample index " + file);
+        }
+        return new SampleIndex(buffer);
+    }
+
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    public int getKeyframeCount() {
+        return mKeyframeCount;
+    }
+
+    /**
+     * المدة حتى نهاية آخر عينة بالميكروثانية
+     */
+    public long getDurationUs() {
+        return mBuffer.getLong(OFFSET_DURATION);
+    }
+
+    /**
+     * زمن عرض العينة بالميكروثانية
+     */
+    public long getSampleTimeUs(int sample) {
+        return mBuffer.getLong(sampleRecord(sample));
+    }
+
+    /**
+     * موقع العينة في الملف المصدر، أو -1 إذا بُني الفهرس دون مواقع
+     */
+    public long getSampleOffset(int sample) {
+        return mBuffer.getLong(sampleRecord(sample) + 8);
+    }
+
+    /**
+     * حجم العينة بالبايت، أو -1 إذا لم يُعرف
+     */
+    public int getSampleSize(int sample) {
+        return mBuffer.getInt(sampleRecord(sample) + 16);
+    }
+
+    public boolean isKeyframe(int sample) {
+        return (mBuffer.getInt(sampleRecord(sample) + 20) & FLAG_KEYFRAME) != 0;
+    }
+
+    /**
+     * زمن آخر إطار مفتاحي عند الزمن المحدد أو قبله، أو أول إطار مفتاحي إذا سبقه الزمن
+     */
+    public long floorKeyframe(long timeUs) {
+        return keyframeTime(Math.max(0, floorKeyframeSlot(timeUs)));
+    }
+
+    /**
+     * رقم عينة آخر إطار مفتاحي عند الزمن المحدد أو قبله؛ منه يبدأ فك التشفير لأي مقطع
+     */
+    public int floorKeyframeSample(long timeUs) {
+        return mBuffer.getInt(keyframeRecord(Math.max(0, floorKeyframeSlot(timeUs))) + 8);
+    }
+
+    /**
+     * زمن أول إطار مفتاحي بعد الزمن المحدد، أو Long.MAX_VALUE إذا لم يوجد
+     */
+    public long nextKeyframeAfter(long timeUs) {
+        int slot = floorKeyframeSlot(timeUs) + 1;
+        return slot < mKeyframeCount ? keyframeTime(slot) : Long.MAX_VALUE;
+    }
+
+    /**
+     * بحث ثنائي في جدول الإطارات المفتاحية المعيّن مباشرة
+     * @return موقع آخر إطار مفتاحي زمنه لا يتجاوز الزمن المحدد، أو -1
+     */
+    private int floorKeyframeSlot(long timeUs) {
+        int low = 0;
+        int high = mKeyframeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keyframeTime(mid) <= timeUs) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private long keyframeTime(int slot) {
+        return mBuffer.getLong(keyframeRecord(slot));
+    }
+
+    private int sampleRecord(int sample) {
+        if (sample < 0 || sample >= mSampleCount) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " of " + mSampleCount);
+        }
+        return HEADER_SIZE + sample * SAMPLE_RECORD_SIZE;
+    }
+
+    private int keyframeRecord(int slot) {
+        return mKeyframeTableOffset + slot * KEYFRAME_RECORD_SIZE;
+    }
+
+    /**
+     * جمع العينات بترتيب الحاوية ثم كتابة الفهرس
+     */
+    public static class Builder {
+        private long[] mTimesUs = new long[256];
+        private long[] mOffsets = new long[256];
+        private int[] mSizes = new int[256];
+        private boolean[] mKeyframes = new boolean[256];
+        private int mSampleCount;
+        private int mKeyframeCount;
+        private long mMaxTimeUs = -1;
+
+        /**
+         * إضافة عينة
+         * @param offset موقعها في الملف أو -1 إذا لم يُعرف
+         * @param size حجمها أو -1 إذا لم يُعرف
+         */
+        public Builder addSample(long timeUs, long offset, int size, boolean keyframe) {
+            if (mSampleCount == mTimesUs.length) {
+                int capacity = mSampleCount * 2;
+                mTimesUs = Arrays.copyOf(mTimesUs, capacity);
+                mOffsets = Arrays.copyOf(mOffsets, capacity);
+                mSizes = Arrays.copyOf(mSizes, capacity);
+                mKeyframes = Arrays.copyOf(mKeyframes, capacity);
+            }
+            mTimesUs[mSampleCount] = timeUs;
+            mOffsets[mSampleCount] = offset;
+            mSizes[mSampleCount] = size;
+            mKeyframes[mSampleCount] = keyframe;
+            mSampleCount++;
+            if (keyframe) {
+                mKeyframeCount++;
+            }
+            mMaxTimeUs = Math.max(mMaxTimeUs, timeUs);
+            return this;
+        }
+
+        public int getSampleCount() {
+            return mSampleCount;
+        }
+
+        /**
+         * كتابة الفهرس في ملف (مؤقت ثم نقل، كي لا يُعيَّن فهرس نصف مكتوب)
+         * @param frameDurationUs مدة الإطار الأخير لحساب المدة الكلية
+         * @return false إذا لم توجد إطارات مفتاحية يُبنى عليها فهرس
+         */
+        public boolean writeTo(File file, long sourceLength, long sourceModified, long frameDurationUs)
+                throws IOException {
+            if (mKeyframeCount == 0) {
+                return false;
+            }
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+
+            int size = HEADER_SIZE + mSampleCount * SAMPLE_RECORD_SIZE + mKeyframeCount * KEYFRAME_RECORD_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(OFFSET_SOURCE_LENGTH, sourceLength);
+            buffer.putLong(OFFSET_SOURCE_MODIFIED, sourceModified);
+            buffer.putLong(OFFSET_DURATION, mMaxTimeUs + frameDurationUs);
+            buffer.putInt(OFFSET_SAMPLE_COUNT, mSampleCount);
+            buffer.putInt(OFFSET_KEYFRAME_COUNT, mKeyframeCount);
+
+            // جدول الإطارات المفتاحية بترتيب زمن العرض: مفاتيح مرتبة لأزمنة قد لا تكون مرتبة (إطارات B)
+            int[] keyframeOrder = new int[mKeyframeCount];
+            int position = HEADER_SIZE;
+            for (int i = 0, k = 0; i < mSampleCount; i++) {
+                buffer.putLong(position, mTimesUs[i]);
+                buffer.putLong(position + 8, mOffsets[i]);
+                buffer.putInt(position + 16, mSizes[i]);
+                buffer.putInt(position + 20, mKeyframes[i] ? FLAG_KEYFRAME : 0);
+                position += SAMPLE_RECORD_SIZE;
+                if (mKeyframes[i]) {
+                    keyframeOrder[k++] = i;
+                }
+            }
+            sortByTime(keyframeOrder);
+            for (int sample : keyframeOrder) {
+                buffer.putLong(position, mTimesUs[sample]);
+                buffer.putInt(position + 8, sample);
+                position += KEYFRAME_RECORD_SIZE;
+            }
+
+            File temp = new File(parent, file.getName() + ".tmp");
+            try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+                raf.setLength(0);
+                FileChannel channel = raf.getChannel();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Cannot write sample index " + file);
+            }
+            return true;
+        }
+
+        /**
+         * ترتيب أرقام العينات بزمن عرضها (ترتيب إدراج، فالإطارات المفتاحية شبه مرتبة أصلاً)
+         */
+        private void sortByTime(int[] samples) {
+            for (int i = 1; i < samples.length; i++) {
+                int sample = samples[i];
+                long timeUs = mTimesUs[sample];
+                int j = i - 1;
+                while (j >= 0 && mTimesUs[samples[j]] > timeUs) {
+                    samples[j + 1] = samples[j];
+                    j--;
+                }
+                samples[j + 1] = sample;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+
+/**
+ * مصدر يسلم إطارات مصدر آخر بأبعاد ثابتة
+ * مصادر الفيديو والجلسات المسجلة والكاميرا الحقيقية تكتب بدقتها الأصلية، بينما يعلن المستهلك (الكاميرا الافتراضية)
+ * دقة معاينة محددة؛ الإطار الذي يطابقها يمر دون نسخ، وغيره يُعاد تحجيمه
+ */
+public class ScaledFrameSource implements FrameSource {
+    private final FrameSource mSource;
+    private final int mWidth;
+    private final int mHeight;
+    private final FramePipelineMetrics mMetrics;
+    // الإطار بدقة المصدر، يُنسخ إليه قبل التحجيم في مخزن خط المعالجة
+    private FrameBuffer mNative;
+
+    public ScaledFrameSource(FrameSource source, int width, int height, FramePipelineMetrics metrics) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        mSource = source;
+        mWidth = width;
+        mHeight = height;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void open() throws IOException {
+        mSource.open();
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) throws IOException {
+        if (!mSource.read(out)) {
+            return false;
+        }
+        if (out.getWidth() == mWidth && out.getHeight() == mHeight) {
+            return true;
+        }
+
+        long scaleStart = System.nanoTime();
+        if (mNative == null) {
+            mNative = new FrameBuffer(out.getWidth(), out.getHeight());
+        }
+        mNative.copyFrom(out);
+        if (mNative.getData().length > 2 * mNative.getSize()) {
+            // المصدر صار يكتب بدقة أقل (تحت ضغط الذاكرة): لا حاجة للاحتفاظ بسعة الدقة الأصلية
+            mNative.trim();
+        }
+        out.resize(mWidth, mHeight);
+        Nv21Converter.scaleNv21(mNative.getData(), mNative.getWidth(), mNative.getHeight(),
+                out.getData(), mWidth, mHeight);
+        if (mMetrics != null) {
+            mMetrics.recordStage(FramePipelineMetrics.STAGE_CONVERT, System.nanoTime() - scaleStart);
+            mMetrics.onBytesConverted(out.getSize());
+        }
+        return true;
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        return mSource.getNativeFrameRate();
+    }
+
+    @Override
+    public void close() {
+        mSource.close();
+        mNative = null;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+}
@@ -0,0 +1,165 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * مصدر إطارات يقرأ من منطقة مشتركة ينشرها خادم الإطارات في عملية أخرى
+ * لا فك تشفير في عملية القارئ: كل قراءة نسخة واحدة من الذاكرة المشتركة إلى مخزن خط المعالجة
+ * ما دام الخادم غير حي (لم يبدأ بعد، أو توقفت نبضاته) تُقرأ الإطارات من مصدر احتياطي يفك التشفير محلياً،
+ * ويُغلق الاحتياطي مع أول إطار يصل من الخادم
+ */
+public class SharedFrameClient implements FrameSource {
+    // الخادم الذي لم ينبض خلال هذه المدة يُعد متوقفاً
+    public static final long SERVER_STALE_NANOS = 3000000000L;
+    // فاصل محاولات فتح المنطقة بينما الخادم غير حي (لم يبدأ، أو أُعيد تشغيله أو أُعيد إنشاء الملف)
+    private static final long REOPEN_INTERVAL_NANOS = 1000000000L;
+
+    private final File mFile;
+    private final SharedFrameSources.Factory mFallbackFactory;
+    private SharedFrameRegion mRegion;
+    private FrameSource mFallback;
+    // آخر إطار نُسخ وإلى أي مخزن، لتخطي النسخ إذا لم ينشر الخادم جديداً
+    private int mLastLockSequence;
+    private FrameBuffer mLastOut;
+    private long mLastReopenNanos;
+
+    /**
+     * قارئ دون احتياطي: الفتح يفشل إذا لم تكن المنطقة موجودة، والقراءة تعيد false ما دام الخادم متوقفاً
+     */
+    public SharedFrameClient(File file) {
+        this(file, null);
+    }
+
+    /**
+     * @param fallbackFactory منشئ مصدر يفك التشفير في هذه العملية عند غياب الخادم، أو null
+     */
+    public SharedFrameClient(File file, SharedFrameSources.Factory fallbackFactory) {
+        mFile = file;
+        mFallbackFactory = fallbackFactory;
+    }
+
+    /**
+     * هل توجد منطقة صالحة بخادم حي يمكن القراءة منها الآن
+     * تقرأ الترويسة فقط دون تعيين الملف، فلا تكلف شيئاً يُذكر عند تكرارها
+     */
+    public static boolean isServerAlive(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            return SharedFrameRegion.readServerIdleNanos(file) < SERVER_STALE_NANOS;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void open() throws IOException {
+        mLastOut = null;
+        mLastReopenNanos = System.nanoTime() - REOPEN_INTERVAL_NANOS;
+        if (mFallbackFactory == null) {
+            mRegion = SharedFrameRegion.open(mFile);
+            // النبضة الأولى توقظ خط معالجة الخادم قبل أول قراءة
+            mRegion.touchReader();
+        } else {
+            // الخادم قد لا يكون بدأ بعد: القراءة تفك التشفير محلياً حتى يصل أول إطار منه
+            reopen();
+        }
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) throws IOException {
+        SharedFrameRegion region = mRegion;
+        if (region != null) {
+            region.touchReader();
+            if (region.getServerIdleNanos() >= SERVER_STALE_NANOS) {
+                // توقف الخادم: الاحتياطي حتى يعود
+                region = null;
+                mRegion = null;
+                mLastOut = null;
+            }
+        }
+        if (region == null) {
+            region = reopen();
+        }
+
+        // الاحتياطي لا يُترك إلا بعد أن ينشر الخادم إطاراً (قد يحتاج خط معالجته دورة مراقبة كي يستيقظ)
+        if (region != null && (region.getLockSequence() != 0 || mFallbackFactory == null)) {
+            int lockSequence = region.getLockSequence();
+            if (out == mLastOut && lockSequence == mLastLockSequence) {
+                return true; // المخزن يحمل آخر إطار منشور بالفعل
+            }
+            if (!region.read(out)) {
+                return false;
+            }
+            // رقم القفل قبل القراءة: إن نُشر إطار أثناءها فستلتقطه القراءة التالية
+            mLastLockSequence = lockSequence;
+            mLastOut = out;
+            closeFallback();
+            return true;
+        }
+
+        // لا خادم حي، أو لم ينشر إطاراً بعد
+        if (mFallbackFactory == null) {
+            return false;
+        }
+        if (mFallback == null) {
+            FrameSource fallback = mFallbackFactory.create();
+            fallback.open();
+            mFallback = fallback;
+        }
+        mLastOut = null;
+        return mFallback.read(out);
+    }
+
+    /**
+     * محاولة فتح الملف من جديد، بحد أقصى مرة في كل فاصل
+     * الترويسة تُفحص أولاً دون تعيين، فلا يُعيَّن الملف ما دام خادمه متوقفاً
+     * @return المنطقة الجديدة إذا كان خادمها حياً، أو null
+     */
+    private SharedFrameRegion reopen() {
+        long now = System.nanoTime();
+        if (now - mLastReopenNanos < REOPEN_INTERVAL_NANOS) {
+            return null;
+        }
+        mLastReopenNanos = now;
+        if (!isServerAlive(mFile)) {
+            return null;
+        }
+
+        try {
+            SharedFrameRegion region = SharedFrameRegion.open(mFile);
+            region.touchReader();
+            mRegion = region;
+            mLastOut = null;
+            return region;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void closeFallback() {
+        if (mFallback != null) {
+            mFallback.close();
+            mFallback = null;
+        }
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        FrameSource fallback = mFallback;
+        if (fallback != null) {
+            return fallback.getNativeFrameRate();
+        }
+        SharedFrameRegion region = mRegion;
+        return region != null ? Math.max(0, region.getFrameRate()) : 0;
+    }
+
+    @Override
+    public void close() {
+        // Java لا يوفر إلغاء التعيين صراحة؛ يُحرر مع جمع المخزن
+        mRegion = null;
+        closeFallback();
+    }
+}
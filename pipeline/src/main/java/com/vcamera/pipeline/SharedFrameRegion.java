@@ -0,0 +1,268 @@
+package com.vcamera.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * منطقة إطارات مشتركة بين العمليات عبر ملف معيّن في الذاكرة
+ * كاتب واحد (خادم الإطارات) ينشر آخر إطار NV21، وأي عدد من القراء في عمليات أخرى يقرأونه دون أقفال
+ * الترويسة تحمل قفل تسلسل (seqlock): رقم فردي أثناء الكتابة، والقارئ يعيد المحاولة إذا تغير الرقم خلال النسخ
+ */
+public class SharedFrameRegion {
+    private static final int MAGIC = 0x5643534D; // "VCSM"
+    private static final int VERSION = 1;
+
+    // تخطيط الترويسة؛ الحقول المتزامنة int كي تبقى كتابتها ذرية على المعالجات 32 بت
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_LOCK = 12;
+    private static final int OFFSET_WIDTH = 16;
+    private static final int OFFSET_HEIGHT = 20;
+    private static final int OFFSET_FRAME_RATE = 24;
+    private static final int OFFSET_TIMESTAMP = 32;
+    private static final int OFFSET_SEQUENCE = 40;
+    // نبضات الحياة بوقت CLOCK_MONOTONIC المشترك بين العمليات؛ لا تدخل في قفل التسلسل
+    private static final int OFFSET_SERVER_HEARTBEAT = 48;
+    private static final int OFFSET_READER_HEARTBEAT = 56;
+    private static final int HEADER_SIZE = 128;
+
+    // حد محاولات القراءة المتسقة قبل التخلي عن هذه الدورة
+    private static final int MAX_READ_ATTEMPTS = 8;
+
+    // سياج ذاكرة: كتابة ثم قراءة متغير volatile تفرض حاجز StoreLoad كاملاً على كل المعالجات
+    private static volatile int sFence;
+
+    private final File mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mCapacity;
+    private final boolean mIsWriter;
+    private int mLock;
+    private long mRejectedCount;
+
+    private SharedFrameRegion(File file, MappedByteBuffer buffer, int capacity, boolean writer) {
+        mFile = file;
+        mBuffer = buffer;
+        mCapacity = capacity;
+        mIsWriter = writer;
+        mBuffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * إنشاء المنطقة للكاتب بسعة تكفي الأبعاد القصوى المحددة
+     * تُكتب في ملف مؤقت ثم تُنقل فوق القديمة: لا يُقتطع ملف قد يكون معيّناً لدى قارئ،
+     * فالقراء على النسخة السابقة يواصلون بأمان حتى يعيدوا الفتح
+     */
+    public static SharedFrameRegion create(File file, int maxWidth, int maxHeight) throws IOException {
+        int capacity = FrameBuffer.nv21Size(maxWidth, maxHeight);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        File temp = new File(parent, file.getName() + ".tmp");
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + capacity);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+        }
+
+        SharedFrameRegion region = new SharedFrameRegion(file, buffer, capacity, true);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putInt(OFFSET_LOCK, 0);
+        fullFence();
+        // الرقم السحري آخراً: القارئ لا يقبل منطقة نصف مهيأة
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        region.touchServer();
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot publish frame region " + file);
+        }
+        return region;
+    }
+
+    /**
+     * فتح منطقة قائمة للقراءة
+     */
+    public static SharedFrameRegion open(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < HEADER_SIZE) {
+                throw new IOException("Frame region too small: " + file);
+            }
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        if (buffer.getInt(OFFSET_MAGIC) != MAGIC || buffer.getInt(OFFSET_VERSION) != VERSION) {
+            throw new IOException("Not a frame region: " + file);
+        }
+        int capacity = buffer.getInt(OFFSET_CAPACITY);
+        if (capacity < 0 || HEADER_SIZE + (long) capacity > buffer.capacity()) {
+            throw new IOException("Corrupt frame region: " + file);
+        }
+        return new SharedFrameRegion(file, buffer, capacity, false);
+    }
+
+    /**
+     * الزمن منذ آخر نبضة لكاتب المنطقة في الملف، بقراءة الترويسة دون تعيين الملف
+     * للفحص المتكرر (قبل كل اتصال وأثناء انتظار الخادم) دون أن تتراكم تعيينات لا يحررها إلا جامع المخزن
+     */
+    public static long readServerIdleNanos(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(OFFSET_SERVER_HEARTBEAT + 8).order(ByteOrder.nativeOrder());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Frame region too small: " + file);
+                }
+            }
+        }
+        if (header.getInt(OFFSET_MAGIC) != MAGIC || header.getInt(OFFSET_VERSION) != VERSION) {
+            throw new IOException("Not a frame region: " + file);
+        }
+        return System.nanoTime() - header.getLong(OFFSET_SERVER_HEARTBEAT);
+    }
+
+    /**
+     * نشر إطار للقراء (للكاتب فقط)
+     * @return false إذا تجاوز الإطار سعة المنطقة
+     */
+    public boolean publish(FrameBuffer frame, int frameRate) {
+        if (!mIsWriter) {
+            throw new IllegalStateException("Region opened read-only: " + mFile);
+        }
+        int size = frame.getSize();
+        if (size > mCapacity) {
+            mRejectedCount++;
+            return false;
+        }
+
+        // رقم فردي: الكتابة جارية
+        mBuffer.putInt(OFFSET_LOCK, ++mLock);
+        fullFence();
+
+        mBuffer.putInt(OFFSET_WIDTH, frame.getWidth());
+        mBuffer.putInt(OFFSET_HEIGHT, frame.getHeight());
+        mBuffer.putInt(OFFSET_FRAME_RATE, frameRate);
+        mBuffer.putLong(OFFSET_TIMESTAMP, frame.getTimestampNanos());
+        mBuffer.putLong(OFFSET_SEQUENCE, frame.getSequence());
+        ByteBuffer data = mBuffer.duplicate();
+        data.position(HEADER_SIZE);
+        data.put(frame.getData(), 0, size);
+
+        fullFence();
+        // رقم زوجي: الإطار مكتمل
+        mBuffer.putInt(OFFSET_LOCK, ++mLock);
+        mBuffer.putLong(OFFSET_SERVER_HEARTBEAT, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * قراءة آخر إطار منشور في المخزن
+     * @return false إذا لم يُنشر إطار بعد أو لم تنجح قراءة متسقة في هذه الدورة
+     */
+    public boolean read(FrameBuffer out) {
+        ByteBuffer data = mBuffer.duplicate();
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            int before = mBuffer.getInt(OFFSET_LOCK);
+            if (before == 0) {
+                return false; // لم يُنشر أي إطار
+            }
+            if ((before & 1) != 0) {
+                Thread.yield(); // الكاتب في منتصف الإطار
+                continue;
+            }
+            fullFence();
+
+            int width = mBuffer.getInt(OFFSET_WIDTH);
+            int height = mBuffer.getInt(OFFSET_HEIGHT);
+            long timestamp = mBuffer.getLong(OFFSET_TIMESTAMP);
+            long sequence = mBuffer.getLong(OFFSET_SEQUENCE);
+            if (width <= 0 || height <= 0 || FrameBuffer.nv21Size(width, height) > mCapacity) {
+                continue; // ترويسة ممزقة: ستكشفها مقارنة القفل أو المحاولة التالية
+            }
+            out.resize(width, height);
+            data.position(HEADER_SIZE);
+            data.get(out.getData(), 0, out.getSize());
+
+            fullFence();
+            if (mBuffer.getInt(OFFSET_LOCK) == before) {
+                out.setTimestampNanos(timestamp);
+                out.setSequence(sequence);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * رقم قفل التسلسل الحالي؛ يتغير مع كل إطار منشور، فيكفي لمعرفة وجود إطار جديد دون نسخ
+     */
+    public int getLockSequence() {
+        return mBuffer.getInt(OFFSET_LOCK);
+    }
+
+    /**
+     * معدل إطارات مصدر الكاتب كما نشره مع آخر إطار
+     */
+    public int getFrameRate() {
+        return mBuffer.getInt(OFFSET_FRAME_RATE);
+    }
+
+    /**
+     * تسجيل نبضة حياة الكاتب (دون نشر إطار)
+     */
+    public void touchServer() {
+        mBuffer.putLong(OFFSET_SERVER_HEARTBEAT, System.nanoTime());
+    }
+
+    /**
+     * تسجيل نبضة قارئ؛ الكاتب يستدل بها على وجود مستهلكين
+     */
+    public void touchReader() {
+        mBuffer.putLong(OFFSET_READER_HEARTBEAT, System.nanoTime());
+    }
+
+    /**
+     * الزمن منذ آخر نبضة للكاتب
+     */
+    public long getServerIdleNanos() {
+        return System.nanoTime() - mBuffer.getLong(OFFSET_SERVER_HEARTBEAT);
+    }
+
+    /**
+     * الزمن منذ آخر نبضة لأي قارئ
+     */
+    public long getReaderIdleNanos() {
+        return System.nanoTime() - mBuffer.getLong(OFFSET_READER_HEARTBEAT);
+    }
+
+    /**
+     * عدد الإطارات المرفوضة لتجاوزها السعة
+     */
+    public long getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    private static void fullFence() {
+        sFence = 0;
+        int unused = sFence;
+    }
+}
@@ -0,0 +1,189 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * سجل مصادر إطارات مشتركة بمفتاح
+ * عدة قراء (كاميرات افتراضية) لنفس المفتاح يحصلون على عروض لمصدر واحد، فيُفك تشفيره مرة واحدة
+ * المصدر يُفتح مع أول عرض يُفتح ويُغلق ويُزال مع آخر عرض يُغلق
+ * مستوى ضغط الذاكرة يُمرر إلى المصادر التي تخففه (PressureAwareSource)، ومخزن الإطار المشترك يُقلص بعده
+ */
+public class SharedFrameSources {
+
+    /**
+     * منشئ المصدر الفعلي عند أول طلب للمفتاح
+     */
+    public interface Factory {
+        FrameSource create();
+    }
+
+    private final FrameClock mClock;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private int mPressureLevel = PressureAwareSource.PRESSURE_NONE;
+
+    public SharedFrameSources(FrameClock clock) {
+        mClock = clock != null ? clock : FrameClock.SYSTEM;
+    }
+
+    /**
+     * الحصول على عرض جديد للمصدر المشترك بالمفتاح المحدد
+     * العرض لا يلمس المصدر حتى يُفتح
+     */
+    public synchronized FrameSource acquire(String key, Factory factory) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, factory.create());
+            applyPressure(entry, mPressureLevel);
+            mEntries.put(key, entry);
+        }
+        entry.views++;
+        return new View(entry);
+    }
+
+    /**
+     * تطبيق مستوى ضغط الذاكرة على المصادر الحالية وعلى كل مصدر يُنشأ بعدها
+     * مخزن الإطار المشترك لكل مصدر يُقلص بعد قراءته التالية، حين يكون المصدر قد كتب بدقته المخفضة
+     */
+    public synchronized void setPressureLevel(int level) {
+        if (level == mPressureLevel) {
+            return;
+        }
+        mPressureLevel = level;
+        for (Entry entry : mEntries.values()) {
+            applyPressure(entry, level);
+        }
+    }
+
+    public synchronized int getPressureLevel() {
+        return mPressureLevel;
+    }
+
+    /**
+     * عدد المصادر الفعلية الحالية
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    private static void applyPressure(Entry entry, int level) {
+        if (entry.source instanceof PressureAwareSource) {
+            ((PressureAwareSource) entry.source).setPressureLevel(level);
+        }
+        if (level > PressureAwareSource.PRESSURE_NONE) {
+            entry.trimPending = true;
+        }
+    }
+
+    private synchronized void releaseView(Entry entry) {
+        entry.views--;
+        if (entry.views == 0 && mEntries.get(entry.key) == entry) {
+            mEntries.remove(entry.key);
+        }
+    }
+
+    /**
+     * المصدر الفعلي مع آخر إطار قُرئ منه
+     */
+    private static class Entry {
+        final String key;
+        final FrameSource source;
+        final FrameBuffer frame = new FrameBuffer(1, 1);
+        int views;
+        int openViews;
+        long sequence;
+        boolean hasFrame;
+        long lastReadNanos;
+        // يُعيَّن تحت قفل السجل ويُقرأ تحت قفل المصدر
+        volatile boolean trimPending;
+
+        Entry(String key, FrameSource source) {
+            this.key = key;
+            this.source = source;
+        }
+    }
+
+    /**
+     * عرض قارئ واحد: يقرأ إطاراً جديداً من المصدر فقط إذا رأى الإطار الحالي وحان موعد إطار جديد
+     * وإلا ينسخ الإطار المشترك، فيقود أسرع القراء فك التشفير ويشاركه الباقون
+     */
+    private class View implements FrameSource {
+        private final Entry mEntry;
+        private boolean mIsOpen;
+        private boolean mIsReleased;
+        private long mSeenSequence = -1;
+
+        View(Entry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public void open() throws IOException {
+            synchronized (mEntry) {
+                if (mIsOpen) {
+                    return;
+                }
+                if (mEntry.openViews == 0) {
+                    mEntry.source.open();
+                    mEntry.hasFrame = false;
+                }
+                mEntry.openViews++;
+                mIsOpen = true;
+            }
+        }
+
+        @Override
+        public boolean read(FrameBuffer out) throws IOException {
+            synchronized (mEntry) {
+                if (!mIsOpen) {
+                    return false;
+                }
+
+                long now = mClock.nanoTime();
+                int nativeRate = mEntry.source.getNativeFrameRate();
+                boolean seen = mEntry.hasFrame && mSeenSequence == mEntry.sequence;
+                boolean due = nativeRate <= 0 || now - mEntry.lastReadNanos >= 1000000000L / nativeRate;
+                if (!mEntry.hasFrame || (seen && due)) {
+                    if (!mEntry.source.read(mEntry.frame)) {
+                        return false;
+                    }
+                    mEntry.sequence++;
+                    mEntry.hasFrame = true;
+                    mEntry.lastReadNanos = now;
+                    if (mEntry.trimPending) {
+                        mEntry.frame.trim();
+                        mEntry.trimPending = false;
+                    }
+                }
+
+                out.copyFrom(mEntry.frame);
+                mSeenSequence = mEntry.sequence;
+                return true;
+            }
+        }
+
+        @Override
+        public int getNativeFrameRate() {
+            return mEntry.source.getNativeFrameRate();
+        }
+
+        @Override
+        public void close() {
+            synchronized (mEntry) {
+                if (mIsOpen) {
+                    mIsOpen = false;
+                    mEntry.openViews--;
+                    if (mEntry.openViews == 0) {
+                        mEntry.source.close();
+                    }
+                }
+                if (mIsReleased) {
+                    return;
+                }
+                mIsReleased = true;
+            }
+            releaseView(mEntry);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.vcamera.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * مصدر أنماط اختبار اصطناعية
+ * يولد أنماطاً متحركة مباشرة في مخزن NV21 بأي دقة ومعدل، دون أي إدخال/إخراج
+ * الناتج حتمي بالكامل: الإطار رقم n بنفس البذرة يعطي نفس البايتات دائماً، وطابعه الزمني مشتق من رقمه
+ */
+public class SyntheticFrameSource implements FrameSource {
+    // أنواع الأنماط
+    public static final int PATTERN_COLOR_BARS = 0;
+    public static final int PATTERN_GRADIENT_SWEEP = 1;
+
+    // ألوان الأشرطة بشدة 75% بترتيب SMPTE: أبيض، أصفر، سماوي، أخضر، أرجواني، أحمر، أزرق، أسود
+    private static final int[][] BAR_YUV = {
+        {180, 128, 128}, {162, 44, 142}, {131, 156, 44}, {112, 72, 58},
+        {84, 184, 198}, {65, 100, 212}, {35, 212, 114}, {16, 128, 128}
+    };
+
+    // خط أرقام بحجم 3x5، كل رقم في 15 بتاً (صف بعد صف من الأعلى)
+    private static final int[] DIGIT_FONT = {
+        0x7B6F, 0x2C97, 0x73E7, 0x73CF, 0x5BC9, 0x79CF, 0x79EF, 0x7249, 0x7BEF, 0x7BCF
+    };
+
+    private static final int OVERLAY_Y = 235;
+    private static final int OVERLAY_BACKGROUND_Y = 16;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameRate;
+    private final int mPattern;
+    private final long mSeed;
+    private final boolean mDrawOverlay;
+
+    private long mFrameIndex;
+
+    // صفوف الأشرطة المحسوبة مسبقاً (بعرض مضاعف لتسهيل الإزاحة)
+    private byte[] mBarLumaRow;
+    private byte[] mBarChromaRow;
+    private final int[] mDigits = new int[19];
+
+    public SyntheticFrameSource(int width, int height, int frameRate, int pattern, long seed) {
+        this(width, height, frameRate, pattern, seed, true);
+    }
+
+    public SyntheticFrameSource(int width, int height, int frameRate, int pattern, long seed,
+                                boolean drawOverlay) {
+        mWidth = width;
+        mHeight = height;
+        mFrameRate = frameRate > 0 ? frameRate : 30;
+        mPattern = pattern;
+        mSeed = seed;
+        mDrawOverlay = drawOverlay;
+    }
+
+    @Override
+    public void open() {
+        mFrameIndex = 0;
+        if (mPattern == PATTERN_COLOR_BARS) {
+            buildBarRows();
+        }
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) {
+        out.resize(mWidth, mHeight);
+        renderFrame(mFrameIndex, out.getData());
+        out.setTimestampNanos(getTimestampNanos(mFrameIndex));
+        mFrameIndex++;
+        return true;
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        return mFrameRate;
+    }
+
+    @Override
+    public void close() {
+        mBarLumaRow = null;
+        mBarChromaRow = null;
+    }
+
+    /**
+     * رسم الإطار رقم n في مصفوفة NV21
+     */
+    public void renderFrame(long frameIndex, byte[] nv21) {
+        switch (mPattern) {
+            case PATTERN_GRADIENT_SWEEP:
+                renderGradientSweep(frameIndex, nv21);
+                break;
+            case PATTERN_COLOR_BARS:
+            default:
+                renderColorBars(frameIndex, nv21);
+                break;
+        }
+
+        // مربع متحرك بمسار حتمي مشتق من البذرة
+        renderMovingBox(frameIndex, nv21);
+
+        if (mDrawOverlay) {
+            int scale = Math.max(1, mHeight / 120);
+            int margin = 2 * scale;
+            drawNumber(nv21, frameIndex, margin, margin, scale);
+            drawNumber(nv21, getTimestampNanos(frameIndex) / 1000000L, margin, margin + 7 * scale, scale);
+        }
+    }
+
+    /**
+     * الطابع الزمني للإطار رقم n
+     */
+    public long getTimestampNanos(long frameIndex) {
+        return frameIndex * 1000000000L / mFrameRate;
+    }
+
+    /**
+     * أشرطة ألوان تتحرك أفقياً
+     */
+    private void renderColorBars(long frameIndex, byte[] nv21) {
+        // الرسم المباشر بـ renderFrame قد يسبق open أو يلي close
+        if (mBarLumaRow == null) {
+            buildBarRows();
+        }
+        int shift = (int) ((frameIndex * Math.max(1, mWidth / 120) + (mSeed & 0xffff)) % mWidth);
+        int chromaShift = shift & ~1;
+        int chromaWidth = ((mWidth + 1) / 2) * 2;
+        int frameSize = mWidth * mHeight;
+
+        for (int y = 0; y < mHeight; y++) {
+            System.arraycopy(mBarLumaRow, shift, nv21, y * mWidth, mWidth);
+        }
+        for (int y = 0; y < (mHeight + 1) / 2; y++) {
+            System.arraycopy(mBarChromaRow, chromaShift, nv21, frameSize + y * chromaWidth, chromaWidth);
+        }
+    }
+
+    /**
+     * تدرج قطري يتحرك مع الزمن مع تدرج لوني عمودي
+     */
+    private void renderGradientSweep(long frameIndex, byte[] nv21) {
+        int phase = (int) ((frameIndex * 4 + mSeed) & 0xff);
+        int frameSize = mWidth * mHeight;
+        int chromaWidth = ((mWidth + 1) / 2) * 2;
+
+        for (int y = 0; y < mHeight; y++) {
+            int row = y * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                nv21[row + x] = (byte) (16 + (((x + y + phase) & 0xff) * 219 >> 8));
+            }
+        }
+
+        for (int y = 0; y < (mHeight + 1) / 2; y++) {
+            int row = frameSize + y * chromaWidth;
+            int v = 16 + ((y * 2 * 224 / Math.max(1, mHeight) + phase) & 0xff) * 224 / 256;
+            int u = 240 - (v - 16);
+            for (int x = 0; x < chromaWidth; x += 2) {
+                nv21[row + x] = (byte) v;
+                nv21[row + x + 1] = (byte) u;
+            }
+        }
+    }
+
+    /**
+     * مربع أبيض يتحرك بمسار حتمي (مرتد) حسب البذرة
+     */
+    private void renderMovingBox(long frameIndex, byte[] nv21) {
+        int size = Math.max(2, Math.min(mWidth, mHeight) / 8) & ~1;
+        int rangeX = Math.max(1, mWidth - size);
+        int rangeY = Math.max(1, mHeight - size);
+        long seed = mix(mSeed);
+        int speedX = 1 + (int) ((seed >>> 8) & 7);
+        int speedY = 1 + (int) ((seed >>> 16) & 7);
+        int boxX = bounce((seed & 0xffff) + frameIndex * speedX, rangeX) & ~1;
+        int boxY = bounce(((seed >>> 24) & 0xffff) + frameIndex * speedY, rangeY) & ~1;
+
+        int frameSize = mWidth * mHeight;
+        int chromaWidth = ((mWidth + 1) / 2) * 2;
+        int boxWidth = Math.min(size, mWidth - boxX);
+        int boxHeight = Math.min(size, mHeight - boxY);
+
+        for (int y = boxY; y < boxY + boxHeight; y++) {
+            Arrays.fill(nv21, y * mWidth + boxX, y * mWidth + boxX + boxWidth, (byte) OVERLAY_Y);
+        }
+        for (int y = boxY / 2; y < (boxY + boxHeight + 1) / 2; y++) {
+            Arrays.fill(nv21, frameSize + y * chromaWidth + boxX,
+                    frameSize + y * chromaWidth + boxX + (boxWidth & ~1), (byte) 128);
+        }
+    }
+
+    /**
+     * رسم عدد صحيح بخط 3x5 على خلفية داكنة
+     */
+    private void drawNumber(byte[] nv21, long value, int left, int top, int scale) {
+        // استخراج الأرقام دون إنشاء نص كي لا يخصص الرسم أي كائن
+        long remaining = Math.max(0, value);
+        int digitCount = 0;
+        do {
+            mDigits[digitCount++] = (int) (remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+
+        int glyphWidth = 4 * scale;
+        int boxWidth = digitCount * glyphWidth + scale;
+        int boxHeight = 7 * scale;
+        if (left + boxWidth > mWidth || top + boxHeight > mHeight) {
+            return;
+        }
+
+        for (int y = top; y < top + boxHeight; y++) {
+            Arrays.fill(nv21, y * mWidth + left, y * mWidth + left + boxWidth, (byte) OVERLAY_BACKGROUND_Y);
+        }
+
+        for (int i = 0; i < digitCount; i++) {
+            int glyph = DIGIT_FONT[mDigits[digitCount - 1 - i]];
+            int glyphLeft = left + scale + i * glyphWidth;
+            for (int row = 0; row < 5; row++) {
+                for (int col = 0; col < 3; col++) {
+                    if ((glyph & (1 << (14 - row * 3 - col))) == 0) {
+                        continue;
+                    }
+                    int pixelX = glyphLeft + col * scale;
+                    int pixelY = top + scale + row * scale;
+                    for (int dy = 0; dy < scale; dy++) {
+                        int offset = (pixelY + dy) * mWidth + pixelX;
+                        Arrays.fill(nv21, offset, offset + scale, (byte) OVERLAY_Y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * حساب صفوف الأشرطة مرة واحدة (بعرض مضاعف)
+     */
+    private void buildBarRows() {
+        int chromaWidth = ((mWidth + 1) / 2) * 2;
+        mBarLumaRow = new byte[mWidth * 2];
+        mBarChromaRow = new byte[chromaWidth * 2];
+
+        for (int x = 0; x < mWidth * 2; x++) {
+            int bar = (x % mWidth) * BAR_YUV.length / mWidth;
+            mBarLumaRow[x] = (byte) BAR_YUV[bar][0];
+        }
+        for (int x = 0; x < chromaWidth * 2; x += 2) {
+            int bar = (x % chromaWidth) * BAR_YUV.length / chromaWidth;
+            mBarChromaRow[x] = (byte) BAR_YUV[bar][2];
+            mBarChromaRow[x + 1] = (byte) BAR_YUV[bar][1];
+        }
+    }
+
+    private static int bounce(long position, int range) {
+        long period = 2L * range;
+        int p = (int) (position % period);
+        return p < range ? p : (int) (period - p);
+    }
+
+    private static long mix(long seed) {
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+}
@@ -0,0 +1,532 @@
+package com.vcamera.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * مرمز JPEG أساسي (baseline) متوازٍ بالشرائح لإطارات NV21
+ * يقسم الصورة إلى شرائح أفقية من صفوف MCU تفصلها علامات إعادة التشغيل (RST)، فتُرمَّز كل شريحة باستقلال
+ * على مجمع fork/join ثم تُضم بالترتيب؛ الناتج ملف JPEG قياسي 4:2:0 يقرؤه أي مفكك
+ * الكائن غير آمن للاستخدام من عدة خيوط في الوقت نفسه بسبب مخازن الشرائح المعاد استخدامها
+ */
+public class TileJpegEncoder {
+    // عدد الشرائح لكل خيط، لتوزيع الحمل عندما تختلف كلفة الشرائح
+    private static final int STRIPES_PER_THREAD = 4;
+    private static final int MAX_RESTART_INTERVAL = 65535;
+
+    private static final int[] ZIGZAG = {
+        0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+        12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // جداول التكميم القياسية (الملحق K) بالترتيب الطبيعي
+    private static final int[] LUMA_QUANT = {
+        16, 11, 10, 16, 24, 40, 51, 61,
+        12, 12, 14, 19, 26, 58, 60, 55,
+        14, 13, 16, 24, 40, 57, 69, 56,
+        14, 17, 22, 29, 51, 87, 80, 62,
+        18, 22, 37, 56, 68, 109, 103, 77,
+        24, 35, 55, 64, 81, 104, 113, 92,
+        49, 64, 78, 87, 103, 121, 120, 101,
+        72, 92, 95, 98, 112, 100, 103, 99
+    };
+    private static final int[] CHROMA_QUANT = {
+        17, 18, 24, 47, 99, 99, 99, 99,
+        18, 21, 26, 66, 99, 99, 99, 99,
+        24, 26, 56, 99, 99, 99, 99, 99,
+        47, 66, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    // جداول هوفمان القياسية (الملحق K)
+    private static final int[] DC_LUMA_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_CHROMA_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] AC_LUMA_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] AC_LUMA_VALUES = {
+        0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+        0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+        0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+        0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+        0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+        0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+        0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+        0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+        0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+        0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMA_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] AC_CHROMA_VALUES = {
+        0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+        0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+        0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+        0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+        0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+        0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+        0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+        0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+        0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+        0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa
+    };
+
+    // معاملات تحجيم AAN لتحويل DCT العائم
+    private static final double[] AAN_SCALE = {
+        1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    private static final HuffmanTable DC_LUMA = new HuffmanTable(DC_LUMA_BITS, DC_VALUES);
+    private static final HuffmanTable DC_CHROMA = new HuffmanTable(DC_CHROMA_BITS, DC_VALUES);
+    private static final HuffmanTable AC_LUMA = new HuffmanTable(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final HuffmanTable AC_CHROMA = new HuffmanTable(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+    private final int mParallelism;
+    private ForkJoinPool mPool;
+    private StripeEncoder[] mStripes = new StripeEncoder[0];
+
+    // جداول التكميم للجودة الحالية
+    private int mQuality = -1;
+    private final int[] mLumaQuant = new int[64];
+    private final int[] mChromaQuant = new int[64];
+    private final float[] mLumaDivisors = new float[64];
+    private final float[] mChromaDivisors = new float[64];
+
+    /**
+     * @param parallelism عدد الخيوط؛ 1 يرمّز على خيط المستدعي في شريحة واحدة (خط الأساس)
+     */
+    public TileJpegEncoder(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * مرمز بعدد خيوط يساوي عدد أنوية الجهاز
+     */
+    public static TileJpegEncoder forAvailableCores() {
+        return new TileJpegEncoder(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * ترميز إطار NV21 إلى JPEG
+     * @param quality الجودة من 1 إلى 100
+     */
+    public void encodeNv21(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        prepareQuantTables(quality);
+
+        int mcuColumns = (width + 15) / 16;
+        int mcuRows = (height + 15) / 16;
+        int rowsPerStripe = mParallelism == 1
+                ? mcuRows
+                : Math.max(1, (mcuRows + mParallelism * STRIPES_PER_THREAD - 1) / (mParallelism * STRIPES_PER_THREAD));
+        rowsPerStripe = Math.max(1, Math.min(rowsPerStripe, MAX_RESTART_INTERVAL / mcuColumns));
+        int stripeCount = (mcuRows + rowsPerStripe - 1) / rowsPerStripe;
+
+        if (mStripes.length < stripeCount) {
+            int previous = mStripes.length;
+            mStripes = Arrays.copyOf(mStripes, stripeCount);
+            for (int i = previous; i < stripeCount; i++) {
+                mStripes[i] = new StripeEncoder();
+            }
+        }
+        for (int i = 0; i < stripeCount; i++) {
+            int firstRow = i * rowsPerStripe;
+            mStripes[i].prepare(nv21, width, height, firstRow, Math.min(mcuRows, firstRow + rowsPerStripe));
+        }
+
+        // ترميز الشرائح
+        if (mParallelism == 1 || stripeCount == 1) {
+            for (int i = 0; i < stripeCount; i++) {
+                mStripes[i].encode();
+            }
+        } else {
+            getPool().invoke(new StripeRangeTask(0, stripeCount));
+        }
+
+        // الكتابة بالترتيب مع علامات إعادة التشغيل بين الشرائح
+        writeHeaders(out, width, height, stripeCount > 1 ? mcuColumns * rowsPerStripe : 0);
+        for (int i = 0; i < stripeCount; i++) {
+            StripeEncoder stripe = mStripes[i];
+            out.write(stripe.mOutput, 0, stripe.mLength);
+            if (i < stripeCount - 1) {
+                out.write(0xFF);
+                out.write(0xD0 + (i & 7));
+            }
+        }
+        out.write(0xFF);
+        out.write(0xD9);
+    }
+
+    /**
+     * إيقاف خيوط المجمع
+     */
+    public synchronized void shutdown() {
+        if (mPool != null) {
+            mPool.shutdown();
+            mPool = null;
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (mPool == null) {
+            mPool = new ForkJoinPool(mParallelism);
+        }
+        return mPool;
+    }
+
+    /**
+     * حساب جداول التكميم للجودة المطلوبة (صيغة IJG)
+     */
+    private void prepareQuantTables(int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        if (quality == mQuality) {
+            return;
+        }
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int i = 0; i < 64; i++) {
+            mLumaQuant[i] = Math.max(1, Math.min(255, (LUMA_QUANT[i] * scale + 50) / 100));
+            mChromaQuant[i] = Math.max(1, Math.min(255, (CHROMA_QUANT[i] * scale + 50) / 100));
+            double aan = AAN_SCALE[i >> 3] * AAN_SCALE[i & 7] * 8.0;
+            mLumaDivisors[i] = (float) (1.0 / (mLumaQuant[i] * aan));
+            mChromaDivisors[i] = (float) (1.0 / (mChromaQuant[i] * aan));
+        }
+        mQuality = quality;
+    }
+
+    private void writeHeaders(OutputStream out, int width, int height, int restartInterval) throws IOException {
+        // SOI + APP0 (JFIF)
+        out.write(new byte[] {
+            (byte) 0xFF, (byte) 0xD8,
+            (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0
+        });
+
+        // DQT: جدولان بترتيب zigzag
+        out.write(0xFF);
+        out.write(0xDB);
+        writeShort(out, 2 + 2 * 65);
+        out.write(0);
+        for (int i = 0; i < 64; i++) {
+            out.write(mLumaQuant[ZIGZAG[i]]);
+        }
+        out.write(1);
+        for (int i = 0; i < 64; i++) {
+            out.write(mChromaQuant[ZIGZAG[i]]);
+        }
+
+        // SOF0: Y بأخذ عينات 2x2، و Cb/Cr بـ 1x1
+        out.write(0xFF);
+        out.write(0xC0);
+        writeShort(out, 17);
+        out.write(8);
+        writeShort(out, height);
+        writeShort(out, width);
+        out.write(3);
+        out.write(new byte[] {1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1});
+
+        // DHT
+        out.write(0xFF);
+        out.write(0xC4);
+        writeShort(out, 2 + 4 * 17 + DC_VALUES.length * 2 + AC_LUMA_VALUES.length + AC_CHROMA_VALUES.length);
+        writeHuffmanTable(out, 0x00, DC_LUMA_BITS, DC_VALUES);
+        writeHuffmanTable(out, 0x10, AC_LUMA_BITS, AC_LUMA_VALUES);
+        writeHuffmanTable(out, 0x01, DC_CHROMA_BITS, DC_VALUES);
+        writeHuffmanTable(out, 0x11, AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+        // DRI
+        if (restartInterval > 0) {
+            out.write(0xFF);
+            out.write(0xDD);
+            writeShort(out, 4);
+            writeShort(out, restartInterval);
+        }
+
+        // SOS
+        out.write(new byte[] {
+            (byte) 0xFF, (byte) 0xDA, 0, 12, 3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0
+        });
+    }
+
+    private static void writeHuffmanTable(OutputStream out, int classAndId, int[] bits, int[] values)
+            throws IOException {
+        out.write(classAndId);
+        for (int count : bits) {
+            out.write(count);
+        }
+        for (int value : values) {
+            out.write(value);
+        }
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value >>> 8);
+        out.write(value & 0xFF);
+    }
+
+    /**
+     * مهمة fork/join لنطاق من الشرائح
+     */
+    private class StripeRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int mFrom;
+        private final int mTo;
+
+        StripeRangeTask(int from, int to) {
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom == 1) {
+                mStripes[mFrom].encode();
+                return;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new StripeRangeTask(mFrom, middle), new StripeRangeTask(middle, mTo));
+        }
+    }
+
+    /**
+     * مرمز شريحة واحدة من صفوف MCU، بمخرجات ومخازن عمل معاد استخدامها
+     */
+    private class StripeEncoder {
+        private final float[] mBlock = new float[64];
+        private byte[] mOutput = new byte[64 * 1024];
+        private int mLength;
+
+        private byte[] mNv21;
+        private int mWidth;
+        private int mHeight;
+        private int mFirstRow;
+        private int mEndRow;
+
+        // حالة كاتب البتات
+        private int mBitBuffer;
+        private int mBitCount;
+
+        void prepare(byte[] nv21, int width, int height, int firstRow, int endRow) {
+            mNv21 = nv21;
+            mWidth = width;
+            mHeight = height;
+            mFirstRow = firstRow;
+            mEndRow = endRow;
+        }
+
+        void encode() {
+            mLength = 0;
+            mBitBuffer = 0;
+            mBitCount = 0;
+
+            // كل شريحة تبدأ بعد علامة إعادة تشغيل، فتُعاد تنبؤات DC إلى الصفر
+            int predY = 0;
+            int predCb = 0;
+            int predCr = 0;
+            int mcuColumns = (mWidth + 15) / 16;
+
+            for (int mcuRow = mFirstRow; mcuRow < mEndRow; mcuRow++) {
+                for (int mcuColumn = 0; mcuColumn < mcuColumns; mcuColumn++) {
+                    int x = mcuColumn * 16;
+                    int y = mcuRow * 16;
+                    loadLumaBlock(x, y);
+                    predY = encodeBlock(predY, mLumaDivisors, DC_LUMA, AC_LUMA);
+                    loadLumaBlock(x + 8, y);
+                    predY = encodeBlock(predY, mLumaDivisors, DC_LUMA, AC_LUMA);
+                    loadLumaBlock(x, y + 8);
+                    predY = encodeBlock(predY, mLumaDivisors, DC_LUMA, AC_LUMA);
+                    loadLumaBlock(x + 8, y + 8);
+                    predY = encodeBlock(predY, mLumaDivisors, DC_LUMA, AC_LUMA);
+
+                    // NV21: V ثم U بالتناوب
+                    loadChromaBlock(x / 2, y / 2, 1);
+                    predCb = encodeBlock(predCb, mChromaDivisors, DC_CHROMA, AC_CHROMA);
+                    loadChromaBlock(x / 2, y / 2, 0);
+                    predCr = encodeBlock(predCr, mChromaDivisors, DC_CHROMA, AC_CHROMA);
+                }
+            }
+
+            // إكمال آخر بايت بآحاد
+            if (mBitCount > 0) {
+                writeBits(0x7F, 8 - mBitCount);
+            }
+        }
+
+        private void loadLumaBlock(int left, int top) {
+            for (int row = 0; row < 8; row++) {
+                int y = Math.min(top + row, mHeight - 1);
+                int offset = y * mWidth;
+                for (int column = 0; column < 8; column++) {
+                    int x = Math.min(left + column, mWidth - 1);
+                    mBlock[row * 8 + column] = (mNv21[offset + x] & 0xFF) - 128;
+                }
+            }
+        }
+
+        private void loadChromaBlock(int left, int top, int channel) {
+            int chromaWidth = (mWidth + 1) / 2;
+            int chromaHeight = (mHeight + 1) / 2;
+            int planeOffset = mWidth * mHeight;
+            for (int row = 0; row < 8; row++) {
+                int y = Math.min(top + row, chromaHeight - 1);
+                int offset = planeOffset + y * chromaWidth * 2 + channel;
+                for (int column = 0; column < 8; column++) {
+                    int x = Math.min(left + column, chromaWidth - 1);
+                    mBlock[row * 8 + column] = (mNv21[offset + x * 2] & 0xFF) - 128;
+                }
+            }
+        }
+
+        /**
+         * تحويل DCT وتكميم وترميز هوفمان لكتلة واحدة
+         * @return قيمة DC لتنبؤ الكتلة التالية
+         */
+        private int encodeBlock(int predictor, float[] divisors, HuffmanTable dcTable, HuffmanTable acTable) {
+            forwardDct(mBlock);
+
+            int dc = Math.round(mBlock[0] * divisors[0]);
+            int diff = dc - predictor;
+            int category = bitLength(diff);
+            writeBits(dcTable.codes[category], dcTable.sizes[category]);
+            if (category > 0) {
+                writeBits(diff < 0 ? diff - 1 : diff, category);
+            }
+
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int index = ZIGZAG[k];
+                int value = Math.round(mBlock[index] * divisors[index]);
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    writeBits(acTable.codes[0xF0], acTable.sizes[0xF0]);
+                    run -= 16;
+                }
+                int size = bitLength(value);
+                int symbol = (run << 4) | size;
+                writeBits(acTable.codes[symbol], acTable.sizes[symbol]);
+                writeBits(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                writeBits(acTable.codes[0x00], acTable.sizes[0x00]);
+            }
+            return dc;
+        }
+
+        private void writeBits(int value, int count) {
+            mBitBuffer = (mBitBuffer << count) | (value & ((1 << count) - 1));
+            mBitCount += count;
+            while (mBitCount >= 8) {
+                int b = (mBitBuffer >> (mBitCount - 8)) & 0xFF;
+                mBitCount -= 8;
+                if (mLength + 2 > mOutput.length) {
+                    mOutput = Arrays.copyOf(mOutput, mOutput.length * 2);
+                }
+                mOutput[mLength++] = (byte) b;
+                if (b == 0xFF) {
+                    mOutput[mLength++] = 0; // حشو البايت 0xFF
+                }
+            }
+        }
+    }
+
+    private static int bitLength(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+    }
+
+    /**
+     * تحويل DCT أمامي عائم بخوارزمية AAN (النواتج مضروبة بمعاملات التحجيم، تُعوّض في قواسم التكميم)
+     */
+    private static void forwardDct(float[] data) {
+        for (int pass = 0; pass < 2; pass++) {
+            int step = pass == 0 ? 1 : 8;
+            int stride = pass == 0 ? 8 : 1;
+            for (int line = 0; line < 8; line++) {
+                int p = line * stride;
+                float d0 = data[p];
+                float d1 = data[p + step];
+                float d2 = data[p + 2 * step];
+                float d3 = data[p + 3 * step];
+                float d4 = data[p + 4 * step];
+                float d5 = data[p + 5 * step];
+                float d6 = data[p + 6 * step];
+                float d7 = data[p + 7 * step];
+
+                float tmp0 = d0 + d7;
+                float tmp7 = d0 - d7;
+                float tmp1 = d1 + d6;
+                float tmp6 = d1 - d6;
+                float tmp2 = d2 + d5;
+                float tmp5 = d2 - d5;
+                float tmp3 = d3 + d4;
+                float tmp4 = d3 - d4;
+
+                // الجزء الزوجي
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                data[p] = tmp10 + tmp11;
+                data[p + 4 * step] = tmp10 - tmp11;
+
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[p + 2 * step] = tmp13 + z1;
+                data[p + 6 * step] = tmp13 - z1;
+
+                // الجزء الفردي
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+
+                data[p + 5 * step] = z13 + z2;
+                data[p + 3 * step] = z13 - z2;
+                data[p + step] = z11 + z4;
+                data[p + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    /**
+     * جدول هوفمان مشتق من أطوال الرموز وقيمها
+     */
+    private static class HuffmanTable {
+        final int[] codes = new int[256];
+        final int[] sizes = new int[256];
+
+        HuffmanTable(int[] bits, int[] values) {
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    codes[values[k]] = code;
+                    sizes[values[k]] = length;
+                    code++;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * فئات الأحجام وإعادة الاستخدام والحدود في مجمع المصفوفات
+ */
+public class ByteArrayPoolTest {
+
+    @Test
+    public void sizeClassesRoundUpWithinQuarter() {
+        assertEquals(1024, ByteArrayPool.sizeClass(1));
+        assertEquals(1024, ByteArrayPool.sizeClass(1024));
+        assertEquals(1280, ByteArrayPool.sizeClass(1025));
+        assertEquals(2048, ByteArrayPool.sizeClass(2048));
+        for (int length = 1025; length < 10000000; length = length * 3 / 2 + 7) {
+            int size = ByteArrayPool.sizeClass(length);
+            assertTrue(size >= length);
+            assertTrue("length " + length + " -> " + size, size - length <= length / 4 + 1);
+            assertEquals(size, ByteArrayPool.sizeClass(size));
+        }
+    }
+
+    @Test
+    public void releasedArrayIsReusedForSameClass() {
+        ByteArrayPool pool = new ByteArrayPool("test", 1 << 20);
+        byte[] first = pool.acquire(FrameBuffer.nv21Size(640, 480));
+        pool.release(first);
+
+        // حجم مختلف قليلاً في الفئة نفسها
+        byte[] second = pool.acquire(FrameBuffer.nv21Size(640, 480) - 100);
+        assertSame(first, second);
+
+        PoolSnapshot snapshot = pool.snapshot();
+        assertEquals(1, snapshot.getHits());
+        assertEquals(1, snapshot.getMisses());
+        assertEquals(0, snapshot.getRetainedCount());
+    }
+
+    @Test
+    public void foreignArraysAreNotRetained() {
+        ByteArrayPool pool = new ByteArrayPool("test", 1 << 20);
+        pool.release(new byte[1000]);
+        assertEquals(0, pool.snapshot().getRetainedCount());
+        assertEquals(1024, pool.acquire(1000).length);
+    }
+
+    @Test
+    public void retentionIsCappedAndTrimmedLargestFirst() {
+        ByteArrayPool pool = new ByteArrayPool("test", 8192);
+        pool.release(new byte[4096]);
+        pool.release(new byte[4096]);
+        pool.release(new byte[1024]);
+        assertEquals(8192, pool.snapshot().getRetainedBytes());
+
+        pool.release(new byte[1024]);
+        pool.trimToSize(4096);
+        assertEquals(1, pool.snapshot().getRetainedCount());
+        assertEquals(4096, pool.snapshot().getRetainedBytes());
+
+        pool.setMaxRetainedBytes(1024);
+        assertEquals(0, pool.snapshot().getRetainedBytes());
+    }
+
+    @Test
+    public void leakTrackingCountsOutstandingArrays() {
+        ByteArrayPool pool = new ByteArrayPool("test", 1 << 20);
+        pool.setLeakTracking((poolName, acquireSite) -> {
+        });
+        byte[] first = pool.acquire(2000);
+        byte[] second = pool.acquire(2000);
+        assertEquals(2, pool.snapshot().getOutstanding());
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(0, pool.snapshot().getOutstanding());
+        assertEquals(0, pool.snapshot().getLeaks());
+    }
+}
@@ -0,0 +1,86 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * عدادات المقاييس ومراحلها كما يسجلها خط المعالجة، وتفريغها إلى ملف السجل
+ */
+public class FramePipelineMetricsTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void pipelineRecordsDeliveryButNotSourceStages() throws Exception {
+        FramePipelineMetrics metrics = new FramePipelineMetrics();
+        SyntheticFrameSource source = new SyntheticFrameSource(64, 48, 30,
+                SyntheticFrameSource.PATTERN_COLOR_BARS, 1, false);
+        FramePipeline pipeline = new FramePipeline(source, 64, 48, 30, new ManualFrameClock(), metrics);
+        pipeline.addConsumer(frame -> { }, 30);
+        pipeline.addConsumer(frame -> { }, 15);
+
+        pipeline.run(30);
+
+        FramePipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(30, snapshot.getFramesProduced());
+        assertEquals(45, snapshot.getFramesDelivered());
+        assertEquals(0, snapshot.getFramesDropped());
+        assertEquals(30, snapshot.getStage(FramePipelineMetrics.STAGE_DELIVER).getCount());
+        // المصدر يسجل مراحله بنفسه؛ خط المعالجة لا يحتسب القراءة كفك تشفير
+        assertEquals(0, snapshot.getStage(FramePipelineMetrics.STAGE_DECODE).getCount());
+        assertEquals(1, snapshot.getTimeToFirstFrame().getCount());
+    }
+
+    @Test
+    public void countersAndReset() {
+        FramePipelineMetrics metrics = new FramePipelineMetrics();
+        metrics.recordStage(FramePipelineMetrics.STAGE_CONVERT, 2000000);
+        metrics.onFrameProduced();
+        metrics.onFrameDelivered();
+        metrics.onFramesDropped(3);
+        metrics.onFramesDropped(-1);
+        metrics.onBytesConverted(4608);
+
+        FramePipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.getFramesDropped());
+        assertEquals(4608, snapshot.getConversionBytes());
+        assertEquals(2000, snapshot.getStage(FramePipelineMetrics.STAGE_CONVERT).getMaxMicros());
+        assertTrue(snapshot.toString().contains("[convert: "));
+
+        metrics.reset();
+        snapshot = metrics.snapshot();
+        assertEquals(0, snapshot.getFramesProduced());
+        assertEquals(0, snapshot.getStage(FramePipelineMetrics.STAGE_CONVERT).getCount());
+    }
+
+    @Test
+    public void stageNames() {
+        assertEquals("decode", FramePipelineMetrics.getStageName(FramePipelineMetrics.STAGE_DECODE));
+        assertEquals("deliver", FramePipelineMetrics.getStageName(FramePipelineMetrics.STAGE_DELIVER));
+        assertEquals("unknown", FramePipelineMetrics.getStageName(FramePipelineMetrics.STAGE_COUNT));
+    }
+
+    @Test
+    public void dumpAppendsLines() throws IOException {
+        FramePipelineMetrics metrics = new FramePipelineMetrics();
+        File logDir = new File(mFolder.getRoot(), "logs");
+        metrics.onFrameProduced();
+        metrics.dumpTo(logDir);
+        metrics.dumpTo(logDir);
+
+        String log = new String(Files.readAllBytes(new File(logDir, "frame_metrics.log").toPath()),
+                StandardCharsets.UTF_8);
+        assertEquals(2, log.split("\n").length);
+        assertTrue(log.contains("produced=1"));
+    }
+}
@@ -0,0 +1,164 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * جدولة معدلات خط المعالجة بساعة يدوية: تقليل المعدل لكل مستهلك وتكرار الإطار للمصادر الأبطأ
+ */
+public class FramePipelineTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 16;
+
+    @Test
+    public void slowerConsumerGetsDecimatedFrames() throws Exception {
+        CountingSource source = new CountingSource(30);
+        FramePipeline pipeline = new FramePipeline(source, WIDTH, HEIGHT, 30, new ManualFrameClock(), null);
+        RecordingConsumer full = new RecordingConsumer();
+        RecordingConsumer third = new RecordingConsumer();
+        pipeline.addConsumer(full, 30);
+        pipeline.addConsumer(third, 10);
+
+        // ثانية واحدة بمعدل 30 دورة
+        pipeline.run(30);
+
+        assertEquals(30, full.sequences.size());
+        assertEquals(10, third.sequences.size());
+        assertEquals(30, source.reads);
+        // المستهلك الأبطأ يأخذ كل ثالث إطار من المصدر
+        for (int i = 0; i < third.sequences.size(); i++) {
+            assertEquals(i * 3L, (long) third.sequences.get(i));
+        }
+    }
+
+    @Test
+    public void fasterConsumerGetsDuplicatedFrames() throws Exception {
+        CountingSource source = new CountingSource(10);
+        FramePipeline pipeline = new FramePipeline(source, WIDTH, HEIGHT, 30, new ManualFrameClock(), null);
+        RecordingConsumer consumer = new RecordingConsumer();
+        pipeline.addConsumer(consumer, 30);
+
+        pipeline.run(30);
+
+        // المصدر يُقرأ بمعدله الأصلي فقط، والإطار نفسه يُسلَّم ثلاث مرات
+        assertEquals(30, consumer.sequences.size());
+        assertEquals(10, source.reads);
+        assertEquals(10, new HashSet<>(consumer.sequences).size());
+    }
+
+    @Test
+    public void missingFramesPostponeConsumers() throws Exception {
+        CountingSource source = new CountingSource(30);
+        source.available = false;
+        ManualFrameClock clock = new ManualFrameClock();
+        FramePipeline pipeline = new FramePipeline(source, WIDTH, HEIGHT, 30, clock, null);
+        RecordingConsumer consumer = new RecordingConsumer();
+        pipeline.addConsumer(consumer, 30);
+
+        pipeline.run(30);
+
+        // لا إطار يُسلَّم، والمحاولات تبقى بمعدل المستهلك دون دوران فوري
+        assertTrue(consumer.sequences.isEmpty());
+        assertEquals(30, source.reads);
+        assertEquals(30 * (1000000000L / 30), clock.nanoTime());
+    }
+
+    @Test
+    public void sourceIsOpenedAndClosedAroundRun() throws Exception {
+        CountingSource source = new CountingSource(30);
+        FramePipeline pipeline = new FramePipeline(source, WIDTH, HEIGHT, 30, new ManualFrameClock(), null);
+
+        pipeline.run(3);
+
+        assertEquals(1, source.opens);
+        assertEquals(1, source.closes);
+        assertFalse(pipeline.isRunning());
+    }
+
+    @Test
+    public void stopWaitsForThreadAndClosesSource() throws Exception {
+        CountingSource source = new CountingSource(0);
+        FramePipeline pipeline = new FramePipeline(source, WIDTH, HEIGHT, 200, FrameClock.SYSTEM, null);
+        pipeline.addConsumer(new RecordingConsumer());
+
+        pipeline.start("FramePipelineTest");
+        assertTrue(pipeline.isRunning());
+        pipeline.stop();
+
+        assertFalse(pipeline.isRunning());
+        assertEquals(1, source.closes);
+    }
+
+    @Test
+    public void restartIsNotStoppedByPreviousLoop() throws Exception {
+        CountingSource source = new CountingSource(0);
+        FramePipeline pipeline = new FramePipeline(source, WIDTH, HEIGHT, 200, FrameClock.SYSTEM, null);
+        pipeline.addConsumer(new RecordingConsumer());
+
+        pipeline.start("FramePipelineTest-1");
+        pipeline.stop();
+        pipeline.start("FramePipelineTest-2");
+        try {
+            assertTrue(pipeline.isRunning());
+        } finally {
+            pipeline.stop();
+        }
+        assertEquals(2, source.closes);
+    }
+
+    /**
+     * مصدر يعد القراءات ويكتب رقم القراءة في أول بايت
+     */
+    private static class CountingSource implements FrameSource {
+        final int nativeRate;
+        volatile boolean available = true;
+        int reads;
+        int opens;
+        volatile int closes;
+
+        CountingSource(int nativeRate) {
+            this.nativeRate = nativeRate;
+        }
+
+        @Override
+        public void open() {
+            opens++;
+        }
+
+        @Override
+        public boolean read(FrameBuffer out) {
+            reads++;
+            if (!available) {
+                return false;
+            }
+            out.getData()[0] = (byte) reads;
+            return true;
+        }
+
+        @Override
+        public int getNativeFrameRate() {
+            return nativeRate;
+        }
+
+        @Override
+        public void close() {
+            closes++;
+        }
+    }
+
+    private static class RecordingConsumer implements FrameConsumer {
+        final List<Long> sequences = new ArrayList<>();
+
+        @Override
+        public void onFrame(FrameBuffer frame) {
+            sequences.add(frame.getSequence());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * تسجيل إطارات في ملف ثم إعادة تشغيلها بتوقيتها الأصلي، بضغط LZ4 ودونه
+ */
+public class FrameRecorderTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAME_COUNT = 12;
+    private static final long INTERVAL_NANOS = 1000000000L / 30;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void uncompressedRecordingRoundTrips() throws IOException {
+        assertRoundTrip(false);
+    }
+
+    @Test
+    public void compressedRecordingRoundTrips() throws IOException {
+        assertRoundTrip(true);
+    }
+
+    @Test
+    public void replayFollowsRecordedTimingAndLoops() throws IOException {
+        File file = record(true);
+        ManualFrameClock clock = new ManualFrameClock();
+        RecordedFrameSource source = new RecordedFrameSource(file, clock);
+        source.open();
+        FrameBuffer out = new FrameBuffer(1, 1);
+        try {
+            assertEquals(30, source.getNativeFrameRate());
+            assertEquals(FRAME_COUNT * INTERVAL_NANOS, source.getDurationNanos());
+
+            assertTrue(source.read(out));
+            assertEquals(timestampOf(0), out.getTimestampNanos());
+
+            clock.advanceNanos(INTERVAL_NANOS * 5 + INTERVAL_NANOS / 2);
+            assertTrue(source.read(out));
+            assertEquals(timestampOf(5), out.getTimestampNanos());
+            assertArrayEquals(frame(5), Arrays.copyOf(out.getData(), out.getSize()));
+
+            // بعد نهاية التسجيل يعود إلى أوله
+            clock.advanceNanos(INTERVAL_NANOS * FRAME_COUNT);
+            assertTrue(source.read(out));
+            assertEquals(timestampOf(5), out.getTimestampNanos());
+        } finally {
+            source.close();
+        }
+        assertFalse(source.read(out));
+    }
+
+    @Test
+    public void framesOfOtherSizeAreDropped() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(mFolder.newFile(), WIDTH, HEIGHT, false);
+        assertFalse(recorder.offer(frame(0), frame(0).length, 0)); // قبل البدء
+        recorder.start();
+        try {
+            byte[] larger = new byte[FrameBuffer.nv21Size(WIDTH * 2, HEIGHT * 2)];
+            assertFalse(recorder.offer(larger, larger.length, 0));
+            assertEquals(2, recorder.getFramesDropped());
+        } finally {
+            recorder.stop();
+        }
+        assertEquals(0, recorder.getFramesWritten());
+    }
+
+    private void assertRoundTrip(boolean compress) throws IOException {
+        File file = record(compress);
+        RecordedFrameSource source = new RecordedFrameSource(file, new ManualFrameClock());
+        source.open();
+        try {
+            assertEquals(WIDTH, source.getWidth());
+            assertEquals(HEIGHT, source.getHeight());
+            assertEquals(FRAME_COUNT, source.getFrameCount());
+
+            FrameBuffer out = new FrameBuffer(1, 1);
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                source.readFrame(i, out);
+                assertEquals(timestampOf(i), out.getTimestampNanos());
+                assertArrayEquals("frame " + i, frame(i), Arrays.copyOf(out.getData(), out.getSize()));
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    private File record(boolean compress) throws IOException {
+        File file = new File(mFolder.getRoot(), "session-" + compress + ".vcfr");
+        FrameRecorder recorder = new FrameRecorder(file, WIDTH, HEIGHT, compress, FRAME_COUNT);
+        recorder.start();
+        try {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                byte[] data = frame(i);
+                assertTrue(recorder.offer(data, data.length, timestampOf(i)));
+            }
+        } finally {
+            recorder.stop();
+        }
+        assertEquals(FRAME_COUNT, recorder.getFramesWritten());
+        assertEquals(0, recorder.getFramesDropped());
+        return file;
+    }
+
+    private static long timestampOf(int index) {
+        return 5000000000L + index * INTERVAL_NANOS;
+    }
+
+    /**
+     * إطار مميز لكل رقم: تدرج في السطوع يزاح بالرقم ولون ثابت
+     */
+    private static byte[] frame(int index) {
+        byte[] data = new byte[FrameBuffer.nv21Size(WIDTH, HEIGHT)];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            data[i] = (byte) (i % WIDTH + index * 7);
+        }
+        Arrays.fill(data, WIDTH * HEIGHT, data.length, (byte) (128 + index));
+        return data;
+    }
+}
@@ -0,0 +1,68 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * دقة دلاء المدرج التكراري ونسبه المئوية
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        for (int micros = 0; micros < 32; micros++) {
+            assertEquals(micros, LatencyHistogram.bucketIndex(micros));
+            assertEquals(micros, LatencyHistogram.bucketUpperBound(micros));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousWithBoundedError() {
+        int previous = LatencyHistogram.bucketIndex(31);
+        for (long micros = 32; micros < (1L << 30); micros += Math.max(1, micros / 97)) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertTrue(index >= previous);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue("value " + micros + " above bucket " + upper, micros <= upper);
+            // الخطأ النسبي لا يتجاوز عرض دلو فرعي (1/16 من القيمة)
+            assertTrue("value " + micros + " bucket " + upper, upper - micros <= micros / 16);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void percentilesAndSummary() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordMicros(i * 100);
+        }
+        histogram.recordNanos(-5); // القيم السالبة تُسجل صفراً
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(101, snapshot.getCount());
+        assertEquals(10000, snapshot.getMaxMicros());
+        assertEquals(505000.0 / 101, snapshot.getMeanMicros(), 0.001);
+        assertWithinBucket(5000, snapshot.getPercentileMicros(50));
+        assertWithinBucket(9900, snapshot.getPercentileMicros(99));
+        assertEquals(10000, snapshot.getPercentileMicros(100));
+        assertEquals(0, snapshot.getPercentileMicros(0));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(1234);
+        histogram.reset();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMaxMicros());
+        assertEquals(0, snapshot.getPercentileMicros(99));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue("expected ~" + expected + " got " + actual, actual >= expected && actual - expected <= expected / 16);
+    }
+}
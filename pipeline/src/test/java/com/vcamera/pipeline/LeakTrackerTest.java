@@ -0,0 +1,55 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * كشف العناصر التي يجمعها جامع القمامة قبل إعادتها
+ */
+public class LeakTrackerTest {
+    private static final long GC_TIMEOUT_MS = 5000;
+
+    @Test
+    public void returnedItemsAreNotLeaks() {
+        LeakTracker<Object> tracker = new LeakTracker<>("test", null);
+        Object item = new Object();
+        tracker.track(item);
+        assertEquals(1, tracker.getOutstanding());
+
+        assertTrue(tracker.untrack(item));
+        assertFalse(tracker.untrack(item));
+        assertFalse(tracker.untrack(new Object()));
+        assertEquals(0, tracker.getOutstanding());
+    }
+
+    @Test
+    public void collectedItemIsReportedWithAcquireSite() throws InterruptedException {
+        List<Throwable> sites = new ArrayList<>();
+        LeakTracker<byte[]> tracker = new LeakTracker<>("frames", (poolName, acquireSite) -> {
+            assertEquals("frames", poolName);
+            sites.add(acquireSite);
+        });
+        byte[] kept = new byte[16];
+        tracker.track(kept);
+        tracker.track(new byte[16]); // يُفقد دون إعادة
+
+        long deadline = System.currentTimeMillis() + GC_TIMEOUT_MS;
+        while (tracker.getLeakCount() == 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            tracker.poll();
+        }
+
+        assertEquals(1, tracker.getLeakCount());
+        assertEquals(1, sites.size());
+        assertTrue(sites.get(0).getMessage().contains("frames"));
+        assertEquals(1, tracker.getOutstanding());
+        assertTrue(tracker.untrack(kept));
+    }
+}
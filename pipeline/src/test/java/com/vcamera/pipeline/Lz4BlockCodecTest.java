@@ -0,0 +1,134 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ضغط وفك كتل LZ4 ذهاباً وإياباً، وكشف البيانات التالفة
+ */
+public class Lz4BlockCodecTest {
+    private final Lz4BlockCodec mCodec = new Lz4BlockCodec();
+
+    @Test
+    public void emptyInputRoundTrips() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    public void inputShorterThanMatchLimitIsStoredAsLiterals() throws IOException {
+        assertRoundTrip(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+    }
+
+    @Test
+    public void randomDataRoundTrips() throws IOException {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        int compressed = assertRoundTrip(data);
+        assertTrue(compressed <= Lz4BlockCodec.maxCompressedLength(data.length));
+    }
+
+    @Test
+    public void repetitiveDataCompresses() throws IOException {
+        // إطار NV21 شبه ثابت: سطوع موحد ولون محايد
+        byte[] frame = new byte[FrameBuffer.nv21Size(320, 240)];
+        Arrays.fill(frame, 0, 320 * 240, (byte) 100);
+        Arrays.fill(frame, 320 * 240, frame.length, (byte) 128);
+        int compressed = assertRoundTrip(frame);
+        assertTrue("compressed " + compressed, compressed < frame.length / 50);
+    }
+
+    @Test
+    public void longLiteralAndMatchRunsRoundTrip() throws IOException {
+        // حرفيات أطول من 255 ثم مطابقة أطول من 255 (أطوال ممتدة)، ونمط متداخل المسافة
+        byte[] data = new byte[4000];
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            data[i] = (byte) random.nextInt();
+        }
+        System.arraycopy(data, 0, data, 1000, 1000);
+        for (int i = 2000; i < data.length; i++) {
+            data[i] = (byte) (i % 3);
+        }
+        assertRoundTrip(data);
+    }
+
+    @Test
+    public void compressesAtOffsets() throws IOException {
+        byte[] source = new byte[600];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (byte) (i % 17);
+        }
+        byte[] compressed = new byte[10 + Lz4BlockCodec.maxCompressedLength(500)];
+        int length = mCodec.compress(source, 50, 500, compressed, 10);
+
+        byte[] restored = new byte[520];
+        int restoredLength = Lz4BlockCodec.decompress(compressed, 10, length, restored, 20, 500);
+        assertEquals(500, restoredLength);
+        assertArrayEquals(Arrays.copyOfRange(source, 50, 550), Arrays.copyOfRange(restored, 20, 520));
+    }
+
+    @Test
+    public void decompressesFromByteBuffer() throws IOException {
+        byte[] data = new byte[2048];
+        Arrays.fill(data, (byte) 9);
+        byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(data.length)];
+        int length = mCodec.compress(data, 0, data.length, compressed, 0);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length + 4);
+        buffer.position(4);
+        buffer.put(compressed, 0, length);
+        byte[] restored = new byte[data.length];
+        assertEquals(data.length, Lz4BlockCodec.decompress(buffer, 4, length, restored, 0, restored.length));
+        assertArrayEquals(data, restored);
+    }
+
+    @Test
+    public void truncatedBlockIsRejected() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 5);
+        }
+        byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(data.length)];
+        int length = mCodec.compress(data, 0, data.length, compressed, 0);
+
+        try {
+            Lz4BlockCodec.decompress(compressed, 0, length - 3, new byte[data.length], 0, data.length);
+            fail("truncated block accepted");
+        } catch (IOException expected) {
+            // متوقع
+        }
+    }
+
+    @Test
+    public void outputOverflowIsRejected() throws IOException {
+        byte[] data = new byte[1000];
+        byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(data.length)];
+        int length = mCodec.compress(data, 0, data.length, compressed, 0);
+
+        try {
+            Lz4BlockCodec.decompress(compressed, 0, length, new byte[500], 0, 500);
+            fail("output overflow accepted");
+        } catch (IOException expected) {
+            // متوقع
+        }
+    }
+
+    private int assertRoundTrip(byte[] data) throws IOException {
+        byte[] compressed = new byte[Lz4BlockCodec.maxCompressedLength(data.length)];
+        int length = mCodec.compress(data, 0, data.length, compressed, 0);
+
+        byte[] restored = new byte[data.length];
+        assertEquals(data.length, Lz4BlockCodec.decompress(compressed, 0, length, restored, 0, restored.length));
+        assertArrayEquals(data, restored);
+        return length;
+    }
+}
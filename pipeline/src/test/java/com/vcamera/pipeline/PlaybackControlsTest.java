@@ -0,0 +1,114 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * تقدم مؤشر التشغيل بالساعة والسرعة، والتفافه في منطقة التكرار، وتطبيق القفز على كل مؤشر مرة واحدة
+ */
+public class PlaybackControlsTest {
+    private static final long SECOND_US = 1000000L;
+    private static final long SECOND_NANOS = 1000000000L;
+
+    private final PlaybackControls mControls = new PlaybackControls();
+    private final ManualFrameClock mClock = new ManualFrameClock();
+
+    @Test
+    public void advancesWithClockAndLoopsAtEnd() {
+        PlaybackControls.Cursor cursor = newCursor(10 * SECOND_US);
+        assertEquals(0, cursor.advance());
+
+        mClock.advanceNanos(3 * SECOND_NANOS);
+        assertEquals(3 * SECOND_US, cursor.advance());
+
+        mClock.advanceNanos(8 * SECOND_NANOS);
+        assertEquals(SECOND_US, cursor.advance());
+    }
+
+    @Test
+    public void loopRegionBoundsPosition() {
+        mControls.setLoopRegion(2 * SECOND_US, 5 * SECOND_US);
+        PlaybackControls.Cursor cursor = newCursor(10 * SECOND_US);
+        assertEquals(2 * SECOND_US, cursor.advance());
+
+        mClock.advanceNanos(4 * SECOND_NANOS);
+        assertEquals(3 * SECOND_US, cursor.advance());
+
+        // منطقة تتجاوز نهاية الملف تُقص عندها
+        mControls.setLoopRegion(8 * SECOND_US, 20 * SECOND_US);
+        assertEquals(8 * SECOND_US, cursor.advance());
+        mClock.advanceNanos(3 * SECOND_NANOS);
+        assertEquals(9 * SECOND_US, cursor.advance());
+
+        mControls.clearLoopRegion();
+        assertEquals(9 * SECOND_US, cursor.advance());
+        assertEquals(0, cursor.restart());
+    }
+
+    @Test
+    public void speedScalesProgress() {
+        PlaybackControls.Cursor cursor = newCursor(60 * SECOND_US);
+        cursor.advance();
+
+        mControls.setSpeed(2f);
+        mClock.advanceNanos(SECOND_NANOS);
+        assertEquals(2 * SECOND_US, cursor.advance());
+
+        mControls.setSpeed(0.5f);
+        mClock.advanceNanos(SECOND_NANOS);
+        assertEquals(2 * SECOND_US + SECOND_US / 2, cursor.advance());
+    }
+
+    @Test
+    public void seekAppliesOncePerCursor() {
+        PlaybackControls.Cursor first = newCursor(10 * SECOND_US);
+        PlaybackControls.Cursor second = newCursor(10 * SECOND_US);
+        first.advance();
+        second.advance();
+
+        mControls.seekTo(7 * SECOND_US);
+        assertEquals(7 * SECOND_US, first.advance());
+        assertEquals(7 * SECOND_US, second.advance());
+
+        // بعد تطبيق القفز يتابع كل مؤشر من موضعه
+        mClock.advanceNanos(SECOND_NANOS);
+        assertEquals(8 * SECOND_US, first.advance());
+    }
+
+    @Test
+    public void seekIsClampedToLoopRegion() {
+        mControls.setLoopRegion(SECOND_US, 3 * SECOND_US);
+        PlaybackControls.Cursor cursor = newCursor(10 * SECOND_US);
+        cursor.advance();
+
+        mControls.seekTo(0);
+        assertEquals(SECOND_US, cursor.advance());
+        mControls.seekTo(4 * SECOND_US);
+        assertEquals(2 * SECOND_US, cursor.advance());
+    }
+
+    @Test
+    public void unknownDurationNeverWraps() {
+        PlaybackControls.Cursor cursor = newCursor(-1);
+        cursor.advance();
+        mClock.advanceNanos(3600 * SECOND_NANOS);
+        assertEquals(3600 * SECOND_US, cursor.advance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyLoopRegionIsRejected() {
+        mControls.setLoopRegion(5 * SECOND_US, 5 * SECOND_US);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void speedOutOfRangeIsRejected() {
+        mControls.setSpeed(PlaybackControls.MAX_SPEED * 2);
+    }
+
+    private PlaybackControls.Cursor newCursor(long durationUs) {
+        PlaybackControls.Cursor cursor = mControls.newCursor(mClock);
+        cursor.reset(durationUs);
+        return cursor;
+    }
+}
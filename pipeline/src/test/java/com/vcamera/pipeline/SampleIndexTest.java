@@ -0,0 +1,193 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * قراءة جداول العينات من ملف MP4 مبني يدوياً، ثم كتابة الفهرس وتحميله والبحث فيه
+ */
+public class SampleIndexTest {
+    // 30 إطاراً في الثانية بمقياس 30000
+    private static final int TIMESCALE = 30000;
+    private static final int SAMPLE_DELTA = 1000;
+    private static final long FRAME_DURATION_US = 33333;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void parsesVideoSampleTable() throws IOException {
+        File video = writeMp4(null, false);
+
+        SampleIndex.Builder builder = Mp4SampleTable.parse(video);
+        assertNotNull(builder);
+        assertEquals(6, builder.getSampleCount());
+
+        SampleIndex index = writeAndOpen(builder, video);
+        assertEquals(6, index.getSampleCount());
+        assertEquals(2, index.getKeyframeCount());
+        assertEquals(166666 + FRAME_DURATION_US, index.getDurationUs());
+
+        long[] times = {0, 33333, 66666, 100000, 133333, 166666};
+        // كتلتان من ثلاث عينات متتالية عند 1000 و5000
+        long[] offsets = {1000, 1100, 1300, 5000, 5400, 5900};
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], index.getSampleTimeUs(i));
+            assertEquals(offsets[i], index.getSampleOffset(i));
+            assertEquals((i + 1) * 100, index.getSampleSize(i));
+            assertEquals(i == 0 || i == 3, index.isKeyframe(i));
+        }
+    }
+
+    @Test
+    public void findsSurroundingKeyframes() throws IOException {
+        File video = writeMp4(null, false);
+        SampleIndex index = writeAndOpen(Mp4SampleTable.parse(video), video);
+
+        assertEquals(0, index.floorKeyframe(99999));
+        assertEquals(100000, index.floorKeyframe(100000));
+        assertEquals(100000, index.floorKeyframe(150000));
+        assertEquals(3, index.floorKeyframeSample(150000));
+        assertEquals(0, index.floorKeyframeSample(50000));
+
+        assertEquals(100000, index.nextKeyframeAfter(0));
+        assertEquals(Long.MAX_VALUE, index.nextKeyframeAfter(100000));
+    }
+
+    @Test
+    public void compositionOffsetsGivePresentationTimes() throws IOException {
+        // ترتيب فك التشفير I P B: إزاحات العرض 1 و2 و0 إطار بعد إزاحة قائمة التحرير بإطار واحد
+        int[] compositionFrames = {1, 2, 0, 1, 2, 0};
+        File video = writeMp4(compositionFrames, true);
+
+        SampleIndex index = writeAndOpen(Mp4SampleTable.parse(video), video);
+        assertEquals(0, index.getSampleTimeUs(0));
+        assertEquals(66666, index.getSampleTimeUs(1));
+        assertEquals(33333, index.getSampleTimeUs(2));
+        assertEquals(166666, index.getSampleTimeUs(4));
+        assertEquals(100000, index.floorKeyframe(133333));
+    }
+
+    @Test
+    public void indexOfOtherFileVersionIsIgnored() throws IOException {
+        File video = writeMp4(null, false);
+        File indexFile = new File(mFolder.getRoot(), "video.idx");
+        assertTrue(Mp4SampleTable.parse(video).writeTo(indexFile, video.length(), video.lastModified(), FRAME_DURATION_US));
+
+        assertNull(SampleIndex.open(indexFile, video.length() + 1, video.lastModified()));
+        assertNull(SampleIndex.open(new File(mFolder.getRoot(), "missing.idx"), video.length(), video.lastModified()));
+    }
+
+    @Test
+    public void indexWithoutKeyframesIsNotWritten() throws IOException {
+        SampleIndex.Builder builder = new SampleIndex.Builder()
+                .addSample(0, 0, 10, false)
+                .addSample(33333, 10, 10, false);
+        File indexFile = new File(mFolder.getRoot(), "none.idx");
+        assertFalse(builder.writeTo(indexFile, 20, 0, FRAME_DURATION_US));
+        assertFalse(indexFile.exists());
+    }
+
+    @Test
+    public void nonMp4FileIsRejected() throws IOException {
+        File text = mFolder.newFile("frames.txt");
+        try (FileOutputStream out = new FileOutputStream(text)) {
+            out.write(new byte[] {0, 0, 0, 16, 1, 2, 3, 4, 0, 0, 0, 0, 0, 0, 0, 0});
+        }
+        assertNull(Mp4SampleTable.parse(text));
+    }
+
+    private SampleIndex writeAndOpen(SampleIndex.Builder builder, File video) throws IOException {
+        File indexFile = new File(mFolder.getRoot(), "index/" + video.getName() + ".idx");
+        assertTrue(builder.writeTo(indexFile, video.length(), video.lastModified(), FRAME_DURATION_US));
+        SampleIndex index = SampleIndex.open(indexFile, video.length(), video.lastModified());
+        assertNotNull(index);
+        return index;
+    }
+
+    /**
+     * ملف MP4 بمسار صوت يسبق مسار فيديو بست عينات في كتلتين، والإطاران المفتاحيان الأول والرابع
+     * @param compositionFrames إزاحات العرض بالإطارات (ctts)، أو null
+     * @param editOneFrame إضافة قائمة تحرير تبدأ بعد إطار واحد
+     */
+    private File writeMp4(int[] compositionFrames, boolean editOneFrame) throws IOException {
+        byte[] stsz = payload(0, 0, 6, 100, 200, 300, 400, 500, 600);
+        ByteArrayOutputStream stbl = new ByteArrayOutputStream();
+        stbl.write(box("stts", payload(0, 1, 6, SAMPLE_DELTA)));
+        if (compositionFrames != null) {
+            int[] ctts = new int[2 + compositionFrames.length * 2];
+            ctts[1] = compositionFrames.length;
+            for (int i = 0; i < compositionFrames.length; i++) {
+                ctts[2 + i * 2] = 1;
+                ctts[3 + i * 2] = compositionFrames[i] * SAMPLE_DELTA;
+            }
+            stbl.write(box("ctts", payload(ctts)));
+        }
+        stbl.write(box("stss", payload(0, 2, 1, 4)));
+        stbl.write(box("stsz", stsz));
+        stbl.write(box("stsc", payload(0, 1, 1, 3, 1)));
+        stbl.write(box("stco", payload(0, 2, 1000, 5000)));
+
+        byte[] videoTrak = box("trak",
+                editOneFrame ? box("edts", box("elst", payload(0, 1, 6 * SAMPLE_DELTA, SAMPLE_DELTA, 0x10000))) : new byte[0],
+                box("mdia",
+                        box("mdhd", payload(0, 0, 0, TIMESCALE, 6 * SAMPLE_DELTA, 0)),
+                        box("hdlr", concat(payload(0, 0), fourCc("vide"), payload(0, 0, 0))),
+                        box("minf", box("stbl", stbl.toByteArray()))));
+        byte[] audioTrak = box("trak",
+                box("mdia",
+                        box("mdhd", payload(0, 0, 0, 44100, 0, 0)),
+                        box("hdlr", concat(payload(0, 0), fourCc("soun"), payload(0, 0, 0)))));
+
+        File file = mFolder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(box("ftyp", concat(fourCc("isom"), payload(0x200))));
+            out.write(box("mdat", new byte[64]));
+            out.write(box("moov", audioTrak, videoTrak));
+        }
+        return file;
+    }
+
+    private static byte[] box(String type, byte[]... children) {
+        byte[] body = concat(children);
+        return ByteBuffer.allocate(8 + body.length)
+                .putInt(8 + body.length)
+                .put(fourCc(type))
+                .put(body)
+                .array();
+    }
+
+    private static byte[] payload(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] fourCc(String type) {
+        return type.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,148 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * تسليم الإطارات بدقة المستهلك: الإطار المطابق يمر كما هو، وغيره يُحجَّم دون إزاحة الألوان
+ */
+public class ScaledFrameSourceTest {
+
+    @Test
+    public void matchingFrameIsUntouched() throws Exception {
+        SyntheticFrameSource synthetic = new SyntheticFrameSource(64, 48, 30,
+                SyntheticFrameSource.PATTERN_GRADIENT_SWEEP, 3, false);
+        byte[] expected = new byte[FrameBuffer.nv21Size(64, 48)];
+        synthetic.renderFrame(0, expected);
+
+        FrameBuffer out = new FrameBuffer(64, 48);
+        ScaledFrameSource scaled = new ScaledFrameSource(new FixedSource(expected, 64, 48, 9), 64, 48, null);
+        scaled.open();
+        assertTrue(scaled.read(out));
+        assertArrayEquals(expected, Arrays.copyOf(out.getData(), out.getSize()));
+        assertEquals(9, out.getSequence());
+    }
+
+    @Test
+    public void largerFrameIsScaledDown() throws Exception {
+        FramePipelineMetrics metrics = new FramePipelineMetrics();
+        ScaledFrameSource scaled = new ScaledFrameSource(new FixedSource(uniform(1920, 1080, 90, 200, 60),
+                1920, 1080, 4), 1280, 720, metrics);
+        FrameBuffer out = new FrameBuffer(1280, 720);
+
+        assertTrue(scaled.read(out));
+        assertEquals(1280, out.getWidth());
+        assertEquals(720, out.getHeight());
+        assertEquals(4, out.getSequence());
+        assertArrayEquals(uniform(1280, 720, 90, 200, 60), Arrays.copyOf(out.getData(), out.getSize()));
+        assertEquals(1, metrics.snapshot().getStage(FramePipelineMetrics.STAGE_CONVERT).getCount());
+    }
+
+    @Test
+    public void oddSizesScaleUp() throws Exception {
+        ScaledFrameSource scaled = new ScaledFrameSource(new FixedSource(uniform(33, 17, 16, 128, 240),
+                33, 17, 1), 175, 99, null);
+        FrameBuffer out = new FrameBuffer(1, 1);
+
+        assertTrue(scaled.read(out));
+        assertArrayEquals(uniform(175, 99, 16, 128, 240), Arrays.copyOf(out.getData(), out.getSize()));
+    }
+
+    @Test
+    public void gradientStaysMonotonic() {
+        int width = 256;
+        byte[] src = new byte[FrameBuffer.nv21Size(width, 2)];
+        for (int x = 0; x < width; x++) {
+            src[x] = (byte) x;
+            src[width + x] = (byte) x;
+        }
+        byte[] dst = new byte[FrameBuffer.nv21Size(100, 2)];
+        Nv21Converter.scaleNv21(src, width, 2, dst, 100, 2);
+
+        for (int x = 1; x < 100; x++) {
+            assertTrue((dst[x] & 0xff) > (dst[x - 1] & 0xff));
+        }
+        // مراكز البكسلات متحاذية: الطرفان قريبان من طرفي المصدر دون انزياح
+        assertTrue((dst[0] & 0xff) <= 2);
+        assertTrue((dst[99] & 0xff) >= 253);
+    }
+
+    @Test
+    public void planesAreSubsampledByStep() {
+        // مستوى Y قيمته رقم العمود، ومستويا U و V المتداخلان (خطوة بكسل 2) قيمتهما رقم عمود العينة
+        int width = 8;
+        int height = 4;
+        byte[] luma = new byte[width * height];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) (i % width);
+        }
+        byte[] chroma = new byte[width * height / 2];
+        for (int i = 0; i < chroma.length; i++) {
+            chroma[i] = (byte) ((i % width) / 2);
+        }
+        byte[] nv21 = new byte[FrameBuffer.nv21Size(4, 2)];
+        Nv21Converter.planesToNv21(ByteBuffer.wrap(luma), width, ByteBuffer.wrap(chroma),
+                ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice(), width, 2, width, height, 2, nv21);
+
+        assertArrayEquals(new byte[] {0, 2, 4, 6, 0, 2, 4, 6, 0, 0, 2, 2}, nv21);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptySizeIsRejected() {
+        new ScaledFrameSource(new FixedSource(new byte[0], 0, 0, 0), 0, 720, null);
+    }
+
+    private static byte[] uniform(int width, int height, int luma, int v, int u) {
+        byte[] nv21 = new byte[FrameBuffer.nv21Size(width, height)];
+        Arrays.fill(nv21, 0, width * height, (byte) luma);
+        for (int i = width * height; i < nv21.length; i += 2) {
+            nv21[i] = (byte) v;
+            nv21[i + 1] = (byte) u;
+        }
+        return nv21;
+    }
+
+    /**
+     * مصدر يكتب الإطار نفسه بأبعاده الأصلية في كل قراءة
+     */
+    private static class FixedSource implements FrameSource {
+        private final byte[] mFrame;
+        private final int mWidth;
+        private final int mHeight;
+        private final long mSequence;
+
+        FixedSource(byte[] frame, int width, int height, long sequence) {
+            mFrame = frame;
+            mWidth = width;
+            mHeight = height;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public boolean read(FrameBuffer out) {
+            out.resize(mWidth, mHeight);
+            System.arraycopy(mFrame, 0, out.getData(), 0, mFrame.length);
+            out.setSequence(mSequence);
+            return true;
+        }
+
+        @Override
+        public int getNativeFrameRate() {
+            return 30;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * القارئ يفك التشفير محلياً ما دام الخادم غير حي أو لم ينشر بعد، ويترك الاحتياطي مع أول إطار من الخادم
+ */
+public class SharedFrameClientTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void fallbackUntilServerPublishes() throws IOException {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        SharedFrameRegion writer = SharedFrameRegion.create(file, 32, 24);
+        FallbackSource fallback = new FallbackSource();
+        SharedFrameClient client = new SharedFrameClient(file, () -> fallback);
+        FrameBuffer out = new FrameBuffer(1, 1);
+
+        client.open();
+        // الخادم حي لكن خط معالجته لم ينشر بعد
+        assertTrue(client.read(out));
+        assertEquals(1, fallback.opens);
+        assertEquals(FallbackSource.MARK, out.getData()[0]);
+        assertTrue(writer.getReaderIdleNanos() < SharedFrameClient.SERVER_STALE_NANOS);
+
+        FrameBuffer frame = new FrameBuffer(32, 24);
+        Arrays.fill(frame.getData(), (byte) 9);
+        writer.publish(frame, 30);
+        assertTrue(client.read(out));
+        assertEquals(9, out.getData()[0]);
+        assertEquals(32, out.getWidth());
+        assertEquals(1, fallback.closes); // أُغلق الاحتياطي مع أول إطار من الخادم
+        assertEquals(30, client.getNativeFrameRate());
+
+        client.close();
+        assertEquals(1, fallback.closes);
+    }
+
+    @Test
+    public void missingServerDecodesLocally() throws IOException {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        FallbackSource fallback = new FallbackSource();
+        SharedFrameClient client = new SharedFrameClient(file, () -> fallback);
+        FrameBuffer out = new FrameBuffer(1, 1);
+
+        assertFalse(SharedFrameClient.isServerAlive(file));
+        client.open();
+        assertTrue(client.read(out));
+        assertTrue(client.read(out));
+        assertEquals(2, fallback.reads);
+        assertEquals(15, client.getNativeFrameRate());
+        client.close();
+        assertEquals(1, fallback.closes);
+    }
+
+    @Test
+    public void headerProbeDoesNotNeedMapping() throws IOException {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        SharedFrameRegion.create(file, 32, 24);
+        assertTrue(SharedFrameRegion.readServerIdleNanos(file) < SharedFrameClient.SERVER_STALE_NANOS);
+        assertTrue(SharedFrameClient.isServerAlive(file));
+
+        File other = mFolder.newFile("other.bin");
+        Files.write(other.toPath(), new byte[256]);
+        assertFalse(SharedFrameClient.isServerAlive(other));
+    }
+
+    /**
+     * مصدر محلي يكتب إطاراً مميزاً بحجم مختلف عن إطارات الخادم
+     */
+    private static class FallbackSource implements FrameSource {
+        static final byte MARK = 42;
+        int opens;
+        int reads;
+        int closes;
+
+        @Override
+        public void open() {
+            opens++;
+        }
+
+        @Override
+        public boolean read(FrameBuffer out) {
+            reads++;
+            out.resize(8, 8);
+            Arrays.fill(out.getData(), 0, out.getSize(), MARK);
+            return true;
+        }
+
+        @Override
+        public int getNativeFrameRate() {
+            return 15;
+        }
+
+        @Override
+        public void close() {
+            closes++;
+        }
+    }
+}
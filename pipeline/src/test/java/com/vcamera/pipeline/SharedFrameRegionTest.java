@@ -0,0 +1,152 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * قفل التسلسل في المنطقة المشتركة: القارئ لا يرى إطاراً ممزقاً مهما تزامن مع الكاتب
+ */
+public class SharedFrameRegionTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readerSeesPublishedFrame() throws IOException {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        SharedFrameRegion writer = SharedFrameRegion.create(file, 64, 48);
+        SharedFrameRegion reader = SharedFrameRegion.open(file);
+        FrameBuffer out = new FrameBuffer(1, 1);
+
+        assertFalse(reader.read(out)); // لا إطار قبل النشر
+        assertEquals(0, reader.getLockSequence());
+
+        FrameBuffer frame = filledFrame(32, 24, 7);
+        frame.setTimestampNanos(1234);
+        assertTrue(writer.publish(frame, 25));
+
+        assertTrue(reader.read(out));
+        assertEquals(32, out.getWidth());
+        assertEquals(24, out.getHeight());
+        assertEquals(1234, out.getTimestampNanos());
+        assertEquals(7, out.getSequence());
+        assertEquals(25, reader.getFrameRate());
+        assertUniform(out);
+        assertEquals(2, reader.getLockSequence());
+    }
+
+    @Test
+    public void oversizedFrameIsRejected() throws IOException {
+        SharedFrameRegion writer = SharedFrameRegion.create(new File(mFolder.getRoot(), "frames.shm"), 32, 24);
+        assertFalse(writer.publish(filledFrame(64, 48, 1), 30));
+        assertEquals(1, writer.getRejectedCount());
+        assertEquals(0, writer.getLockSequence());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readerCannotPublish() throws IOException {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        SharedFrameRegion.create(file, 32, 24);
+        SharedFrameRegion.open(file).publish(filledFrame(32, 24, 1), 30);
+    }
+
+    @Test(expected = IOException.class)
+    public void foreignFileIsRejected() throws IOException {
+        File file = mFolder.newFile("other.bin");
+        Files.write(file.toPath(), new byte[256]);
+        SharedFrameRegion.open(file);
+    }
+
+    @Test
+    public void heartbeats() throws IOException {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        SharedFrameRegion writer = SharedFrameRegion.create(file, 32, 24);
+        SharedFrameRegion reader = SharedFrameRegion.open(file);
+
+        assertTrue(reader.getServerIdleNanos() < SharedFrameClient.SERVER_STALE_NANOS);
+        reader.touchReader();
+        assertTrue(writer.getReaderIdleNanos() < SharedFrameClient.SERVER_STALE_NANOS);
+    }
+
+    @Test
+    public void concurrentReadsAreNeverTorn() throws Exception {
+        File file = new File(mFolder.getRoot(), "frames.shm");
+        final SharedFrameRegion writer = SharedFrameRegion.create(file, 160, 120);
+        final SharedFrameRegion reader = SharedFrameRegion.open(file);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // الكاتب يبدل الأبعاد والمحتوى مع كل إطار؛ أي خلط بين إطارين يكسر تجانس البايتات أو الحجم
+        Thread writerThread = new Thread(() -> {
+            FrameBuffer small = filledFrame(80, 60, 0);
+            FrameBuffer large = filledFrame(160, 120, 0);
+            for (int sequence = 1; sequence <= 20000; sequence++) {
+                FrameBuffer frame = (sequence & 1) != 0 ? small : large;
+                fill(frame, sequence);
+                writer.publish(frame, 30);
+            }
+            done.set(true);
+        });
+
+        Thread readerThread = new Thread(() -> {
+            FrameBuffer out = new FrameBuffer(1, 1);
+            try {
+                while (!done.get()) {
+                    if (reader.read(out)) {
+                        int expectedWidth = (out.getSequence() & 1) != 0 ? 80 : 160;
+                        assertEquals(expectedWidth, out.getWidth());
+                        assertEquals((byte) out.getSequence(), out.getData()[0]);
+                        assertUniform(out);
+                    }
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+
+        readerThread.start();
+        writerThread.start();
+        writerThread.join();
+        readerThread.join();
+        if (failure.get() != null) {
+            throw new AssertionError("torn read", failure.get());
+        }
+
+        FrameBuffer last = new FrameBuffer(1, 1);
+        assertTrue(reader.read(last));
+        assertEquals(20000, last.getSequence());
+    }
+
+    private static FrameBuffer filledFrame(int width, int height, long sequence) {
+        FrameBuffer frame = new FrameBuffer(width, height);
+        fill(frame, sequence);
+        return frame;
+    }
+
+    private static void fill(FrameBuffer frame, long sequence) {
+        Arrays.fill(frame.getData(), 0, frame.getSize(), (byte) sequence);
+        frame.setSequence(sequence);
+    }
+
+    private static void assertUniform(FrameBuffer frame) {
+        byte[] data = frame.getData();
+        for (int i = 1; i < frame.getSize(); i++) {
+            if (data[i] != data[0]) {
+                fail("byte " + i + " of frame " + frame.getSequence() + " differs");
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * مشاركة مصدر واحد بين عدة قراء: فتح وإغلاق مرة واحدة، وقراءة جديدة فقط عند حلول موعدها
+ */
+public class SharedFrameSourcesTest {
+    private final ManualFrameClock mClock = new ManualFrameClock();
+    private final SharedFrameSources mSources = new SharedFrameSources(mClock);
+
+    @Test
+    public void viewsOfSameKeyShareOneSource() throws Exception {
+        final int[] created = {0};
+        final CountingSource source = new CountingSource(30);
+        SharedFrameSources.Factory factory = () -> {
+            created[0]++;
+            return source;
+        };
+
+        FrameSource first = mSources.acquire("video:a", factory);
+        FrameSource second = mSources.acquire("video:a", factory);
+        FrameSource other = mSources.acquire("video:b", () -> new CountingSource(30));
+
+        assertEquals(1, created[0]);
+        assertEquals(2, mSources.size());
+        assertEquals(0, source.opens); // العرض لا يلمس المصدر قبل فتحه
+
+        first.open();
+        second.open();
+        assertEquals(1, source.opens);
+
+        first.close();
+        assertEquals(0, source.closes);
+        second.close();
+        assertEquals(1, source.closes);
+        assertEquals(1, mSources.size());
+
+        other.close();
+        assertEquals(0, mSources.size());
+    }
+
+    @Test
+    public void readersShareDecodedFrame() throws Exception {
+        CountingSource source = new CountingSource(30);
+        FrameSource first = mSources.acquire("video:a", () -> source);
+        FrameSource second = mSources.acquire("video:a", () -> source);
+        first.open();
+        second.open();
+        FrameBuffer firstOut = new FrameBuffer(4, 4);
+        FrameBuffer secondOut = new FrameBuffer(4, 4);
+
+        assertTrue(first.read(firstOut));
+        assertTrue(second.read(secondOut));
+        assertEquals(1, source.reads);
+        assertEquals(firstOut.getData()[0], secondOut.getData()[0]);
+
+        // قبل موعد الإطار التالي: نسخة من الإطار المشترك دون قراءة جديدة
+        mClock.advanceNanos(10000000L);
+        assertTrue(first.read(firstOut));
+        assertEquals(1, source.reads);
+
+        // بعد حلول الموعد: أول قارئ رأى الإطار الحالي يقرأ التالي، والآخر يأخذه دون قراءة
+        mClock.advanceNanos(30000000L);
+        assertTrue(first.read(firstOut));
+        assertTrue(second.read(secondOut));
+        assertEquals(2, source.reads);
+        assertEquals(2, firstOut.getData()[0]);
+        assertEquals(2, secondOut.getData()[0]);
+    }
+
+    @Test
+    public void closedViewDoesNotRead() throws Exception {
+        CountingSource source = new CountingSource(30);
+        FrameSource view = mSources.acquire("video:a", () -> source);
+
+        assertFalse(view.read(new FrameBuffer(4, 4)));
+        view.open();
+        view.close();
+        assertFalse(view.read(new FrameBuffer(4, 4)));
+        assertEquals(0, source.reads);
+    }
+
+    @Test
+    public void reopenedSourceIsCreatedAgain() throws Exception {
+        final int[] created = {0};
+        SharedFrameSources.Factory factory = () -> {
+            created[0]++;
+            return new CountingSource(30);
+        };
+
+        mSources.acquire("video:a", factory).close();
+        mSources.acquire("video:a", factory).close();
+        assertEquals(2, created[0]);
+        assertEquals(0, mSources.size());
+    }
+
+    @Test
+    public void pressureReachesCurrentAndNewSources() throws Exception {
+        PressureSource current = new PressureSource();
+        FrameSource view = mSources.acquire("video:a", () -> current);
+        view.open();
+        FrameBuffer out = new FrameBuffer(1, 1);
+        assertTrue(view.read(out));
+        assertEquals(8, out.getWidth());
+
+        mSources.setPressureLevel(PressureAwareSource.PRESSURE_DOWNGRADE);
+        assertEquals(PressureAwareSource.PRESSURE_DOWNGRADE, current.level);
+        mClock.advanceNanos(1000000000L / 30);
+        assertTrue(view.read(out));
+        assertEquals(4, out.getWidth());
+
+        PressureSource later = new PressureSource();
+        mSources.acquire("video:b", () -> later);
+        assertEquals(PressureAwareSource.PRESSURE_DOWNGRADE, later.level);
+
+        mSources.setPressureLevel(PressureAwareSource.PRESSURE_NONE);
+        assertEquals(PressureAwareSource.PRESSURE_NONE, current.level);
+        assertEquals(PressureAwareSource.PRESSURE_NONE, later.level);
+    }
+
+    /**
+     * مصدر يكتب بنصف الدقة عند مستوى تخفيض الدقة أو أعلى
+     */
+    private static class PressureSource extends CountingSource implements PressureAwareSource {
+        int level = PRESSURE_NONE;
+
+        PressureSource() {
+            super(30);
+        }
+
+        @Override
+        public boolean read(FrameBuffer out) {
+            reads++;
+            int size = level >= PRESSURE_DOWNGRADE ? 4 : 8;
+            out.resize(size, size);
+            return true;
+        }
+
+        @Override
+        public void setPressureLevel(int level) {
+            this.level = level;
+        }
+    }
+
+    private static class CountingSource implements FrameSource {
+        final int nativeRate;
+        int reads;
+        int opens;
+        int closes;
+
+        CountingSource(int nativeRate) {
+            this.nativeRate = nativeRate;
+        }
+
+        @Override
+        public void open() {
+            opens++;
+        }
+
+        @Override
+        public boolean read(FrameBuffer out) {
+            reads++;
+            out.resize(4, 4);
+            out.getData()[0] = (byte) reads;
+            return true;
+        }
+
+        @Override
+        public int getNativeFrameRate() {
+            return nativeRate;
+        }
+
+        @Override
+        public void close() {
+            closes++;
+        }
+    }
+}
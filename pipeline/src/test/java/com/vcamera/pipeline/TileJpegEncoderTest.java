@@ -0,0 +1,125 @@
+package com.vcamera.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * ناتج المرمز ملف JPEG قياسي: يفكه ImageIO بالأبعاد الصحيحة وبألوان قريبة من الإطار الأصلي
+ */
+public class TileJpegEncoderTest {
+    // متوسط الفرق المسموح لكل قناة بجودة 90 (أخطاء التكميم وتنعيم اللون في 4:2:0)
+    private static final double MAX_MEAN_ERROR = 3.0;
+
+    private TileJpegEncoder mParallel = new TileJpegEncoder(4);
+
+    @After
+    public void tearDown() {
+        mParallel.shutdown();
+    }
+
+    @Test
+    public void singleStripeDecodesToSource() throws IOException {
+        assertDecodesToSource(new TileJpegEncoder(1), 320, 240);
+    }
+
+    @Test
+    public void restartStripesDecodeToSource() throws IOException {
+        assertDecodesToSource(mParallel, 640, 480);
+    }
+
+    @Test
+    public void partialMcusDecodeToSource() throws IOException {
+        // أبعاد ليست من مضاعفات 16 (وفردية) تُملأ بتكرار الحافة
+        assertDecodesToSource(mParallel, 250, 131);
+        assertDecodesToSource(new TileJpegEncoder(1), 101, 75);
+    }
+
+    @Test
+    public void stripeCountDoesNotChangeImage() throws IOException {
+        byte[] nv21 = frame(320, 240);
+        BufferedImage single = decode(encode(new TileJpegEncoder(1), nv21, 320, 240, 90));
+        BufferedImage striped = decode(encode(mParallel, nv21, 320, 240, 90));
+        // التقسيم يضيف علامات إعادة التشغيل فقط؛ الكتل نفسها ترمَّز بالطريقة ذاتها
+        for (int y = 0; y < 240; y++) {
+            for (int x = 0; x < 320; x++) {
+                assertEquals(single.getRGB(x, y), striped.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void lowerQualityIsSmaller() throws IOException {
+        byte[] nv21 = frame(320, 240);
+        assertTrue(encode(mParallel, nv21, 320, 240, 30).length < encode(mParallel, nv21, 320, 240, 95).length);
+    }
+
+    private void assertDecodesToSource(TileJpegEncoder encoder, int width, int height) throws IOException {
+        byte[] nv21 = frame(width, height);
+        BufferedImage image = decode(encode(encoder, nv21, width, height, 90));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+
+        long error = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int a = jfifToRgb(nv21, width, height, x, y);
+                int b = image.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    error += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                }
+            }
+        }
+        double meanError = (double) error / (width * height * 3);
+        assertTrue(width + "x" + height + " mean error " + meanError, meanError < MAX_MEAN_ERROR);
+    }
+
+    /**
+     * لون البكسل كما يفسره مفكك JPEG: المرمز يكتب عينات NV21 كما هي (مثل YuvImage) بمدى JFIF الكامل
+     */
+    private static int jfifToRgb(byte[] nv21, int width, int height, int x, int y) {
+        int uv = width * height + (y >> 1) * ((width + 1) / 2) * 2 + (x & ~1);
+        double luma = nv21[y * width + x] & 0xFF;
+        double cr = (nv21[uv] & 0xFF) - 128;
+        double cb = (nv21[uv + 1] & 0xFF) - 128;
+        int r = clamp(luma + 1.402 * cr);
+        int g = clamp(luma - 0.344136 * cb - 0.714136 * cr);
+        int b = clamp(luma + 1.772 * cb);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static byte[] encode(TileJpegEncoder encoder, byte[] nv21, int width, int height, int quality)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encodeNv21(nv21, width, height, quality, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("not a decodable JPEG", image);
+        return image;
+    }
+
+    private static byte[] frame(int width, int height) {
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height, 30,
+                SyntheticFrameSource.PATTERN_GRADIENT_SWEEP, 5, false);
+        byte[] nv21 = new byte[FrameBuffer.nv21Size(width, height)];
+        source.renderFrame(3, nv21);
+        return nv21;
+    }
+}
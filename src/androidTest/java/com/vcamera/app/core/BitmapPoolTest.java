@@ -0,0 +1,84 @@
+package com.vcamera.app.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * إعادة استخدام الصور وإعادة تشكيلها وإعادة المرشحة عند فشل فك التشفير (على جهاز)
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapPoolTest {
+
+    @Test
+    public void releasedBitmapIsReused() {
+        BitmapPool pool = new BitmapPool("test", 16L * 1024 * 1024);
+        Bitmap first = pool.acquire(320, 240, Bitmap.Config.ARGB_8888);
+        pool.release(first);
+
+        assertSame(first, pool.acquire(320, 240, Bitmap.Config.ARGB_8888));
+        assertEquals(1, pool.snapshot().getHits());
+    }
+
+    @Test
+    public void largerBitmapIsReconfigured() {
+        BitmapPool pool = new BitmapPool("test", 16L * 1024 * 1024);
+        Bitmap large = pool.acquire(640, 480, Bitmap.Config.ARGB_8888);
+        pool.release(large);
+
+        Bitmap small = pool.acquire(320, 200, Bitmap.Config.ARGB_8888);
+        assertSame(large, small);
+        assertEquals(320, small.getWidth());
+        assertEquals(200, small.getHeight());
+    }
+
+    @Test
+    public void retentionIsCapped() {
+        BitmapPool pool = new BitmapPool("test", 320 * 240 * 4);
+        Bitmap first = pool.acquire(320, 240, Bitmap.Config.ARGB_8888);
+        Bitmap second = pool.acquire(320, 240, Bitmap.Config.ARGB_8888);
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, pool.snapshot().getRetainedCount());
+        assertTrue(first.isRecycled());
+    }
+
+    @Test
+    public void corruptFileReturnsCandidateToPool() throws IOException {
+        BitmapPool pool = new BitmapPool("test", 16L * 1024 * 1024);
+        pool.setLeakTracking((poolName, acquireSite) -> {
+        });
+
+        // ترويسة PNG صالحة بأبعاد 64x64 وبيانات مقطوعة: الحدود تُقرأ وفك التشفير يفشل
+        File file = File.createTempFile("corrupt", ".png",
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] {
+                    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+                    0, 0, 0, 13, 'I', 'H', 'D', 'R', 0, 0, 0, 64, 0, 0, 0, 64, 8, 6, 0, 0, 0,
+                    (byte) 0xAA, 0x69, 0x71, (byte) 0xDE
+            });
+        }
+        try {
+            assertNull(pool.decodeFile(file.getPath(), 64, 64));
+            assertEquals(0, pool.snapshot().getOutstanding());
+            assertEquals(1, pool.snapshot().getRetainedCount());
+        } finally {
+            file.delete();
+        }
+    }
+}
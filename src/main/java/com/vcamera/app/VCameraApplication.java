@@ -3,14 +3,22 @@ package com.vcamera.app;
 import android.app.Application;
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.vcamera.app.core.AppIconCache;
 import com.vcamera.app.core.AppManager;
 import com.vcamera.app.core.CameraManager;
 import com.vcamera.app.core.ErrorLogger;
 import com.vcamera.app.core.PreferenceManager;
+import com.vcamera.app.virtual.ProcessRegistry;
+import com.vcamera.app.virtual.StubProcessPool;
 import com.vcamera.app.virtual.VirtualEnvironment;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 /**
  * التطبيق الرئيسي للكاميرا الافتراضية
  * يتم استدعاؤه عند بدء التطبيق ويقوم بتهيئة كل المكونات الأساسية
@@ -21,13 +29,16 @@ public class VCameraApplication extends Application {
     private static VCameraApplication sInstance;
     private VirtualEnvironment mVirtualEnvironment;
     private AppManager mAppManager;
-    private CameraManager mCameraManager;
+    private volatile CameraManager mCameraManager;
     private boolean mIsInitialized = false;
+    // ذاكرة الأيقونات ومجمع العمليات البديلة لا يعيشان إلا في العملية الرئيسية
+    private boolean mIsMainProcess = false;
     
     @Override
     public void onCreate() {
         super.onCreate();
         sInstance = this;
+        long startTime = SystemClock.elapsedRealtime();
         
         // تسجيل بدء التطبيق
         ErrorLogger.init(this);
@@ -48,12 +59,21 @@ public class VCameraApplication extends Application {
             // تحميل مدير التطبيقات
             mAppManager = new AppManager(this, mVirtualEnvironment);
             
-            // تحميل مدير الكاميرا
-            mCameraManager = new CameraManager(this);
+            // مدير الكاميرا يُنشأ عند أول طلب (getCameraManager) وليس عند بدء التطبيق
+            
+            // خادم الإطارات لا يبدأ هنا: يبدأ عند أول حاجة إليه عبر FrameServerProvider
+            // لا عمليات بديلة دافئة عند البدء: مسار الإطلاق الحالي لا يشغّل كود التطبيق فيها
+            String processName = getCurrentProcessName();
+            mIsMainProcess = getPackageName().equals(processName);
+            if (processName != null && !mIsMainProcess) {
+                // العمليات الأخرى تعلن بدءها لسجل العمليات في العملية الرئيسية (ويُعرف موتها بموت Binder الخاص بها)
+                ProcessRegistry.attachCurrentProcess(this, processName);
+            }
             
             // إنهاء التهيئة بنجاح
             mIsInitialized = true;
-            ErrorLogger.log(TAG, "Application initialized successfully");
+            ErrorLogger.log(TAG, "Application initialized successfully in "
+                    + (SystemClock.elapsedRealtime() - startTime) + " ms");
         } catch (Exception e) {
             // تسجيل خطأ التهيئة
             ErrorLogger.logError(TAG, "Failed to initialize application", e);
@@ -63,6 +83,28 @@ public class VCameraApplication extends Application {
         }
     }
     
+    /**
+     * اسم العملية الحالية؛ العملية الرئيسية للتطبيق اسمها اسم الحزمة، وغيرها عمليات تطبيقات معترَضة
+     * يُقرأ دون IPC لأنه يُستدعى في onCreate كل عملية
+     */
+    private String getCurrentProcessName() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return Application.getProcessName();
+        }
+        try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+            byte[] buffer = new byte[256];
+            int length = in.read(buffer);
+            int end = 0;
+            while (end < length && buffer[end] != 0) {
+                end++;
+            }
+            return end > 0 ? new String(buffer, 0, end, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            ErrorLogger.logError(TAG, "Failed to read process name", e);
+            return null;
+        }
+    }
+    
     /**
      * استعادة من خطأ التهيئة
      */
@@ -84,11 +126,6 @@ public class VCameraApplication extends Application {
                 mAppManager = new AppManager(this, mVirtualEnvironment);
             }
             
-            // تهيئة مدير الكاميرا
-            if (mCameraManager == null) {
-                mCameraManager = new CameraManager(this);
-            }
-            
             mIsInitialized = true;
             ErrorLogger.log(TAG, "Recovered with minimal initialization");
         } catch (Exception e) {
@@ -112,9 +149,12 @@ public class VCameraApplication extends Application {
     }
     
     /**
-     * الحصول على مدير الكاميرا
+     * الحصول على مدير الكاميرا (يُنشأ عند أول طلب)
      */
-    public CameraManager getCameraManager() {
+    public synchronized CameraManager getCameraManager() {
+        if (mCameraManager == null) {
+            mCameraManager = CameraManager.getInstance(this);
+        }
         return mCameraManager;
     }
     
@@ -132,6 +172,38 @@ public class VCameraApplication extends Application {
         return mIsInitialized;
     }
     
+    /**
+     * تمرير إشارات ضغط الذاكرة إلى مدير الكاميرا وذاكرة الأيقونات
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ErrorLogger.log(TAG, "onTrimMemory: " + level);
+        
+        // مدير لم يُنشأ بعد لا يملك ما يحرره
+        if (mCameraManager != null) {
+            mCameraManager.onTrimMemory(level);
+        }
+        // في العمليات المعترَضة يُنشئ getInstance المفرد من الصفر فقط ليحرره
+        if (mIsMainProcess) {
+            AppIconCache.getInstance(this).onTrimMemory(level);
+            StubProcessPool.getInstance(this).onTrimMemory(level);
+        }
+    }
+    
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        
+        if (mCameraManager != null) {
+            mCameraManager.onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+        if (mIsMainProcess) {
+            AppIconCache.getInstance(this).onTrimMemory(TRIM_MEMORY_COMPLETE);
+            StubProcessPool.getInstance(this).onTrimMemory(TRIM_MEMORY_COMPLETE);
+        }
+    }
+    
     @Override
     protected void attachBaseContext(Context base) {
         super.attachBaseContext(base);
@@ -0,0 +1,278 @@
+package com.vcamera.app.core;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ذاكرة تخزين مؤقت بمستويين لأيقونات التطبيقات الافتراضية
+ * الأيقونة تُرسم مرة واحدة من APK (عند التثبيت عادة) إلى PNG على القرص بحجم يناسب كثافة الشاشة،
+ * وفوقها LRU محدود في الذاكرة للصور المفكوكة بمفتاح (الحزمة، الإصدار، الكثافة)
+ */
+public class AppIconCache {
+    private static final String TAG = "AppIconCache";
+
+    // حجم أيقونة القائمة بوحدات dp
+    private static final int ICON_SIZE_DP = 48;
+    // حد ميزانية الذاكرة؛ الميزانية الفعلية جزء من ذاكرة التطبيق
+    private static final int MAX_MEMORY_BYTES = 8 * 1024 * 1024;
+    private static final int LOADER_THREADS = 2;
+
+    private static AppIconCache sInstance;
+
+    private final Context mContext;
+    private final File mDiskDir;
+    private final int mIconSize;
+    private final int mDensityDpi;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ExecutorService mLoader;
+    private final Handler mMainHandler;
+    // الطلبات الجارية ومستمعوها؛ ربط العنصر نفسه مرات متتالية لا يكرر التحميل
+    private final Map<String, List<Callback>> mPending = new HashMap<>();
+    // مفاتيح تعذر رسمها من APK؛ لا يُعاد تحليل APK عند كل ربط للعنصر حتى يتغير الإصدار أو يُعاد التثبيت
+    private final Set<String> mFailed = new HashSet<>();
+
+    /**
+     * مستمع اكتمال تحميل أيقونة (يُستدعى على الخيط الرئيسي)
+     */
+    public interface Callback {
+        void onIconLoaded(String packageName, Bitmap icon);
+    }
+
+    public static AppIconCache getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (AppIconCache.class) {
+                if (sInstance == null) {
+                    sInstance = new AppIconCache(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private AppIconCache(Context context) {
+        mContext = context;
+        mDiskDir = new File(context.getFilesDir(), "virtual_apps/icons");
+        mDensityDpi = context.getResources().getDisplayMetrics().densityDpi;
+        mIconSize = Math.round(ICON_SIZE_DP * context.getResources().getDisplayMetrics().density);
+
+        int budget = (int) Math.min(MAX_MEMORY_BYTES, Runtime.getRuntime().maxMemory() / 32);
+        mMemoryCache = new LruCache<String, Bitmap>(budget) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        mLoader = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "AppIconLoader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * الأيقونة من الذاكرة فقط، دون أي قراءة من القرص (آمنة على الخيط الرئيسي)
+     */
+    public Bitmap getIfCached(String packageName, int versionCode) {
+        return mMemoryCache.get(key(packageName, versionCode));
+    }
+
+    /**
+     * تحميل الأيقونة في الخلفية: من الذاكرة، ثم من القرص، ثم برسمها من APK
+     * @param callback يُستدعى على الخيط الرئيسي بالأيقونة، أو null إذا تعذر تحميلها
+     */
+    public void loadAsync(final String packageName, final int versionCode, final String apkPath,
+                          Callback callback) {
+        final String key = key(packageName, versionCode);
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            callback.onIconLoaded(packageName, cached);
+            return;
+        }
+
+        synchronized (mPending) {
+            List<Callback> callbacks = mPending.get(key);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            mPending.put(key, callbacks);
+        }
+
+        mLoader.execute(() -> {
+            final Bitmap icon = load(packageName, versionCode, apkPath);
+            final List<Callback> callbacks;
+            synchronized (mPending) {
+                callbacks = mPending.remove(key);
+            }
+            mMainHandler.post(() -> {
+                for (Callback pending : callbacks) {
+                    pending.onIconLoaded(packageName, icon);
+                }
+            });
+        });
+    }
+
+    /**
+     * تحميل الأيقونة بشكل متزامن (خارج الخيط الرئيسي)
+     * @return الأيقونة، أو null إذا تعذر رسمها من APK
+     */
+    public Bitmap load(String packageName, int versionCode, String apkPath) {
+        String key = key(packageName, versionCode);
+        Bitmap icon = mMemoryCache.get(key);
+        if (icon != null) {
+            return icon;
+        }
+
+        File diskFile = diskFile(packageName, versionCode);
+        if (diskFile.exists()) {
+            icon = BitmapFactory.decodeFile(diskFile.getAbsolutePath());
+        }
+        if (icon == null && apkPath != null && !isFailed(key)) {
+            icon = render(packageName, versionCode, apkPath);
+        }
+        if (icon != null) {
+            mMemoryCache.put(key, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * رسم الأيقونة إلى القرص مسبقاً (عند التثبيت) كي لا يحتاج عرض القائمة إلى فتح APK
+     */
+    public void prerender(String packageName, int versionCode, String apkPath) {
+        // تثبيت جديد للإصدار نفسه قد ينجح حيث فشل السابق
+        synchronized (mFailed) {
+            mFailed.remove(key(packageName, versionCode));
+        }
+        if (!diskFile(packageName, versionCode).exists()) {
+            render(packageName, versionCode, apkPath);
+        }
+    }
+
+    /**
+     * حذف كل أيقونات الحزمة من الذاكرة والقرص (عند الإزالة)
+     */
+    public void remove(String packageName) {
+        String prefix = packageName + "-";
+        for (String key : mMemoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mMemoryCache.remove(key);
+            }
+        }
+        synchronized (mFailed) {
+            for (Iterator<String> it = mFailed.iterator(); it.hasNext(); ) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+        File[] files = mDiskDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * الأيقونات على القرص تكفي لإعادة البناء، فتُفرغ الذاكرة عند الضغط
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mMemoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * رسم أيقونة APK بحجم القائمة وحفظها PNG (ملف مؤقت ثم نقل)
+     */
+    private Bitmap render(String packageName, int versionCode, String apkPath) {
+        try {
+            PackageManager pm = mContext.getPackageManager();
+            PackageInfo packageInfo = pm.getPackageArchiveInfo(apkPath, 0);
+            if (packageInfo == null || packageInfo.applicationInfo == null) {
+                markFailed(packageName, versionCode);
+                return null;
+            }
+            // الموارد تُقرأ من APK نفسه لا من حزمة مثبتة في النظام
+            ApplicationInfo ai = packageInfo.applicationInfo;
+            ai.sourceDir = apkPath;
+            ai.publicSourceDir = apkPath;
+            Drawable drawable = ai.loadIcon(pm);
+
+            Bitmap icon = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(icon);
+            drawable.setBounds(0, 0, mIconSize, mIconSize);
+            drawable.draw(canvas);
+
+            if (!mDiskDir.exists()) {
+                mDiskDir.mkdirs();
+            }
+            File diskFile = diskFile(packageName, versionCode);
+            File temp = new File(mDiskDir, diskFile.getName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            if (!temp.renameTo(diskFile)) {
+                temp.delete();
+                Log.w(TAG, "تعذر حفظ أيقونة " + packageName);
+            }
+            return icon;
+        } catch (Exception e) {
+            Log.w(TAG, "تعذر رسم أيقونة " + packageName, e);
+            markFailed(packageName, versionCode);
+            return null;
+        }
+    }
+
+    private boolean isFailed(String key) {
+        synchronized (mFailed) {
+            return mFailed.contains(key);
+        }
+    }
+
+    private void markFailed(String packageName, int versionCode) {
+        synchronized (mFailed) {
+            mFailed.add(key(packageName, versionCode));
+        }
+    }
+
+    private File diskFile(String packageName, int versionCode) {
+        return new File(mDiskDir, key(packageName, versionCode) + ".png");
+    }
+
+    private String key(String packageName, int versionCode) {
+        return packageName + "-" + versionCode + "-" + mDensityDpi;
+    }
+}
@@ -3,15 +3,12 @@ package com.vcamera.app.core;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.widget.Toast;
 
+import com.vcamera.app.virtual.AppRegistry;
 import com.vcamera.app.virtual.VirtualEnvironment;
 
 import java.io.File;
@@ -19,6 +16,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * مدير التطبيقات
@@ -32,6 +30,7 @@ public class AppManager implements VirtualEnvironment.VirtualAppLaunchListener {
     private final ExecutorService mExecutor;
     private final Handler mMainHandler;
     private final List<AppEventListener> mListeners;
+    private final AtomicBoolean mListChangePending = new AtomicBoolean(false);
     
     public AppManager(Context context, VirtualEnvironment virtualEnvironment) {
         mContext = context;
@@ -42,6 +41,9 @@ public class AppManager implements VirtualEnvironment.VirtualAppLaunchListener {
         
         // التسجيل كمستمع لأحداث إطلاق التطبيقات
         mVirtualEnvironment.addLaunchListener(this);
+        
+        // التطبيقات المحمَّلة في الخلفية تظهر تدريجياً بدل انتظار أبطأ APK
+        AppRegistry.getInstance(context).addListener(entry -> notifyAppListChanged());
     }
     
     /**
@@ -64,25 +66,15 @@ public class AppManager implements VirtualEnvironment.VirtualAppLaunchListener {
     
     /**
      * إنشاء معلومات التطبيق
+     * الإصدار ومسار APK من سجل التطبيقات؛ الأيقونة لا تُحمّل هنا بل يطلبها العرض من ذاكرة الأيقونات
      */
     private AppInfo createAppInfo(VirtualEnvironment.VirtualAppInfo virtualApp) {
         try {
             String packageName = virtualApp.getPackageName();
-            String appName = virtualApp.getAppName();
-            int userId = virtualApp.getUserId();
-            
-            // محاولة الحصول على أيقونة التطبيق - في تطبيق حقيقي سنستخدم PackageManager
-            Drawable icon = null;
-            try {
-                PackageManager pm = mContext.getPackageManager();
-                ApplicationInfo appInfo = pm.getApplicationInfo(packageName, 0);
-                icon = pm.getApplicationIcon(appInfo);
-            } catch (PackageManager.NameNotFoundException e) {
-                // استخدام أيقونة افتراضية
-                icon = null;
-            }
+            AppRegistry.Entry entry = AppRegistry.getInstance(mContext).get(packageName);
             
-            return new AppInfo(packageName, appName, userId, icon);
+            return new AppInfo(packageName, virtualApp.getAppName(), virtualApp.getUserId(),
+                    entry != null ? entry.versionCode : 0, entry != null ? entry.apkPath : null);
         } catch (Exception e) {
             ErrorLogger.logError(TAG, "Failed to create app info for " + virtualApp.getPackageName(), e);
             return null;
@@ -318,6 +310,21 @@ public class AppManager implements VirtualEnvironment.VirtualAppLaunchListener {
         mListeners.remove(listener);
     }
     
+    /**
+     * إشعار المستمعين بتغير القائمة؛ التحديثات المتتالية قبل تنفيذ الإشعار تُدمج في إشعار واحد
+     */
+    private void notifyAppListChanged() {
+        if (!mListChangePending.compareAndSet(false, true)) {
+            return;
+        }
+        mMainHandler.post(() -> {
+            mListChangePending.set(false);
+            for (AppEventListener listener : mListeners) {
+                listener.onAppListChanged();
+            }
+        });
+    }
+    
     /**
      * إشعار المستمعين بتثبيت تطبيق
      */
@@ -412,13 +419,15 @@ public class AppManager implements VirtualEnvironment.VirtualAppLaunchListener {
         private final String packageName;
         private final String appName;
         private final int userId;
-        private final Drawable icon;
+        private final int versionCode;
+        private final String apkPath;
         
-        public AppInfo(String packageName, String appName, int userId, Drawable icon) {
+        public AppInfo(String packageName, String appName, int userId, int versionCode, String apkPath) {
             this.packageName = packageName;
             this.appName = appName;
             this.userId = userId;
-            this.icon = icon;
+            this.versionCode = versionCode;
+            this.apkPath = apkPath;
         }
         
         public String getPackageName() {
@@ -433,8 +442,15 @@ public class AppManager implements VirtualEnvironment.VirtualAppLaunchListener {
             return userId;
         }
         
-        public Drawable getIcon() {
-            return icon;
+        public int getVersionCode() {
+            return versionCode;
+        }
+        
+        /**
+         * مسار APK داخل البيئة الافتراضية، أو null إذا لم يكن التطبيق في السجل
+         */
+        public String getApkPath() {
+            return apkPath;
         }
     }
 }
\ No newline at end of file
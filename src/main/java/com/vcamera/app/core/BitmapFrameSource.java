@@ -0,0 +1,51 @@
+package com.vcamera.app.core;
+
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FramePipelineMetrics;
+import com.vcamera.pipeline.FrameSource;
+
+/**
+ * محول مصدر الإطارات لمدير الكاميرا
+ * يقرأ الإطار الحالي (Bitmap) من مدير الكاميرا محولاً إلى NV21 لخط المعالجة
+ */
+public class BitmapFrameSource implements FrameSource {
+    private final CameraManager mCameraManager;
+    private final FramePipelineMetrics mMetrics;
+    private int[] mPixels;
+
+    public BitmapFrameSource(CameraManager cameraManager) {
+        mCameraManager = cameraManager;
+        mMetrics = cameraManager.getMetrics();
+    }
+
+    @Override
+    public void open() {
+        // مدير الكاميرا يدير دورة حياة المصدر الفعلي، ويجهزه الآن فقط لأن مستهلكاً اتصل
+        mCameraManager.onConsumerAttached();
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) {
+        long convertStart = System.nanoTime();
+        // مدير الكاميرا ينسخ الإطار تحت قفله، فلا يُعاد إطار إلى المجمع أثناء قراءته هنا
+        int[] pixels = mCameraManager.readCurrentFrame(out, mPixels);
+        if (pixels == null) {
+            return false;
+        }
+        mPixels = pixels;
+
+        mMetrics.recordStage(FramePipelineMetrics.STAGE_CONVERT, System.nanoTime() - convertStart);
+        mMetrics.onBytesConverted(out.getSize());
+        return true;
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        return mCameraManager.getSourceFrameRate();
+    }
+
+    @Override
+    public void close() {
+        mPixels = null;
+    }
+}
@@ -0,0 +1,241 @@
+package com.vcamera.app.core;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.vcamera.pipeline.LeakTracker;
+import com.vcamera.pipeline.PoolSnapshot;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * مجمع صور Bitmap قابلة لإعادة الاستخدام
+ * يعيد صورة بالأبعاد نفسها إن وجدت، وإلا يعيد تشكيل صورة أكبر (reconfigure)، ويستخدمها في فك التشفير عبر inBitmap
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    private final String mName;
+    private final LinkedList<Bitmap> mFreeBitmaps = new LinkedList<>();
+    private long mMaxRetainedBytes;
+    private long mRetainedBytes;
+    private long mHits;
+    private long mMisses;
+
+    private volatile LeakTracker<Bitmap> mLeakTracker;
+
+    public BitmapPool(String name, long maxRetainedBytes) {
+        mName = name;
+        mMaxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * تفعيل كشف التسرب أو تعطيله
+     * @param listener مستمع التسرب، أو null للتعطيل
+     */
+    public void setLeakTracking(LeakTracker.Listener listener) {
+        mLeakTracker = listener != null ? new LeakTracker<Bitmap>(mName, listener) : null;
+    }
+
+    /**
+     * استعارة صورة قابلة للتعديل بالأبعاد والتكوين المحددين
+     * محتوى الصورة غير محدد، وعلى المستدعي الكتابة فوقه بالكامل
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = takeFree(width, height, config);
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+        }
+
+        LeakTracker<Bitmap> tracker = mLeakTracker;
+        if (tracker != null) {
+            tracker.track(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * إعادة صورة إلى المجمع؛ يجب ألا يستخدمها المستدعي بعد ذلك
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        LeakTracker<Bitmap> tracker = mLeakTracker;
+        if (tracker != null) {
+            tracker.untrack(bitmap);
+        }
+
+        if (bitmap.isRecycled() || !bitmap.isMutable()) {
+            return; // لا يمكن إعادة استخدامها
+        }
+
+        int size = bitmap.getAllocationByteCount();
+        synchronized (this) {
+            if (size > mMaxRetainedBytes) {
+                bitmap.recycle();
+                return;
+            }
+            mFreeBitmaps.addFirst(bitmap);
+            mRetainedBytes += size;
+        }
+        trimToSize(mMaxRetainedBytes);
+    }
+
+    /**
+     * فك تشفير ملف صورة مع إعادة استخدام صورة من المجمع
+     * @param maxWidth العرض الأقصى المطلوب (لحساب معامل التصغير)
+     * @param maxHeight الارتفاع الأقصى المطلوب
+     */
+    public Bitmap decodeFile(String path, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // أكبر معامل تصغير (قوة من 2) يبقي الصورة أكبر من المطلوب
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= maxWidth && options.outHeight / (sampleSize * 2) >= maxHeight) {
+            sampleSize *= 2;
+        }
+
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap candidate = acquire(width, height, Bitmap.Config.ARGB_8888);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = candidate;
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // المفكك رفض الصورة المعاد استخدامها: فك تشفير عادي
+            Log.w(TAG, "تعذر إعادة استخدام الصورة في فك التشفير: " + path);
+            release(candidate);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        }
+
+        // ملف تالف أو غير مدعوم (null) أو صورة جديدة بدل المرشحة: المرشحة لم تُستخدم وتعود للمجمع
+        if (decoded != candidate) {
+            release(candidate);
+        }
+        return decoded;
+    }
+
+    /**
+     * تحجيم صورة إلى صورة من المجمع بالأبعاد المحددة
+     */
+    public Bitmap scale(Bitmap source, int width, int height) {
+        Bitmap scaled = acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(scaled);
+        canvas.drawBitmap(source, null, new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+        return scaled;
+    }
+
+    /**
+     * تقليص المجمع إلى الحد المحدد بتحرير الأقدم استخداماً أولاً
+     */
+    public void trimToSize(long maxBytes) {
+        while (true) {
+            Bitmap evicted;
+            synchronized (this) {
+                if (mRetainedBytes <= maxBytes || mFreeBitmaps.isEmpty()) {
+                    return;
+                }
+                evicted = mFreeBitmaps.removeLast();
+                mRetainedBytes -= evicted.getAllocationByteCount();
+            }
+            evicted.recycle();
+        }
+    }
+
+    /**
+     * تحرير جميع الصور المحتفظ بها
+     */
+    public void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * تعيين الحد الأقصى للحجم المحتفظ به
+     */
+    public void setMaxRetainedBytes(long maxRetainedBytes) {
+        synchronized (this) {
+            mMaxRetainedBytes = maxRetainedBytes;
+        }
+        trimToSize(maxRetainedBytes);
+    }
+
+    /**
+     * الحصول على لقطة من إحصاءات المجمع
+     */
+    public PoolSnapshot snapshot() {
+        LeakTracker<Bitmap> tracker = mLeakTracker;
+        int outstanding = 0;
+        long leaks = 0;
+        if (tracker != null) {
+            tracker.poll();
+            outstanding = tracker.getOutstanding();
+            leaks = tracker.getLeakCount();
+        }
+
+        synchronized (this) {
+            return new PoolSnapshot(mName, mHits, mMisses, mRetainedBytes, mFreeBitmaps.size(), outstanding, leaks);
+        }
+    }
+
+    /**
+     * أخذ صورة حرة مطابقة، أو أصغر صورة تتسع للأبعاد المطلوبة بعد إعادة تشكيلها
+     */
+    private synchronized Bitmap takeFree(int width, int height, Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        Bitmap best = null;
+
+        Iterator<Bitmap> iterator = mFreeBitmaps.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                best = bitmap;
+                break;
+            }
+            if (bitmap.getAllocationByteCount() >= needed
+                    && (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+
+        if (best == null) {
+            mMisses++;
+            return null;
+        }
+
+        mFreeBitmaps.remove(best);
+        mRetainedBytes -= best.getAllocationByteCount();
+        if (best.getWidth() != width || best.getHeight() != height || best.getConfig() != config) {
+            best.reconfigure(width, height, config);
+        }
+        mHits++;
+        return best;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -1,9 +1,9 @@
 package com.vcamera.app.core;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.hardware.Camera;
 import android.media.MediaPlayer;
 import android.net.Uri;
@@ -14,15 +14,35 @@ import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 
-import com.vcamera.app.utils.BitmapUtils;
+import com.vcamera.app.BuildConfig;
 import com.vcamera.app.utils.FileUtils;
 import com.vcamera.app.utils.MediaUtils;
+import com.vcamera.pipeline.ByteArrayPool;
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FrameClock;
+import com.vcamera.pipeline.FramePipelineMetrics;
+import com.vcamera.pipeline.FrameRecorder;
+import com.vcamera.pipeline.FrameSource;
+import com.vcamera.pipeline.LeakTracker;
+import com.vcamera.pipeline.Nv21Converter;
+import com.vcamera.pipeline.PlaybackControls;
+import com.vcamera.pipeline.PoolSnapshot;
+import com.vcamera.pipeline.RecordedFrameSource;
+import com.vcamera.pipeline.ScaledFrameSource;
+import com.vcamera.pipeline.SharedFrameClient;
+import com.vcamera.pipeline.SharedFrameSources;
+import com.vcamera.pipeline.SyntheticFrameSource;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * مدير الكاميرا الافتراضية
@@ -36,6 +56,8 @@ public class CameraManager {
     public static final int SOURCE_LOCAL_VIDEO = 1;
     public static final int SOURCE_NETWORK_VIDEO = 2;
     public static final int SOURCE_LOCAL_PICTURE = 3;
+    public static final int SOURCE_RECORDED_SESSION = 4;
+    public static final int SOURCE_SYNTHETIC = 5;
     
     // مصدر الكاميرا الحالي
     private int mCurrentSource = SOURCE_REAL_CAMERA;
@@ -54,16 +76,72 @@ public class CameraManager {
     private String mLocalVideoPath;
     private String mNetworkVideoUrl;
     private String mLocalPicturePath;
+    private String mRecordedSessionPath;
+    
+    // التحكم في تشغيل الفيديو المحلي (منطقة التكرار والسرعة والقفز)، تقرؤه مصادر الفيديو العاملة في كل إطار
+    private final PlaybackControls mVideoControls = new PlaybackControls();
+    
+    // نمط الاختبار الاصطناعي
+    private int mSyntheticPattern = SyntheticFrameSource.PATTERN_COLOR_BARS;
+    private long mSyntheticSeed = 0;
+    
+    // جدول الكاميرات الافتراضية (معرف الكاميرا = الفهرس) والمصادر الخاصة المشتركة بينها
+    private VirtualCameraConfig[] mCameraConfigs;
+    private final SharedFrameSources mSharedSources = new SharedFrameSources(FrameClock.SYSTEM);
+    
+    // خادم الإطارات؛ لا يعمل إلا في العملية الرئيسية، وبقية العمليات تقرأ مناطقه المشتركة
+    // يبدأ عند الطلب (أول تشغيل للكاميرا أو أول اتصال لخطافها) وليس عند بدء العملية
+    private volatile FrameServer mFrameServer;
+    private volatile boolean mIsFrameServerRequested = false;
+    // طلب بدء جارٍ على خيط في الخلفية؛ لا يُرسل غيره حتى يعود
+    private volatile boolean mIsFrameServerRequestPending = false;
+    
+    // تسجيل جلسات الكاميرا الحقيقية
+    private volatile FrameRecorder mSessionRecorder;
+    private int mRealPreviewWidth = 1280;
+    private int mRealPreviewHeight = 720;
+    // الأبعاد التي طبقتها الكاميرا فعلاً (قد تختلف عن المطلوبة)؛ 0 قبل أول تشغيل
+    private volatile int mAppliedPreviewWidth;
+    private volatile int mAppliedPreviewHeight;
+    
+    // مخازن معاينة الكاميرا الحقيقية المعاد استخدامها (setPreviewCallbackWithBuffer)
+    private static final int REAL_CALLBACK_BUFFER_COUNT = 3;
+    private final List<byte[]> mRealCallbackBuffers = new ArrayList<>();
+    private int[] mRealArgbPixels;
     
     // حالة الكاميرا
     private boolean mIsInitialized = false;
-    private boolean mIsCameraStarted = false;
+    private volatile boolean mIsCameraStarted = false;
+    
+    // التجهيز الكسول للمصدر: لا يُلمس المشغل أو المفككات أو الصور قبل اتصال أول مستهلك
+    // التجهيز والتحرير يجريان بالترتيب على منفذ الخلفية، ويُبطل التوليد المهام القديمة بعد الإيقاف
+    private boolean mIsSourcePrepareRequested = false;
+    private volatile int mSourceGeneration = 0;
+    private boolean mIsRuntimeStarted = false;
     
     // استرجاع الإطارات (Frames)
-    private static final int FRAME_RATE = 30;
+    private static final int DEFAULT_FRAME_RATE = 30;
+    // الصورة الثابتة لا تتغير، فيكفي تحويلها مرة كل ثانية ويُكرر الإطار بين ذلك
+    private static final int STATIC_FRAME_RATE = 1;
+    
+    // ميزانية ذاكرة تسلسل الإطارات ومستوى ضغط الذاكرة الحالي
+    private static final long FRAME_CACHE_BUDGET_BYTES = 96L * 1024 * 1024;
+    private volatile int mMemoryPressureLevel = FrameSequenceCache.PRESSURE_NONE;
+    private volatile int mSourceFrameRate = DEFAULT_FRAME_RATE;
     private VirtualCameraFrameProvider mFrameProvider;
     private Bitmap mCurrentFrameBitmap;
     
+    // مقاييس خط معالجة الإطارات
+    private static final long METRICS_DUMP_INTERVAL_MS = 60 * 1000L;
+    private final FramePipelineMetrics mMetrics = new FramePipelineMetrics();
+    private ScheduledExecutorService mMetricsDumpScheduler;
+    
+    // مجمعات الصور والمخازن المشتركة عبر خط المعالجة
+    private static final long BITMAP_POOL_MAX_BYTES = 48L * 1024 * 1024;
+    private static final long BUFFER_POOL_MAX_BYTES = 16L * 1024 * 1024;
+    private final BitmapPool mBitmapPool = new BitmapPool("bitmaps", BITMAP_POOL_MAX_BYTES);
+    private final ByteArrayPool mBufferPool = new ByteArrayPool("frame-buffers", BUFFER_POOL_MAX_BYTES);
+    
     // سياق التطبيق
     private final Context mContext;
     private final ErrorLogger mErrorLogger;
@@ -98,6 +176,14 @@ public class CameraManager {
         mExecutor = Executors.newSingleThreadExecutor();
         mMainHandler = new Handler(Looper.getMainLooper());
         
+        // كشف تسرب عناصر المجمعات في بناءات التصحيح فقط
+        if (BuildConfig.DEBUG) {
+            LeakTracker.Listener leakListener = (poolName, acquireSite) ->
+                    Log.w(TAG, "تسرب عنصر من المجمع " + poolName + " دون إعادته", acquireSite);
+            mBitmapPool.setLeakTracking(leakListener);
+            mBufferPool.setLeakTracking(leakListener);
+        }
+        
         // تحميل الإعدادات المحفوظة
         loadSettings();
     }
@@ -110,6 +196,29 @@ public class CameraManager {
         mLocalVideoPath = mPreferences.getString("local_video_path", "");
         mNetworkVideoUrl = mPreferences.getString("network_video_url", "");
         mLocalPicturePath = mPreferences.getString("local_picture_path", "");
+        mRecordedSessionPath = mPreferences.getString("recorded_session_path", "");
+        mSyntheticPattern = mPreferences.getInt("synthetic_pattern", SyntheticFrameSource.PATTERN_COLOR_BARS);
+        mSyntheticSeed = mPreferences.getLong("synthetic_seed", 0);
+        
+        long loopStartMs = mPreferences.getLong("video_loop_start_ms", 0);
+        long loopEndMs = mPreferences.getLong("video_loop_end_ms", -1);
+        if (loopEndMs > loopStartMs) {
+            mVideoControls.setLoopRegion(loopStartMs * 1000L, loopEndMs * 1000L);
+        }
+        float speed = mPreferences.getFloat("video_speed", 1f);
+        if (speed >= PlaybackControls.MIN_SPEED && speed <= PlaybackControls.MAX_SPEED) {
+            mVideoControls.setSpeed(speed);
+        }
+        
+        // جدول الكاميرات: الافتراضي يُكمل بما حُفظ لكل معرف
+        VirtualCameraConfig[] defaults = VirtualCameraConfig.createDefaults();
+        int cameraCount = Math.max(1, mPreferences.getInt("camera_count", defaults.length));
+        VirtualCameraConfig[] configs = new VirtualCameraConfig[cameraCount];
+        for (int i = 0; i < cameraCount; i++) {
+            VirtualCameraConfig fallback = i < defaults.length ? defaults[i] : new VirtualCameraConfig.Builder(i).build();
+            configs[i] = VirtualCameraConfig.load(mPreferences, fallback);
+        }
+        mCameraConfigs = configs;
     }
     
     /**
@@ -121,9 +230,137 @@ public class CameraManager {
                 .putString("local_video_path", mLocalVideoPath != null ? mLocalVideoPath : "")
                 .putString("network_video_url", mNetworkVideoUrl != null ? mNetworkVideoUrl : "")
                 .putString("local_picture_path", mLocalPicturePath != null ? mLocalPicturePath : "")
+                .putString("recorded_session_path", mRecordedSessionPath != null ? mRecordedSessionPath : "")
+                .putInt("synthetic_pattern", mSyntheticPattern)
+                .putLong("synthetic_seed", mSyntheticSeed)
+                .putLong("video_loop_start_ms", mVideoControls.getLoopStartUs() / 1000L)
+                .putLong("video_loop_end_ms", mVideoControls.getLoopEndUs() >= 0 ? mVideoControls.getLoopEndUs() / 1000L : -1)
+                .putFloat("video_speed", mVideoControls.getSpeed())
                 .apply();
     }
     
+    /**
+     * حفظ جدول الكاميرات
+     */
+    private void saveCameraConfigs() {
+        VirtualCameraConfig[] configs = mCameraConfigs;
+        SharedPreferences.Editor editor = mPreferences.edit().putInt("camera_count", configs.length);
+        for (VirtualCameraConfig config : configs) {
+            config.save(editor);
+        }
+        editor.apply();
+    }
+    
+    /**
+     * عدد الكاميرات الافتراضية (إجابة Camera.getNumberOfCameras)
+     */
+    public int getCameraCount() {
+        return mCameraConfigs.length;
+    }
+    
+    /**
+     * تكوين الكاميرا بالمعرف المحدد، أو null إذا لم يكن في الجدول
+     */
+    public VirtualCameraConfig getCameraConfig(int cameraId) {
+        VirtualCameraConfig[] configs = mCameraConfigs;
+        return cameraId >= 0 && cameraId < configs.length ? configs[cameraId] : null;
+    }
+    
+    /**
+     * إضافة كاميرا إلى الجدول أو استبدال تكوينها؛ المعرفات متتالية، فالمعرف الجديد هو عدد الكاميرات الحالي
+     * التغيير يسري على الكاميرات التي تُفتح بعده
+     */
+    public boolean setCameraConfig(VirtualCameraConfig config) {
+        synchronized (this) {
+            VirtualCameraConfig[] configs = mCameraConfigs;
+            int cameraId = config.getCameraId();
+            if (cameraId < 0 || cameraId > configs.length) {
+                mErrorLogger.logError(TAG, "معرف كاميرا غير صالح: " + cameraId);
+                return false;
+            }
+            
+            VirtualCameraConfig[] updated = Arrays.copyOf(configs, Math.max(configs.length, cameraId + 1));
+            updated[cameraId] = config;
+            mCameraConfigs = updated;
+            saveCameraConfigs();
+        }
+        
+        Log.i(TAG, "تحديث تكوين الكاميرا: " + config);
+        invalidateFrameServer();
+        return true;
+    }
+    
+    /**
+     * بدء خادم الإطارات المشترك (في العملية الرئيسية فقط)
+     * بعده تفك هذه العملية وحدها تشفير المصادر، وتقرأ العمليات المعترَضة الإطارات من الذاكرة المشتركة
+     */
+    public boolean startFrameServer() {
+        try {
+            synchronized (this) {
+                if (mFrameServer == null) {
+                    mFrameServer = new FrameServer(mContext, this);
+                }
+            }
+            mFrameServer.start();
+            return true;
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء بدء خادم الإطارات", e);
+            return false;
+        }
+    }
+    
+    /**
+     * طلب بدء خادم الإطارات على خيط في الخلفية، طلب واحد جارٍ في كل مرة
+     * الاستدعاء عبر مقدم المحتوى متزامن وقد يبدأ العملية الرئيسية من الصفر، فلا يُنتظر على خيط المستدعي
+     * (خيط المعاينة أو الواجهة في التطبيق المعترَض)
+     */
+    private void requestFrameServerAsync() {
+        if (mFrameServer != null || mIsFrameServerRequestPending) {
+            return;
+        }
+        mIsFrameServerRequestPending = true;
+        Thread frameServerStarter = new Thread(() -> {
+            try {
+                requestFrameServer();
+            } finally {
+                mIsFrameServerRequestPending = false;
+            }
+        }, "FrameServerStart");
+        frameServerStarter.setDaemon(true);
+        frameServerStarter.start();
+    }
+    
+    /**
+     * طلب بدء خادم الإطارات في العملية الرئيسية (عبر FrameServerProvider) إن لم يكن يعمل في هذه العملية
+     * @return true إذا قَبِل الخادم الطلب
+     */
+    private boolean requestFrameServer() {
+        if (mFrameServer != null) {
+            return true;
+        }
+        try {
+            Uri uri = Uri.parse("content://" + mContext.getPackageName() + FrameServerProvider.AUTHORITY_SUFFIX);
+            return mContext.getContentResolver().call(uri, FrameServerProvider.METHOD_START, null, null) != null;
+        } catch (Exception e) {
+            Log.w(TAG, "تعذر طلب بدء خادم الإطارات", e);
+            return false;
+        }
+    }
+    
+    /**
+     * إعادة تشغيل خطوط خادم الإطارات بعد تغيير المصدر أو التكوين
+     * خارج قفل المدير: الخادم يستدعي المدير وهو ممسك بقفله
+     */
+    private void invalidateFrameServer() {
+        FrameServer frameServer;
+        synchronized (this) {
+            frameServer = mFrameServer;
+        }
+        if (frameServer != null) {
+            frameServer.invalidate();
+        }
+    }
+    
     /**
      * تهيئة مدير الكاميرا
      */
@@ -138,15 +375,10 @@ public class CameraManager {
             // إنشاء مزود الإطارات الافتراضي
             mFrameProvider = new VirtualCameraFrameProvider();
             
-            // إنشاء الدليل المؤقت للكاميرا إذا لم يكن موجوداً
-            File vcamDir = new File(mContext.getFilesDir(), "vcam");
-            if (!vcamDir.exists()) {
-                vcamDir.mkdirs();
-            }
-            
             // تهيئة موفر الإطارات
             mFrameProvider.initialize();
             
+            // الدليل المؤقت والتفريغ الدوري للمقاييس يُجهزان مع أول مصدر (startRuntime)
             mIsInitialized = true;
             Log.i(TAG, "تم تهيئة مدير الكاميرا بنجاح");
             return true;
@@ -170,83 +402,166 @@ public class CameraManager {
             stopCamera(); // إيقاف الكاميرا الحالية أولاً
         }
         
-        try {
-            Log.i(TAG, "بدء تشغيل الكاميرا بالمصدر: " + getSourceName(mCurrentSource));
-            
+        if (mCurrentSource < SOURCE_REAL_CAMERA || mCurrentSource > SOURCE_SYNTHETIC) {
+            mErrorLogger.logError(TAG, "مصدر كاميرا غير معروف: " + mCurrentSource);
+            return false;
+        }
+        
+        // أول تشغيل للكاميرا يطلب خادم الإطارات
+        if (mFrameServer == null && !mIsFrameServerRequested) {
+            mIsFrameServerRequested = true;
+            requestFrameServerAsync();
+        }
+        
+        // تسجيل الطلب فقط؛ المصدر يُجهز عند اتصال أول مستهلك (onConsumerAttached)
+        Log.i(TAG, "بدء تشغيل الكاميرا بالمصدر: " + getSourceName(mCurrentSource) + " (تجهيز مؤجل)");
+        synchronized (this) {
             mOutputSurface = outputSurface;
+            mIsSourcePrepareRequested = false;
+            mIsCameraStarted = true;
+        }
+        return true;
+    }
+    
+    /**
+     * إشعار باتصال مستهلك يحتاج إطارات: يُجهَّز المصدر في الخلفية عند أول استدعاء بعد بدء الكاميرا
+     */
+    public synchronized void onConsumerAttached() {
+        if (!mIsInitialized || !mIsCameraStarted || mIsSourcePrepareRequested) {
+            return;
+        }
+        mIsSourcePrepareRequested = true;
+        
+        final int source = mCurrentSource;
+        final int generation = mSourceGeneration;
+        final long requestNanos = System.nanoTime();
+        mExecutor.execute(() -> prepareSource(source, generation, requestNanos));
+    }
+    
+    /**
+     * تجهيز المصدر فعلياً (على منفذ الخلفية)
+     */
+    private void prepareSource(int source, int generation, long requestNanos) {
+        if (generation != mSourceGeneration) {
+            return; // أُوقفت الكاميرا قبل وصول دور التجهيز
+        }
+        
+        try {
+            startRuntime();
             
-            switch (mCurrentSource) {
+            switch (source) {
                 case SOURCE_REAL_CAMERA:
                     startRealCamera();
                     break;
-                case SOURCE_LOCAL_VIDEO:
-                    startLocalVideo();
-                    break;
                 case SOURCE_NETWORK_VIDEO:
                     startNetworkVideo();
                     break;
                 case SOURCE_LOCAL_PICTURE:
                     startLocalPicture();
                     break;
-                default:
-                    mErrorLogger.logError(TAG, "مصدر كاميرا غير معروف: " + mCurrentSource);
-                    return false;
+                case SOURCE_RECORDED_SESSION:
+                    startRecordedSession();
+                    break;
+                case SOURCE_LOCAL_VIDEO:
+                    // VideoFrameSource يفك التشفير بنفسه عند فتح خط المعالجة
+                    Log.i(TAG, "بدء الفيديو المحلي: " + mLocalVideoPath);
+                    break;
+                case SOURCE_SYNTHETIC:
+                    Log.i(TAG, "بدء نمط الاختبار الاصطناعي: " + mSyntheticPattern + "، البذرة: " + mSyntheticSeed);
+                    break;
             }
             
-            mIsCameraStarted = true;
-            return true;
+            Log.i(TAG, "تم تجهيز المصدر " + getSourceName(source) + " خلال "
+                    + (System.nanoTime() - requestNanos) / 1000000L + " مللي ثانية");
         } catch (Exception e) {
-            mErrorLogger.logException(TAG, "خطأ أثناء بدء تشغيل الكاميرا", e);
-            return false;
+            mErrorLogger.logException(TAG, "خطأ أثناء تجهيز مصدر الكاميرا", e);
         }
     }
     
     /**
-     * إيقاف الكاميرا
+     * تحرير المصدر (على منفذ الخلفية، بعد أي تجهيز سابق له)
      */
-    public boolean stopCamera() {
-        if (!mIsInitialized) {
-            mErrorLogger.logError(TAG, "محاولة إيقاف الكاميرا قبل التهيئة");
-            return false;
-        }
-        
-        if (!mIsCameraStarted) {
-            return true; // الكاميرا متوقفة بالفعل
-        }
-        
+    private void releaseSource(int source) {
         try {
-            Log.i(TAG, "إيقاف الكاميرا...");
-            
-            switch (mCurrentSource) {
+            switch (source) {
                 case SOURCE_REAL_CAMERA:
                     stopRealCamera();
                     break;
-                case SOURCE_LOCAL_VIDEO:
-                    stopLocalVideo();
-                    break;
                 case SOURCE_NETWORK_VIDEO:
                     stopNetworkVideo();
                     break;
                 case SOURCE_LOCAL_PICTURE:
                     stopLocalPicture();
                     break;
+                case SOURCE_LOCAL_VIDEO:
+                case SOURCE_RECORDED_SESSION:
+                case SOURCE_SYNTHETIC:
+                    // خط المعالجة يغلق هذه المصادر بنفسه
+                    break;
             }
-            
-            mIsCameraStarted = false;
-            mOutputSurface = null;
-            
-            return true;
         } catch (Exception e) {
-            mErrorLogger.logException(TAG, "خطأ أثناء إيقاف الكاميرا", e);
+            mErrorLogger.logException(TAG, "خطأ أثناء تحرير مصدر الكاميرا", e);
+        }
+    }
+    
+    /**
+     * الموارد المشتركة التي لا يحتاجها إلا مصدر فعلي: الدليل المؤقت والتفريغ الدوري للمقاييس
+     */
+    private void startRuntime() {
+        if (mIsRuntimeStarted) {
+            return;
+        }
+        
+        // إنشاء الدليل المؤقت للكاميرا إذا لم يكن موجوداً
+        File vcamDir = new File(mContext.getFilesDir(), "vcam");
+        if (!vcamDir.exists()) {
+            vcamDir.mkdirs();
+        }
+        
+        // بدء التفريغ الدوري للمقاييس
+        startMetricsDump();
+        mIsRuntimeStarted = true;
+    }
+    
+    /**
+     * إيقاف الكاميرا
+     */
+    public boolean stopCamera() {
+        if (!mIsInitialized) {
+            mErrorLogger.logError(TAG, "محاولة إيقاف الكاميرا قبل التهيئة");
             return false;
         }
+        
+        if (!mIsCameraStarted) {
+            return true; // الكاميرا متوقفة بالفعل
+        }
+        
+        Log.i(TAG, "إيقاف الكاميرا...");
+        
+        // إبطال أي تجهيز لم يبدأ بعد، وتحرير ما جُهز بعد انتهائه على منفذ الخلفية نفسه
+        final boolean prepareRequested;
+        final int source = mCurrentSource;
+        synchronized (this) {
+            prepareRequested = mIsSourcePrepareRequested;
+            mIsSourcePrepareRequested = false;
+            mSourceGeneration++;
+            mIsCameraStarted = false;
+            mOutputSurface = null;
+        }
+        if (prepareRequested) {
+            mExecutor.execute(() -> releaseSource(source));
+        }
+        
+        mMemoryPressureLevel = FrameSequenceCache.PRESSURE_NONE;
+        mSharedSources.setPressureLevel(FrameSequenceCache.PRESSURE_NONE);
+        return true;
     }
     
     /**
      * تعيين مصدر الكاميرا
      */
     public boolean setSource(int source) {
-        if (source < SOURCE_REAL_CAMERA || source > SOURCE_LOCAL_PICTURE) {
+        if (source < SOURCE_REAL_CAMERA || source > SOURCE_SYNTHETIC) {
             mErrorLogger.logError(TAG, "مصدر كاميرا غير صالح: " + source);
             return false;
         }
@@ -265,6 +580,7 @@ public class CameraManager {
             // تعيين المصدر الجديد
             mCurrentSource = source;
             saveSettings();
+            invalidateFrameServer();
             
             // إعادة تشغيل الكاميرا إذا كانت قيد التشغيل
             if (wasStarted && currentSurface != null) {
@@ -292,6 +608,7 @@ public class CameraManager {
             Log.i(TAG, "تعيين مسار الفيديو المحلي: " + path);
             mLocalVideoPath = path;
             saveSettings();
+            invalidateFrameServer();
             
             // إذا كان المصدر الحالي هو الفيديو المحلي والكاميرا قيد التشغيل، قم بإعادة تشغيلها
             if (mCurrentSource == SOURCE_LOCAL_VIDEO && mIsCameraStarted) {
@@ -307,6 +624,67 @@ public class CameraManager {
         }
     }
     
+    /**
+     * تكرار منطقة من الفيديو المحلي فقط (مثلاً من 00:12 إلى 00:18)
+     * @param endMs نهاية المنطقة، أو قيمة سالبة حتى نهاية الملف
+     */
+    public boolean setVideoLoopRegion(long startMs, long endMs) {
+        try {
+            mVideoControls.setLoopRegion(startMs * 1000L, endMs >= 0 ? endMs * 1000L : -1);
+            Log.i(TAG, "تعيين منطقة تكرار الفيديو: " + startMs + " - " + endMs + " مللي ثانية");
+            saveSettings();
+            return true;
+        } catch (IllegalArgumentException e) {
+            mErrorLogger.logError(TAG, "منطقة تكرار غير صالحة: " + startMs + " - " + endMs);
+            return false;
+        }
+    }
+    
+    /**
+     * تكرار الفيديو المحلي كاملاً
+     */
+    public void clearVideoLoopRegion() {
+        mVideoControls.clearLoopRegion();
+        Log.i(TAG, "إلغاء منطقة تكرار الفيديو");
+        saveSettings();
+    }
+    
+    /**
+     * القفز إلى موضع في الفيديو المحلي؛ يبدأ فك التشفير من الإطار المفتاحي السابق له
+     */
+    public boolean seekVideo(long positionMs) {
+        if (positionMs < 0) {
+            mErrorLogger.logError(TAG, "موضع قفز غير صالح: " + positionMs);
+            return false;
+        }
+        
+        mVideoControls.seekTo(positionMs * 1000L);
+        Log.i(TAG, "القفز في الفيديو إلى: " + positionMs + " مللي ثانية");
+        return true;
+    }
+    
+    /**
+     * تعيين سرعة تشغيل الفيديو المحلي (1 = الطبيعية)
+     */
+    public boolean setVideoPlaybackSpeed(float speed) {
+        try {
+            mVideoControls.setSpeed(speed);
+            Log.i(TAG, "تعيين سرعة تشغيل الفيديو: " + speed);
+            saveSettings();
+            return true;
+        } catch (IllegalArgumentException e) {
+            mErrorLogger.logError(TAG, "سرعة تشغيل غير صالحة: " + speed);
+            return false;
+        }
+    }
+    
+    /**
+     * دليل فهارس العينات للفيديوهات المحلية
+     */
+    private File getVideoIndexDir() {
+        return new File(new File(mContext.getFilesDir(), "vcam"), "index");
+    }
+    
     /**
      * تعيين عنوان URL للفيديو الشبكي
      */
@@ -357,9 +735,7 @@ public class CameraManager {
                 startCamera(currentSurface);
             }
             
-            // تحميل الصورة مسبقاً
-            loadLocalPicture(path);
-            
+            // لا تحميل مسبق: الصورة تُفك عند تجهيز المصدر لأول مستهلك، وتعود إلى المجمع عند إيقافه
             return true;
         } catch (Exception e) {
             mErrorLogger.logException(TAG, "خطأ أثناء تعيين مسار الصورة المحلية", e);
@@ -368,14 +744,191 @@ public class CameraManager {
     }
     
     /**
-     * الحصول على الإطار الحالي من الكاميرا
+     * تعيين مسار الجلسة المسجلة لإعادة تشغيلها
      */
-    public Bitmap getCurrentFrame() {
+    public boolean setRecordedSessionPath(String path) {
+        try {
+            File sessionFile = new File(path);
+            if (!sessionFile.exists() || !sessionFile.canRead()) {
+                mErrorLogger.logError(TAG, "ملف الجلسة غير موجود أو غير قابل للقراءة: " + path);
+                return false;
+            }
+            
+            Log.i(TAG, "تعيين مسار الجلسة المسجلة: " + path);
+            mRecordedSessionPath = path;
+            saveSettings();
+            invalidateFrameServer();
+            return true;
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء تعيين مسار الجلسة المسجلة", e);
+            return false;
+        }
+    }
+    
+    /**
+     * تعيين نمط الاختبار الاصطناعي وبذرته
+     */
+    public boolean setSyntheticPattern(int pattern, long seed) {
+        if (pattern != SyntheticFrameSource.PATTERN_COLOR_BARS
+                && pattern != SyntheticFrameSource.PATTERN_GRADIENT_SWEEP) {
+            mErrorLogger.logError(TAG, "نمط اختبار غير صالح: " + pattern);
+            return false;
+        }
+        
+        Log.i(TAG, "تعيين نمط الاختبار الاصطناعي: " + pattern + "، البذرة: " + seed);
+        mSyntheticPattern = pattern;
+        mSyntheticSeed = seed;
+        saveSettings();
+        invalidateFrameServer();
+        return true;
+    }
+    
+    /**
+     * بدء تسجيل إطارات الكاميرا الحقيقية في ملف جلسة
+     * @return ملف الجلسة، أو null في حالة الفشل
+     */
+    public File startSessionRecording(boolean compress) {
+        if (mSessionRecorder != null) {
+            return mSessionRecorder.getFile();
+        }
+        
+        try {
+            File sessionsDir = new File(mContext.getFilesDir(), "vcam/sessions");
+            File sessionFile = new File(sessionsDir, "session_" + System.currentTimeMillis() + ".vcfr");
+            
+            // بأبعاد المعاينة المطبقة فعلاً، وإلا فالإطارات المقدمة لا تطابق حجم الإطار في الملف
+            int width = mAppliedPreviewWidth > 0 ? mAppliedPreviewWidth : mRealPreviewWidth;
+            int height = mAppliedPreviewHeight > 0 ? mAppliedPreviewHeight : mRealPreviewHeight;
+            FrameRecorder recorder = new FrameRecorder(sessionFile, width, height, compress);
+            recorder.start();
+            mSessionRecorder = recorder;
+            
+            Log.i(TAG, "بدء تسجيل الجلسة: " + sessionFile.getAbsolutePath());
+            return sessionFile;
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء بدء تسجيل الجلسة", e);
+            return null;
+        }
+    }
+    
+    /**
+     * إيقاف تسجيل الجلسة
+     */
+    public boolean stopSessionRecording() {
+        FrameRecorder recorder = mSessionRecorder;
+        if (recorder == null) {
+            return true;
+        }
+        mSessionRecorder = null;
+        
+        try {
+            recorder.stop();
+            Log.i(TAG, "تم إيقاف تسجيل الجلسة: " + recorder.getFramesWritten() + " إطار، "
+                    + recorder.getFramesDropped() + " مسقط");
+            return true;
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء إيقاف تسجيل الجلسة", e);
+            return false;
+        }
+    }
+    
+    /**
+     * إنشاء مصدر إطارات NV21 لخط المعالجة حسب المصدر الحالي بالدقة والمعدل المطلوبين
+     */
+    public FrameSource createFrameSource(int width, int height, int frameRate) {
+        if (mCurrentSource == SOURCE_RECORDED_SESSION) {
+            // الإعادة تقرأ إطارات NV21 مباشرة من الملف دون المرور بـ Bitmap
+            return new RecordedFrameSource(new File(mRecordedSessionPath), FrameClock.SYSTEM);
+        }
+        if (mCurrentSource == SOURCE_SYNTHETIC) {
+            // يولد NV21 مباشرة دون إدخال/إخراج أو تحويل
+            return new SyntheticFrameSource(width, height, frameRate, mSyntheticPattern, mSyntheticSeed);
+        }
+        if (mCurrentSource == SOURCE_LOCAL_VIDEO) {
+            // فك تشفير متدفق بدقة الملف، مع منطقة التكرار والسرعة والقفز
+            // عبر السجل المشترك كالكاميرات ذات التكوين الخاص، فيصلها ضغط الذاكرة ويُفك الملف مرة واحدة
+            final String path = mLocalVideoPath;
+            return mSharedSources.acquire("video:" + path,
+                    () -> new VideoFrameSource(path, mVideoControls, getVideoIndexDir(), mMetrics));
+        }
+        return new BitmapFrameSource(this);
+    }
+    
+    /**
+     * إنشاء مصدر إطارات للكاميرا الافتراضية بالمعرف المحدد
+     * خارج العملية الرئيسية تُقرأ إطارات خادم الإطارات المشتركة، ويُفك التشفير هنا ما دام الخادم غير حي
+     * (حتى يبدأ، أو بعد توقف نبضاته)؛ أول اتصال لخطاف الكاميرا يطلب بدء الخادم في الخلفية دون انتظاره
+     */
+    public FrameSource createFrameSource(final int cameraId, final int frameRate) {
+        if (mFrameServer != null) {
+            return createLocalFrameSource(cameraId, frameRate);
+        }
+        
+        File regionFile = FrameServer.getRegionFile(mContext, cameraId);
+        if (!SharedFrameClient.isServerAlive(regionFile)) {
+            requestFrameServerAsync();
+        }
+        Log.i(TAG, "الكاميرا " + cameraId + " تقرأ من خادم الإطارات متى كان حياً: " + regionFile);
+        VirtualCameraConfig config = getCameraConfig(cameraId);
+        FrameSource client = new SharedFrameClient(regionFile, () -> createLocalFrameSource(cameraId, frameRate));
+        // الخادم ينشر بدقة التكوين، والتحجيم هنا لا يكلف شيئاً إلا إذا تغير التكوين أثناء عمله
+        return config != null ? new ScaledFrameSource(client, config.getWidth(), config.getHeight(), mMetrics)
+                : client;
+    }
+    
+    /**
+     * إنشاء مصدر إطارات يفك التشفير في هذه العملية حسب تكوين الكاميرا
+     * المصادر الخاصة مشتركة بمفتاحها، فالكاميرات التي تعرض المصدر نفسه تفك تشفيره مرة واحدة
+     * الإطارات تُسلم دائماً بدقة التكوين التي تعلنها الكاميرا في getParameters؛ المصادر ذات الدقة الأصلية
+     * (الفيديو والجلسة المسجلة والكاميرا الحقيقية) تُحجَّم لكل كاميرا فوق المصدر المشترك
+     */
+    FrameSource createLocalFrameSource(int cameraId, int frameRate) {
+        VirtualCameraConfig config = getCameraConfig(cameraId);
+        if (config == null) {
+            config = new VirtualCameraConfig.Builder(cameraId).build();
+        }
+        final int width = config.getWidth();
+        final int height = config.getHeight();
+        final String path = config.getSourcePath();
+        
+        switch (config.getSourceType()) {
+            case SOURCE_LOCAL_VIDEO:
+                // بدقة الملف الأصلية، وبعناصر التحكم نفسها (منطقة التكرار والسرعة والقفز) كالمصدر العام
+                return new ScaledFrameSource(mSharedSources.acquire("video:" + path,
+                        () -> new VideoFrameSource(path, mVideoControls, getVideoIndexDir(), mMetrics)),
+                        width, height, mMetrics);
+            case SOURCE_LOCAL_PICTURE:
+                return mSharedSources.acquire("picture:" + path + ":" + width + "x" + height,
+                        () -> new PictureFrameSource(path, width, height, mBitmapPool));
+            case SOURCE_RECORDED_SESSION:
+                return new ScaledFrameSource(mSharedSources.acquire("session:" + path,
+                        () -> new RecordedFrameSource(new File(path), FrameClock.SYSTEM)),
+                        width, height, mMetrics);
+            case SOURCE_SYNTHETIC:
+                final int pattern = config.getSyntheticPattern();
+                final long seed = config.getSyntheticSeed();
+                return mSharedSources.acquire("synthetic:" + pattern + ":" + seed + ":" + width + "x" + height,
+                        () -> new SyntheticFrameSource(width, height, frameRate, pattern, seed));
+            default:
+                // الكاميرا الحقيقية والفيديو الشبكي والمصدر العام يمرون عبر مدير الكاميرا الواحد
+                return new ScaledFrameSource(createFrameSource(width, height, frameRate), width, height, mMetrics);
+        }
+    }
+    
+    /**
+     * نسخ الإطار الحالي من الكاميرا إلى مخزن NV21
+     * النسخ يتم تحت قفل موفر الإطارات، فلا يعود الإطار إلى المجمع أو يُعاد استخدامه أثناء قراءته
+     * @param pixels مصفوفة بكسلات مؤقتة يعاد استخدامها (تُستبدل إذا كانت أصغر من الإطار)
+     * @return مصفوفة البكسلات المستخدمة، أو null إذا لم يكن هناك إطار
+     */
+    public int[] readCurrentFrame(FrameBuffer out, int[] pixels) {
         if (!mIsInitialized || !mIsCameraStarted) {
             return null;
         }
         
-        return mFrameProvider.getCurrentFrame();
+        // أول طلب إطار يجهز المصدر؛ لا إطار حتى يكتمل التجهيز
+        onConsumerAttached();
+        return mFrameProvider.copyCurrentFrame(out, pixels);
     }
     
     /**
@@ -390,18 +943,50 @@ public class CameraManager {
             
             // تكوين الكاميرا
             mRealCameraParams = mRealCamera.getParameters();
-            mRealCameraParams.setPreviewSize(1280, 720);
+            mRealCameraParams.setPreviewSize(mRealPreviewWidth, mRealPreviewHeight);
             mRealCameraParams.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
             mRealCamera.setParameters(mRealCameraParams);
             
-            // تعيين معاينة الإخراج
-            mRealCamera.setPreviewCallback((data, camera) -> {
-                // تحويل بيانات معاينة الكاميرا إلى Bitmap
-                Camera.Size size = camera.getParameters().getPreviewSize();
-                Bitmap frameBitmap = BitmapUtils.convertYuvToBitmap(data, size.width, size.height);
+            // الأبعاد الفعلية تُقرأ مرة واحدة بدلاً من getParameters() في كل إطار
+            Camera.Parameters appliedParams = mRealCamera.getParameters();
+            final int previewWidth = appliedParams.getPreviewSize().width;
+            final int previewHeight = appliedParams.getPreviewSize().height;
+            mAppliedPreviewWidth = previewWidth;
+            mAppliedPreviewHeight = previewHeight;
+            mRealArgbPixels = new int[previewWidth * previewHeight];
+            
+            // المعدل الأصلي هو الحد الأعلى لنطاق المعاينة الفعلي (بوحدة إطار/ثانية × 1000)
+            int[] fpsRange = new int[2];
+            appliedParams.getPreviewFpsRange(fpsRange);
+            int realFrameRate = fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000;
+            mSourceFrameRate = realFrameRate > 0 ? realFrameRate : DEFAULT_FRAME_RATE;
+            
+            // تعيين معاينة الإخراج: الكاميرا تكتب في مخازن من المجمع تعاد إليها بعد كل إطار
+            int frameSize = FrameBuffer.nv21Size(previewWidth, previewHeight);
+            for (int i = 0; i < REAL_CALLBACK_BUFFER_COUNT; i++) {
+                byte[] buffer = mBufferPool.acquire(frameSize);
+                mRealCallbackBuffers.add(buffer);
+                mRealCamera.addCallbackBuffer(buffer);
+            }
+            
+            mRealCamera.setPreviewCallbackWithBuffer((data, camera) -> {
+                // تسليم الإطار الخام للمسجل (لا يحجب خيط المعاينة أبداً)
+                FrameRecorder recorder = mSessionRecorder;
+                if (recorder != null) {
+                    recorder.offer(data, frameSize, System.nanoTime());
+                }
+                
+                // تحويل بيانات معاينة الكاميرا إلى Bitmap من المجمع
+                long convertStart = System.nanoTime();
+                Bitmap frameBitmap = mBitmapPool.acquire(previewWidth, previewHeight, Bitmap.Config.ARGB_8888);
+                Nv21Converter.nv21ToArgb(data, previewWidth, previewHeight, mRealArgbPixels);
+                frameBitmap.setPixels(mRealArgbPixels, 0, previewWidth, 0, 0, previewWidth, previewHeight);
+                mMetrics.recordStage(FramePipelineMetrics.STAGE_CONVERT, System.nanoTime() - convertStart);
+                mMetrics.onBytesConverted(frameSize);
                 
-                // تحديث الإطار الحالي
+                // تحديث الإطار الحالي وإعادة المخزن للكاميرا
                 mFrameProvider.setCurrentFrame(frameBitmap);
+                camera.addCallbackBuffer(data);
             });
             
             // بدء المعاينة
@@ -418,73 +1003,24 @@ public class CameraManager {
      */
     private void stopRealCamera() {
         try {
+            // إنهاء أي تسجيل جلسة قيد التشغيل
+            stopSessionRecording();
+            
             if (mRealCamera != null) {
-                mRealCamera.setPreviewCallback(null);
+                mRealCamera.setPreviewCallbackWithBuffer(null);
                 mRealCamera.stopPreview();
                 mRealCamera.release();
                 mRealCamera = null;
             }
-        } catch (Exception e) {
-            mErrorLogger.logException(TAG, "خطأ أثناء إيقاف الكاميرا الحقيقية", e);
-        }
-    }
-    
-    /**
-     * بدء تشغيل الفيديو المحلي
-     */
-    private void startLocalVideo() {
-        try {
-            Log.i(TAG, "بدء تشغيل الفيديو المحلي: " + mLocalVideoPath);
             
-            if (mLocalVideoPath == null || mLocalVideoPath.isEmpty()) {
-                mErrorLogger.logError(TAG, "مسار الفيديو المحلي غير محدد");
-                return;
+            // الكاميرا محررة الآن، فمخازنها وإطاراتها تعود إلى المجمعات
+            for (byte[] buffer : mRealCallbackBuffers) {
+                mBufferPool.release(buffer);
             }
-            
-            File videoFile = new File(mLocalVideoPath);
-            if (!videoFile.exists() || !videoFile.canRead()) {
-                mErrorLogger.logError(TAG, "ملف الفيديو غير موجود أو غير قابل للقراءة: " + mLocalVideoPath);
-                return;
-            }
-            
-            // إنشاء مشغل الفيديو
-            mVideoPlayer = new MediaPlayer();
-            mVideoPlayer.setDataSource(mContext, Uri.fromFile(videoFile));
-            mVideoPlayer.setLooping(true);
-            mVideoPlayer.prepare();
-            
-            // إعداد استخراج الإطارات
-            MediaUtils.extractFramesFromVideo(mContext, mVideoPlayer, mLocalVideoPath, (frames) -> {
-                // بدء تحديث الإطارات
-                mFrameProvider.startFrameSequence(frames, FRAME_RATE);
-            });
-            
-            // بدء تشغيل الفيديو
-            mVideoPlayer.start();
-            
-            Log.i(TAG, "تم بدء تشغيل الفيديو المحلي بنجاح");
+            mRealCallbackBuffers.clear();
+            mFrameProvider.clearCurrentFrame();
         } catch (Exception e) {
-            mErrorLogger.logException(TAG, "خطأ أثناء بدء تشغيل الفيديو المحلي", e);
-        }
-    }
-    
-    /**
-     * إيقاف الفيديو المحلي
-     */
-    private void stopLocalVideo() {
-        try {
-            if (mVideoPlayer != null) {
-                if (mVideoPlayer.isPlaying()) {
-                    mVideoPlayer.stop();
-                }
-                mVideoPlayer.release();
-                mVideoPlayer = null;
-            }
-            
-            // إيقاف تسلسل الإطارات
-            mFrameProvider.stopFrameSequence();
-        } catch (Exception e) {
-            mErrorLogger.logException(TAG, "خطأ أثناء إيقاف الفيديو المحلي", e);
+            mErrorLogger.logException(TAG, "خطأ أثناء إيقاف الكاميرا الحقيقية", e);
         }
     }
     
@@ -500,6 +1036,9 @@ public class CameraManager {
                 return;
             }
             
+            // معدل البث غير معروف قبل التحميل
+            mSourceFrameRate = DEFAULT_FRAME_RATE;
+            
             // إنشاء مشغل الفيديو
             mVideoPlayer = new MediaPlayer();
             mVideoPlayer.setDataSource(mContext, Uri.parse(mNetworkVideoUrl));
@@ -513,7 +1052,7 @@ public class CameraManager {
                 // إعداد استخراج الإطارات
                 MediaUtils.extractFramesFromNetworkVideo(mContext, mVideoPlayer, mNetworkVideoUrl, (frames) -> {
                     // بدء تحديث الإطارات
-                    mFrameProvider.startFrameSequence(frames, FRAME_RATE);
+                    mFrameProvider.startFrameSequence(frames, mSourceFrameRate);
                 });
             });
             
@@ -567,6 +1106,7 @@ public class CameraManager {
             
             // تعيين الصورة كإطار ثابت
             mFrameProvider.setStaticFrame(imageBitmap);
+            mSourceFrameRate = STATIC_FRAME_RATE;
             
             Log.i(TAG, "تم بدء تشغيل الصورة المحلية بنجاح");
         } catch (Exception e) {
@@ -586,6 +1126,23 @@ public class CameraManager {
         }
     }
     
+    /**
+     * بدء إعادة تشغيل الجلسة المسجلة
+     */
+    private void startRecordedSession() {
+        Log.i(TAG, "بدء إعادة تشغيل الجلسة المسجلة: " + mRecordedSessionPath);
+        
+        if (mRecordedSessionPath == null || mRecordedSessionPath.isEmpty()) {
+            mErrorLogger.logError(TAG, "مسار الجلسة المسجلة غير محدد");
+            return;
+        }
+        
+        File sessionFile = new File(mRecordedSessionPath);
+        if (!sessionFile.exists() || !sessionFile.canRead()) {
+            mErrorLogger.logError(TAG, "ملف الجلسة غير موجود أو غير قابل للقراءة: " + mRecordedSessionPath);
+        }
+    }
+    
     /**
      * تحميل الصورة المحلية
      */
@@ -596,20 +1153,123 @@ public class CameraManager {
                 return null;
             }
             
-            // فك تشفير ملف الصورة إلى Bitmap
-            Bitmap originalBitmap = BitmapFactory.decodeFile(path);
+            // فك تشفير ملف الصورة إلى Bitmap (مصغرة أثناء فك التشفير وفي صورة من المجمع)
+            long decodeStart = System.nanoTime();
+            Bitmap originalBitmap = mBitmapPool.decodeFile(path, 1280, 720);
             if (originalBitmap == null) {
                 return null;
             }
             
             // ضبط حجم الصورة إلى الحجم المطلوب (720p)
-            return BitmapUtils.resizeBitmap(originalBitmap, 1280, 720);
+            Bitmap resizedBitmap = mBitmapPool.scale(originalBitmap, 1280, 720);
+            mBitmapPool.release(originalBitmap);
+            mMetrics.recordStage(FramePipelineMetrics.STAGE_DECODE, System.nanoTime() - decodeStart);
+            return resizedBitmap;
         } catch (Exception e) {
             mErrorLogger.logException(TAG, "خطأ أثناء تحميل الصورة المحلية", e);
             return null;
         }
     }
     
+    /**
+     * معدل الإطارات الأصلي للمصدر الحالي
+     */
+    public int getSourceFrameRate() {
+        return mSourceFrameRate;
+    }
+    
+    /**
+     * الاستجابة لإشارة ضغط الذاكرة من النظام (ComponentCallbacks2.onTrimMemory)
+     * الكاميرا الافتراضية تعمل داخل عملية التطبيق المضيف، لذا يجب التخفيف قبل أن يُقتل
+     */
+    public void onTrimMemory(int level) {
+        int pressure;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            pressure = FrameSequenceCache.PRESSURE_ON_DEMAND;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            pressure = FrameSequenceCache.PRESSURE_DOWNGRADE;
+        } else {
+            pressure = FrameSequenceCache.PRESSURE_SHED_LOOKAHEAD;
+        }
+        
+        // المستوى لا ينخفض إلا عند إيقاف الكاميرا
+        if (pressure <= mMemoryPressureLevel) {
+            return;
+        }
+        Log.i(TAG, "ضغط الذاكرة (المستوى " + level + "): تخفيف إلى " + pressure);
+        mMemoryPressureLevel = pressure;
+        
+        if (mFrameProvider != null) {
+            mFrameProvider.setPressureLevel(pressure);
+        }
+        // مصادر خط المعالجة (الفيديو المحلي وغيره) ومخازن إطاراتها المشتركة
+        mSharedSources.setPressureLevel(pressure);
+        
+        // المجمعات تُفرغ عند الضغط الشديد وتُقلص إلى النصف عند الضغط المتوسط
+        if (pressure >= FrameSequenceCache.PRESSURE_DOWNGRADE) {
+            mBitmapPool.clear();
+            mBufferPool.clear();
+        } else {
+            mBitmapPool.trimToSize(BITMAP_POOL_MAX_BYTES / 2);
+            mBufferPool.trimToSize(BUFFER_POOL_MAX_BYTES / 2);
+        }
+    }
+    
+    /**
+     * الحصول على لقطة من إحصاءات مجمع الصور
+     */
+    public PoolSnapshot getBitmapPoolSnapshot() {
+        return mBitmapPool.snapshot();
+    }
+    
+    /**
+     * الحصول على لقطة من إحصاءات مجمع المخازن
+     */
+    public PoolSnapshot getBufferPoolSnapshot() {
+        return mBufferPool.snapshot();
+    }
+    
+    /**
+     * الحصول على مقاييس خط معالجة الإطارات
+     */
+    public FramePipelineMetrics getMetrics() {
+        return mMetrics;
+    }
+    
+    /**
+     * الحصول على لقطة من مقاييس خط معالجة الإطارات
+     */
+    public FramePipelineMetrics.Snapshot getMetricsSnapshot() {
+        return mMetrics.snapshot();
+    }
+    
+    /**
+     * بدء التفريغ الدوري للمقاييس إلى مجلد السجلات
+     */
+    private void startMetricsDump() {
+        if (mMetricsDumpScheduler != null) {
+            return;
+        }
+        
+        mMetricsDumpScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "FrameMetricsDump");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        mMetricsDumpScheduler.scheduleAtFixedRate(() -> {
+            try {
+                if (mIsCameraStarted) {
+                    mMetrics.dumpTo(ErrorLogger.getLogDir());
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "فشل في تفريغ مقاييس الإطارات", e);
+            }
+        }, METRICS_DUMP_INTERVAL_MS, METRICS_DUMP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    
     /**
      * الحصول على اسم المصدر
      */
@@ -623,6 +1283,10 @@ public class CameraManager {
                 return "فيديو شبكي";
             case SOURCE_LOCAL_PICTURE:
                 return "صورة محلية";
+            case SOURCE_RECORDED_SESSION:
+                return "جلسة مسجلة";
+            case SOURCE_SYNTHETIC:
+                return "نمط اختبار اصطناعي";
             default:
                 return "غير معروف";
         }
@@ -632,11 +1296,13 @@ public class CameraManager {
      * فئة موفر إطارات الكاميرا الافتراضية
      */
     private class VirtualCameraFrameProvider {
+        // إطار الكاميرا الحقيقية الحالي (من مجمع الصور)
+        // الإطارات لا تعود إلى المجمع إلا تحت قفل الموفر، والقراءة تتم تحت القفل نفسه
         private Bitmap mCurrentFrameBitmap;
         private Bitmap mStaticFrameBitmap;
-        private Bitmap[] mFrameSequence;
-        private int mCurrentFrameIndex;
-        private boolean mIsSequencePlaying;
+        private volatile FrameSequenceCache mFrameCache;
+        private volatile int mCurrentFrameIndex;
+        private volatile boolean mIsSequencePlaying;
         private final Handler mFrameHandler = new Handler(Looper.getMainLooper());
         private Runnable mFrameRunnable;
         
@@ -646,43 +1312,75 @@ public class CameraManager {
         public void initialize() {
             mCurrentFrameBitmap = null;
             mStaticFrameBitmap = null;
-            mFrameSequence = null;
+            mFrameCache = null;
             mCurrentFrameIndex = 0;
             mIsSequencePlaying = false;
         }
         
         /**
-         * تعيين الإطار الحالي
+         * تعيين الإطار الحالي وإعادة الإطار المستبدل إلى المجمع
          */
-        public void setCurrentFrame(Bitmap frame) {
+        public synchronized void setCurrentFrame(Bitmap frame) {
+            if (mCurrentFrameBitmap != frame) {
+                mBitmapPool.release(mCurrentFrameBitmap);
+            }
             mCurrentFrameBitmap = frame;
         }
         
+        /**
+         * مسح الإطار الحالي وإعادته إلى المجمع
+         */
+        public synchronized void clearCurrentFrame() {
+            mBitmapPool.release(mCurrentFrameBitmap);
+            mCurrentFrameBitmap = null;
+        }
+        
         /**
          * تعيين إطار ثابت
          */
-        public void setStaticFrame(Bitmap frame) {
+        public synchronized void setStaticFrame(Bitmap frame) {
+            if (mStaticFrameBitmap != frame) {
+                mBitmapPool.release(mStaticFrameBitmap);
+            }
             mStaticFrameBitmap = frame;
         }
         
         /**
-         * مسح الإطار الثابت
+         * مسح الإطار الثابت وإعادته إلى المجمع
          */
-        public void clearStaticFrame() {
+        public synchronized void clearStaticFrame() {
+            mBitmapPool.release(mStaticFrameBitmap);
             mStaticFrameBitmap = null;
         }
         
         /**
-         * بدء تسلسل الإطارات
+         * بدء تسلسل إطارات مفكوكة مسبقاً (البث الذي لا يمكن إعادة فك تشفيره)
          */
         public void startFrameSequence(Bitmap[] frames, int frameRate) {
             if (frames == null || frames.length == 0) {
                 return;
             }
             
-            mFrameSequence = frames;
-            mCurrentFrameIndex = 0;
-            mIsSequencePlaying = true;
+            // الإطارات تُحفظ في ذاكرة مؤقتة بميزانية محددة بدلاً من الاحتفاظ بالمصفوفة كاملة
+            FrameSequenceCache frameCache = new FrameSequenceCache(frames.length, FRAME_CACHE_BUDGET_BYTES);
+            frameCache.setPressureLevel(mMemoryPressureLevel);
+            for (int i = 0; i < frames.length; i++) {
+                frameCache.put(i, frames[i]);
+            }
+            startFrameSequence(frameCache, frameRate);
+        }
+        
+        private void startFrameSequence(final FrameSequenceCache newCache, final int frameRate) {
+            FrameSequenceCache previousCache;
+            synchronized (this) {
+                previousCache = mFrameCache;
+                mFrameCache = newCache;
+                mCurrentFrameIndex = 0;
+                mIsSequencePlaying = true;
+            }
+            if (previousCache != null) {
+                previousCache.clear();
+            }
             
             // إذا كان هناك تسلسل إطارات قيد التشغيل، قم بإيقافه أولاً
             if (mFrameRunnable != null) {
@@ -693,15 +1391,13 @@ public class CameraManager {
             mFrameRunnable = new Runnable() {
                 @Override
                 public void run() {
-                    if (!mIsSequencePlaying || mFrameSequence == null || mFrameSequence.length == 0) {
+                    FrameSequenceCache frameCache = mFrameCache;
+                    if (!mIsSequencePlaying || frameCache == null || frameCache.getFrameCount() == 0) {
                         return;
                     }
                     
-                    // تحديث الإطار الحالي
-                    mCurrentFrameBitmap = mFrameSequence[mCurrentFrameIndex];
-                    
                     // التقدم إلى الإطار التالي
-                    mCurrentFrameIndex = (mCurrentFrameIndex + 1) % mFrameSequence.length;
+                    mCurrentFrameIndex = (mCurrentFrameIndex + 1) % frameCache.getFrameCount();
                     
                     // جدولة الإطار التالي
                     mFrameHandler.postDelayed(this, 1000 / frameRate);
@@ -723,22 +1419,59 @@ public class CameraManager {
                 mFrameRunnable = null;
             }
             
-            mFrameSequence = null;
+            FrameSequenceCache frameCache = mFrameCache;
+            mFrameCache = null;
+            if (frameCache != null) {
+                frameCache.clear();
+            }
             mCurrentFrameIndex = 0;
         }
         
         /**
-         * الحصول على الإطار الحالي
+         * تطبيق مستوى ضغط الذاكرة على تسلسل الإطارات
+         */
+        public void setPressureLevel(int level) {
+            FrameSequenceCache frameCache = mFrameCache;
+            if (frameCache != null) {
+                frameCache.setPressureLevel(level);
+            }
+        }
+        
+        /**
+         * نسخ الإطار الحالي وتحويله إلى NV21 تحت قفل الموفر
+         * @return مصفوفة البكسلات المستخدمة، أو null إذا لم يكن هناك إطار
+         */
+        public synchronized int[] copyCurrentFrame(FrameBuffer out, int[] pixels) {
+            Bitmap frame = getCurrentFrame();
+            if (frame == null || frame.isRecycled()) {
+                return null;
+            }
+            
+            int width = frame.getWidth();
+            int height = frame.getHeight();
+            if (pixels == null || pixels.length < width * height) {
+                pixels = new int[width * height];
+            }
+            
+            out.resize(width, height);
+            frame.getPixels(pixels, 0, width, 0, 0, width, height);
+            Nv21Converter.argbToNv21(pixels, width, height, out.getData());
+            return pixels;
+        }
+        
+        /**
+         * الحصول على الإطار الحالي (يُستدعى تحت قفل الموفر)
          */
-        public Bitmap getCurrentFrame() {
+        private Bitmap getCurrentFrame() {
             // إذا كان هناك إطار ثابت، استخدمه بدلاً من الإطار الحالي
             if (mStaticFrameBitmap != null) {
                 return mStaticFrameBitmap;
             }
             
             // إذا كان هناك تسلسل إطارات قيد التشغيل، استخدم الإطار الحالي
-            if (mIsSequencePlaying && mFrameSequence != null && mFrameSequence.length > 0) {
-                return mFrameSequence[mCurrentFrameIndex];
+            FrameSequenceCache frameCache = mFrameCache;
+            if (mIsSequencePlaying && frameCache != null && frameCache.getFrameCount() > 0) {
+                return frameCache.get(mCurrentFrameIndex);
             }
             
             // استخدم الإطار الحالي
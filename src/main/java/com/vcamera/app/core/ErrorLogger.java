@@ -171,6 +171,17 @@ public class ErrorLogger {
         return logFile.getAbsolutePath();
     }
     
+    /**
+     * الحصول على مجلد السجلات
+     */
+    public static File getLogDir() {
+        if (!sIsInitialized || !sLogToFile) {
+            return null;
+        }
+
+        return new File(sAppContext.getExternalFilesDir(null), LOG_FOLDER);
+    }
+
     /**
      * مسح كل ملفات السجل القديمة
      */
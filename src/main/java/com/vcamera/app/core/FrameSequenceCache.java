@@ -0,0 +1,177 @@
+package com.vcamera.app.core;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.vcamera.pipeline.PressureAwareSource;
+
+/**
+ * ذاكرة تخزين مؤقت لتسلسل الإطارات (الفيديو الشبكي) بميزانية بايتات
+ * تحتفظ بالإطارات الأقرب أمام موضع التشغيل وتحذف الأبعد أولاً، وتخفف استهلاكها تدريجياً مع ضغط الذاكرة:
+ * حذف إطارات الاستباق، ثم تخفيض الدقة، ثم الإطار الحالي وحده
+ * الإطار المحذوف لا يُعاد إنشاؤه؛ يُعرض مكانه أقرب إطار سابق محفوظ
+ */
+public class FrameSequenceCache {
+    private static final String TAG = "FrameSequenceCache";
+
+    // مستويات ضغط الذاكرة، نفسها التي تستقبلها مصادر خط المعالجة
+    public static final int PRESSURE_NONE = PressureAwareSource.PRESSURE_NONE;
+    public static final int PRESSURE_SHED_LOOKAHEAD = PressureAwareSource.PRESSURE_SHED_LOOKAHEAD;
+    public static final int PRESSURE_DOWNGRADE = PressureAwareSource.PRESSURE_DOWNGRADE;
+    public static final int PRESSURE_ON_DEMAND = PressureAwareSource.PRESSURE_ON_DEMAND;
+
+    private final Bitmap[] mFrames;
+    private final long mBudgetBytes;
+    private long mCachedBytes;
+    private int mPressureLevel = PRESSURE_NONE;
+    private int mPlayhead;
+
+    // الأبعاد القصوى للإطارات بعد تخفيض الدقة (0 = بلا حد)
+    private int mMaxWidth;
+    private int mMaxHeight;
+
+    public FrameSequenceCache(int frameCount, long budgetBytes) {
+        mFrames = new Bitmap[frameCount];
+        mBudgetBytes = budgetBytes;
+    }
+
+    public int getFrameCount() {
+        return mFrames.length;
+    }
+
+    /**
+     * إضافة إطار مفكوك مسبقاً
+     */
+    public synchronized void put(int index, Bitmap frame) {
+        if (index < 0 || index >= mFrames.length || frame == null) {
+            return;
+        }
+        store(index, downgrade(frame));
+        trimToBudget();
+    }
+
+    /**
+     * الحصول على الإطار رقم n ونقل موضع التشغيل إليه
+     */
+    public synchronized Bitmap get(int index) {
+        if (mFrames.length == 0) {
+            return null;
+        }
+        mPlayhead = index;
+
+        Bitmap frame = mFrames[index];
+        if (frame != null) {
+            return frame;
+        }
+
+        // الإطار محذوف: أقرب إطار سابق محفوظ
+        for (int i = 1; i < mFrames.length; i++) {
+            Bitmap previous = mFrames[(index - i + mFrames.length) % mFrames.length];
+            if (previous != null) {
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * تعيين مستوى ضغط الذاكرة وتطبيقه فوراً
+     */
+    public synchronized void setPressureLevel(int level) {
+        if (level == mPressureLevel) {
+            return;
+        }
+        Log.i(TAG, "مستوى ضغط الذاكرة: " + mPressureLevel + " -> " + level);
+        mPressureLevel = level;
+
+        if (level >= PRESSURE_DOWNGRADE) {
+            for (int i = 0; i < mFrames.length; i++) {
+                if (mFrames[i] != null) {
+                    store(i, downgrade(mFrames[i]));
+                }
+            }
+        } else {
+            mMaxWidth = 0;
+            mMaxHeight = 0;
+        }
+
+        trimToBudget();
+    }
+
+    public synchronized int getPressureLevel() {
+        return mPressureLevel;
+    }
+
+    public synchronized long getCachedBytes() {
+        return mCachedBytes;
+    }
+
+    /**
+     * إفراغ الذاكرة
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mFrames.length; i++) {
+            mFrames[i] = null;
+        }
+        mCachedBytes = 0;
+    }
+
+    /**
+     * الميزانية الفعلية حسب مستوى الضغط
+     */
+    private long effectiveBudget() {
+        switch (mPressureLevel) {
+            case PRESSURE_NONE:
+                return mBudgetBytes;
+            case PRESSURE_SHED_LOOKAHEAD:
+            case PRESSURE_DOWNGRADE:
+                return mBudgetBytes / 4;
+            default:
+                return 0; // الإطار الحالي فقط
+        }
+    }
+
+    /**
+     * حذف الإطارات الأبعد أمام موضع التشغيل حتى النزول تحت الميزانية (الإطار الحالي لا يُحذف)
+     */
+    private void trimToBudget() {
+        long budget = effectiveBudget();
+        int count = mFrames.length;
+
+        for (int distance = count - 1; distance > 0 && mCachedBytes > budget; distance--) {
+            int index = (mPlayhead + distance) % count;
+            if (mFrames[index] != null) {
+                store(index, null);
+            }
+        }
+    }
+
+    private void store(int index, Bitmap frame) {
+        Bitmap old = mFrames[index];
+        if (old != null) {
+            mCachedBytes -= old.getAllocationByteCount();
+        }
+        mFrames[index] = frame;
+        if (frame != null) {
+            mCachedBytes += frame.getAllocationByteCount();
+        }
+    }
+
+    /**
+     * تصغير الإطار إلى نصف الدقة عند مستوى تخفيض الدقة أو أعلى
+     */
+    private Bitmap downgrade(Bitmap frame) {
+        if (mPressureLevel < PRESSURE_DOWNGRADE) {
+            return frame;
+        }
+        if (mMaxWidth == 0) {
+            // نصف الدقة في كل بعد (ربع الذاكرة)، محسوبة من أول إطار يُرى تحت الضغط
+            mMaxWidth = Math.max(1, frame.getWidth() / 2);
+            mMaxHeight = Math.max(1, frame.getHeight() / 2);
+        }
+        if (frame.getWidth() <= mMaxWidth && frame.getHeight() <= mMaxHeight) {
+            return frame;
+        }
+        return Bitmap.createScaledBitmap(frame, mMaxWidth, mMaxHeight, true);
+    }
+}
@@ -0,0 +1,278 @@
+package com.vcamera.app.core;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FrameClock;
+import com.vcamera.pipeline.FrameConsumer;
+import com.vcamera.pipeline.FramePipeline;
+import com.vcamera.pipeline.FrameSource;
+import com.vcamera.pipeline.SharedFrameRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * خادم الإطارات في عملية VCamera الرئيسية
+ * يفك تشفير مصدر كل كاميرا مرة واحدة وينشر إطاراتها في منطقة مشتركة تقرؤها العمليات المعترَضة (SharedFrameClient)
+ * خط معالجة الكاميرا لا يعمل إلا ما دام قارئ ينبض في منطقتها، ويتوقف بعد خمولها
+ * الكاميرا العامة في مدير الكاميرا تُبدأ وتُوقف خارج قفل الخادم: المدير يستدعي الخادم (invalidate) من داخله
+ */
+public class FrameServer {
+    private static final String TAG = "FrameServer";
+
+    private static final long WATCHDOG_INTERVAL_MS = 500;
+    private static final long READER_IDLE_TIMEOUT_NANOS = 5000000000L;
+    private static final int SERVER_FRAME_RATE = 30;
+
+    private final Context mContext;
+    private final CameraManager mCameraManager;
+    private final ErrorLogger mErrorLogger;
+    private Channel[] mChannels = new Channel[0];
+    // عدد القنوات العاملة التي تتبع المصدر العام؛ الكاميرا العامة تبدأ مع أولها وتتوقف مع آخرها
+    private int mGlobalChannels = 0;
+    private ScheduledExecutorService mWatchdog;
+    // يرتب بدء الكاميرا العامة وإيقافها بين الخيوط؛ لا يُطلب وقفل الخادم ممسوك
+    private final Object mGlobalCameraLock = new Object();
+    private boolean mIsGlobalCameraStarted;
+
+    FrameServer(Context context, CameraManager cameraManager) {
+        mContext = context;
+        mCameraManager = cameraManager;
+        mErrorLogger = new ErrorLogger(context);
+    }
+
+    /**
+     * ملف المنطقة المشتركة للكاميرا بالمعرف المحدد
+     */
+    public static File getRegionFile(Context context, int cameraId) {
+        File framesDir = new File(new File(context.getFilesDir(), "vcam"), "frames");
+        return new File(framesDir, "camera_" + cameraId + ".shm");
+    }
+
+    /**
+     * بدء الخادم: إنشاء المناطق ومراقبة القراء
+     */
+    public void start() {
+        ScheduledExecutorService watchdog;
+        synchronized (this) {
+            if (mWatchdog != null) {
+                return;
+            }
+            Log.i(TAG, "بدء خادم الإطارات");
+            watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "FrameServerWatchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            mWatchdog = watchdog;
+        }
+
+        // الدورة الأولى متزامنة: المناطق ونبضة الخادم جاهزة عند عودة طلب البدء، فيقرؤها من طلبه فوراً
+        runTick();
+        try {
+            watchdog.scheduleAtFixedRate(this::runTick, WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // أُوقف الخادم قبل جدولة المراقب
+        }
+    }
+
+    /**
+     * إيقاف الخادم وكل خطوط المعالجة
+     */
+    public void stop() {
+        synchronized (this) {
+            if (mWatchdog == null) {
+                return;
+            }
+            Log.i(TAG, "إيقاف خادم الإطارات");
+            mWatchdog.shutdownNow();
+            mWatchdog = null;
+            for (Channel channel : mChannels) {
+                stopChannel(channel);
+            }
+        }
+        syncGlobalCamera();
+    }
+
+    /**
+     * إيقاف خطوط المعالجة العاملة بعد تغيير مصدر أو تكوين؛ تُعاد مع الدورة التالية للمراقب إذا بقي قراء
+     */
+    public void invalidate() {
+        synchronized (this) {
+            for (Channel channel : mChannels) {
+                stopChannel(channel);
+            }
+        }
+        syncGlobalCamera();
+    }
+
+    private void runTick() {
+        try {
+            tick();
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ في مراقبة قراء الإطارات", e);
+        }
+        // حتى بعد خطأ في قناة: ما تغير من القنوات العامة قبله يُطبق على الكاميرا العامة
+        syncGlobalCamera();
+    }
+
+    /**
+     * دورة المراقب: نبضة الخادم في كل منطقة وتشغيل أو إيقاف خطوطها حسب نبضات القراء
+     */
+    private synchronized void tick() throws IOException {
+        ensureChannels();
+
+        for (Channel channel : mChannels) {
+            channel.region.touchServer();
+
+            boolean hasReaders = channel.region.getReaderIdleNanos() < READER_IDLE_TIMEOUT_NANOS;
+            if (channel.pipeline != null && (!hasReaders || !channel.pipeline.isRunning())) {
+                // لا قراء، أو توقف خط المعالجة بخطأ في المصدر فيُعاد في الدورة التالية
+                stopChannel(channel);
+            } else if (channel.pipeline == null && hasReaders) {
+                startChannel(channel);
+            }
+        }
+    }
+
+    /**
+     * بدء الكاميرا العامة أو إيقافها حسب عدد القنوات العامة العاملة، خارج قفل الخادم
+     * startCamera/stopCamera قد يستدعيان الخادم من جديد أو ينتظران قفل المدير، فلا يُستدعيان تحت قفله
+     */
+    private void syncGlobalCamera() {
+        synchronized (mGlobalCameraLock) {
+            boolean wanted;
+            synchronized (this) {
+                wanted = mGlobalChannels > 0;
+            }
+            if (wanted == mIsGlobalCameraStarted) {
+                return;
+            }
+            if (wanted) {
+                mCameraManager.initialize();
+                mCameraManager.startCamera(null);
+            } else {
+                mCameraManager.stopCamera();
+            }
+            mIsGlobalCameraStarted = wanted;
+        }
+    }
+
+    /**
+     * إنشاء مناطق الكاميرات المضافة إلى الجدول منذ آخر دورة
+     */
+    private void ensureChannels() throws IOException {
+        int count = mCameraManager.getCameraCount();
+        if (count <= mChannels.length) {
+            return;
+        }
+
+        Channel[] channels = new Channel[count];
+        System.arraycopy(mChannels, 0, channels, 0, mChannels.length);
+        for (int i = mChannels.length; i < count; i++) {
+            channels[i] = new Channel(i, createRegion(mCameraManager.getCameraConfig(i)));
+        }
+        mChannels = channels;
+    }
+
+    private SharedFrameRegion createRegion(VirtualCameraConfig config) throws IOException {
+        // المصادر المحلية تسلم بدقة التكوين، فتكفي المنطقة إطاراً بهذه الدقة
+        return SharedFrameRegion.create(getRegionFile(mContext, config.getCameraId()),
+                config.getWidth(), config.getHeight());
+    }
+
+    /**
+     * تشغيل خط معالجة الكاميرا ونشر إطاراته في منطقتها
+     */
+    private void startChannel(Channel channel) throws IOException {
+        VirtualCameraConfig config = mCameraManager.getCameraConfig(channel.cameraId);
+        if (config == null) {
+            return; // أُزيلت الكاميرا من الجدول
+        }
+        if (FrameBuffer.nv21Size(config.getWidth(), config.getHeight()) > channel.region.getCapacity()) {
+            // التكوين كبر: منطقة جديدة، والقراء يعيدون الفتح عند توقف نبضات القديمة
+            channel.region = createRegion(config);
+        }
+
+        if (config.followsGlobalSource()) {
+            // الكاميرا العامة تبدأ مع أول قناة عامة بعد ترك القفل (syncGlobalCamera)
+            mGlobalChannels++;
+            channel.isGlobal = true;
+        }
+
+        final SharedFrameRegion region = channel.region;
+        final FrameSource source = mCameraManager.createLocalFrameSource(channel.cameraId, SERVER_FRAME_RATE);
+        FramePipeline pipeline = new FramePipeline(source, config.getWidth(), config.getHeight(),
+                SERVER_FRAME_RATE, FrameClock.SYSTEM, mCameraManager.getMetrics());
+        pipeline.addConsumer(new PublishingConsumer(region, source));
+        pipeline.start("FrameServer-" + channel.cameraId);
+        channel.pipeline = pipeline;
+
+        Log.i(TAG, "بدء نشر إطارات الكاميرا " + channel.cameraId + " في " + region.getFile());
+    }
+
+    private void stopChannel(Channel channel) {
+        if (channel.pipeline == null) {
+            return;
+        }
+
+        channel.pipeline.stop();
+        channel.pipeline = null;
+        if (channel.isGlobal) {
+            // الكاميرا العامة تتوقف مع آخر قناة عامة بعد ترك القفل (syncGlobalCamera)
+            channel.isGlobal = false;
+            mGlobalChannels--;
+        }
+        if (channel.region.getRejectedCount() > 0) {
+            Log.w(TAG, "رُفض " + channel.region.getRejectedCount() + " إطار للكاميرا " + channel.cameraId
+                    + " لتجاوزه سعة المنطقة");
+        }
+        Log.i(TAG, "إيقاف نشر إطارات الكاميرا " + channel.cameraId);
+    }
+
+    /**
+     * كاميرا واحدة: منطقتها وخط معالجتها إن كان يعمل
+     */
+    private static class Channel {
+        final int cameraId;
+        SharedFrameRegion region;
+        FramePipeline pipeline;
+        boolean isGlobal;
+
+        Channel(int cameraId, SharedFrameRegion region) {
+            this.cameraId = cameraId;
+            this.region = region;
+        }
+    }
+
+    /**
+     * ينشر كل إطار جديد مرة واحدة؛ الإطار المكرر (المصدر أبطأ من خط المعالجة) لا يُنسخ ثانية
+     */
+    private static class PublishingConsumer implements FrameConsumer {
+        private final SharedFrameRegion mRegion;
+        private final FrameSource mSource;
+        private long mLastSequence = -1;
+
+        PublishingConsumer(SharedFrameRegion region, FrameSource source) {
+            mRegion = region;
+            mSource = source;
+        }
+
+        @Override
+        public void onFrame(FrameBuffer frame) {
+            if (frame.getSequence() == mLastSequence) {
+                return;
+            }
+            mLastSequence = frame.getSequence();
+            int nativeRate = mSource.getNativeFrameRate();
+            mRegion.publish(frame, nativeRate > 0 ? Math.min(nativeRate, SERVER_FRAME_RATE) : SERVER_FRAME_RATE);
+        }
+    }
+}
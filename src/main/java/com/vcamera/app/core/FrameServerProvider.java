@@ -0,0 +1,58 @@
+package com.vcamera.app.core;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
+
+/**
+ * نقطة بدء خادم الإطارات في العملية الرئيسية عند الطلب
+ * العمليات المعترَضة تستدعيها عند أول اتصال لخطاف الكاميرا، فلا يعمل الخادم ما لم تُستخدم الكاميرا
+ * مقدم المحتوى وسيلة نقل فقط (call)؛ لا يقدم بيانات
+ */
+public class FrameServerProvider extends ContentProvider {
+    static final String AUTHORITY_SUFFIX = ".frameserver";
+    static final String METHOD_START = "start";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        // عمليات هذا التطبيق وحدها (المعرف نفسه) يمكنها بدء الخادم
+        if (Binder.getCallingUid() != Process.myUid() || !METHOD_START.equals(method)) {
+            return null;
+        }
+        return CameraManager.getInstance(getContext()).startFrameServer() ? new Bundle() : null;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,69 @@
+package com.vcamera.app.core;
+
+import android.graphics.Bitmap;
+
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FrameSource;
+import com.vcamera.pipeline.Nv21Converter;
+
+import java.io.IOException;
+
+/**
+ * مصدر إطارات من صورة ثابتة
+ * تُفك الصورة وتُحوَّل إلى NV21 بالدقة المطلوبة مرة واحدة عند الفتح، ثم يُنسخ الإطار نفسه
+ */
+public class PictureFrameSource implements FrameSource {
+    // الصورة لا تتغير، فيكفي إطار واحد في الثانية ويكرره خط المعالجة
+    private static final int FRAME_RATE = 1;
+
+    private final String mPath;
+    private final int mWidth;
+    private final int mHeight;
+    private final BitmapPool mBitmapPool;
+    private FrameBuffer mFrame;
+
+    public PictureFrameSource(String path, int width, int height, BitmapPool bitmapPool) {
+        mPath = path;
+        mWidth = width;
+        mHeight = height;
+        mBitmapPool = bitmapPool;
+    }
+
+    @Override
+    public void open() throws IOException {
+        Bitmap decoded = mBitmapPool.decodeFile(mPath, mWidth, mHeight);
+        if (decoded == null) {
+            throw new IOException("تعذر فك تشفير الصورة: " + mPath);
+        }
+
+        Bitmap scaled = mBitmapPool.scale(decoded, mWidth, mHeight);
+        mBitmapPool.release(decoded);
+        try {
+            int[] pixels = new int[mWidth * mHeight];
+            scaled.getPixels(pixels, 0, mWidth, 0, 0, mWidth, mHeight);
+            mFrame = new FrameBuffer(mWidth, mHeight);
+            Nv21Converter.argbToNv21(pixels, mWidth, mHeight, mFrame.getData());
+        } finally {
+            mBitmapPool.release(scaled);
+        }
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) {
+        if (mFrame == null) {
+            return false;
+        }
+        out.copyFrom(mFrame);
+        return true;
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        return FRAME_RATE;
+    }
+
+    @Override
+    public void close() {
+        mFrame = null;
+    }
+}
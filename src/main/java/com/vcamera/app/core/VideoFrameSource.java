@@ -0,0 +1,340 @@
+package com.vcamera.app.core;
+
+import android.graphics.Rect;
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FrameClock;
+import com.vcamera.pipeline.FramePipelineMetrics;
+import com.vcamera.pipeline.FrameSource;
+import com.vcamera.pipeline.Mp4SampleTable;
+import com.vcamera.pipeline.Nv21Converter;
+import com.vcamera.pipeline.PlaybackControls;
+import com.vcamera.pipeline.PressureAwareSource;
+import com.vcamera.pipeline.SampleIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * مصدر إطارات من ملف فيديو بفك تشفير متدفق عبر MediaCodec
+ * كل قراءة تفك حتى إطار زمن العرض المطلوب وتنسخه وحده إلى NV21، وتُسقط الإطارات بينهما دون نسخ
+ * الزمن المطلوب يأتي من أدوات التحكم (منطقة التكرار والسرعة والقفز)، والقفز يبدأ من الإطار المفتاحي الأقرب حسب فهرس العينات
+ * تحت ضغط الذاكرة يُنسخ الإطار بنصف الدقة، فيصغر مخزنه والمخازن المشتركة التي تحمله إلى الربع
+ */
+public class VideoFrameSource implements FrameSource, PressureAwareSource {
+    private static final String TAG = "VideoFrameSource";
+
+    private static final int DEFAULT_FRAME_RATE = 30;
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+    // حد محاولات إخراج إطار في قراءة واحدة قبل التخلي عن هذه الدورة
+    private static final int MAX_DRAIN_ATTEMPTS = 50;
+    // حد الإطارات المُسقطة في قراءة واحدة؛ بعده يُعرض الإطار الحالي كي لا تتجمد المعاينة عند قفز طويل
+    private static final int MAX_SKIPPED_FRAMES = 90;
+    // القفز للأمام يستحق فقط إذا كان الإطار المفتاحي أبعد من هذا العدد من الإطارات؛ الأقرب يُفك بالتتابع دون تفريغ المفكك
+    private static final int SEEK_AHEAD_FRAMES = 4;
+
+    private final String mPath;
+    private final PlaybackControls.Cursor mCursor;
+    private final File mIndexDir;
+    private final FramePipelineMetrics mMetrics;
+    private MediaExtractor mExtractor;
+    private MediaCodec mDecoder;
+    private final MediaCodec.BufferInfo mBufferInfo = new MediaCodec.BufferInfo();
+    private boolean mInputDone;
+    private int mFrameRate = DEFAULT_FRAME_RATE;
+    private SampleIndex mIndex;
+    // يُعيَّن من خيط إشارات الذاكرة ويُقرأ عند نسخ كل إطار
+    private volatile int mPressureLevel = PRESSURE_NONE;
+
+    // موضع المفكك: زمن آخر إطار خرج منه، أو الإطار المفتاحي الذي بدأ منه بعد القفز
+    private long mDecoderUs;
+    // المخزن الذي نُسخ إليه آخر إطار، لتكرار الإطار دون نسخ إذا لم يتقدم الزمن المطلوب
+    private FrameBuffer mLastOut;
+    private long mLastOutUs;
+
+    /**
+     * تشغيل الملف كاملاً بالسرعة الطبيعية دون فهرس
+     */
+    public VideoFrameSource(String path) {
+        this(path, new PlaybackControls(), null, null);
+    }
+
+    /**
+     * @param controls أدوات التحكم المشتركة (قد يقرؤها أكثر من مصدر)
+     * @param indexDir دليل حفظ فهارس العينات، أو null للعمل دونها
+     * @param metrics مقاييس مرحلتي فك التشفير والتحويل، أو null
+     */
+    public VideoFrameSource(String path, PlaybackControls controls, File indexDir, FramePipelineMetrics metrics) {
+        mPath = path;
+        mCursor = controls.newCursor(FrameClock.SYSTEM);
+        mIndexDir = indexDir;
+        mMetrics = metrics != null ? metrics : new FramePipelineMetrics();
+    }
+
+    @Override
+    public void open() throws IOException {
+        mExtractor = new MediaExtractor();
+        mExtractor.setDataSource(mPath);
+
+        MediaFormat format = null;
+        for (int i = 0; i < mExtractor.getTrackCount(); i++) {
+            MediaFormat trackFormat = mExtractor.getTrackFormat(i);
+            String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("video/")) {
+                mExtractor.selectTrack(i);
+                format = trackFormat;
+                break;
+            }
+        }
+        if (format == null) {
+            close();
+            throw new IOException("لا يوجد مسار فيديو في الملف: " + mPath);
+        }
+
+        if (format.containsKey(MediaFormat.KEY_FRAME_RATE)) {
+            mFrameRate = Math.max(1, format.getInteger(MediaFormat.KEY_FRAME_RATE));
+        }
+        mIndex = loadOrBuildIndex();
+        long durationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : -1;
+        mCursor.reset(mIndex != null ? mIndex.getDurationUs() : durationUs);
+
+        // صيغة مرنة كي نقرأ الإطارات كـ Image بمستويات YUV_420_888
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+        mDecoder = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        mDecoder.configure(format, null, null, 0);
+        mDecoder.start();
+        mInputDone = false;
+        mDecoderUs = 0;
+        mLastOut = null;
+    }
+
+    @Override
+    public boolean read(FrameBuffer out) {
+        if (mDecoder == null) {
+            return false;
+        }
+
+        long halfFrameUs = 500000L / mFrameRate;
+        long targetUs = mCursor.advance();
+        if (needsSeek(targetUs, halfFrameUs)) {
+            seek(targetUs);
+        } else if (out == mLastOut && targetUs < mLastOutUs + 2 * halfFrameUs) {
+            return true; // الزمن المطلوب لم يبلغ الإطار التالي بعد (سرعة أبطأ من الطبيعية)
+        }
+
+        // فك التشفير: من بدء التغذية حتى خروج الإطار المطلوب، دون زمن نسخه (التحويل)
+        long decodeStart = System.nanoTime();
+        int skipped = 0;
+        for (int attempt = 0; attempt < MAX_DRAIN_ATTEMPTS; attempt++) {
+            feedInput();
+
+            int index = mDecoder.dequeueOutputBuffer(mBufferInfo, DEQUEUE_TIMEOUT_US);
+            if (index < 0) {
+                continue; // لا مخرجات بعد، أو تغيير صيغة/مخازن
+            }
+
+            boolean endOfStream = (mBufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            long presentationUs = mBufferInfo.presentationTimeUs;
+            // الإطارات قبل الزمن المطلوب تُسقط دون نسخ
+            boolean wanted = mBufferInfo.size > 0
+                    && (presentationUs >= targetUs - halfFrameUs || skipped >= MAX_SKIPPED_FRAMES);
+            boolean copied = false;
+            if (wanted) {
+                Image image = mDecoder.getOutputImage(index);
+                if (image != null) {
+                    long convertStart = System.nanoTime();
+                    mMetrics.recordStage(FramePipelineMetrics.STAGE_DECODE, convertStart - decodeStart);
+                    copyImage(image, out);
+                    image.close();
+                    mMetrics.recordStage(FramePipelineMetrics.STAGE_CONVERT, System.nanoTime() - convertStart);
+                    mMetrics.onBytesConverted(out.getSize());
+                    copied = true;
+                }
+            } else if (mBufferInfo.size > 0) {
+                skipped++;
+            }
+            mDecoder.releaseOutputBuffer(index, false);
+            if (mBufferInfo.size > 0) {
+                mDecoderUs = presentationUs;
+            }
+
+            if (endOfStream) {
+                // نهاية الملف قبل الزمن المطلوب: العودة لبداية منطقة التكرار
+                targetUs = mCursor.restart();
+                seek(targetUs);
+            }
+            if (copied) {
+                mLastOut = out;
+                mLastOutUs = presentationUs;
+                return true;
+            }
+        }
+
+        Log.w(TAG, "لم يُخرج المفكك إطاراً في هذه الدورة");
+        return false;
+    }
+
+    @Override
+    public int getNativeFrameRate() {
+        return mFrameRate;
+    }
+
+    @Override
+    public void setPressureLevel(int level) {
+        if (level != mPressureLevel) {
+            Log.i(TAG, "مستوى ضغط الذاكرة: " + mPressureLevel + " -> " + level);
+            mPressureLevel = level;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (mDecoder != null) {
+            try {
+                mDecoder.stop();
+            } catch (IllegalStateException e) {
+                // المفكك في حالة خطأ: التحرير يكفي
+            }
+            mDecoder.release();
+            mDecoder = null;
+        }
+        if (mExtractor != null) {
+            mExtractor.release();
+            mExtractor = null;
+        }
+    }
+
+    /**
+     * تغذية المفكك بعينة واحدة إذا توفر مخزن إدخال
+     */
+    private void feedInput() {
+        if (mInputDone) {
+            return;
+        }
+        int index = mDecoder.dequeueInputBuffer(0);
+        if (index < 0) {
+            return;
+        }
+
+        ByteBuffer input = mDecoder.getInputBuffer(index);
+        int size = input != null ? mExtractor.readSampleData(input, 0) : -1;
+        if (size < 0) {
+            mDecoder.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            mInputDone = true;
+        } else {
+            mDecoder.queueInputBuffer(index, 0, size, mExtractor.getSampleTime(), 0);
+            mExtractor.advance();
+        }
+    }
+
+    /**
+     * هل القفز إلى الإطار المفتاحي أسرع من فك الإطارات حتى الزمن المطلوب
+     */
+    private boolean needsSeek(long targetUs, long halfFrameUs) {
+        if (targetUs < mDecoderUs - halfFrameUs) {
+            return true; // رجوع للخلف (التفاف المنطقة أو قفز)
+        }
+        // آخر إطار مفتاحي قبل الهدف بعيد أمام الموضع الحالي: فك التشفير منه يتخطى كل ما قبله
+        // الإطار المفتاحي القريب لا يستحق تفريغ المفكك، فالتشغيل العادي لا يقفز عند كل GOP
+        return mIndex != null && mIndex.floorKeyframe(targetUs) - mDecoderUs > SEEK_AHEAD_FRAMES * 2 * halfFrameUs;
+    }
+
+    /**
+     * وضع المفكك عند الإطار المفتاحي السابق للزمن المطلوب
+     */
+    private void seek(long targetUs) {
+        long keyframeUs = mIndex != null ? mIndex.floorKeyframe(targetUs) : targetUs;
+        mExtractor.seekTo(keyframeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        mDecoder.flush();
+        mInputDone = false;
+        mDecoderUs = mIndex != null ? keyframeUs : Math.max(0, mExtractor.getSampleTime());
+        mLastOut = null;
+    }
+
+    /**
+     * تعيين فهرس العينات المحفوظ، أو بنائه مرة واحدة وحفظه ثم تعيينه
+     * البناء يقرأ جداول MP4 مباشرة دون فك تشفير، ولغير MP4 يمر على ترويسات العينات عبر المستخرج
+     */
+    private SampleIndex loadOrBuildIndex() {
+        if (mIndexDir == null) {
+            return null;
+        }
+
+        File video = new File(mPath);
+        File indexFile = new File(mIndexDir, video.getName() + "-" + Integer.toHexString(mPath.hashCode()) + ".vsi");
+        try {
+            SampleIndex index = SampleIndex.open(indexFile, video.length(), video.lastModified());
+            if (index != null) {
+                return index;
+            }
+
+            long start = System.nanoTime();
+            SampleIndex.Builder builder = Mp4SampleTable.parse(video);
+            if (builder == null) {
+                builder = buildIndexFromExtractor();
+            }
+            if (!builder.writeTo(indexFile, video.length(), video.lastModified(), 1000000L / mFrameRate)) {
+                return null; // لا إطارات مفتاحية معروفة
+            }
+            index = SampleIndex.open(indexFile, video.length(), video.lastModified());
+            if (index != null) {
+                Log.i(TAG, "بناء فهرس " + index.getSampleCount() + " عينة (" + index.getKeyframeCount()
+                        + " مفتاحية) خلال " + (System.nanoTime() - start) / 1000000L + " مللي ثانية");
+            }
+            return index;
+        } catch (IOException e) {
+            // يعمل المصدر دون فهرس: القفز للخلف عبر المستخرج وللأمام بفك الإطارات
+            Log.w(TAG, "تعذر تحميل أو بناء فهرس العينات: " + indexFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * بناء الفهرس بالمرور على ترويسات العينات في المستخرج (المواقع والأحجام غير معروفة)
+     */
+    private SampleIndex.Builder buildIndexFromExtractor() {
+        SampleIndex.Builder builder = new SampleIndex.Builder();
+        // المستخرج مختار على مسار الفيديو: نمر على العينات ثم نعود للبداية
+        do {
+            long sampleUs = mExtractor.getSampleTime();
+            if (sampleUs < 0) {
+                break;
+            }
+            builder.addSample(sampleUs, -1, -1, (mExtractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0);
+        } while (mExtractor.advance());
+        mExtractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        return builder;
+    }
+
+    private void copyImage(Image image, FrameBuffer out) {
+        Rect crop = image.getCropRect();
+        int width = crop.width();
+        int height = crop.height();
+        // عينة من كل بكسلين في كل بعد تحت الضغط؛ المستهلك يعيد التحجيم إلى دقته
+        int step = mPressureLevel >= PRESSURE_DOWNGRADE && width >= 2 && height >= 2 ? 2 : 1;
+        Image.Plane[] planes = image.getPlanes();
+        int yRowStride = planes[0].getRowStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+        // بعض المفككات تضع الصورة المقصوصة بإزاحة داخل المخزن المحاذى (crop.left/top ليست صفراً)
+        int yOffset = crop.top * yRowStride + crop.left * planes[0].getPixelStride();
+        int uvOffset = (crop.top / 2) * uvRowStride + (crop.left / 2) * uvPixelStride;
+        out.resize(width / step, height / step);
+        Nv21Converter.planesToNv21(offsetPlane(planes[0], yOffset), yRowStride,
+                offsetPlane(planes[1], uvOffset), offsetPlane(planes[2], uvOffset), uvRowStride, uvPixelStride,
+                width, height, step, out.getData());
+    }
+
+    private static ByteBuffer offsetPlane(Image.Plane plane, int offset) {
+        ByteBuffer buffer = plane.getBuffer().duplicate();
+        buffer.position(buffer.position() + offset);
+        return buffer;
+    }
+}
@@ -0,0 +1,190 @@
+package com.vcamera.app.core;
+
+import android.content.SharedPreferences;
+import android.hardware.Camera;
+
+/**
+ * تكوين كاميرا افتراضية واحدة في جدول الكاميرات
+ * الاتجاه وزاوية المستشعر والدقة والمصدر الخاص بها؛ المصدر الافتراضي يتبع المصدر العام لمدير الكاميرا
+ */
+public class VirtualCameraConfig {
+    // الكاميرا تعرض المصدر العام (setSource) بدلاً من مصدر خاص
+    public static final int SOURCE_FOLLOW_GLOBAL = -1;
+
+    private final int mCameraId;
+    private final int mFacing;
+    private final int mOrientation;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mSourceType;
+    private final String mSourcePath;
+    private final int mSyntheticPattern;
+    private final long mSyntheticSeed;
+
+    private VirtualCameraConfig(Builder builder) {
+        mCameraId = builder.mCameraId;
+        mFacing = builder.mFacing;
+        mOrientation = builder.mOrientation;
+        mWidth = builder.mWidth;
+        mHeight = builder.mHeight;
+        mSourceType = builder.mSourceType;
+        mSourcePath = builder.mSourcePath;
+        mSyntheticPattern = builder.mSyntheticPattern;
+        mSyntheticSeed = builder.mSyntheticSeed;
+    }
+
+    /**
+     * الجدول الافتراضي: كاميرا خلفية وأمامية بدقة 1280x720 تتبعان المصدر العام
+     */
+    public static VirtualCameraConfig[] createDefaults() {
+        return new VirtualCameraConfig[] {
+            new Builder(0).setFacing(Camera.CameraInfo.CAMERA_FACING_BACK).setOrientation(90).build(),
+            new Builder(1).setFacing(Camera.CameraInfo.CAMERA_FACING_FRONT).setOrientation(270).build()
+        };
+    }
+
+    /**
+     * قراءة تكوين الكاميرا من التفضيلات، أو القيمة الاحتياطية للمفاتيح غير المحفوظة
+     */
+    static VirtualCameraConfig load(SharedPreferences preferences, VirtualCameraConfig fallback) {
+        String prefix = keyPrefix(fallback.mCameraId);
+        return new Builder(fallback.mCameraId)
+                .setFacing(preferences.getInt(prefix + "facing", fallback.mFacing))
+                .setOrientation(preferences.getInt(prefix + "orientation", fallback.mOrientation))
+                .setResolution(preferences.getInt(prefix + "width", fallback.mWidth),
+                        preferences.getInt(prefix + "height", fallback.mHeight))
+                .setSource(preferences.getInt(prefix + "source", fallback.mSourceType),
+                        preferences.getString(prefix + "source_path", fallback.mSourcePath))
+                .setSyntheticPattern(preferences.getInt(prefix + "synthetic_pattern", fallback.mSyntheticPattern),
+                        preferences.getLong(prefix + "synthetic_seed", fallback.mSyntheticSeed))
+                .build();
+    }
+
+    /**
+     * كتابة تكوين الكاميرا في محرر التفضيلات
+     */
+    void save(SharedPreferences.Editor editor) {
+        String prefix = keyPrefix(mCameraId);
+        editor.putInt(prefix + "facing", mFacing)
+                .putInt(prefix + "orientation", mOrientation)
+                .putInt(prefix + "width", mWidth)
+                .putInt(prefix + "height", mHeight)
+                .putInt(prefix + "source", mSourceType)
+                .putString(prefix + "source_path", mSourcePath != null ? mSourcePath : "")
+                .putInt(prefix + "synthetic_pattern", mSyntheticPattern)
+                .putLong(prefix + "synthetic_seed", mSyntheticSeed);
+    }
+
+    private static String keyPrefix(int cameraId) {
+        return "camera_" + cameraId + "_";
+    }
+
+    public int getCameraId() {
+        return mCameraId;
+    }
+
+    public int getFacing() {
+        return mFacing;
+    }
+
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getSourceType() {
+        return mSourceType;
+    }
+
+    public String getSourcePath() {
+        return mSourcePath;
+    }
+
+    public int getSyntheticPattern() {
+        return mSyntheticPattern;
+    }
+
+    public long getSyntheticSeed() {
+        return mSyntheticSeed;
+    }
+
+    public boolean followsGlobalSource() {
+        return mSourceType == SOURCE_FOLLOW_GLOBAL;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(mCameraId)
+                .setFacing(mFacing)
+                .setOrientation(mOrientation)
+                .setResolution(mWidth, mHeight)
+                .setSource(mSourceType, mSourcePath)
+                .setSyntheticPattern(mSyntheticPattern, mSyntheticSeed);
+    }
+
+    @Override
+    public String toString() {
+        return "camera " + mCameraId + " facing=" + mFacing + " orientation=" + mOrientation
+                + " " + mWidth + "x" + mHeight + " source=" + mSourceType;
+    }
+
+    public static class Builder {
+        private final int mCameraId;
+        private int mFacing = Camera.CameraInfo.CAMERA_FACING_BACK;
+        private int mOrientation = 90;
+        private int mWidth = 1280;
+        private int mHeight = 720;
+        private int mSourceType = SOURCE_FOLLOW_GLOBAL;
+        private String mSourcePath = "";
+        private int mSyntheticPattern;
+        private long mSyntheticSeed;
+
+        public Builder(int cameraId) {
+            mCameraId = cameraId;
+        }
+
+        public Builder setFacing(int facing) {
+            mFacing = facing;
+            return this;
+        }
+
+        public Builder setOrientation(int orientation) {
+            mOrientation = ((orientation % 360) + 360) % 360;
+            return this;
+        }
+
+        public Builder setResolution(int width, int height) {
+            if (width > 0 && height > 0) {
+                mWidth = width;
+                mHeight = height;
+            }
+            return this;
+        }
+
+        /**
+         * @param sourceType أحد ثوابت SOURCE_* في مدير الكاميرا، أو SOURCE_FOLLOW_GLOBAL
+         * @param sourcePath مسار الصورة أو الفيديو أو الجلسة للمصدر الخاص
+         */
+        public Builder setSource(int sourceType, String sourcePath) {
+            mSourceType = sourceType;
+            mSourcePath = sourcePath != null ? sourcePath : "";
+            return this;
+        }
+
+        public Builder setSyntheticPattern(int pattern, long seed) {
+            mSyntheticPattern = pattern;
+            mSyntheticSeed = seed;
+            return this;
+        }
+
+        public VirtualCameraConfig build() {
+            return new VirtualCameraConfig(this);
+        }
+    }
+}
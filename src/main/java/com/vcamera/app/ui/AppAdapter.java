@@ -1,6 +1,7 @@
 package com.vcamera.app.ui;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,6 +12,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.vcamera.app.R;
+import com.vcamera.app.core.AppIconCache;
 import com.vcamera.app.core.AppManager;
 
 import java.util.ArrayList;
@@ -96,7 +98,8 @@ public class AppAdapter extends RecyclerView.Adapter<AppAdapter.AppViewHolder> {
     /**
      * حامل عرض التطبيق
      */
-    class AppViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
+    class AppViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnLongClickListener, AppIconCache.Callback {
         
         private ImageView mIconView;
         private TextView mNameView;
@@ -120,12 +123,16 @@ public class AppAdapter extends RecyclerView.Adapter<AppAdapter.AppViewHolder> {
         public void bind(AppManager.AppInfo app) {
             mApp = app;
             
-            // تعيين الأيقونة
-            if (app.getIcon() != null) {
-                mIconView.setImageDrawable(app.getIcon());
+            // تعيين الأيقونة من الذاكرة إن وجدت، وإلا الأيقونة الافتراضية حتى يكتمل تحميلها في الخلفية
+            AppIconCache iconCache = AppIconCache.getInstance(mContext);
+            Bitmap icon = iconCache.getIfCached(app.getPackageName(), app.getVersionCode());
+            if (icon != null) {
+                mIconView.setImageBitmap(icon);
             } else {
-                // تعيين أيقونة افتراضية
                 mIconView.setImageResource(R.drawable.ic_app_default);
+                if (app.getApkPath() != null) {
+                    iconCache.loadAsync(app.getPackageName(), app.getVersionCode(), app.getApkPath(), this);
+                }
             }
             
             // تعيين الاسم
@@ -135,6 +142,14 @@ public class AppAdapter extends RecyclerView.Adapter<AppAdapter.AppViewHolder> {
             mPackageView.setText(app.getPackageName());
         }
         
+        @Override
+        public void onIconLoaded(String packageName, Bitmap icon) {
+            // الحامل قد أُعيد استخدامه لتطبيق آخر قبل اكتمال التحميل
+            if (icon != null && mApp != null && mApp.getPackageName().equals(packageName)) {
+                mIconView.setImageBitmap(icon);
+            }
+        }
+        
         @Override
         public void onClick(View v) {
             if (mAppClickListener != null && mApp != null) {
@@ -246,29 +246,15 @@ public class MainActivity extends Activity {
         try {
             updateStatus("جارٍ تشغيل التطبيق: " + packageName);
             
-            // تشغيل التطبيق في خلفية منفصلة
-            new Thread(() -> {
-                try {
-                    // تشغيل التطبيق
-                    boolean launched = mVirtualAppEnvironment.launchApp(packageName);
-                    
-                    // تحديث واجهة المستخدم على الخيط الرئيسي
-                    mMainHandler.post(() -> {
-                        if (launched) {
-                            updateStatus("تم تشغيل التطبيق بنجاح: " + packageName);
-                        } else {
-                            updateStatus("فشل في تشغيل التطبيق: " + packageName);
-                            showErrorDialog("فشل في تشغيل التطبيق", "تحقق من سجلات الأخطاء لمزيد من المعلومات.");
-                        }
-                    });
-                } catch (Exception e) {
-                    mMainHandler.post(() -> {
-                        mErrorLogger.logException(TAG, "خطأ أثناء تشغيل التطبيق", e);
-                        updateStatus("خطأ: " + e.getMessage());
-                        showErrorDialog("خطأ أثناء تشغيل التطبيق", e.getMessage());
-                    });
+            // الإطلاق غير متزامن: لا خيط ينتظر، والنتيجة تصل على الخيط الرئيسي
+            mVirtualAppEnvironment.launchAppAsync(packageName, (launchedPackage, launched) -> {
+                if (launched) {
+                    updateStatus("تم تشغيل التطبيق بنجاح: " + launchedPackage);
+                } else {
+                    updateStatus("فشل في تشغيل التطبيق: " + launchedPackage);
+                    showErrorDialog("فشل في تشغيل التطبيق", "تحقق من سجلات الأخطاء لمزيد من المعلومات.");
                 }
-            }).start();
+            });
         } catch (Exception e) {
             mErrorLogger.logException(TAG, "خطأ أثناء تشغيل التطبيق", e);
             updateStatus("خطأ: " + e.getMessage());
@@ -542,22 +528,19 @@ public class MainActivity extends Activity {
             // تشغيل التثبيت في خلفية منفصلة
             new Thread(() -> {
                 try {
-                    // نسخ الملف إلى التخزين المؤقت
-                    File tempApk = copyUriToTempFile(apkUri);
-                    if (tempApk == null) {
-                        mMainHandler.post(() -> {
-                            updateStatus("فشل في نسخ ملف APK");
-                            Toast.makeText(this, "فشل في نسخ ملف APK.", Toast.LENGTH_SHORT).show();
-                        });
-                        return;
+                    // التثبيت مباشرة من محتوى URI دون نسخة مؤقتة في التخزين المؤقت
+                    boolean installed;
+                    try (java.io.InputStream apkStream = getContentResolver().openInputStream(apkUri)) {
+                        if (apkStream == null) {
+                            mMainHandler.post(() -> {
+                                updateStatus("فشل في قراءة ملف APK");
+                                Toast.makeText(this, "فشل في قراءة ملف APK.", Toast.LENGTH_SHORT).show();
+                            });
+                            return;
+                        }
+                        installed = mVirtualAppEnvironment.installApp(apkStream, apkUri.toString());
                     }
                     
-                    // تثبيت التطبيق
-                    boolean installed = mVirtualAppEnvironment.installApp(tempApk.getAbsolutePath());
-                    
-                    // تنظيف الملف المؤقت
-                    tempApk.delete();
-                    
                     // تحديث واجهة المستخدم على الخيط الرئيسي
                     mMainHandler.post(() -> {
                         if (installed) {
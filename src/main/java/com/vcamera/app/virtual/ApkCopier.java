@@ -0,0 +1,212 @@
+package com.vcamera.app.virtual;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * نسخ ملف APK في مرور تسلسلي واحد: كل كتلة تُقرأ مرة وتُحدّث بها بصمة SHA-256 وتُكتب في الهدف
+ * ذيل الملف يُحفظ أثناء المرور لإيجاد نهاية الدليل المركزي (EOCD) دون قراءة ثانية للمصدر،
+ * ثم يُتحقق من الدليل المركزي في النسخة المكتوبة (ما زالت في ذاكرة الصفحات) قبل نقلها إلى مكانها
+ */
+final class ApkCopier {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    // أقصى تعليق ZIP، فالسجل الأخير يقع دائماً في هذا الذيل
+    private static final int TAIL_SIZE = 0xFFFF + END_OF_CENTRAL_DIRECTORY_SIZE;
+
+    private static final String MANIFEST_ENTRY = "AndroidManifest.xml";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ApkCopier() {
+    }
+
+    /**
+     * نتيجة النسخ: بصمة المحتوى وحجمه وعدد مدخلاته
+     */
+    static final class Result {
+        final byte[] sha256;
+        final long length;
+        final int entryCount;
+
+        Result(byte[] sha256, long length, int entryCount) {
+            this.sha256 = sha256;
+            this.length = length;
+            this.entryCount = entryCount;
+        }
+    }
+
+    /**
+     * نسخ المصدر إلى الهدف مع البصمة والتحقق (ملف مؤقت ثم نقل؛ لا يبقى هدف نصف مكتوب أو غير صالح)
+     * @throws IOException إذا فشل النسخ أو لم يكن المحتوى APK سليماً
+     */
+    static Result copy(InputStream source, File target) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 unavailable", e);
+        }
+
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temp = new File(parent, target.getName() + ".tmp");
+
+        boolean success = false;
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] head = new byte[4];
+            int headLength = 0;
+            byte[] tail = new byte[TAIL_SIZE];
+            int tailLength = 0;
+            long length = 0;
+
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                int read;
+                while ((read = source.read(buffer)) > 0) {
+                    for (int i = 0; headLength < head.length && i < read; i++) {
+                        head[headLength++] = buffer[i];
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    tailLength = appendTail(tail, tailLength, buffer, read);
+                    length += read;
+                }
+                out.getFD().sync();
+            }
+
+            if (headLength < head.length || readInt(head, 0) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("Not a ZIP archive");
+            }
+            int entryCount = verifyCentralDirectory(temp, length, tail, tailLength);
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot move APK to " + target);
+            }
+            success = true;
+            return new Result(digest.digest(), length, entryCount);
+        } finally {
+            if (!success) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * الاحتفاظ بآخر TAIL_SIZE بايت مما مر من الملف
+     */
+    private static int appendTail(byte[] tail, int tailLength, byte[] chunk, int chunkLength) {
+        if (chunkLength >= tail.length) {
+            System.arraycopy(chunk, chunkLength - tail.length, tail, 0, tail.length);
+            return tail.length;
+        }
+        int keep = Math.min(tailLength, tail.length - chunkLength);
+        System.arraycopy(tail, tailLength - keep, tail, 0, keep);
+        System.arraycopy(chunk, 0, tail, keep, chunkLength);
+        return keep + chunkLength;
+    }
+
+    /**
+     * التحقق من سجل نهاية الدليل المركزي ومن كل مدخلات الدليل، ووجود AndroidManifest.xml
+     * @return عدد المدخلات
+     */
+    private static int verifyCentralDirectory(File file, long length, byte[] tail, int tailLength)
+            throws IOException {
+        // البحث عن السجل من الخلف: أول توقيع يطابق طول تعليقه نهاية الملف
+        int eocd = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (readInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+                    && i + END_OF_CENTRAL_DIRECTORY_SIZE + readShort(tail, i + 20) == tailLength) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("ZIP end of central directory not found");
+        }
+
+        int totalEntries = readShort(tail, eocd + 10);
+        long directorySize = readInt(tail, eocd + 12) & 0xFFFFFFFFL;
+        long directoryOffset = readInt(tail, eocd + 16) & 0xFFFFFFFFL;
+        if (totalEntries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 APKs are not supported");
+        }
+        if (readShort(tail, eocd + 4) != 0 || readShort(tail, eocd + 8) != totalEntries) {
+            throw new IOException("Multi-disk ZIP archives are not supported");
+        }
+        long eocdOffset = length - (tailLength - eocd);
+        if (directoryOffset + directorySize != eocdOffset) {
+            throw new IOException("ZIP central directory does not end at its end record");
+        }
+
+        MappedByteBuffer directory;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            directory = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize);
+        }
+        directory.order(ByteOrder.LITTLE_ENDIAN);
+
+        boolean hasManifest = false;
+        int position = 0;
+        for (int i = 0; i < totalEntries; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directorySize
+                    || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Corrupt ZIP central directory at entry " + i);
+            }
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long localOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            if (localOffset + compressedSize > directoryOffset) {
+                throw new IOException("ZIP entry " + i + " lies outside the archive data");
+            }
+            int next = position + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (next > directorySize) {
+                throw new IOException("Corrupt ZIP central directory at entry " + i);
+            }
+            if (!hasManifest && nameLength == MANIFEST_ENTRY.length()) {
+                hasManifest = MANIFEST_ENTRY.equals(readName(directory, position + CENTRAL_HEADER_SIZE, nameLength));
+            }
+            position = next;
+        }
+        if (position != directorySize) {
+            throw new IOException("ZIP central directory size mismatch");
+        }
+        if (!hasManifest) {
+            throw new IOException("APK has no " + MANIFEST_ENTRY);
+        }
+        return totalEntries;
+    }
+
+    private static String readName(ByteBuffer buffer, int offset, int length) {
+        byte[] name = new byte[length];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.get(name);
+        return new String(name, UTF_8);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+    }
+}
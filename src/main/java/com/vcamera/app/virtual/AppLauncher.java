@@ -10,8 +10,10 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.vcamera.app.core.ErrorLogger;
@@ -20,7 +22,11 @@ import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * مُطلق التطبيقات
@@ -30,8 +36,18 @@ import java.util.List;
 public class AppLauncher {
     private static final String TAG = "AppLauncher";
     
+    private static final long RETRY_DELAY_MS = 300;
+    // فاصل فحص التأكيد: العملية المستهدفة لا تعلن نفسها دائماً للسجل، فلا يكون أفضل حال هو المهلة كاملة
+    private static final long CONFIRM_POLL_INTERVAL_MS = 200;
+    
     private final Context mContext;
     private final int mTimeoutMs = 10000; // 10 ثوانٍ
+    // كل مراحل الإطلاق تعمل على هذا الخيط، فحالة المُطلق وإحصائياته لا تحتاج أقفالاً
+    private final Handler mLaunchHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // الإطلاقات التي تنتظر إشارة بدء عمليتها من سجل العمليات
+    private final Map<String, LaunchRequest> mAwaitingStart = new HashMap<>();
+    private final ProcessRegistry mProcessRegistry;
     private boolean mVerboseLogging = true;
     
     // قائمة الإصلاحات التي تم تطبيقها
@@ -44,62 +60,71 @@ public class AppLauncher {
     
     public AppLauncher(Context context) {
         mContext = context.getApplicationContext();
+        
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mLaunchHandler = new Handler(thread.getLooper());
+        
+        mProcessRegistry = ProcessRegistry.getInstance(mContext);
+        mProcessRegistry.addListener(new ProcessRegistry.Listener() {
+            @Override
+            public void onProcessStarted(String packageName, int pid) {
+                AppLauncher.this.onProcessStarted(packageName);
+            }
+            
+            @Override
+            public void onProcessDied(String packageName, int pid) {
+            }
+        });
     }
     
     /**
-     * إطلاق تطبيق مع تطبيق جميع الإصلاحات
+     * إطلاق تطبيق مع تطبيق جميع الإصلاحات دون حجز الخيط المستدعي
      * هذه هي الدالة الرئيسية التي ينبغي استخدامها لإطلاق التطبيقات
+     * المراحل: تحضير، إصلاحات، بدء، تأكيد، ثم إعادة محاولة واحدة بعد إصلاحات ما بعد الإطلاق
+     * @param callback يُستدعى على الخيط الرئيسي بالنتيجة، ويمكن أن يكون null
      */
-    public boolean launchApp(String packageName, int userId) {
+    public void launchAppAsync(String packageName, int userId, LaunchCallback callback) {
         log("Launching app: " + packageName + ", userId: " + userId);
-        mTotalLaunches++;
+        final LaunchRequest request = new LaunchRequest(packageName, userId, callback);
+        mLaunchHandler.post(() -> {
+            mTotalLaunches++;
+            advance(request);
+        });
+    }
+    
+    /**
+     * إطلاق تطبيق وانتظار النتيجة؛ للخيوط الخلفية فقط
+     * على الخيط الرئيسي يُرفض الطلب بدل تجميد الواجهة حتى انتهاء المهلة
+     */
+    public boolean launchApp(String packageName, int userId) {
+        if (Looper.myLooper() == Looper.getMainLooper() || Looper.myLooper() == mLaunchHandler.getLooper()) {
+            logError("Blocking launch requested on " + Thread.currentThread().getName()
+                    + ", use launchAppAsync: " + packageName);
+            return false;
+        }
+        
+        final boolean[] result = {false};
+        final CountDownLatch done = new CountDownLatch(1);
+        final LaunchRequest request = new LaunchRequest(packageName, userId, null);
+        request.completion = success -> {
+            result[0] = success;
+            done.countDown();
+        };
+        mLaunchHandler.post(() -> {
+            mTotalLaunches++;
+            advance(request);
+        });
         
         try {
-            // 1. مسح الإصلاحات المطبقة
-            mAppliedFixes.clear();
-            
-            // 2. جمع معلومات التطبيق
-            ApplicationInfo appInfo = getApplicationInfo(packageName);
-            if (appInfo == null) {
-                logError("Application info not found: " + packageName);
-                mFailedLaunches++;
-                return false;
-            }
-            
-            // 3. تطبيق الإصلاحات قبل الإطلاق
-            applyPreLaunchFixes(packageName, userId, appInfo);
-            
-            // 4. تحضير النية للإطلاق
-            Intent launchIntent = prepareLaunchIntent(packageName, userId, appInfo);
-            if (launchIntent == null) {
-                logError("Failed to prepare launch intent: " + packageName);
-                mFailedLaunches++;
-                return false;
-            }
-            
-            // 5. إطلاق التطبيق
-            boolean success = executeLaunch(launchIntent, packageName, userId);
-            
-            // 6. تطبيق الإصلاحات بعد الإطلاق إذا لزم الأمر
-            if (!success) {
-                success = applyPostLaunchFixesAndRetry(packageName, userId, appInfo);
-            }
-            
-            // 7. تحديث الإحصائيات
-            if (success) {
-                mSuccessfulLaunches++;
-                log("App launched successfully: " + packageName);
-            } else {
-                mFailedLaunches++;
-                logError("App launch failed after all fixes: " + packageName);
+            // الحد الأقصى: مهلتا تأكيد مع إعادة المحاولة
+            if (!done.await(2L * mTimeoutMs + RETRY_DELAY_MS + 1000, TimeUnit.MILLISECONDS)) {
+                logError("Timed out waiting for launch: " + packageName);
             }
-            
-            return success;
-        } catch (Exception e) {
-            logError("Error launching app: " + packageName, e);
-            mFailedLaunches++;
-            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return result[0];
     }
     
     /**
@@ -199,17 +224,12 @@ public class AppLauncher {
         log("Fixing process issues for: " + packageName);
         
         try {
-            // التحقق من وجود عمليات سابقة وإنهائها إذا لزم الأمر
-            ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
-            List<ActivityManager.RunningAppProcessInfo> processes = am.getRunningAppProcesses();
-            
-            if (processes != null) {
-                for (ActivityManager.RunningAppProcessInfo process : processes) {
-                    if (process.processName.contains(packageName)) {
-                        log("Killing previous process: " + process.processName);
-                        Process.killProcess(process.pid);
-                    }
-                }
+            // التحقق من وجود عملية سابقة للحزمة نفسها تماماً وإنهائها
+            // العملية البديلة الدافئة المربوطة بالحزمة ليست عملية سابقة، فلا تُنهى
+            int pid = mProcessRegistry.getPid(packageName);
+            if (pid > 0 && !StubProcessPool.getInstance(mContext).isStubProcess(pid)) {
+                log("Killing previous process: " + packageName + " (pid " + pid + ")");
+                Process.killProcess(pid);
             }
             
             return true;
@@ -231,6 +251,14 @@ public class AppLauncher {
             // - إصلاح المتغيرات البيئية
             // - إصلاح الروابط الرمزية
             
+            // ملفات dex غير المحسنة تجعل هذا الإطلاق يدفع كلفة التحقق؛ تقديم تحسينها للإطلاقات التالية
+            File appDir = new File(mContext.getFilesDir(), "virtual_apps/" + packageName);
+            DexOptimizer optimizer = DexOptimizer.getInstance(mContext);
+            if (new File(appDir, "base.apk").exists() && !optimizer.isOptimized(appDir)) {
+                log("Dex not pre-optimized yet for: " + packageName);
+                optimizer.schedule(packageName, appDir);
+            }
+            
             // محاكاة النجاح لهذا المثال
             return true;
         } catch (Exception e) {
@@ -472,75 +500,142 @@ public class AppLauncher {
     }
     
     /**
-     * تنفيذ الإطلاق
+     * خطوة واحدة من آلة حالة الإطلاق؛ كل الخطوات تعمل على خيط المُطلق ولا تنتظر
+     * الانتظار بين الخطوات يكون برسائل مؤجلة، فلا يُحجز أي خيط حتى نهاية المهلة
      */
-    private boolean executeLaunch(Intent launchIntent, String packageName, int userId) {
-        log("Executing launch for: " + packageName);
-        
+    private void advance(LaunchRequest request) {
         try {
-            // 1. بدء النشاط باستخدام النية
-            mContext.startActivity(launchIntent);
-            
-            // 2. التحقق من نجاح الإطلاق
-            final boolean[] success = {false};
-            final Object lock = new Object();
-            
-            Handler handler = new Handler(Looper.getMainLooper());
-            handler.postDelayed(() -> {
-                synchronized (lock) {
-                    // التحقق من أن التطبيق قيد التشغيل
-                    success[0] = isAppRunning(packageName);
-                    lock.notify();
-                }
-            }, 1000); // انتظر ثانية واحدة
-            
-            // انتظار نتيجة الفحص
-            synchronized (lock) {
-                try {
-                    lock.wait(mTimeoutMs);
-                } catch (InterruptedException e) {
-                    // تجاهل
-                }
+            switch (request.state) {
+                case PREPARE:
+                    // جمع معلومات التطبيق
+                    mAppliedFixes.clear();
+                    request.appInfo = getApplicationInfo(request.packageName);
+                    if (request.appInfo == null) {
+                        finish(request, false, "Application info not found: " + request.packageName);
+                        return;
+                    }
+                    moveTo(request, LaunchState.FIX, 0);
+                    break;
+                    
+                case FIX:
+                    // الإصلاحات قبل الإطلاق وتحضير النية
+                    applyPreLaunchFixes(request.packageName, request.userId, request.appInfo);
+                    request.intent = prepareLaunchIntent(request.packageName, request.userId, request.appInfo);
+                    if (request.intent == null) {
+                        finish(request, false, "Failed to prepare launch intent: " + request.packageName);
+                        return;
+                    }
+                    moveTo(request, LaunchState.START, 0);
+                    break;
+                    
+                case START:
+                    log("Executing launch for: " + request.packageName);
+                    mContext.startActivity(request.intent);
+                    if (isAppRunning(request.packageName)) {
+                        // العملية حية مسبقاً: النشاط يُعرض فيها دون بدء عملية جديدة
+                        finish(request, true, null);
+                        return;
+                    }
+                    // إشارة بدء العملية (onProcessStarted) تؤكد فوراً، وإلا فحص قصير متكرر حتى المهلة
+                    request.confirmDeadline = SystemClock.uptimeMillis() + mTimeoutMs;
+                    mAwaitingStart.put(request.packageName, request);
+                    moveTo(request, LaunchState.CONFIRM, CONFIRM_POLL_INTERVAL_MS);
+                    break;
+                    
+                case CONFIRM:
+                    // ليس كل عملية تعلن نفسها للسجل، فتُبحث أيضاً في قائمة عمليات النظام
+                    if (isAppRunning(request.packageName) || isProcessListed(request.packageName)) {
+                        finish(request, true, null);
+                    } else if (SystemClock.uptimeMillis() < request.confirmDeadline) {
+                        moveTo(request, LaunchState.CONFIRM, CONFIRM_POLL_INTERVAL_MS);
+                    } else {
+                        mAwaitingStart.remove(request.packageName);
+                        moveTo(request, LaunchState.RETRY, 0);
+                    }
+                    break;
+                    
+                case RETRY:
+                    if (request.retried) {
+                        finish(request, false, "App launch failed after all fixes: " + request.packageName);
+                        return;
+                    }
+                    request.retried = true;
+                    
+                    log("Applying post-launch fixes for: " + request.packageName);
+                    List<String> postLaunchFixes = applyPostLaunchFixes(request.packageName, request.userId);
+                    if (postLaunchFixes.isEmpty()) {
+                        finish(request, false, "App launch failed after all fixes: " + request.packageName);
+                        return;
+                    }
+                    log("Applied " + postLaunchFixes.size() + " post-launch fixes: " + String.join(", ", postLaunchFixes));
+                    
+                    request.intent = prepareLaunchIntent(request.packageName, request.userId, request.appInfo);
+                    if (request.intent == null) {
+                        finish(request, false, "Failed to prepare launch intent: " + request.packageName);
+                        return;
+                    }
+                    // مهلة قصيرة كي تأخذ الإصلاحات أثرها، دون حجز الخيط
+                    moveTo(request, LaunchState.START, RETRY_DELAY_MS);
+                    break;
+                    
+                default:
+                    break;
             }
-            
-            return success[0];
         } catch (Exception e) {
-            logError("Error executing launch: " + packageName, e);
-            return false;
+            logError("Error launching app: " + request.packageName, e);
+            finish(request, false, null);
         }
     }
     
+    private void moveTo(LaunchRequest request, LaunchState state, long delayMs) {
+        request.state = state;
+        mLaunchHandler.removeCallbacks(request);
+        mLaunchHandler.postDelayed(request, delayMs);
+    }
+    
     /**
-     * تطبيق الإصلاحات بعد الإطلاق ومحاولة مرة أخرى
+     * إنهاء الإطلاق وتحديث الإحصائيات وإبلاغ المستدعي على الخيط الرئيسي
      */
-    private boolean applyPostLaunchFixesAndRetry(String packageName, int userId, ApplicationInfo appInfo) {
-        log("Applying post-launch fixes for: " + packageName);
+    private void finish(final LaunchRequest request, final boolean success, String error) {
+        if (request.state == LaunchState.DONE) {
+            return;
+        }
+        request.state = LaunchState.DONE;
+        mLaunchHandler.removeCallbacks(request);
+        if (mAwaitingStart.get(request.packageName) == request) {
+            mAwaitingStart.remove(request.packageName);
+        }
         
-        try {
-            // 1. تطبيق إصلاحات ما بعد الإطلاق
-            List<String> postLaunchFixes = applyPostLaunchFixes(packageName, userId);
-            
-            if (!postLaunchFixes.isEmpty()) {
-                log("Applied " + postLaunchFixes.size() + " post-launch fixes: " + String.join(", ", postLaunchFixes));
-                
-                // 2. انتظار قليلاً قبل المحاولة مرة أخرى
-                Thread.sleep(1000);
-                
-                // 3. إعداد النية مرة أخرى
-                Intent launchIntent = prepareLaunchIntent(packageName, userId, appInfo);
-                if (launchIntent == null) {
-                    return false;
-                }
-                
-                // 4. محاولة الإطلاق مرة أخرى
-                return executeLaunch(launchIntent, packageName, userId);
+        if (success) {
+            mSuccessfulLaunches++;
+            log("App launched successfully: " + request.packageName + " ("
+                    + (SystemClock.uptimeMillis() - request.startTime) + "ms)");
+        } else {
+            mFailedLaunches++;
+            if (error != null) {
+                logError(error);
             }
-            
-            return false;
-        } catch (Exception e) {
-            logError("Error applying post-launch fixes: " + packageName, e);
-            return false;
         }
+        
+        if (request.completion != null) {
+            request.completion.onComplete(success);
+        }
+        if (request.callback != null) {
+            mMainHandler.post(() -> request.callback.onLaunchResult(request.packageName, success));
+        }
+    }
+    
+    /**
+     * إشارة بدء عملية التطبيق: تؤكد الإطلاق المنتظر فوراً بدل انتظار الفحص الدوري التالي
+     * يمكن استدعاؤها من أي خيط
+     */
+    public void onProcessStarted(final String packageName) {
+        mLaunchHandler.post(() -> {
+            LaunchRequest request = mAwaitingStart.get(packageName);
+            if (request != null && request.state == LaunchState.CONFIRM) {
+                finish(request, true, null);
+            }
+        });
     }
     
     /**
@@ -645,20 +740,29 @@ public class AppLauncher {
     }
     
     /**
-     * التحقق مما إذا كان التطبيق قيد التشغيل
+     * التحقق مما إذا كان التطبيق قيد التشغيل (بحث في سجل العمليات، دون IPC)
      */
     private boolean isAppRunning(String packageName) {
-        ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
-        List<ActivityManager.RunningAppProcessInfo> processes = am.getRunningAppProcesses();
-        
-        if (processes != null) {
-            for (ActivityManager.RunningAppProcessInfo process : processes) {
-                if (process.processName.contains(packageName)) {
-                    return true;
+        return mProcessRegistry.isRunning(packageName);
+    }
+    
+    /**
+     * البحث عن عملية باسم الحزمة تماماً في قائمة عمليات النظام (IPC؛ مرة كل فاصل تأكيد على خيط المُطلق)
+     */
+    private boolean isProcessListed(String packageName) {
+        try {
+            ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+            List<ActivityManager.RunningAppProcessInfo> processes = am != null ? am.getRunningAppProcesses() : null;
+            if (processes != null) {
+                for (ActivityManager.RunningAppProcessInfo process : processes) {
+                    if (packageName.equals(process.processName)) {
+                        return true;
+                    }
                 }
             }
+        } catch (Exception e) {
+            logError("Error checking running processes", e);
         }
-        
         return false;
     }
     
@@ -692,6 +796,51 @@ public class AppLauncher {
         mVerboseLogging = enable;
     }
     
+    /**
+     * مستمع نتيجة الإطلاق غير المتزامن
+     */
+    public interface LaunchCallback {
+        void onLaunchResult(String packageName, boolean success);
+    }
+    
+    private interface Completion {
+        void onComplete(boolean success);
+    }
+    
+    /**
+     * مراحل آلة حالة الإطلاق
+     */
+    private enum LaunchState {
+        PREPARE, FIX, START, CONFIRM, RETRY, DONE
+    }
+    
+    /**
+     * حالة إطلاق واحد؛ هو نفسه الرسالة التي تُرسل إلى خيط المُطلق لتنفيذ مرحلته التالية
+     */
+    private final class LaunchRequest implements Runnable {
+        final String packageName;
+        final int userId;
+        final LaunchCallback callback;
+        final long startTime = SystemClock.uptimeMillis();
+        Completion completion;
+        LaunchState state = LaunchState.PREPARE;
+        ApplicationInfo appInfo;
+        Intent intent;
+        long confirmDeadline;
+        boolean retried;
+        
+        LaunchRequest(String packageName, int userId, LaunchCallback callback) {
+            this.packageName = packageName;
+            this.userId = userId;
+            this.callback = callback;
+        }
+        
+        @Override
+        public void run() {
+            advance(this);
+        }
+    }
+    
     /**
      * الحصول على إحصائيات الإطلاق
      */
@@ -0,0 +1,105 @@
+package com.vcamera.app.virtual;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+import com.vcamera.app.core.AppIconCache;
+import com.vcamera.app.core.ErrorLogger;
+import com.vcamera.app.utils.PackageUtils;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * محمل بيانات التطبيقات الافتراضية: تحليل ملف APK وبصمته ورسم أيقونته
+ * التحديث الجماعي يتوزع على مجمع خيوط بعدد المعالجات، وكل تطبيق يُعلن فور اكتماله
+ * فلا تنتظر القائمة أبطأ APK
+ */
+class AppMetadataLoader {
+    private static final String TAG = "AppMetadataLoader";
+
+    // الخيوط تنتهي بعد خمول المجمع؛ التحميل الجماعي يحدث عند البدء غالباً
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final Context mContext;
+    private final ErrorLogger mErrorLogger;
+    private final ThreadPoolExecutor mPool;
+
+    /**
+     * مستمع التحميل الجماعي؛ يُستدعى على خيوط المجمع
+     */
+    interface Callback {
+        void onAppLoaded(AppRegistry.Entry entry);
+
+        void onAllLoaded();
+    }
+
+    AppMetadataLoader(Context context, ErrorLogger errorLogger) {
+        mContext = context;
+        mErrorLogger = errorLogger;
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final AtomicInteger threadCount = new AtomicInteger();
+        mPool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable -> {
+                    Thread thread = new Thread(runnable, TAG + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        mPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * تحديث المدخلات بالتوازي
+     * @param apkFiles ملف APK لكل مدخل بالترتيب نفسه
+     */
+    void refreshAll(List<AppRegistry.Entry> entries, List<File> apkFiles, final Callback callback) {
+        if (entries.isEmpty()) {
+            callback.onAllLoaded();
+            return;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            final AppRegistry.Entry entry = entries.get(i);
+            final File apkFile = apkFiles.get(i);
+            mPool.execute(() -> {
+                try {
+                    refresh(entry, apkFile, null);
+                    callback.onAppLoaded(entry);
+                } catch (Exception e) {
+                    mErrorLogger.logException(TAG, "خطأ أثناء تحميل بيانات التطبيق: " + entry.packageName, e);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        callback.onAllLoaded();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * تحليل APK وتحديث اسم التطبيق وإصداره وحالة الملف في المدخل، ثم رسم أيقونته إلى القرص
+     * @param contentHash بصمة APK إذا حُسبت أثناء نسخه، أو null لحسابها
+     */
+    void refresh(AppRegistry.Entry entry, File apkFile, byte[] contentHash) {
+        entry.label = entry.packageName;
+        entry.apkPath = apkFile.getAbsolutePath();
+        try {
+            ApplicationInfo ai = PackageUtils.getPackageInfo(mContext, apkFile.getAbsolutePath());
+            if (ai != null) {
+                entry.label = ai.loadLabel(mContext.getPackageManager()).toString();
+                entry.versionCode = ai.versionCode;
+            }
+            entry.updateFrom(apkFile, contentHash);
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء استخراج معلومات التطبيق: " + entry.packageName, e);
+        }
+
+        AppIconCache.getInstance(mContext).prerender(entry.packageName, entry.versionCode, entry.apkPath);
+    }
+}
@@ -0,0 +1,274 @@
+package com.vcamera.app.virtual;
+
+import android.content.Context;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * سجل التطبيقات الافتراضية المثبتة في ملف ثنائي واحد بإصدار
+ * يُقرأ بقراءة متتالية واحدة عند البدء بدل مسح مجلد virtual_apps وتحليل كل APK،
+ * ولا يُعاد تحليل APK إلا إذا تغير حجمه أو وقت تعديله عما سُجّل
+ */
+public class AppRegistry {
+    private static final int MAGIC = 0x56434152; // "VCAR"
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "registry.bin";
+    private static final int HASH_SIZE = 32;
+
+    private static AppRegistry sInstance;
+
+    private final File mFile;
+    private final Map<String, Entry> mEntries = new LinkedHashMap<>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    /**
+     * السجل المشترك بين بيئتي التطبيقات الافتراضية كي لا تكتب إحداهما فوق تعديلات الأخرى
+     */
+    public static AppRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (AppRegistry.class) {
+                if (sInstance == null) {
+                    File appsDir = new File(context.getApplicationContext().getFilesDir(), "virtual_apps");
+                    sInstance = new AppRegistry(new File(appsDir, FILE_NAME));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    AppRegistry(File file) {
+        mFile = file;
+    }
+
+    /**
+     * تحميل السجل من الملف (مرة واحدة؛ الاستدعاءات اللاحقة تعيد الحالة المحملة)
+     * @return false إذا لم يوجد السجل بعد أو كان تالفاً، فيبنيه المستدعي بمسح المجلد مرة واحدة
+     */
+    public synchronized boolean load() throws IOException {
+        if (mLoaded) {
+            return true;
+        }
+        if (!mFile.exists()) {
+            return false;
+        }
+
+        byte[] bytes;
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "r")) {
+            long length = raf.length();
+            if (length < 16 || length > Integer.MAX_VALUE) {
+                return false;
+            }
+            bytes = new byte[(int) length];
+            raf.readFully(bytes);
+        }
+
+        // المجموع الاختباري في آخر 8 بايت يكشف الملف المقطوع
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(bytes.length - 8);
+        if (in.readLong() != crc.getValue()) {
+            return false;
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return false;
+        }
+        int count = in.readInt();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            Entry entry = new Entry();
+            entry.packageName = in.readUTF();
+            entry.label = in.readUTF();
+            entry.versionCode = in.readInt();
+            entry.apkPath = in.readUTF();
+            entry.dataPath = in.readUTF();
+            entry.apkLength = in.readLong();
+            entry.apkModified = in.readLong();
+            entry.contentHash = new byte[HASH_SIZE];
+            in.readFully(entry.contentHash);
+            entries.put(entry.packageName, entry);
+        }
+
+        mEntries.clear();
+        mEntries.putAll(entries);
+        mLoaded = true;
+        mDirty = false;
+        return true;
+    }
+
+    /**
+     * اعتبار السجل محملاً وفارغاً (بعد فشل التحميل)، ليُملأ بالمسح ثم يُحفظ
+     */
+    public synchronized void reset() {
+        mEntries.clear();
+        mLoaded = true;
+        mDirty = true;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries.values());
+    }
+
+    public synchronized Entry get(String packageName) {
+        return mEntries.get(packageName);
+    }
+
+    /**
+     * إضافة مدخل أو تحديثه وإشعار المستمعين (خارج قفل السجل)
+     */
+    public void put(Entry entry) {
+        synchronized (this) {
+            mEntries.put(entry.packageName, entry);
+            mDirty = true;
+        }
+        for (Listener listener : mListeners) {
+            listener.onEntryUpdated(entry);
+        }
+    }
+
+    public synchronized void remove(String packageName) {
+        if (mEntries.remove(packageName) != null) {
+            mDirty = true;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * حفظ السجل إذا تغير (ملف مؤقت ثم نقل، كي لا يبقى سجل نصف مكتوب)
+     */
+    public synchronized void save() throws IOException {
+        if (!mDirty) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            out.writeUTF(entry.packageName);
+            out.writeUTF(entry.label != null ? entry.label : entry.packageName);
+            out.writeInt(entry.versionCode);
+            out.writeUTF(entry.apkPath);
+            out.writeUTF(entry.dataPath != null ? entry.dataPath : "");
+            out.writeLong(entry.apkLength);
+            out.writeLong(entry.apkModified);
+            out.write(entry.contentHash != null ? entry.contentHash : new byte[HASH_SIZE]);
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        File parent = mFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temp = new File(parent, mFile.getName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            bytes.writeTo(stream);
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+            throw new IOException("Cannot write app registry " + mFile);
+        }
+        mDirty = false;
+    }
+
+    /**
+     * بصمة SHA-256 لمحتوى الملف
+     */
+    public static byte[] hashFile(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 unavailable", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * مستمع تحديث المدخلات؛ يُستدعى على خيط المحدِّث، فيصل كل تطبيق فور اكتمال تحليله
+     */
+    public interface Listener {
+        void onEntryUpdated(Entry entry);
+    }
+
+    /**
+     * مدخل تطبيق واحد في السجل
+     */
+    public static class Entry {
+        public String packageName;
+        public String label;
+        public int versionCode;
+        public String apkPath;
+        public String dataPath;
+        public long apkLength;
+        public long apkModified;
+        public byte[] contentHash;
+
+        /**
+         * هل ما زال ملف APK كما سُجّل (الحجم ووقت التعديل)، فلا حاجة لإعادة تحليله
+         */
+        public boolean matches(File apkFile) {
+            return apkFile.length() == apkLength && apkFile.lastModified() == apkModified;
+        }
+
+        /**
+         * تسجيل حالة ملف APK الحالية وبصمته
+         */
+        public void updateFrom(File apkFile) throws IOException {
+            updateFrom(apkFile, null);
+        }
+
+        /**
+         * @param knownHash بصمة حُسبت مسبقاً (أثناء النسخ مثلاً)، أو null لقراءة الملف وحسابها
+         */
+        public void updateFrom(File apkFile, byte[] knownHash) throws IOException {
+            apkPath = apkFile.getAbsolutePath();
+            apkLength = apkFile.length();
+            apkModified = apkFile.lastModified();
+            contentHash = knownHash != null ? knownHash : hashFile(apkFile);
+        }
+    }
+}
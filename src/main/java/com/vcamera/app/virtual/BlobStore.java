@@ -0,0 +1,262 @@
+package com.vcamera.app.virtual;
+
+import android.content.Context;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * مخزن ملفات بعنوان المحتوى (بصمة SHA-256) لملفات APK والمكتبات الأصلية المستخرجة
+ * كل محتوى يُخزن مرة واحدة ويظهر في مجلدات التطبيقات بروابط صلبة، فعدد الروابط هو عداد المراجع:
+ * الملف الذي لم يبق له إلا رابط المخزن لم يعد مستخدماً ويُحذف
+ * الملفات المخزنة للقراءة فقط، لأن كل الروابط تشترك في المحتوى نفسه
+ */
+class BlobStore {
+    private static final String TAG = "BlobStore";
+    private static final String STAGING_DIR = "tmp";
+    // الملفات المؤقتة الأحدث من هذا قد تكون لتثبيت جارٍ
+    private static final long STALE_STAGING_MS = 60 * 60 * 1000;
+
+    private static BlobStore sInstance;
+
+    private final File mRoot;
+
+    static BlobStore getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (BlobStore.class) {
+                if (sInstance == null) {
+                    File appsDir = new File(context.getApplicationContext().getFilesDir(), "virtual_apps");
+                    sInstance = new BlobStore(new File(appsDir, ".blobs"));
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    BlobStore(File root) {
+        mRoot = root;
+    }
+
+    /**
+     * ملف مؤقت جديد في نظام ملفات المخزن، ليُنقل إليه لاحقاً بإعادة تسمية دون نسخ
+     */
+    File newStagingFile(String suffix) {
+        File staging = new File(mRoot, STAGING_DIR);
+        if (!staging.exists()) {
+            staging.mkdirs();
+        }
+        return new File(staging, System.nanoTime() + "-" + Thread.currentThread().getId() + suffix);
+    }
+
+    synchronized boolean contains(byte[] hash) {
+        return getBlob(hash).exists();
+    }
+
+    /**
+     * مسار الملف المخزن لهذه البصمة (موجود أو لا)
+     */
+    File getBlob(byte[] hash) {
+        String hex = toHex(hash);
+        return new File(new File(mRoot, hex.substring(0, 2)), hex);
+    }
+
+    /**
+     * إدخال ملف محسوبة بصمته إلى المخزن؛ إذا كان المحتوى مخزناً سلفاً يُحذف الملف المُدخل
+     * @return الملف المخزن
+     */
+    synchronized File adopt(File file, byte[] hash) throws IOException {
+        File blob = getBlob(hash);
+        if (blob.exists()) {
+            file.delete();
+            return blob;
+        }
+
+        File parent = blob.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        if (!file.renameTo(blob)) {
+            throw new IOException("Cannot move " + file + " into blob store");
+        }
+        blob.setReadOnly();
+        return blob;
+    }
+
+    /**
+     * إظهار المحتوى المخزن في المسار الهدف برابط صلب (أو بنسخة إذا تعذر الربط)، مستبدلاً أي ملف سابق
+     */
+    synchronized void link(byte[] hash, File target) throws IOException {
+        File blob = getBlob(hash);
+        if (!blob.exists()) {
+            throw new IOException("Blob not found: " + blob.getName());
+        }
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        File temp = new File(parent, target.getName() + ".tmp");
+        temp.delete();
+        try {
+            Os.link(blob.getAbsolutePath(), temp.getAbsolutePath());
+        } catch (ErrnoException e) {
+            // نظام ملفات دون روابط صلبة: نسخة مستقلة (لا تُحسب في مراجع المخزن)
+            Log.w(TAG, "تعذر الربط الصلب، نسخ الملف بدلاً منه: " + target, e);
+            copy(blob, temp);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot link blob to " + target);
+        }
+    }
+
+    /**
+     * تحرير مرجع: حذف المحتوى المخزن إذا لم يبق رابط إليه خارج المخزن
+     */
+    synchronized void release(byte[] hash) {
+        if (hash == null) {
+            return;
+        }
+        File blob = getBlob(hash);
+        if (blob.exists() && linkCount(blob) <= 1) {
+            blob.delete();
+        }
+    }
+
+    /**
+     * حذف مجلد تطبيق وتحرير المحتوى المخزن الذي كانت ملفاته روابط إليه (APK والتقسيمات والمكتبات الأصلية)
+     * المحتوى يُطابق برقم العقدة (inode)، فلا يُمس إلا ما ربطه هذا المجلد: محتوى أدخله تثبيت جارٍ ولم يربطه بعد يبقى
+     * @return عدد الملفات المحذوفة من المخزن
+     */
+    synchronized int releaseDirectory(File dir) {
+        Set<Long> inodes = new HashSet<>();
+        collectInodes(dir, inodes);
+        deleteRecursively(dir);
+        if (inodes.isEmpty()) {
+            return 0;
+        }
+
+        int removed = 0;
+        File[] dirs = mRoot.listFiles();
+        if (dirs == null) {
+            return 0;
+        }
+        for (File blobDir : dirs) {
+            File[] files = STAGING_DIR.equals(blobDir.getName()) ? null : blobDir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                try {
+                    StructStat stat = Os.stat(file.getAbsolutePath());
+                    if (inodes.contains(stat.st_ino) && stat.st_nlink <= 1 && file.delete()) {
+                        removed++;
+                    }
+                } catch (ErrnoException e) {
+                    // حُذف الملف أثناء المسح
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * حذف كل المحتوى غير المستخدم وبقايا الملفات المؤقتة (بعد انقطاع تثبيت مثلاً)
+     * لا يُستدعى أثناء تثبيت جارٍ: المحتوى المُدخل الذي لم يُربط بعد يبدو غير مستخدم
+     * @return عدد الملفات المحذوفة
+     */
+    synchronized int collectGarbage() {
+        int removed = 0;
+        File[] dirs = mRoot.listFiles();
+        if (dirs == null) {
+            return 0;
+        }
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            boolean staging = STAGING_DIR.equals(dir.getName());
+            for (File file : files) {
+                boolean unused = staging
+                        ? System.currentTimeMillis() - file.lastModified() > STALE_STAGING_MS
+                        : linkCount(file) <= 1;
+                if (unused && file.delete()) {
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            Log.i(TAG, "حُذف " + removed + " ملف غير مستخدم من المخزن");
+        }
+        return removed;
+    }
+
+    private static void collectInodes(File file, Set<Long> inodes) {
+        StructStat stat;
+        try {
+            stat = Os.lstat(file.getAbsolutePath());
+        } catch (ErrnoException e) {
+            return;
+        }
+        if (OsConstants.S_ISREG(stat.st_mode)) {
+            inodes.add(stat.st_ino);
+        } else if (OsConstants.S_ISDIR(stat.st_mode)) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectInodes(child, inodes);
+                }
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.isDirectory() ? file.listFiles() : null;
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static long linkCount(File file) {
+        try {
+            return Os.stat(file.getAbsolutePath()).st_nlink;
+        } catch (ErrnoException e) {
+            return 0;
+        }
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -1,19 +1,37 @@
 package com.vcamera.app.virtual;
 
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
 import android.hardware.Camera;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 
 import com.vcamera.app.core.CameraManager;
 import com.vcamera.app.core.ErrorLogger;
-import com.vcamera.app.utils.BitmapUtils;
+import com.vcamera.app.core.VirtualCameraConfig;
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FrameClock;
+import com.vcamera.pipeline.FrameConsumer;
+import com.vcamera.pipeline.FramePipeline;
+import com.vcamera.pipeline.TileJpegEncoder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * فئة خطاف الكاميرا (Camera Hook)
@@ -22,6 +40,28 @@ import java.util.Map;
 public class CameraHook {
     private static final String TAG = "CameraHook";
     
+    // معدل إطارات المعاينة الافتراضي ونطاق المعدلات المدعومة
+    private static final int PREVIEW_FRAME_RATE = 30;
+    private static final int MIN_PREVIEW_FRAME_RATE = 1;
+    private static final int MAX_PREVIEW_FRAME_RATE = 60;
+    
+    // التقاط الصور الثابتة
+    private static final int DEFAULT_JPEG_QUALITY = 90;
+    private static final int JPEG_STREAM_INITIAL_SIZE = 512 * 1024;
+    
+    // الصور الأكبر من هذا الحد تُرمَّز بالشرائح المتوازية؛ الأصغر أسرع بمرمز YuvImage الأصلي
+    private static final int PARALLEL_JPEG_MIN_PIXELS = 4 * 1000 * 1000;
+    
+    // مرمز JPEG في الخلفية مشترك بين الكاميرات الافتراضية
+    private static final ExecutorService sJpegEncoder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "VirtualCameraJpeg");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // مرمز الشرائح المتوازية، يُنشأ عند أول صورة كبيرة ولا يُستخدم إلا من خيط الترميز
+    private static TileJpegEncoder sTileJpegEncoder;
+    
     // سياق التطبيق
     private final Context mContext;
     private final ErrorLogger mErrorLogger;
@@ -32,6 +72,9 @@ public class CameraHook {
     // خريطة الكاميرات المفتوحة
     private final Map<Integer, Object> mOpenCameras = new HashMap<>();
     
+    // الكاميرات الافتراضية المربوطة بمسجلات MediaRecorder عبر setCamera
+    private final Map<MediaRecorder, VirtualCamera> mRecorderCameras = new WeakHashMap<>();
+    
     // الوضع الحالي
     private boolean mIsVirtualCameraEnabled = true;
     
@@ -104,9 +147,45 @@ public class CameraHook {
     
     /**
      * اعتراض Camera.open()
+     * كالنظام، تُفتح أول كاميرا خلفية في الجدول
      */
     public Camera handleCameraOpen() {
-        return handleCameraOpen(0);
+        for (int i = 0; i < mCameraManager.getCameraCount(); i++) {
+            if (mCameraManager.getCameraConfig(i).getFacing() == Camera.CameraInfo.CAMERA_FACING_BACK) {
+                return handleCameraOpen(i);
+            }
+        }
+        return null; // لا توجد كاميرا خلفية
+    }
+    
+    /**
+     * اعتراض Camera.getNumberOfCameras
+     * @return عدد الكاميرات في جدول التكوين، أو -1 لاستدعاء الطريقة الأصلية
+     */
+    public int handleGetNumberOfCameras() {
+        if (!mIsVirtualCameraEnabled) {
+            return -1;
+        }
+        return mCameraManager.getCameraCount();
+    }
+    
+    /**
+     * اعتراض Camera.getCameraInfo
+     * @return true إذا مُلئت المعلومات من جدول التكوين ويجب تخطي الطريقة الأصلية
+     */
+    public boolean handleGetCameraInfo(int cameraId, Camera.CameraInfo info) {
+        if (!mIsVirtualCameraEnabled || info == null) {
+            return false;
+        }
+        
+        VirtualCameraConfig config = mCameraManager.getCameraConfig(cameraId);
+        if (config == null) {
+            throw new RuntimeException("Unknown camera ID " + cameraId);
+        }
+        info.facing = config.getFacing();
+        info.orientation = config.getOrientation();
+        info.canDisableShutterSound = true;
+        return true;
     }
     
     /**
@@ -121,10 +200,17 @@ public class CameraHook {
             return openRealCamera(cameraId);
         }
         
+        VirtualCameraConfig config = mCameraManager.getCameraConfig(cameraId);
+        if (config == null) {
+            // كالنظام: معرف خارج الجدول
+            mErrorLogger.logError(TAG, "معرف كاميرا غير موجود في الجدول: " + cameraId);
+            return null;
+        }
+        
         try {
             // إنشاء نسخة مزيفة من الكاميرا
-            Log.d(TAG, "إنشاء كاميرا افتراضية للكاميرا رقم " + cameraId);
-            VirtualCamera virtualCamera = new VirtualCamera(mContext, cameraId);
+            Log.d(TAG, "إنشاء كاميرا افتراضية: " + config);
+            VirtualCamera virtualCamera = new VirtualCamera(mContext, config);
             
             // تسجيل الكاميرا في الخريطة
             mOpenCameras.put(cameraId, virtualCamera);
@@ -179,6 +265,87 @@ public class CameraHook {
         }
     }
     
+    //=====================================================
+    // خطافات تسجيل الفيديو (MediaRecorder)
+    //=====================================================
+    
+    /**
+     * اعتراض MediaRecorder.setCamera
+     * @return true إذا كانت الكاميرا افتراضية ويجب تخطي الطريقة الأصلية
+     */
+    public boolean handleMediaRecorderSetCamera(MediaRecorder recorder, Camera camera) {
+        if (!(camera instanceof VirtualCamera)) {
+            return false;
+        }
+        
+        Log.d(TAG, "ربط MediaRecorder بالكاميرا الافتراضية");
+        synchronized (mRecorderCameras) {
+            mRecorderCameras.put(recorder, (VirtualCamera) camera);
+        }
+        return true;
+    }
+    
+    /**
+     * اعتراض MediaRecorder.setVideoSource
+     * مصدر الكاميرا يُستبدل بمصدر SURFACE لمسجل مربوط بكاميرا افتراضية، لنرسم فيه إطاراتنا
+     * @return true إذا تم استبدال المصدر ويجب تخطي الطريقة الأصلية
+     */
+    public boolean handleMediaRecorderSetVideoSource(MediaRecorder recorder, int videoSource) {
+        if (videoSource != MediaRecorder.VideoSource.CAMERA || getRecorderCamera(recorder) == null) {
+            return false;
+        }
+        
+        try {
+            // استدعاء الطريقة الأصلية بالمصدر البديل
+            recorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+            Log.d(TAG, "استبدال مصدر الفيديو بسطح للكاميرا الافتراضية");
+            return true;
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء استبدال مصدر الفيديو", e);
+            return false;
+        }
+    }
+    
+    /**
+     * اعتراض MediaRecorder.start (بعد نجاح الطريقة الأصلية)
+     */
+    public void handleMediaRecorderStart(MediaRecorder recorder) {
+        VirtualCamera camera = getRecorderCamera(recorder);
+        if (camera == null) {
+            return;
+        }
+        
+        try {
+            camera.startRecording(recorder.getSurface());
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء بدء التسجيل الافتراضي", e);
+        }
+    }
+    
+    /**
+     * اعتراض MediaRecorder.stop و reset و release (قبل الطريقة الأصلية)
+     * الرسم يتوقف قبل أن يتخلى المرمز عن سطحه
+     */
+    public void handleMediaRecorderStop(MediaRecorder recorder, boolean unbind) {
+        VirtualCamera camera = getRecorderCamera(recorder);
+        if (camera == null) {
+            return;
+        }
+        
+        camera.stopRecording();
+        if (unbind) {
+            synchronized (mRecorderCameras) {
+                mRecorderCameras.remove(recorder);
+            }
+        }
+    }
+    
+    private VirtualCamera getRecorderCamera(MediaRecorder recorder) {
+        synchronized (mRecorderCameras) {
+            return mRecorderCameras.get(recorder);
+        }
+    }
+    
     //=====================================================
     // الفئة الداخلية للكاميرا الافتراضية
     //=====================================================
@@ -189,17 +356,43 @@ public class CameraHook {
      */
     public class VirtualCamera extends Camera {
         private final int mCameraId;
+        private final VirtualCameraConfig mConfig;
         private final Context mContext;
         private Surface mPreviewSurface;
         private PreviewCallback mPreviewCallback;
         private boolean mIsPreviewStarted = false;
+        private FramePipeline mPreviewPipeline;
+        private FrameConsumer mPreviewConsumer;
+        private volatile int mPreviewFrameRate = PREVIEW_FRAME_RATE;
+        
+        // مخازن المستدعي لوضع setPreviewCallbackWithBuffer
+        private final ArrayDeque<byte[]> mCallbackBuffers = new ArrayDeque<>();
+        private volatile boolean mUseCallbackBuffers = false;
+        
+        // التقاط الصور: طلب واحد فقط في كل مرة، والإطار الملتقط يُنسخ في مخزن معاد استخدامه
+        private final AtomicBoolean mCaptureInProgress = new AtomicBoolean(false);
+        private final FrameBuffer mCaptureFrame;
+        private volatile CaptureRequest mPendingCapture;
+        private volatile int mJpegQuality = DEFAULT_JPEG_QUALITY;
+        
+        // آخر صورة JPEG مرمزة ونسخة الإطار الذي رُمزت منه، يصل إليهما خيط الترميز فقط
+        private final ByteArrayOutputStream mJpegStream = new ByteArrayOutputStream(JPEG_STREAM_INITIAL_SIZE);
+        private byte[] mCachedJpeg;
+        private FrameBuffer mCachedJpegSource;
+        private int mCachedJpegQuality;
+        
+        // تسجيل الفيديو: الكاميرا مفتوحة القفل لصالح MediaRecorder
+        private boolean mIsUnlocked = false;
+        private VirtualVideoRecorder mVideoRecorder;
         
         /**
          * المنشئ
          */
-        public VirtualCamera(Context context, int cameraId) {
+        public VirtualCamera(Context context, VirtualCameraConfig config) {
             mContext = context;
-            mCameraId = cameraId;
+            mConfig = config;
+            mCameraId = config.getCameraId();
+            mCaptureFrame = new FrameBuffer(config.getWidth(), config.getHeight());
         }
         
         /**
@@ -220,15 +413,40 @@ public class CameraHook {
         @Override
         public void setPreviewCallback(PreviewCallback cb) {
             Log.d(TAG, "setPreviewCallback: " + cb);
+            mUseCallbackBuffers = false;
             mPreviewCallback = cb;
         }
         
+        /**
+         * تجاوز طريقة setPreviewCallbackWithBuffer
+         */
+        @Override
+        public void setPreviewCallbackWithBuffer(PreviewCallback cb) {
+            Log.d(TAG, "setPreviewCallbackWithBuffer: " + cb);
+            mUseCallbackBuffers = true;
+            mPreviewCallback = cb;
+        }
+        
+        /**
+         * تجاوز طريقة addCallbackBuffer
+         */
+        @Override
+        public void addCallbackBuffer(byte[] callbackBuffer) {
+            if (callbackBuffer == null) {
+                return;
+            }
+            synchronized (mCallbackBuffers) {
+                mCallbackBuffers.addLast(callbackBuffer);
+            }
+        }
+        
         /**
          * تجاوز طريقة setOneShotPreviewCallback
          */
         @Override
         public void setOneShotPreviewCallback(PreviewCallback cb) {
             Log.d(TAG, "setOneShotPreviewCallback: " + cb);
+            mUseCallbackBuffers = false;
             mPreviewCallback = cb;
         }
         
@@ -244,8 +462,8 @@ public class CameraHook {
             }
             
             try {
-                // بدء تشغيل الكاميرا الافتراضية
-                if (mPreviewSurface != null) {
+                // بدء تشغيل المصدر العام؛ الكاميرا ذات المصدر الخاص لا تحتاجه
+                if (mPreviewSurface != null && mConfig.followsGlobalSource()) {
                     mCameraManager.startCamera(mPreviewSurface);
                 }
                 
@@ -270,8 +488,11 @@ public class CameraHook {
             }
             
             try {
-                // إيقاف الكاميرا الافتراضية
-                mCameraManager.stopCamera();
+                // إيقاف دورة المعاينة والكاميرا الافتراضية
+                stopPreviewLoop();
+                if (mConfig.followsGlobalSource()) {
+                    mCameraManager.stopCamera();
+                }
                 
                 mIsPreviewStarted = false;
             } catch (Exception e) {
@@ -287,7 +508,8 @@ public class CameraHook {
             Log.d(TAG, "release");
             
             try {
-                // إيقاف المعاينة إذا كانت قيد التشغيل
+                // إيقاف التسجيل والمعاينة إذا كانا قيد التشغيل
+                stopRecording();
                 if (mIsPreviewStarted) {
                     stopPreview();
                 }
@@ -299,6 +521,77 @@ public class CameraHook {
             }
         }
         
+        /**
+         * تجاوز طريقة unlock (تسليم الكاميرا إلى MediaRecorder)
+         */
+        @Override
+        public void unlock() {
+            Log.d(TAG, "unlock");
+            mIsUnlocked = true;
+        }
+        
+        /**
+         * تجاوز طريقة lock
+         */
+        @Override
+        public void lock() {
+            Log.d(TAG, "lock");
+            mIsUnlocked = false;
+        }
+        
+        /**
+         * تجاوز طريقة reconnect (استعادة الكاميرا بعد التسجيل)
+         */
+        @Override
+        public void reconnect() {
+            Log.d(TAG, "reconnect");
+            stopRecording();
+            mIsUnlocked = false;
+        }
+        
+        /**
+         * بدء تغذية سطح MediaRecorder بإطارات خط المعالجة
+         * كالكاميرا الحقيقية، التسجيل يتطلب معاينة تعمل، فتبدأ إن لم تكن قد بدأت
+         */
+        void startRecording(Surface surface) {
+            if (surface == null) {
+                mErrorLogger.logError(TAG, "MediaRecorder لم يوفر سطح إدخال");
+                return;
+            }
+            if (!mIsUnlocked) {
+                Log.w(TAG, "بدء التسجيل دون unlock");
+            }
+            
+            stopRecording();
+            mVideoRecorder = new VirtualVideoRecorder(surface, mConfig.getWidth(), mConfig.getHeight(),
+                    mCameraManager.getMetrics());
+            mVideoRecorder.start("VirtualCameraRecorder-" + mCameraId);
+            
+            if (!mIsPreviewStarted) {
+                startPreview();
+            } else if (mPreviewPipeline != null) {
+                mPreviewPipeline.addConsumer(mVideoRecorder, mPreviewFrameRate);
+            }
+            Log.i(TAG, "بدء التسجيل الافتراضي للكاميرا رقم " + mCameraId);
+        }
+        
+        /**
+         * إيقاف تغذية سطح MediaRecorder
+         */
+        void stopRecording() {
+            VirtualVideoRecorder recorder = mVideoRecorder;
+            if (recorder == null) {
+                return;
+            }
+            mVideoRecorder = null;
+            
+            if (mPreviewPipeline != null) {
+                mPreviewPipeline.removeConsumer(recorder);
+            }
+            recorder.stop();
+            Log.i(TAG, "إيقاف التسجيل الافتراضي للكاميرا رقم " + mCameraId);
+        }
+        
         /**
          * تجاوز طريقة getParameters
          */
@@ -314,7 +607,15 @@ public class CameraHook {
                 // هذا غير مكتمل، ولكنه يوفر المعلمات الأساسية
                 Method method = Camera.Parameters.class.getDeclaredMethod("setPreviewSize", int.class, int.class);
                 method.setAccessible(true);
-                method.invoke(params, 1280, 720);
+                method.invoke(params, mConfig.getWidth(), mConfig.getHeight());
+                
+                // نطاق المعدل الحالي (بوحدة إطار/ثانية × 1000)
+                params.setPreviewFpsRange(MIN_PREVIEW_FRAME_RATE * 1000, mPreviewFrameRate * 1000);
+                
+                // الصور الملتقطة بدقة المعاينة وبصيغة JPEG
+                params.setPictureSize(mConfig.getWidth(), mConfig.getHeight());
+                params.setPictureFormat(ImageFormat.JPEG);
+                params.setJpegQuality(mJpegQuality);
                 
                 return params;
             } catch (Exception e) {
@@ -329,39 +630,249 @@ public class CameraHook {
         @Override
         public void setParameters(Camera.Parameters params) {
             Log.d(TAG, "setParameters: " + params);
-            // لا شيء للقيام به حاليًا، نحن نتجاهل المعلمات المقدمة
+            if (params == null) {
+                return;
+            }
+            
+            int jpegQuality = params.getJpegQuality();
+            if (jpegQuality >= 1 && jpegQuality <= 100) {
+                mJpegQuality = jpegQuality;
+            }
+            
+            // المعدل المطلوب هو الحد الأعلى من setPreviewFpsRange؛ باقي المعلمات مُتجاهلة حاليًا
+            int[] fpsRange = new int[2];
+            params.getPreviewFpsRange(fpsRange);
+            int frameRate = fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000;
+            if (frameRate > 0) {
+                mPreviewFrameRate = Math.max(MIN_PREVIEW_FRAME_RATE, Math.min(MAX_PREVIEW_FRAME_RATE, frameRate));
+                Log.d(TAG, "معدل المعاينة المطلوب: " + mPreviewFrameRate);
+                
+                FramePipeline pipeline = mPreviewPipeline;
+                if (pipeline != null) {
+                    pipeline.setConsumerFrameRate(mPreviewConsumer, mPreviewFrameRate);
+                    VirtualVideoRecorder recorder = mVideoRecorder;
+                    if (recorder != null) {
+                        pipeline.setConsumerFrameRate(recorder, mPreviewFrameRate);
+                    }
+                }
+            }
         }
         
         /**
          * بدء دورة المعاينة
          */
         private void startPreviewLoop() {
-            Thread previewThread = new Thread(() -> {
+            mPreviewPipeline = new FramePipeline(mCameraManager.createFrameSource(mCameraId, mPreviewFrameRate),
+                    mConfig.getWidth(), mConfig.getHeight(), PREVIEW_FRAME_RATE, FrameClock.SYSTEM,
+                    mCameraManager.getMetrics());
+            
+            // تسليم الإطارات إلى معاينة المستدعي بالمعدل الذي طلبه
+            mPreviewConsumer = frame -> {
+                // التقاط صورة معلقة من هذا الإطار
+                CaptureRequest capture = mPendingCapture;
+                if (capture != null) {
+                    mPendingCapture = null;
+                    captureFrame(frame, capture);
+                }
+                
+                PreviewCallback callback = mPreviewCallback;
+                if (callback == null) {
+                    return;
+                }
+                
+                if (!mUseCallbackBuffers) {
+                    // المستدعي قد يحتفظ بالمصفوفة، لذا نسلمه نسخة خاصة به كما تفعل الكاميرا الحقيقية
+                    callback.onPreviewFrame(Arrays.copyOf(frame.getData(), frame.getSize()), this);
+                    return;
+                }
+                
+                // وضع المخازن: النسخ في مخزن قدمه المستدعي دون أي تخصيص، أو إسقاط الإطار إن لم يتوفر مخزن
+                byte[] buffer = pollCallbackBuffer(frame.getSize());
+                if (buffer == null) {
+                    mCameraManager.getMetrics().onFramesDropped(1);
+                    return;
+                }
+                System.arraycopy(frame.getData(), 0, buffer, 0, frame.getSize());
+                callback.onPreviewFrame(buffer, this);
+            };
+            mPreviewPipeline.addConsumer(mPreviewConsumer, mPreviewFrameRate);
+            
+            // تسجيل جارٍ يستمر عبر إعادة تشغيل المعاينة
+            if (mVideoRecorder != null) {
+                mPreviewPipeline.addConsumer(mVideoRecorder, mPreviewFrameRate);
+            }
+            
+            mPreviewPipeline.start("VirtualCameraPreview-" + mCameraId);
+        }
+        
+        /**
+         * تجاوز طريقة takePicture
+         */
+        @Override
+        public void takePicture(ShutterCallback shutter, PictureCallback raw, PictureCallback jpeg) {
+            takePicture(shutter, raw, null, jpeg);
+        }
+        
+        /**
+         * تجاوز طريقة takePicture مع استدعاء العرض اللاحق
+         * تُلتقط الصورة من إطار خط المعالجة التالي، وتُرمز في الخلفية، وتُستدعى الاستدعاءات على خيط المستدعي
+         */
+        @Override
+        public void takePicture(ShutterCallback shutter, PictureCallback raw, PictureCallback postview,
+                                PictureCallback jpeg) {
+            Log.d(TAG, "takePicture");
+            
+            if (!mIsPreviewStarted || mPreviewPipeline == null) {
+                mErrorLogger.logError(TAG, "takePicture قبل بدء المعاينة");
+                return;
+            }
+            if (!mCaptureInProgress.compareAndSet(false, true)) {
+                mErrorLogger.logError(TAG, "takePicture أثناء التقاط آخر قيد التنفيذ");
+                return;
+            }
+            
+            Looper looper = Looper.myLooper();
+            Handler handler = new Handler(looper != null ? looper : Looper.getMainLooper());
+            mPendingCapture = new CaptureRequest(shutter, raw, postview, jpeg, handler);
+        }
+        
+        /**
+         * نسخ الإطار الملتقط وإرسال الترميز إلى الخلفية (على خيط خط المعالجة)
+         */
+        private void captureFrame(FrameBuffer frame, CaptureRequest capture) {
+            mCaptureFrame.copyFrom(frame);
+            if (capture.shutter != null) {
+                capture.handler.post(capture.shutter::onShutter);
+            }
+            
+            sJpegEncoder.execute(() -> {
                 try {
-                    while (mIsPreviewStarted && mPreviewCallback != null) {
-                        // الحصول على الإطار الحالي من مدير الكاميرا
-                        Bitmap frameBitmap = mCameraManager.getCurrentFrame();
-                        
-                        if (frameBitmap != null) {
-                            // تحويل الإطار إلى بيانات YUV
-                            byte[] frameData = BitmapUtils.convertBitmapToYuv(frameBitmap);
-                            
-                            // استدعاء معاينة المستدعي
-                            if (mPreviewCallback != null) {
-                                mPreviewCallback.onPreviewFrame(frameData, this);
-                            }
-                        }
-                        
-                        // الانتظار قبل الإطار التالي (30 إطار في الثانية)
-                        Thread.sleep(1000 / 30);
+                    // لا تتوفر بيانات خام أو عرض لاحق، كمعظم الكاميرات الحقيقية
+                    if (capture.raw != null) {
+                        capture.handler.post(() -> capture.raw.onPictureTaken(null, this));
+                    }
+                    if (capture.postview != null) {
+                        capture.handler.post(() -> capture.postview.onPictureTaken(null, this));
+                    }
+                    if (capture.jpeg != null) {
+                        byte[] jpegData = encodeJpeg(mCaptureFrame);
+                        capture.handler.post(() -> capture.jpeg.onPictureTaken(jpegData, this));
                     }
                 } catch (Exception e) {
-                    mErrorLogger.logException(TAG, "خطأ في دورة المعاينة", e);
+                    mErrorLogger.logException(TAG, "خطأ أثناء ترميز الصورة الملتقطة", e);
+                } finally {
+                    mCaptureInProgress.set(false);
                 }
             });
+        }
+        
+        /**
+         * ترميز الإطار إلى JPEG (على خيط الترميز)
+         * التقاط إطار بالمحتوى نفسه مرة أخرى بالجودة نفسها يعيد الصورة المخزنة دون إعادة ترميز
+         * المفتاح محتوى الإطار لا رقم تسلسله: المصدر الثابت يُقرأ من جديد في كل دورة فيتغير الرقم دون المحتوى
+         */
+        private byte[] encodeJpeg(FrameBuffer frame) throws IOException {
+            int quality = mJpegQuality;
+            if (mCachedJpeg == null || mCachedJpegQuality != quality || !sameContent(frame, mCachedJpegSource)) {
+                mJpegStream.reset();
+                if (useParallelJpeg(frame)) {
+                    if (sTileJpegEncoder == null) {
+                        sTileJpegEncoder = TileJpegEncoder.forAvailableCores();
+                    }
+                    sTileJpegEncoder.encodeNv21(frame.getData(), frame.getWidth(), frame.getHeight(), quality, mJpegStream);
+                } else {
+                    YuvImage image = new YuvImage(frame.getData(), ImageFormat.NV21, frame.getWidth(), frame.getHeight(), null);
+                    image.compressToJpeg(new Rect(0, 0, frame.getWidth(), frame.getHeight()), quality, mJpegStream);
+                }
+                
+                mCachedJpeg = mJpegStream.toByteArray();
+                if (mCachedJpegSource == null) {
+                    mCachedJpegSource = new FrameBuffer(frame.getWidth(), frame.getHeight());
+                }
+                mCachedJpegSource.copyFrom(frame);
+                mCachedJpegQuality = quality;
+            } else {
+                Log.d(TAG, "إعادة استخدام صورة JPEG المخزنة للإطار " + frame.getSequence());
+            }
             
-            previewThread.setDaemon(true);
-            previewThread.start();
+            // المستدعي يملك المصفوفة التي يستلمها، فتبقى النسخة المخزنة خاصة
+            return Arrays.copyOf(mCachedJpeg, mCachedJpeg.length);
+        }
+        
+        /**
+         * مقارنة محتوى إطارين؛ تتوقف عند أول بايت مختلف، فالإطارات المختلفة تُكتشف سريعاً
+         */
+        private boolean sameContent(FrameBuffer frame, FrameBuffer other) {
+            if (other == null || frame.getWidth() != other.getWidth() || frame.getHeight() != other.getHeight()) {
+                return false;
+            }
+            byte[] data = frame.getData();
+            byte[] otherData = other.getData();
+            for (int i = 0, size = frame.getSize(); i < size; i++) {
+                if (data[i] != otherData[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * الترميز المتوازي مفيد فقط للصور الكبيرة على الأجهزة متعددة الأنوية
+         */
+        private boolean useParallelJpeg(FrameBuffer frame) {
+            return frame.getWidth() * frame.getHeight() >= PARALLEL_JPEG_MIN_PIXELS
+                    && Runtime.getRuntime().availableProcessors() > 1;
+        }
+        
+        /**
+         * أخذ مخزن من مخازن المستدعي يتسع للإطار (المخازن الأصغر تُهمل كما في الكاميرا الحقيقية)
+         */
+        private byte[] pollCallbackBuffer(int size) {
+            synchronized (mCallbackBuffers) {
+                byte[] buffer;
+                while ((buffer = mCallbackBuffers.pollFirst()) != null) {
+                    if (buffer.length >= size) {
+                        return buffer;
+                    }
+                }
+                return null;
+            }
+        }
+        
+        /**
+         * إيقاف دورة المعاينة
+         */
+        private void stopPreviewLoop() {
+            if (mPreviewPipeline != null) {
+                mPreviewPipeline.stop();
+                mPreviewPipeline = null;
+            }
+            
+            // التقاط لم يجد إطاراً قبل الإيقاف يُلغى
+            if (mPendingCapture != null) {
+                mPendingCapture = null;
+                mCaptureInProgress.set(false);
+            }
+        }
+    }
+    
+    /**
+     * طلب التقاط صورة معلق مع استدعاءاته
+     */
+    private static class CaptureRequest {
+        final Camera.ShutterCallback shutter;
+        final Camera.PictureCallback raw;
+        final Camera.PictureCallback postview;
+        final Camera.PictureCallback jpeg;
+        final Handler handler;
+        
+        CaptureRequest(Camera.ShutterCallback shutter, Camera.PictureCallback raw, Camera.PictureCallback postview,
+                       Camera.PictureCallback jpeg, Handler handler) {
+            this.shutter = shutter;
+            this.raw = raw;
+            this.postview = postview;
+            this.jpeg = jpeg;
+            this.handler = handler;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,289 @@
+package com.vcamera.app.virtual;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import dalvik.system.DexClassLoader;
+
+/**
+ * تحسين ملفات dex للتطبيقات الافتراضية مسبقاً بعد التثبيت، على خيط واحد بأولوية منخفضة
+ * يُترجم الكود ويُتحقق منه مرة في الخلفية فلا يدفع الإطلاق الأول كلفة ذلك، والنتائج تُحفظ في oat/ بجوار base.apk
+ * التحسين تزايدي: ملف ختم يسجل حالة ملفات APK وإصدار النظام، فلا يُعاد إلا لما تغير (تحديث أو OTA)
+ */
+class DexOptimizer {
+    private static final String TAG = "DexOptimizer";
+    private static final String OAT_DIR = "oat";
+    private static final String STAMP_FILE = "stamp";
+    private static final Pattern DEX_ENTRY = Pattern.compile("classes\\d*\\.dex");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static DexOptimizer sInstance;
+
+    private final ExecutorService mExecutor;
+    // الحزم المجدولة أو الجارية، كي لا تتكرر مهمة لحزمة واحدة (محمية بقفلها)
+    private final Map<String, Future<?>> mPending = new HashMap<>();
+
+    static DexOptimizer getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (DexOptimizer.class) {
+                if (sInstance == null) {
+                    sInstance = new DexOptimizer();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private DexOptimizer() {
+        // خيط واحد: التحسين عمل مؤجل ولا ينبغي أن ينافس واجهة المستخدم أو الإطلاق على المعالج
+        mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * مجلد نتائج التحسين لتطبيق
+     */
+    static File getOatDir(File appDir) {
+        return new File(appDir, OAT_DIR);
+    }
+
+    /**
+     * جدولة تحسين التطبيق في الخلفية (لا يحدث شيء إذا كانت نتائجه الحالية صالحة)
+     * @param appDir مجلد التطبيق الذي يحوي base.apk وتقسيماته
+     */
+    void schedule(final String packageName, final File appDir) {
+        synchronized (mPending) {
+            if (mPending.containsKey(packageName)) {
+                return;
+            }
+            mPending.put(packageName, mExecutor.submit(() -> {
+                try {
+                    optimize(packageName, appDir);
+                } catch (Exception e) {
+                    Log.w(TAG, "فشل التحسين المسبق للتطبيق: " + packageName, e);
+                } finally {
+                    synchronized (mPending) {
+                        mPending.remove(packageName);
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * إلغاء تحسين مجدول (عند إزالة التطبيق)
+     */
+    void cancel(String packageName) {
+        Future<?> future;
+        synchronized (mPending) {
+            future = mPending.remove(packageName);
+        }
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * هل نتائج التحسين موجودة ومطابقة لملفات التطبيق الحالية
+     */
+    boolean isOptimized(File appDir) {
+        List<File> apkFiles = listApkFiles(appDir);
+        return !apkFiles.isEmpty() && buildStamp(apkFiles).equals(readStamp(getOatDir(appDir)));
+    }
+
+    private void optimize(String packageName, File appDir) throws IOException {
+        List<File> apkFiles = listApkFiles(appDir);
+        if (apkFiles.isEmpty()) {
+            return; // أزيل التطبيق قبل وصول دوره
+        }
+        File oatDir = getOatDir(appDir);
+        String stamp = buildStamp(apkFiles);
+        if (stamp.equals(readStamp(oatDir))) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        deleteTree(oatDir);
+        if (!oatDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + oatDir);
+        }
+
+        String method;
+        if (compile(apkFiles, oatDir, SplitApkInstaller.getLibrarySearchPath(appDir, apkFiles))) {
+            method = "dex2oat";
+        } else {
+            // لا مسار ترجمة متاح: استخراج dex مسبقاً كي لا يُفك ضغطه من APK عند كل إطلاق
+            method = "extract(" + extractDex(apkFiles, oatDir) + ")";
+        }
+        writeStamp(oatDir, stamp);
+        Log.i(TAG, "تحسين " + packageName + " [" + method + "] خلال " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * الترجمة والتحقق عبر محمل الفئات: حتى Android 9 ينشئ ART ملفات oat في المجلد المحدد
+     * من Android 10 لا يُسمح للتطبيق بتشغيل dex2oat ولا يُحفظ شيء، فيُستخدم الاستخراج بدلاً منه
+     */
+    private boolean compile(List<File> apkFiles, File oatDir, String librarySearchPath) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return false;
+        }
+        try {
+            StringBuilder dexPath = new StringBuilder();
+            for (File apkFile : apkFiles) {
+                if (dexPath.length() > 0) {
+                    dexPath.append(File.pathSeparatorChar);
+                }
+                dexPath.append(apkFile.getAbsolutePath());
+            }
+            new DexClassLoader(dexPath.toString(), oatDir.getAbsolutePath(),
+                    librarySearchPath, DexOptimizer.class.getClassLoader());
+            String[] outputs = oatDir.list();
+            return outputs != null && outputs.length > 0;
+        } catch (Throwable e) {
+            Log.w(TAG, "تعذرت ترجمة dex، الرجوع إلى الاستخراج", e);
+            return false;
+        }
+    }
+
+    /**
+     * استخراج classes*.dex من كل APK إلى oat/ باسم <apk>-classes*.dex
+     * @return عدد الملفات المستخرجة
+     */
+    private static int extractDex(List<File> apkFiles, File oatDir) throws IOException {
+        int count = 0;
+        byte[] buffer = new byte[64 * 1024];
+        for (File apkFile : apkFiles) {
+            String prefix = apkFile.getName().substring(0, apkFile.getName().length() - ".apk".length());
+            try (ZipFile zip = new ZipFile(apkFile)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!DEX_ENTRY.matcher(entry.getName()).matches()) {
+                        continue;
+                    }
+                    File target = new File(oatDir, prefix + "-" + entry.getName());
+                    File temp = new File(oatDir, target.getName() + ".tmp");
+                    try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(temp)) {
+                        int read;
+                        while ((read = in.read(buffer)) > 0) {
+                            out.write(buffer, 0, read);
+                        }
+                    }
+                    if (!temp.renameTo(target)) {
+                        temp.delete();
+                        throw new IOException("Cannot write " + target);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * base.apk أولاً ثم التقسيمات بترتيب ثابت
+     */
+    private static List<File> listApkFiles(File appDir) {
+        List<File> apkFiles = new ArrayList<>();
+        File base = new File(appDir, "base.apk");
+        if (!base.exists()) {
+            return apkFiles;
+        }
+        apkFiles.add(base);
+        File[] files = appDir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.getName().startsWith("split_") && file.getName().endsWith(".apk")) {
+                    apkFiles.add(file);
+                }
+            }
+        }
+        return apkFiles;
+    }
+
+    /**
+     * ختم الحالة: بصمة النظام (تتغير مع OTA فتبطل ملفات oat) وحجم ووقت تعديل كل APK
+     */
+    private static String buildStamp(List<File> apkFiles) {
+        StringBuilder stamp = new StringBuilder();
+        stamp.append(Build.VERSION.SDK_INT).append(' ').append(Build.FINGERPRINT).append('\n');
+        for (File apkFile : apkFiles) {
+            stamp.append(apkFile.getName()).append(' ').append(apkFile.length()).append(' ')
+                    .append(apkFile.lastModified()).append('\n');
+        }
+        return stamp.toString();
+    }
+
+    private static String readStamp(File oatDir) {
+        File file = new File(oatDir, STAMP_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += read;
+            }
+            return new String(bytes, 0, offset, UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * الختم يُكتب أخيراً (ملف مؤقت ثم نقل)، فالتحسين المنقطع يُعاد في المرة التالية
+     */
+    private static void writeStamp(File oatDir, String stamp) throws IOException {
+        File file = new File(oatDir, STAMP_FILE);
+        File temp = new File(oatDir, STAMP_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(stamp.getBytes(UTF_8));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
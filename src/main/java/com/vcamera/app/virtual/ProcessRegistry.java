@@ -0,0 +1,159 @@
+package com.vcamera.app.virtual;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * سجل العمليات الحية للتطبيقات الافتراضية في العملية الرئيسية
+ * كل عملية تعلن بدءها بإرسال رمز Binder خاص بها (عبر ProcessRegistryProvider)، ويُربط بإشعار موت Binder
+ * فيُعرف موتها فوراً دون فحص دوري، وفحص حياة تطبيق بحث في خريطة بدل getRunningAppProcesses
+ */
+public class ProcessRegistry {
+    private static final String TAG = "ProcessRegistry";
+
+    static final String METHOD_ATTACH = "attach";
+    static final String EXTRA_TOKEN = "token";
+
+    private static ProcessRegistry sInstance;
+
+    // رمز هذه العملية؛ يبقى ما بقيت العملية، فموته يعني موتها
+    private static final Binder sProcessToken = new Binder();
+
+    private final Map<String, ProcessRecord> mProcesses = new ConcurrentHashMap<>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    public static ProcessRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (ProcessRegistry.class) {
+                if (sInstance == null) {
+                    sInstance = new ProcessRegistry();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private ProcessRegistry() {
+    }
+
+    /**
+     * إعلان العملية الحالية للسجل في العملية الرئيسية (يُستدعى من عملية التطبيق بعد ربطها بحزمتها)
+     * @param packageName الحزمة الافتراضية التي تستضيفها هذه العملية
+     * @return false إذا تعذر الوصول إلى العملية الرئيسية
+     */
+    public static boolean attachCurrentProcess(Context context, String packageName) {
+        try {
+            Bundle extras = new Bundle();
+            extras.putBinder(EXTRA_TOKEN, sProcessToken);
+            Uri uri = Uri.parse("content://" + context.getPackageName() + ProcessRegistryProvider.AUTHORITY_SUFFIX);
+            return context.getContentResolver().call(uri, METHOD_ATTACH, packageName, extras) != null;
+        } catch (Exception e) {
+            Log.w(TAG, "تعذر تسجيل العملية في سجل العمليات: " + packageName, e);
+            return false;
+        }
+    }
+
+    /**
+     * تسجيل عملية بدأت وربط موتها بإزالتها من السجل (في العملية الرئيسية)
+     */
+    boolean attach(final String packageName, final int pid, IBinder token) {
+        final ProcessRecord record = new ProcessRecord(packageName, pid, token);
+        try {
+            token.linkToDeath(record, 0);
+        } catch (RemoteException e) {
+            // ماتت العملية قبل وصول تسجيلها
+            return false;
+        }
+
+        ProcessRecord previous = mProcesses.put(packageName, record);
+        if (previous != null) {
+            previous.token.unlinkToDeath(previous, 0);
+        }
+        Log.i(TAG, "بدأت عملية " + packageName + " (pid " + pid + ")");
+        for (Listener listener : mListeners) {
+            listener.onProcessStarted(packageName, pid);
+        }
+        return true;
+    }
+
+    /**
+     * هل للحزمة عملية حية (بحث في الخريطة، دون IPC)
+     */
+    public boolean isRunning(String packageName) {
+        ProcessRecord record = mProcesses.get(packageName);
+        return record != null && record.token.isBinderAlive();
+    }
+
+    /**
+     * معرف عملية الحزمة، أو 0 إذا لم تكن قيد التشغيل
+     */
+    public int getPid(String packageName) {
+        ProcessRecord record = mProcesses.get(packageName);
+        return record != null ? record.pid : 0;
+    }
+
+    /**
+     * الحزم التي لها عمليات مسجلة
+     */
+    public List<String> getRunningPackages() {
+        return new ArrayList<>(mProcesses.keySet());
+    }
+
+    public void addListener(Listener listener) {
+        if (listener != null && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void onProcessDied(ProcessRecord record) {
+        // عملية أحدث للحزمة نفسها قد سجلت قبل وصول إشعار موت السابقة
+        if (!mProcesses.remove(record.packageName, record)) {
+            return;
+        }
+        Log.i(TAG, "انتهت عملية " + record.packageName + " (pid " + record.pid + ")");
+        for (Listener listener : mListeners) {
+            listener.onProcessDied(record.packageName, record.pid);
+        }
+    }
+
+    /**
+     * مستمع بدء العمليات وموتها؛ يُستدعى على خيط Binder
+     */
+    public interface Listener {
+        void onProcessStarted(String packageName, int pid);
+
+        void onProcessDied(String packageName, int pid);
+    }
+
+    private final class ProcessRecord implements IBinder.DeathRecipient {
+        final String packageName;
+        final int pid;
+        final IBinder token;
+
+        ProcessRecord(String packageName, int pid, IBinder token) {
+            this.packageName = packageName;
+            this.pid = pid;
+            this.token = token;
+        }
+
+        @Override
+        public void binderDied() {
+            onProcessDied(this);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.vcamera.app.virtual;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Process;
+
+/**
+ * نقطة دخول سجل العمليات في العملية الرئيسية: عمليات التطبيقات ترسل إليها رمز Binder عند بدئها
+ * مقدم المحتوى وسيلة نقل فقط (call مع Bundle يحمل Binder)؛ لا يقدم بيانات
+ */
+public class ProcessRegistryProvider extends ContentProvider {
+    static final String AUTHORITY_SUFFIX = ".processes";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        // عمليات هذا التطبيق وحدها (المعرف نفسه) يمكنها التسجيل
+        if (Binder.getCallingUid() != Process.myUid() || !ProcessRegistry.METHOD_ATTACH.equals(method)
+                || arg == null || extras == null) {
+            return null;
+        }
+        IBinder token = extras.getBinder(ProcessRegistry.EXTRA_TOKEN);
+        int pid = Binder.getCallingPid();
+        if (token == null || !ProcessRegistry.getInstance(getContext()).attach(arg, pid, token)) {
+            return null;
+        }
+        return new Bundle();
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,393 @@
+package com.vcamera.app.virtual;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * تثبيت التطبيقات المقسمة: APK أساسي مع تقسيمات الإعداد من مجلد أو من أرشيف .apks/.xapk
+ * تقسيمات ABI غير ABI الجهاز لا تُنسخ أصلاً، والمكتبات الأصلية تُستخرج بالتوازي للـ ABI المختار فقط
+ * المكتبات المخزنة دون ضغط تبقى داخل APK ويحمّلها الرابط بتعيينها مباشرة، فلا يُستخرج إلا المضغوط
+ */
+final class SplitApkInstaller {
+    private static final String TAG = "SplitApkInstaller";
+
+    // أسماء ABI كما تظهر في أسماء التقسيمات، الأطول أولاً كي لا تطابق armeabi داخل armeabi_v7a
+    private static final String[] KNOWN_ABIS = {
+        "arm64_v8a", "armeabi_v7a", "x86_64", "x86", "armeabi", "mips64", "mips"
+    };
+    private static final String SPLIT_PREFIX = "split_";
+
+    private final BlobStore mBlobStore;
+    private final String[] mDeviceAbis;
+
+    /**
+     * @param deviceAbis ABI الجهاز بترتيب الأفضلية (Build.SUPPORTED_ABIS)
+     */
+    SplitApkInstaller(BlobStore blobStore, String[] deviceAbis) {
+        mBlobStore = blobStore;
+        mDeviceAbis = deviceAbis;
+    }
+
+    /**
+     * هل المصدر تطبيق مقسم (مجلد أو أرشيف تقسيمات) وليس APK واحداً
+     */
+    static boolean isSplitSource(File source) {
+        if (source.isDirectory()) {
+            return true;
+        }
+        String name = source.getName().toLowerCase(Locale.US);
+        return name.endsWith(".apks") || name.endsWith(".xapk") || name.endsWith(".apkm");
+    }
+
+    /**
+     * ملفات التطبيق المختارة بعد إدخالها مخزن المحتوى
+     */
+    static final class StagedApp {
+        byte[] baseHash;
+        // اسم التقسيم -> بصمته
+        final Map<String, byte[]> splits = new LinkedHashMap<>();
+    }
+
+    private interface EntryOpener {
+        InputStream open(String name) throws IOException;
+    }
+
+    /**
+     * نسخ APK الأساسي والتقسيمات اللازمة للجهاز إلى مخزن المحتوى (مع التحقق من كل منها)
+     */
+    StagedApp stage(final File source) throws IOException {
+        if (source.isDirectory()) {
+            List<String> names = new ArrayList<>();
+            File[] files = source.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile() && file.getName().toLowerCase(Locale.US).endsWith(".apk")) {
+                        names.add(file.getName());
+                    }
+                }
+            }
+            return stageAll(source, names, name -> new FileInputStream(new File(source, name)));
+        }
+
+        try (final ZipFile archive = new ZipFile(source)) {
+            List<String> names = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = archive.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().toLowerCase(Locale.US).endsWith(".apk")) {
+                    names.add(entry.getName());
+                }
+            }
+            // المدخلات المخزنة دون ضغط (المعتاد لملفات APK داخل الأرشيف) تُقرأ كما هي دون فك
+            return stageAll(source, names, name -> archive.getInputStream(archive.getEntry(name)));
+        }
+    }
+
+    private StagedApp stageAll(File source, List<String> names, EntryOpener opener) throws IOException {
+        String base = chooseBase(names);
+        if (base == null) {
+            throw new IOException("No base APK in " + source);
+        }
+        String abi = chooseSplitAbi(names);
+
+        StagedApp app = new StagedApp();
+        for (String name : names) {
+            String splitAbi = abiOf(name);
+            if (!name.equals(base) && splitAbi != null && !splitAbi.equals(abi)) {
+                continue; // مكتبات لمعمارية أخرى
+            }
+            File staged = mBlobStore.newStagingFile(".apk");
+            byte[] hash;
+            try (InputStream in = opener.open(name)) {
+                hash = ApkCopier.copy(in, staged).sha256;
+            }
+            mBlobStore.adopt(staged, hash);
+            if (name.equals(base)) {
+                app.baseHash = hash;
+            } else {
+                app.splits.put(splitName(name), hash);
+            }
+        }
+        Log.i(TAG, "تجهيز " + source.getName() + ": APK أساسي و" + app.splits.size() + " تقسيمات"
+                + (abi != null ? " (" + abi + ")" : ""));
+        return app;
+    }
+
+    /**
+     * ربط التقسيمات في مجلد التطبيق (بجوار base.apk) ثم استخراج المكتبات الأصلية
+     * @param app التقسيمات المجهزة، أو null لتطبيق من APK واحد
+     * @return ملفات التقسيمات المربوطة
+     */
+    List<File> linkSplitsAndLibraries(StagedApp app, File appDir) throws IOException {
+        // تقسيمات ومكتبات التثبيت السابق لا تبقى مع إصدار جديد؛ محتواها يُحرر من المخزن عند التنظيف
+        File[] oldFiles = appDir.listFiles();
+        if (oldFiles != null) {
+            for (File file : oldFiles) {
+                if (file.getName().startsWith(SPLIT_PREFIX) && file.getName().endsWith(".apk")) {
+                    file.delete();
+                }
+            }
+        }
+        deleteTree(new File(appDir, "lib"));
+
+        List<File> apkFiles = new ArrayList<>();
+        apkFiles.add(new File(appDir, "base.apk"));
+        List<File> splitFiles = new ArrayList<>();
+        if (app != null) {
+            for (Map.Entry<String, byte[]> split : app.splits.entrySet()) {
+                String name = split.getKey().startsWith(SPLIT_PREFIX) ? split.getKey() : SPLIT_PREFIX + split.getKey();
+                File splitFile = new File(appDir, name + ".apk");
+                mBlobStore.link(split.getValue(), splitFile);
+                splitFiles.add(splitFile);
+            }
+        }
+        apkFiles.addAll(splitFiles);
+
+        extractNativeLibraries(apkFiles, new File(appDir, "lib"));
+        return splitFiles;
+    }
+
+    /**
+     * مسار البحث عن المكتبات الأصلية لمحمل فئات التطبيق
+     * المكتبات المضغوطة مستخرجة في lib/<abi>، وغير المضغوطة تبقى في APK ويعيّنها المحمل من apk!/lib/<abi>
+     * @return المسار بفواصل File.pathSeparator، أو سلسلة فارغة إذا لم تكن للتطبيق مكتبات أصلية
+     */
+    static String getLibrarySearchPath(File appDir, List<File> apkFiles) {
+        File[] abiDirs = new File(appDir, "lib").listFiles(File::isDirectory);
+        if (abiDirs == null || abiDirs.length == 0) {
+            return "";
+        }
+        // مجلد ABI واحد: الذي اختاره التثبيت (يُنشأ حتى لو كانت كل المكتبات غير مضغوطة)
+        File libDir = abiDirs[0];
+        String prefix = "lib/" + libDir.getName() + "/";
+        StringBuilder path = new StringBuilder(libDir.getAbsolutePath());
+        for (File apkFile : apkFiles) {
+            try (ZipFile zip = new ZipFile(apkFile)) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".so")
+                            && entry.getMethod() == ZipEntry.STORED) {
+                        path.append(File.pathSeparatorChar).append(apkFile.getAbsolutePath())
+                                .append("!/").append(prefix, 0, prefix.length() - 1);
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "تعذر فحص مكتبات " + apkFile, e);
+            }
+        }
+        return path.toString();
+    }
+
+    /**
+     * استخراج المكتبات الأصلية المضغوطة لأفضل ABI يدعمه الجهاز وتوفره الملفات، بالتوازي
+     * غير المضغوطة لا تُستخرج؛ getLibrarySearchPath يضيف مواضعها داخل APK إلى مسار البحث
+     */
+    private void extractNativeLibraries(List<File> apkFiles, File libRoot) throws IOException {
+        List<ZipFile> zips = new ArrayList<>();
+        ExecutorService pool = null;
+        try {
+            for (File apkFile : apkFiles) {
+                zips.add(new ZipFile(apkFile));
+            }
+
+            String abi = chooseLibraryAbi(zips);
+            if (abi == null) {
+                return; // لا مكتبات أصلية
+            }
+            final String prefix = "lib/" + abi + "/";
+            final File libDir = new File(libRoot, abi);
+            // المجلد يحدد ABI المختار لمسار البحث، فيُنشأ حتى لو لم يُستخرج إليه شيء
+            if (!libDir.isDirectory() && !libDir.mkdirs()) {
+                throw new IOException("Cannot create directory " + libDir);
+            }
+
+            List<ZipFile> owners = new ArrayList<>();
+            List<ZipEntry> compressed = new ArrayList<>();
+            int inPlace = 0;
+            for (ZipFile zip : zips) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    String name = entry.getName();
+                    if (!name.startsWith(prefix) || !name.endsWith(".so") || name.indexOf('/', prefix.length()) >= 0) {
+                        continue;
+                    }
+                    if (entry.getMethod() == ZipEntry.STORED) {
+                        inPlace++; // تُعيَّن من APK مباشرة
+                    } else {
+                        owners.add(zip);
+                        compressed.add(entry);
+                    }
+                }
+            }
+
+            if (!compressed.isEmpty()) {
+                int threads = Math.min(compressed.size(), Math.max(1, Runtime.getRuntime().availableProcessors()));
+                pool = Executors.newFixedThreadPool(threads);
+                List<Future<?>> results = new ArrayList<>();
+                for (int i = 0; i < compressed.size(); i++) {
+                    final ZipFile zip = owners.get(i);
+                    final ZipEntry entry = compressed.get(i);
+                    results.add(pool.submit(() -> {
+                        String fileName = entry.getName().substring(prefix.length());
+                        extractLibrary(zip, entry, new File(libDir, fileName));
+                        return null;
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            }
+            Log.i(TAG, "المكتبات الأصلية (" + abi + "): استُخرج " + compressed.size() + "، وتُحمّل " + inPlace
+                    + " من APK مباشرة");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Native library extraction interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Native library extraction failed", e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            for (ZipFile zip : zips) {
+                try {
+                    zip.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * فك مكتبة واحدة مع حساب بصمتها، ثم إدخالها المخزن وربطها (المكتبة المشتركة بين تطبيقات تُخزن مرة)
+     */
+    private void extractLibrary(ZipFile zip, ZipEntry entry, File target) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 unavailable", e);
+        }
+
+        File staged = mBlobStore.newStagingFile(".so");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(staged)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            staged.delete();
+            throw e;
+        }
+        byte[] hash = digest.digest();
+        mBlobStore.adopt(staged, hash);
+        mBlobStore.link(hash, target);
+    }
+
+    /**
+     * أول ABI للجهاز توجد له مكتبات في أي من الملفات
+     */
+    private String chooseLibraryAbi(List<ZipFile> zips) {
+        for (String abi : mDeviceAbis) {
+            String prefix = "lib/" + abi + "/";
+            for (ZipFile zip : zips) {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    if (entries.nextElement().getName().startsWith(prefix)) {
+                        return abi;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * أول ABI للجهاز له تقسيم، أو null إذا لم توجد تقسيمات ABI
+     */
+    private String chooseSplitAbi(List<String> names) {
+        for (String deviceAbi : mDeviceAbis) {
+            String token = deviceAbi.replace('-', '_');
+            for (String name : names) {
+                if (token.equals(abiOf(name))) {
+                    return token;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * APK الأساسي: base.apk أو base-master.apk (bundletool)، وإلا الملف الوحيد الذي لا يبدو تقسيماً
+     */
+    private static String chooseBase(List<String> names) {
+        String candidate = null;
+        for (String name : names) {
+            String simple = simpleName(name);
+            if (simple.equals("base") || simple.equals("base-master")) {
+                return name;
+            }
+            if (candidate == null && !simple.startsWith("config.") && !simple.startsWith(SPLIT_PREFIX)
+                    && !simple.startsWith("base-") && abiOf(name) == null) {
+                candidate = name;
+            }
+        }
+        return candidate;
+    }
+
+    private static String abiOf(String name) {
+        String simple = simpleName(name);
+        for (String abi : KNOWN_ABIS) {
+            if (simple.contains(abi)) {
+                return abi;
+            }
+        }
+        return null;
+    }
+
+    private static String splitName(String name) {
+        return simpleName(name).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * اسم الملف دون المسار ودون .apk وبأحرف صغيرة
+     */
+    private static String simpleName(String name) {
+        String simple = name.substring(name.lastIndexOf('/') + 1).toLowerCase(Locale.US);
+        return simple.endsWith(".apk") ? simple.substring(0, simple.length() - 4) : simple;
+    }
+
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,353 @@
+package com.vcamera.app.virtual;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * مجمع عمليات بديلة (stub) مسبقة البدء والتهيئة للتطبيقات الافتراضية
+ * العملية الدافئة حُمّل فيها إطار الخطافات وCameraHook، فالإطلاق لا يحتاج إلا ربط الحزمة بها
+ * ربط العمليات بالحزم يُتتبع هنا؛ العملية البديلة تبقى في سجل العمليات باسم عمليتها لا باسم الحزمة
+ * عدد العمليات الدافئة يتبع معدل الإطلاق الأخير وهامش الذاكرة، ويُفرغ عند ضغط الذاكرة
+ * الملء المسبق (prewarm) لا يبدأ تلقائياً: لا يُستدعى إلا من مسار إطلاق يشغّل كود التطبيق في العملية البديلة فعلاً
+ */
+public class StubProcessPool {
+    private static final String TAG = "StubProcessPool";
+
+    // يطابق أصناف StubProcessProvider (P0..P3) وعملياتها في البيان
+    private static final int SLOT_COUNT = 4;
+    private static final int MAX_WARM = 2;
+    // إطلاقات متقاربة بهذا العدد خلال النافذة ترفع عدد العمليات الدافئة
+    private static final int BUSY_LAUNCHES = 3;
+    private static final long LAUNCH_WINDOW_MS = 10 * 60 * 1000;
+    // تقدير ذاكرة عملية بديلة دافئة؛ لا تُبدأ عملية إلا إذا بقي هذا القدر فوق حد الذاكرة المنخفضة
+    private static final long STUB_MEMORY_BYTES = 48L * 1024 * 1024;
+
+    private static StubProcessPool sInstance;
+
+    private final Context mContext;
+    private final ProcessRegistry mProcessRegistry;
+    // تهيئة العمليات تتم بالتتابع على خيط واحد، فلا تنافس أكثر من عملية ناشئة على المعالج
+    private final ExecutorService mExecutor;
+    private final Slot[] mSlots = new Slot[SLOT_COUNT];
+    private final ArrayDeque<Long> mLaunchTimes = new ArrayDeque<>();
+    // بعد ضغط الذاكرة لا يُعاد الملء حتى الإطلاق التالي
+    private boolean mTrimmed;
+
+    /**
+     * حالة عملية بديلة واحدة (محمية بقفل المجمع)
+     */
+    private static final class Slot {
+        final String processName;
+        final String authority;
+        boolean warm;
+        boolean warming;
+        String boundPackage;
+
+        Slot(String processName, String authority) {
+            this.processName = processName;
+            this.authority = authority;
+        }
+
+        boolean isFree() {
+            return !warm && !warming && boundPackage == null;
+        }
+
+        void reset() {
+            warm = false;
+            warming = false;
+            boundPackage = null;
+        }
+    }
+
+    public static StubProcessPool getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (StubProcessPool.class) {
+                if (sInstance == null) {
+                    sInstance = new StubProcessPool(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    private StubProcessPool(Context context) {
+        mContext = context;
+        mProcessRegistry = ProcessRegistry.getInstance(context);
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            mSlots[i] = new Slot(context.getPackageName() + ":p" + i,
+                    context.getPackageName() + StubProcessProvider.AUTHORITY_SUFFIX + i);
+        }
+        mExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // العملية البديلة تسجل نفسها باسم عمليتها عند بدئها، فموتها يحرر مكانها
+        mProcessRegistry.addListener(new ProcessRegistry.Listener() {
+            @Override
+            public void onProcessStarted(String packageName, int pid) {
+            }
+
+            @Override
+            public void onProcessDied(String packageName, int pid) {
+                onStubDied(packageName);
+            }
+        });
+    }
+
+    /**
+     * ملء المجمع في الخلفية حتى العدد المستهدف
+     * كل عملية دافئة تكلف نحو STUB_MEMORY_BYTES، فلا يُستدعى إلا من مسار إطلاق يستضيف التطبيق في العملية البديلة
+     */
+    public void prewarm() {
+        mExecutor.execute(this::topUp);
+    }
+
+    /**
+     * عملية لتشغيل الحزمة: عمليتها الحالية إن كانت حية، وإلا عملية دافئة تُربط بها، وإلا عملية تُبدأ الآن
+     * يحجز الخيط حتى تجهز العملية؛ لا يُستدعى من الخيط الرئيسي
+     * @return اسم العملية، أو null إذا كانت كل العمليات البديلة مشغولة بتطبيقات أخرى أو فشل الربط
+     */
+    public String acquire(String packageName) {
+        Slot slot;
+        boolean wasWarm;
+        synchronized (this) {
+            recordLaunch();
+            slot = findBound(packageName);
+            if (slot != null) {
+                if (mProcessRegistry.isRunning(slot.processName)) {
+                    return slot.processName;
+                }
+                slot.reset();
+            }
+
+            slot = findWarm();
+            if (slot == null) {
+                slot = findFree();
+            }
+            if (slot == null) {
+                Log.w(TAG, "كل العمليات البديلة مشغولة، لا عملية لـ " + packageName);
+                return null;
+            }
+            wasWarm = slot.warm;
+            slot.boundPackage = packageName;
+        }
+
+        long start = SystemClock.uptimeMillis();
+        boolean bound = call(slot, StubProcessProvider.METHOD_BIND, packageName);
+        synchronized (this) {
+            if (bound) {
+                slot.warm = true;
+            } else {
+                slot.reset();
+            }
+        }
+        if (bound) {
+            Log.i(TAG, "ربط " + packageName + " بالعملية " + slot.processName + (wasWarm ? " (دافئة)" : " (باردة)")
+                    + " خلال " + (SystemClock.uptimeMillis() - start) + "ms");
+        }
+        return bound ? slot.processName : null;
+    }
+
+    /**
+     * فك ربط الحزمة بعمليتها البديلة عند انتهاء الإطلاق أو فشله
+     * العملية المربوطة لا تقبل حزمة أخرى طوال حياتها، فتُنهى ويعود مكانها حراً للإطلاق التالي
+     */
+    public void release(String packageName) {
+        synchronized (this) {
+            Slot slot = findBound(packageName);
+            if (slot == null) {
+                return;
+            }
+            int pid = mProcessRegistry.getPid(slot.processName);
+            if (pid > 0) {
+                Process.killProcess(pid);
+            }
+            slot.reset();
+        }
+        Log.i(TAG, "فك ربط " + packageName + " بعمليته البديلة");
+    }
+
+    /**
+     * هل المعرف لعملية بديلة من المجمع (دافئة أو مربوطة)؛ هذه العمليات لا تُنهى بوصفها عمليات تطبيقات سابقة
+     */
+    public synchronized boolean isStubProcess(int pid) {
+        if (pid <= 0) {
+            return false;
+        }
+        for (Slot slot : mSlots) {
+            if (mProcessRegistry.getPid(slot.processName) == pid) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * ضغط الذاكرة: إنهاء العمليات الدافئة غير المربوطة (عمليات التطبيقات لا تُمس)
+     */
+    public void onTrimMemory(int level) {
+        boolean pressure = level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        if (!pressure) {
+            return;
+        }
+
+        int killed = 0;
+        synchronized (this) {
+            mTrimmed = true;
+            for (Slot slot : mSlots) {
+                if (slot.warm && slot.boundPackage == null) {
+                    int pid = mProcessRegistry.getPid(slot.processName);
+                    if (pid > 0) {
+                        Process.killProcess(pid);
+                        killed++;
+                    }
+                    slot.reset();
+                }
+            }
+        }
+        if (killed > 0) {
+            Log.i(TAG, "إنهاء " + killed + " عمليات دافئة لضغط الذاكرة (المستوى " + level + ")");
+        }
+    }
+
+    /**
+     * بدء عمليات دافئة حتى العدد المستهدف؛ على خيط المجمع
+     */
+    private void topUp() {
+        while (true) {
+            Slot slot;
+            synchronized (this) {
+                if (countWarm() >= computeTarget()) {
+                    return;
+                }
+                slot = findFree();
+                if (slot == null) {
+                    return;
+                }
+                slot.warming = true;
+            }
+
+            long start = SystemClock.uptimeMillis();
+            boolean warm = call(slot, StubProcessProvider.METHOD_WARM, null);
+            synchronized (this) {
+                slot.warming = false;
+                slot.warm = warm;
+            }
+            if (!warm) {
+                Log.w(TAG, "فشل بدء العملية البديلة " + slot.processName);
+                return;
+            }
+            Log.i(TAG, "عملية دافئة جاهزة: " + slot.processName + " خلال " + (SystemClock.uptimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * العدد المستهدف: واحدة دائماً، واثنتان عند تتابع الإطلاقات، بقدر ما يسمح هامش الذاكرة
+     */
+    private int computeTarget() {
+        if (mTrimmed) {
+            return 0;
+        }
+        long now = SystemClock.uptimeMillis();
+        while (!mLaunchTimes.isEmpty() && now - mLaunchTimes.peekFirst() > LAUNCH_WINDOW_MS) {
+            mLaunchTimes.pollFirst();
+        }
+        int target = mLaunchTimes.size() >= BUSY_LAUNCHES ? MAX_WARM : 1;
+
+        ActivityManager am = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null) {
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            am.getMemoryInfo(memoryInfo);
+            if (memoryInfo.lowMemory) {
+                return 0;
+            }
+            long headroom = memoryInfo.availMem - memoryInfo.threshold;
+            target = (int) Math.min(target, countWarm() + Math.max(0, headroom / STUB_MEMORY_BYTES));
+        }
+        return target;
+    }
+
+    private void recordLaunch() {
+        mTrimmed = false;
+        mLaunchTimes.addLast(SystemClock.uptimeMillis());
+        if (mLaunchTimes.size() > BUSY_LAUNCHES * 4) {
+            mLaunchTimes.pollFirst();
+        }
+    }
+
+    private synchronized void onStubDied(String processName) {
+        for (Slot slot : mSlots) {
+            if (slot.processName.equals(processName)) {
+                slot.reset();
+                return;
+            }
+        }
+    }
+
+    /**
+     * عدد العمليات الدافئة غير المربوطة
+     */
+    private int countWarm() {
+        int count = 0;
+        for (Slot slot : mSlots) {
+            if ((slot.warm || slot.warming) && slot.boundPackage == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Slot findBound(String packageName) {
+        for (Slot slot : mSlots) {
+            if (packageName.equals(slot.boundPackage)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private Slot findWarm() {
+        for (Slot slot : mSlots) {
+            if (slot.warm && slot.boundPackage == null) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private Slot findFree() {
+        for (Slot slot : mSlots) {
+            if (slot.isFree()) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * استدعاء مقدم العملية البديلة؛ يبدأ النظام العملية إذا لم تكن قيد التشغيل
+     */
+    private boolean call(Slot slot, String method, String arg) {
+        try {
+            Bundle result = mContext.getContentResolver().call(Uri.parse("content://" + slot.authority), method, arg, null);
+            return result != null;
+        } catch (Exception e) {
+            Log.w(TAG, "فشل استدعاء العملية البديلة " + slot.processName + ": " + method, e);
+            return false;
+        }
+    }
+}
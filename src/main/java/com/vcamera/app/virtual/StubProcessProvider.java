@@ -0,0 +1,116 @@
+package com.vcamera.app.virtual;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * مقدم محتوى يعيش في عملية بديلة (stub) مسبقة البدء من مجمع StubProcessPool
+ * أول استدعاء له يبدأ العملية ويهيئ فيها إطار الخطافات وCameraHook، ثم يربطها الإطلاق بحزمة التطبيق
+ * لكل عملية بديلة صنف فرعي خاص بها (P0، P1، ...) لأن عملية المقدم تُحدد في البيان لكل صنف
+ */
+public abstract class StubProcessProvider extends ContentProvider {
+    private static final String TAG = "StubProcessProvider";
+
+    static final String METHOD_WARM = "warm";
+    static final String METHOD_BIND = "bind";
+    static final String AUTHORITY_SUFFIX = ".stub";
+
+    // الحزمة المربوطة بهذه العملية؛ العملية البديلة لا تستضيف إلا حزمة واحدة طوال حياتها
+    private static String sBoundPackage;
+    private static VirtualXposedFramework sFramework;
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (Binder.getCallingUid() != Process.myUid()) {
+            return null;
+        }
+        if (METHOD_WARM.equals(method)) {
+            return warm() ? new Bundle() : null;
+        }
+        if (METHOD_BIND.equals(method) && arg != null) {
+            return bind(arg) ? new Bundle() : null;
+        }
+        return null;
+    }
+
+    /**
+     * تحميل ما يحتاجه كل تطبيق مسبقاً: إطار الخطافات وخطاف الكاميرا
+     */
+    private synchronized boolean warm() {
+        if (sFramework != null) {
+            return true;
+        }
+        long start = System.currentTimeMillis();
+        VirtualXposedFramework framework = new VirtualXposedFramework(getContext());
+        if (!framework.initialize()) {
+            return false;
+        }
+        CameraHook.getInstance(getContext());
+        sFramework = framework;
+        Log.i(TAG, "تهيئة العملية البديلة " + Process.myPid() + " خلال " + (System.currentTimeMillis() - start) + "ms");
+        return true;
+    }
+
+    /**
+     * ربط العملية بحزمة
+     * العملية لا تُعلن لسجل العمليات باسم الحزمة هنا: لم يعمل فيها أي كود للتطبيق بعد، والربط يتتبعه المجمع
+     */
+    private synchronized boolean bind(String packageName) {
+        if (sBoundPackage != null && !sBoundPackage.equals(packageName)) {
+            return false;
+        }
+        if (!warm()) {
+            return false;
+        }
+        sBoundPackage = packageName;
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    public static class P0 extends StubProcessProvider {
+    }
+
+    public static class P1 extends StubProcessProvider {
+    }
+
+    public static class P2 extends StubProcessProvider {
+    }
+
+    public static class P3 extends StubProcessProvider {
+    }
+}
@@ -7,20 +7,29 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.os.Binder;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.util.Log;
 
+import com.vcamera.app.core.AppIconCache;
 import com.vcamera.app.core.ErrorLogger;
 import com.vcamera.app.utils.PackageUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -32,10 +41,16 @@ public class VirtualAppEnvironment {
     private static VirtualAppEnvironment sInstance;
     
     private final Context mContext;
-    private final Map<String, VirtualAppInfo> mInstalledApps = new HashMap<>();
+    // تُحدَّث من خيوط محمل البيانات أثناء التحميل في الخلفية
+    private final Map<String, VirtualAppInfo> mInstalledApps = new ConcurrentHashMap<>();
     private final VirtualXposedFramework mFramework;
     private final ErrorLogger mErrorLogger;
     private final AppLauncher mAppLauncher;
+    private final AppRegistry mRegistry;
+    private final AppMetadataLoader mMetadataLoader;
+    private final BlobStore mBlobStore;
+    private final SplitApkInstaller mSplitInstaller;
+    private final DexOptimizer mDexOptimizer;
     private final AtomicBoolean mIsInitialized = new AtomicBoolean(false);
     
     /**
@@ -57,6 +72,11 @@ public class VirtualAppEnvironment {
         mErrorLogger = new ErrorLogger(context);
         mFramework = new VirtualXposedFramework(context);
         mAppLauncher = new AppLauncher(context, mErrorLogger);
+        mRegistry = AppRegistry.getInstance(context);
+        mMetadataLoader = new AppMetadataLoader(context, mErrorLogger);
+        mBlobStore = BlobStore.getInstance(context);
+        mSplitInstaller = new SplitApkInstaller(mBlobStore, Build.SUPPORTED_ABIS);
+        mDexOptimizer = DexOptimizer.getInstance(context);
     }
     
     /**
@@ -133,46 +153,111 @@ public class VirtualAppEnvironment {
     }
     
     /**
-     * تحميل التطبيقات المثبتة مسبقاً
+     * تحميل التطبيقات المثبتة مسبقاً من السجل
+     * المدخلات السليمة تُضاف فوراً؛ والتي تغير ملفها (أو كل التطبيقات عند غياب السجل) تُحلل بالتوازي
+     * ويظهر كل تطبيق فور اكتماله عبر مستمعي السجل
      */
     private void loadInstalledApps() {
         try {
-            File appsDir = new File(mContext.getFilesDir(), "virtual_apps");
-            File[] appFiles = appsDir.listFiles();
-            if (appFiles != null) {
-                for (File appFile : appFiles) {
-                    if (appFile.isDirectory()) {
-                        String packageName = appFile.getName();
-                        File apkFile = new File(appFile, "base.apk");
-                        if (apkFile.exists()) {
-                            VirtualAppInfo appInfo = new VirtualAppInfo();
-                            appInfo.packageName = packageName;
-                            appInfo.apkPath = apkFile.getAbsolutePath();
-                            appInfo.dataPath = new File(appFile, "data").getAbsolutePath();
-                            
-                            // استخراج معلومات التطبيق
-                            try {
-                                ApplicationInfo ai = PackageUtils.getPackageInfo(mContext, apkFile.getAbsolutePath());
-                                if (ai != null) {
-                                    appInfo.appName = ai.loadLabel(mContext.getPackageManager()).toString();
-                                    appInfo.versionCode = ai.versionCode;
-                                    appInfo.icon = ai.loadIcon(mContext.getPackageManager());
-                                }
-                            } catch (Exception e) {
-                                mErrorLogger.logException(TAG, "خطأ أثناء استخراج معلومات التطبيق: " + packageName, e);
-                            }
-                            
-                            mInstalledApps.put(packageName, appInfo);
-                            Log.i(TAG, "تم تحميل التطبيق المثبت: " + packageName);
-                        }
-                    }
+            List<AppRegistry.Entry> stale = new ArrayList<>();
+            List<File> staleApks = new ArrayList<>();
+            
+            if (!mRegistry.load()) {
+                Log.i(TAG, "لا يوجد سجل للتطبيقات، بناؤه بمسح المجلد");
+                mRegistry.reset();
+                scanInstalledApps(stale, staleApks);
+            }
+            
+            for (AppRegistry.Entry entry : mRegistry.getEntries()) {
+                File apkFile = new File(entry.apkPath);
+                if (!apkFile.exists()) {
+                    Log.w(TAG, "ملف APK مفقود، إزالة التطبيق من السجل: " + entry.packageName);
+                    mRegistry.remove(entry.packageName);
+                } else if (entry.matches(apkFile)) {
+                    mInstalledApps.put(entry.packageName, toAppInfo(entry));
+                } else {
+                    // تغير الملف منذ التسجيل: إعادة التحليل والبصمة لهذا المدخل وحده
+                    stale.add(entry);
+                    staleApks.add(apkFile);
                 }
             }
+            
+            // قبل السماح بأي تثبيت: محتوى لم يعد مرتبطاً بتطبيق وبقايا تثبيتات منقطعة
+            mBlobStore.collectGarbage();
+            
+            Log.i(TAG, "تم تحميل " + mInstalledApps.size() + " تطبيقات من السجل، وتحديث " + stale.size()
+                    + " في الخلفية");
+            mMetadataLoader.refreshAll(stale, staleApks, new AppMetadataLoader.Callback() {
+                @Override
+                public void onAppLoaded(AppRegistry.Entry entry) {
+                    mInstalledApps.put(entry.packageName, toAppInfo(entry));
+                    mRegistry.put(entry);
+                }
+                
+                @Override
+                public void onAllLoaded() {
+                    saveRegistry();
+                    // بعد التحميل: ما لم يُحسَّن بعد (أو أبطله تحديث النظام) يُحسَّن في الخلفية
+                    for (AppRegistry.Entry entry : mRegistry.getEntries()) {
+                        mDexOptimizer.schedule(entry.packageName, new File(entry.apkPath).getParentFile());
+                    }
+                }
+            });
         } catch (Exception e) {
             mErrorLogger.logException(TAG, "خطأ أثناء تحميل التطبيقات المثبتة", e);
         }
     }
     
+    /**
+     * مسح مجلد التطبيقات لجمع التطبيقات المثبتة قبل وجود السجل (ترحيل)
+     */
+    private void scanInstalledApps(List<AppRegistry.Entry> entries, List<File> apkFiles) {
+        File appsDir = new File(mContext.getFilesDir(), "virtual_apps");
+        File[] appFiles = appsDir.listFiles();
+        if (appFiles == null) {
+            return;
+        }
+        for (File appFile : appFiles) {
+            File apkFile = new File(appFile, "base.apk");
+            if (appFile.isDirectory() && apkFile.exists()) {
+                AppRegistry.Entry entry = new AppRegistry.Entry();
+                entry.packageName = appFile.getName();
+                entry.dataPath = new File(appFile, "data").getAbsolutePath();
+                entries.add(entry);
+                apkFiles.add(apkFile);
+            }
+        }
+    }
+    
+    private void saveRegistry() {
+        try {
+            mRegistry.save();
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء حفظ سجل التطبيقات", e);
+        }
+    }
+    
+    private VirtualAppInfo toAppInfo(AppRegistry.Entry entry) {
+        VirtualAppInfo appInfo = new VirtualAppInfo();
+        appInfo.packageName = entry.packageName;
+        appInfo.appName = entry.label;
+        appInfo.apkPath = entry.apkPath;
+        appInfo.dataPath = entry.dataPath;
+        appInfo.versionCode = entry.versionCode;
+        return appInfo;
+    }
+    
+    /**
+     * أيقونة التطبيق من ذاكرة الأيقونات المؤقتة (ترسم من APK مرة واحدة فقط)؛ لا تُستدعى على الخيط الرئيسي
+     */
+    public Bitmap loadAppIcon(String packageName) {
+        VirtualAppInfo appInfo = mInstalledApps.get(packageName);
+        if (appInfo == null) {
+            return null;
+        }
+        return AppIconCache.getInstance(mContext).load(packageName, appInfo.versionCode, appInfo.apkPath);
+    }
+    
     /**
      * تثبيت تطبيق جديد في البيئة الافتراضية
      */
@@ -182,73 +267,152 @@ public class VirtualAppEnvironment {
             return false;
         }
         
+        File apkFile = new File(apkPath);
+        if (!apkFile.exists() || !apkFile.canRead()) {
+            mErrorLogger.logError(TAG, "ملف APK غير موجود أو غير قابل للقراءة: " + apkPath);
+            return false;
+        }
+        
+        if (SplitApkInstaller.isSplitSource(apkFile)) {
+            return installSplitApp(apkFile);
+        }
+        
         try {
-            // التحقق من ملف APK
-            File apkFile = new File(apkPath);
-            if (!apkFile.exists() || !apkFile.canRead()) {
-                mErrorLogger.logError(TAG, "ملف APK غير موجود أو غير قابل للقراءة: " + apkPath);
-                return false;
-            }
-            
-            // استخراج اسم الحزمة
-            String packageName = PackageUtils.getPackageName(mContext, apkPath);
-            if (packageName == null || packageName.isEmpty()) {
-                mErrorLogger.logError(TAG, "فشل في استخراج اسم الحزمة من ملف APK: " + apkPath);
-                return false;
-            }
-            
-            // إنشاء مجلدات التطبيق
-            File appDir = new File(mContext.getFilesDir(), "virtual_apps/" + packageName);
-            if (!appDir.exists()) {
-                appDir.mkdirs();
-            }
-            
-            // نسخ ملف APK
-            File targetApk = new File(appDir, "base.apk");
-            PackageUtils.copyFile(apkFile, targetApk);
-            
-            // إنشاء مجلد البيانات
-            File dataDir = new File(appDir, "data");
-            if (!dataDir.exists()) {
-                dataDir.mkdirs();
-            }
-            
-            // تسجيل التطبيق في البيئة الافتراضية
-            VirtualAppInfo appInfo = new VirtualAppInfo();
-            appInfo.packageName = packageName;
-            appInfo.apkPath = targetApk.getAbsolutePath();
-            appInfo.dataPath = dataDir.getAbsolutePath();
-            
-            // استخراج معلومات التطبيق
-            try {
-                ApplicationInfo ai = PackageUtils.getPackageInfo(mContext, targetApk.getAbsolutePath());
-                if (ai != null) {
-                    appInfo.appName = ai.loadLabel(mContext.getPackageManager()).toString();
-                    appInfo.versionCode = ai.versionCode;
-                    appInfo.icon = ai.loadIcon(mContext.getPackageManager());
+            // إعادة تثبيت APK بحجم تطبيق مثبت: البصمة وحدها (قراءة دون كتابة) تكشف إن كان محتواه مخزناً
+            if (hasInstalledApkOfLength(apkFile.length())) {
+                byte[] hash = AppRegistry.hashFile(apkFile);
+                if (mBlobStore.contains(hash)) {
+                    Log.i(TAG, "محتوى APK مخزن مسبقاً، تثبيت دون نسخ: " + apkPath);
+                    return installStoredApk(hash, apkPath);
                 }
-            } catch (Exception e) {
-                mErrorLogger.logException(TAG, "خطأ أثناء استخراج معلومات التطبيق: " + packageName, e);
             }
             
-            // تسجيل التطبيق في VirtualXposedFramework
-            boolean registered = mFramework.registerApp(packageName, targetApk.getAbsolutePath(), dataDir.getAbsolutePath());
-            if (!registered) {
-                mErrorLogger.logError(TAG, "فشل في تسجيل التطبيق في إطار العمل الافتراضي: " + packageName);
-                return false;
+            try (InputStream apkStream = new FileInputStream(apkFile)) {
+                return installApp(apkStream, apkPath);
             }
-            
-            // إضافة التطبيق إلى قائمة التطبيقات المثبتة
-            mInstalledApps.put(packageName, appInfo);
-            
-            Log.i(TAG, "تم تثبيت التطبيق بنجاح: " + packageName);
-            return true;
         } catch (Exception e) {
             mErrorLogger.logException(TAG, "خطأ أثناء تثبيت التطبيق: " + apkPath, e);
             return false;
         }
     }
     
+    /**
+     * تثبيت تطبيق من تدفق APK (ملف أو محتوى URI) دون نسخة مؤقتة وسيطة
+     * المصدر يُقرأ مرة واحدة: النسخ والبصمة والتحقق من بنية ZIP في المرور نفسه، ثم يدخل مخزن المحتوى
+     * @param sourceName وصف المصدر للسجلات
+     */
+    public boolean installApp(InputStream apkStream, String sourceName) {
+        if (!mIsInitialized.get()) {
+            mErrorLogger.logError(TAG, "محاولة تثبيت تطبيق قبل تهيئة البيئة الافتراضية");
+            return false;
+        }
+        
+        try {
+            File stagedApk = mBlobStore.newStagingFile(".apk");
+            ApkCopier.Result copied = ApkCopier.copy(apkStream, stagedApk);
+            // محتوى مكرر (التطبيق نفسه لمستخدم آخر أو إعادة تثبيت) يُحذف هنا ويُستخدم المخزن
+            mBlobStore.adopt(stagedApk, copied.sha256);
+            return installStoredApk(copied.sha256, sourceName);
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء تثبيت التطبيق: " + sourceName, e);
+            return false;
+        }
+    }
+    
+    /**
+     * تثبيت تطبيق مقسم (مجلد أو أرشيف .apks/.xapk): APK الأساسي والتقسيمات الملائمة للجهاز فقط
+     */
+    private boolean installSplitApp(File source) {
+        try {
+            SplitApkInstaller.StagedApp staged = mSplitInstaller.stage(source);
+            return installStoredApk(staged.baseHash, staged, source.getAbsolutePath());
+        } catch (Exception e) {
+            mErrorLogger.logException(TAG, "خطأ أثناء تثبيت التطبيق المقسم: " + source, e);
+            return false;
+        }
+    }
+    
+    private boolean installStoredApk(byte[] hash, String sourceName) throws Exception {
+        return installStoredApk(hash, null, sourceName);
+    }
+    
+    /**
+     * تثبيت APK موجود في مخزن المحتوى: ربطه في مجلد التطبيق مع تقسيماته ومكتباته الأصلية وتسجيله
+     * إعادة تثبيت المحتوى نفسه لا تعيد تحليل APK ولا رسم أيقونته
+     * @param splits التقسيمات المجهزة، أو null لتطبيق من APK واحد
+     */
+    private boolean installStoredApk(byte[] hash, SplitApkInstaller.StagedApp splits, String sourceName)
+            throws Exception {
+        File storedApk = mBlobStore.getBlob(hash);
+        
+        // استخراج اسم الحزمة
+        String packageName = PackageUtils.getPackageName(mContext, storedApk.getAbsolutePath());
+        if (packageName == null || packageName.isEmpty()) {
+            mErrorLogger.logError(TAG, "فشل في استخراج اسم الحزمة من ملف APK: " + sourceName);
+            mBlobStore.release(hash);
+            return false;
+        }
+        
+        // ربط APK في مجلد التطبيق (رابط صلب إلى المخزن، دون نسخ)
+        File appDir = new File(mContext.getFilesDir(), "virtual_apps/" + packageName);
+        File targetApk = new File(appDir, "base.apk");
+        mBlobStore.link(hash, targetApk);
+        mSplitInstaller.linkSplitsAndLibraries(splits, appDir);
+        
+        // إنشاء مجلد البيانات
+        File dataDir = new File(appDir, "data");
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        
+        AppRegistry.Entry previous = mRegistry.get(packageName);
+        AppRegistry.Entry entry;
+        if (previous != null && Arrays.equals(previous.contentHash, hash)) {
+            // المحتوى لم يتغير: بيانات السجل صالحة كما هي
+            entry = previous;
+            entry.updateFrom(targetApk, hash);
+        } else {
+            // تحليل APK ورسم أيقونته وتسجيله في سجل التطبيقات مع بصمة محتواه
+            entry = new AppRegistry.Entry();
+            entry.packageName = packageName;
+            entry.dataPath = dataDir.getAbsolutePath();
+            mMetadataLoader.refresh(entry, targetApk, hash);
+        }
+        VirtualAppInfo appInfo = toAppInfo(entry);
+        
+        // تسجيل التطبيق في VirtualXposedFramework
+        boolean registered = mFramework.registerApp(packageName, targetApk.getAbsolutePath(), dataDir.getAbsolutePath());
+        if (!registered) {
+            mErrorLogger.logError(TAG, "فشل في تسجيل التطبيق في إطار العمل الافتراضي: " + packageName);
+            return false;
+        }
+        
+        // إضافة التطبيق إلى قائمة التطبيقات المثبتة وحفظ السجل
+        mInstalledApps.put(packageName, appInfo);
+        mRegistry.put(entry);
+        mRegistry.save();
+        
+        // الإصدار السابق لم يعد مرتبطاً بهذا التطبيق
+        if (previous != null && previous.contentHash != null && !Arrays.equals(previous.contentHash, hash)) {
+            mBlobStore.release(previous.contentHash);
+        }
+        
+        // ترجمة dex والتحقق منه في الخلفية قبل الإطلاق الأول
+        mDexOptimizer.schedule(packageName, appDir);
+        
+        Log.i(TAG, "تم تثبيت التطبيق بنجاح: " + packageName);
+        return true;
+    }
+    
+    private boolean hasInstalledApkOfLength(long length) {
+        for (AppRegistry.Entry entry : mRegistry.getEntries()) {
+            if (entry.apkLength == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * إزالة تطبيق من البيئة الافتراضية
      */
@@ -273,11 +437,16 @@ public class VirtualAppEnvironment {
             }
             
             // حذف مجلدات التطبيق
+            mDexOptimizer.cancel(packageName);
+            // مع ملفاته يُحرر محتواه في المخزن (APK والتقسيمات والمكتبات الأصلية)
             File appDir = new File(mContext.getFilesDir(), "virtual_apps/" + packageName);
-            PackageUtils.deleteDir(appDir);
+            mBlobStore.releaseDirectory(appDir);
             
-            // إزالة التطبيق من قائمة التطبيقات المثبتة
+            // إزالة التطبيق من قائمة التطبيقات المثبتة ومن السجل
             mInstalledApps.remove(packageName);
+            mRegistry.remove(packageName);
+            mRegistry.save();
+            AppIconCache.getInstance(mContext).remove(packageName);
             
             Log.i(TAG, "تم إزالة التطبيق بنجاح: " + packageName);
             return true;
@@ -321,6 +490,30 @@ public class VirtualAppEnvironment {
         }
     }
     
+    /**
+     * تشغيل تطبيق دون حجز الخيط المستدعي؛ النتيجة تصل إلى المستمع على الخيط الرئيسي
+     */
+    public void launchAppAsync(final String packageName, final AppLauncher.LaunchCallback callback) {
+        if (!mIsInitialized.get() || !mInstalledApps.containsKey(packageName)) {
+            mErrorLogger.logError(TAG, "لا يمكن تشغيل التطبيق (البيئة غير مهيأة أو التطبيق غير مثبت): " + packageName);
+            if (callback != null) {
+                new Handler(Looper.getMainLooper()).post(() -> callback.onLaunchResult(packageName, false));
+            }
+            return;
+        }
+        
+        mAppLauncher.launchAppAsync(packageName, 0, (launchedPackage, success) -> {
+            if (success) {
+                Log.i(TAG, "تم تشغيل التطبيق بنجاح: " + launchedPackage);
+            } else {
+                mErrorLogger.logError(TAG, "فشل في تشغيل التطبيق: " + launchedPackage);
+            }
+            if (callback != null) {
+                callback.onLaunchResult(launchedPackage, success);
+            }
+        });
+    }
+    
     /**
      * الحصول على قائمة التطبيقات المثبتة
      */
@@ -337,6 +530,5 @@ public class VirtualAppEnvironment {
         public String apkPath;
         public String dataPath;
         public int versionCode;
-        public android.graphics.drawable.Drawable icon;
     }
 }
\ No newline at end of file
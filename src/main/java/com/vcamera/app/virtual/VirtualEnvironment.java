@@ -7,13 +7,17 @@ import android.os.Build;
 import android.os.Process;
 import android.util.Log;
 
+import com.vcamera.app.core.AppIconCache;
 import com.vcamera.app.core.ErrorLogger;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * البيئة الافتراضية
@@ -28,6 +32,9 @@ public class VirtualEnvironment {
     private final boolean mEnableExceptionHandler;
     private final Map<String, VirtualAppInfo> mInstalledApps;
     private final List<VirtualAppLaunchListener> mLaunchListeners;
+    private final AppRegistry mRegistry;
+    private final BlobStore mBlobStore;
+    private final SplitApkInstaller mSplitInstaller;
     
     private VirtualEnvironment(Context context, boolean enableAppCompat, 
                               boolean enableCameraVirtualization, 
@@ -36,8 +43,17 @@ public class VirtualEnvironment {
         mEnableAppCompat = enableAppCompat;
         mEnableCameraVirtualization = enableCameraVirtualization;
         mEnableExceptionHandler = enableExceptionHandler;
-        mInstalledApps = new HashMap<>();
+        mInstalledApps = new ConcurrentHashMap<>();
         mLaunchListeners = new ArrayList<>();
+        mRegistry = AppRegistry.getInstance(context);
+        mBlobStore = BlobStore.getInstance(context);
+        mSplitInstaller = new SplitApkInstaller(mBlobStore, Build.SUPPORTED_ABIS);
+        // التطبيقات المحدَّثة في الخلفية تُضاف إلى القائمة فور اكتمال تحليلها
+        mRegistry.addListener(entry -> {
+            VirtualAppInfo existing = mInstalledApps.get(entry.packageName);
+            mInstalledApps.put(entry.packageName, new VirtualAppInfo(entry.packageName, entry.label,
+                    existing != null ? existing.getUserId() : 0));
+        });
         
         // تهيئة البيئة الافتراضية
         initialize();
@@ -71,8 +87,18 @@ public class VirtualEnvironment {
     private void loadInstalledApps() {
         ErrorLogger.log(TAG, "Loading installed apps in virtual environment");
         
-        // هنا سنقوم بمسح مجلد التطبيقات الافتراضية للحصول على التطبيقات المثبتة
-        // وتخزينها في القائمة مع معلوماتها
+        // السجل يغني عن مسح المجلد؛ المسح للتثبيتات السابقة للسجل فقط
+        try {
+            if (mRegistry.load()) {
+                for (AppRegistry.Entry entry : mRegistry.getEntries()) {
+                    mInstalledApps.put(entry.packageName, new VirtualAppInfo(entry.packageName, entry.label, 0));
+                }
+                ErrorLogger.log(TAG, "Loaded " + mInstalledApps.size() + " virtual apps from registry");
+                return;
+            }
+        } catch (Exception e) {
+            ErrorLogger.logError(TAG, "Failed to read app registry, scanning directory", e);
+        }
         
         File virtualAppsDir = getVirtualAppsDir();
         if (virtualAppsDir.exists() && virtualAppsDir.isDirectory()) {
@@ -236,14 +262,23 @@ public class VirtualEnvironment {
     
     /**
      * تثبيت تطبيق في البيئة الافتراضية
+     * @param sourceApkPath ملف APK، أو تطبيق مقسم (مجلد أو أرشيف .apks/.xapk)
      */
     public boolean installApp(String sourceApkPath, int userId) {
         try {
             ErrorLogger.log(TAG, "Installing app from: " + sourceApkPath);
             
+            // التطبيق المقسم: APK الأساسي والتقسيمات الملائمة للجهاز تدخل المخزن أولاً
+            File sourceApk = new File(sourceApkPath);
+            SplitApkInstaller.StagedApp staged = null;
+            if (SplitApkInstaller.isSplitSource(sourceApk)) {
+                staged = mSplitInstaller.stage(sourceApk);
+                sourceApk = mBlobStore.getBlob(staged.baseHash);
+            }
+            
             // استخراج معلومات APK
             PackageInfo packageInfo = mContext.getPackageManager().getPackageArchiveInfo(
-                    sourceApkPath, 0);
+                    sourceApk.getAbsolutePath(), 0);
             
             if (packageInfo == null) {
                 ErrorLogger.log(TAG, "Failed to get package info from APK");
@@ -259,9 +294,36 @@ public class VirtualEnvironment {
                 appDir.mkdirs();
             }
             
-            // نسخ ملف APK إلى مجلد التطبيق
+            // APK مشترك بين كل المستخدمين: التثبيت لمستخدم آخر بالمحتوى نفسه لا ينسخ شيئاً
             File targetApk = new File(appDir, "base.apk");
-            // نسخ الملف هنا...
+            AppRegistry.Entry previous = mRegistry.get(packageName);
+            byte[] contentHash = null;
+            if (staged != null) {
+                contentHash = staged.baseHash;
+                mBlobStore.link(contentHash, targetApk);
+                if (previous != null && !Arrays.equals(previous.contentHash, contentHash)) {
+                    mBlobStore.release(previous.contentHash);
+                }
+            } else if (previous != null && previous.apkLength == sourceApk.length() && targetApk.exists()) {
+                byte[] sourceHash = AppRegistry.hashFile(sourceApk);
+                if (Arrays.equals(sourceHash, previous.contentHash)) {
+                    ErrorLogger.log(TAG, "APK unchanged, reusing installed copy: " + packageName);
+                    contentHash = sourceHash;
+                }
+            }
+            if (contentHash == null) {
+                // نسخ مع البصمة والتحقق من بنيته في مرور واحد، ثم إدخاله مخزن المحتوى وربطه في مجلد التطبيق
+                File stagedApk = mBlobStore.newStagingFile(".apk");
+                try (InputStream source = new FileInputStream(sourceApk)) {
+                    contentHash = ApkCopier.copy(source, stagedApk).sha256;
+                }
+                mBlobStore.adopt(stagedApk, contentHash);
+                mBlobStore.link(contentHash, targetApk);
+                if (previous != null && !Arrays.equals(previous.contentHash, contentHash)) {
+                    mBlobStore.release(previous.contentHash);
+                }
+            }
+            mSplitInstaller.linkSplitsAndLibraries(staged, appDir);
             
             // إنشاء مجلد بيانات المستخدم
             File appDataDir = getVirtualAppDataDir(packageName, userId);
@@ -276,8 +338,10 @@ public class VirtualEnvironment {
                     userId
             );
             
-            // حفظ معلومات التطبيق
+            // حفظ معلومات التطبيق في القائمة والسجل
             mInstalledApps.put(packageName, appInfo);
+            registerApp(appInfo, targetApk, appDataDir, packageInfo.versionCode, contentHash);
+            DexOptimizer.getInstance(mContext).schedule(packageName, appDir);
             
             ErrorLogger.log(TAG, "App installed successfully: " + packageName);
             return true;
@@ -287,6 +351,26 @@ public class VirtualEnvironment {
         }
     }
     
+    /**
+     * تسجيل التطبيق المثبت في سجل التطبيقات مع بصمة ملف APK
+     */
+    private void registerApp(VirtualAppInfo appInfo, File apkFile, File dataDir, int versionCode,
+                             byte[] contentHash) {
+        try {
+            AppRegistry.Entry entry = new AppRegistry.Entry();
+            entry.packageName = appInfo.getPackageName();
+            entry.label = appInfo.getAppName();
+            entry.versionCode = versionCode;
+            entry.dataPath = dataDir.getAbsolutePath();
+            entry.updateFrom(apkFile, contentHash);
+            mRegistry.put(entry);
+            mRegistry.save();
+            AppIconCache.getInstance(mContext).prerender(entry.packageName, versionCode, entry.apkPath);
+        } catch (Exception e) {
+            ErrorLogger.logError(TAG, "Failed to update app registry: " + appInfo.getPackageName(), e);
+        }
+    }
+    
     /**
      * إزالة تطبيق من البيئة الافتراضية
      */
@@ -298,8 +382,22 @@ public class VirtualEnvironment {
             File appDataDir = getVirtualAppDataDir(packageName, userId);
             deleteDirectory(appDataDir);
             
-            // إزالة التطبيق من قائمة التطبيقات المثبتة
+            // ملفات التطبيق ومدخل السجل مشتركة بين المستخدمين: تبقى ما بقي مستخدم مثبت له
+            if (isInstalledForAnyUser(packageName)) {
+                ErrorLogger.log(TAG, "App uninstalled for user " + userId + ", still installed for other users: "
+                        + packageName);
+                return true;
+            }
+            
+            // آخر مستخدم: إزالة التطبيق من قائمة التطبيقات المثبتة ومن السجل وتحرير ملفاته من المخزن
             mInstalledApps.remove(packageName);
+            mRegistry.remove(packageName);
+            mRegistry.save();
+            AppIconCache.getInstance(mContext).remove(packageName);
+            DexOptimizer.getInstance(mContext).cancel(packageName);
+            
+            // APK والتقسيمات والمكتبات الأصلية لهذا التطبيق وحدها؛ جمع المخزن كله قد يحذف محتوى تثبيت جارٍ
+            mBlobStore.releaseDirectory(new File(getVirtualAppsDir(), packageName));
             
             ErrorLogger.log(TAG, "App uninstalled successfully: " + packageName);
             return true;
@@ -309,6 +407,22 @@ public class VirtualEnvironment {
         }
     }
     
+    /**
+     * هل للحزمة مجلد بيانات لدى أي مستخدم افتراضي
+     */
+    private boolean isInstalledForAnyUser(String packageName) {
+        File[] userDirs = new File(mContext.getFilesDir(), "virtual_data/user").listFiles();
+        if (userDirs == null) {
+            return false;
+        }
+        for (File userDir : userDirs) {
+            if (new File(userDir, packageName).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * إطلاق تطبيق في البيئة الافتراضية
      * هذا هو الجزء الأساسي الذي يحل مشكلة "Launched Failed"
@@ -330,8 +444,23 @@ public class VirtualEnvironment {
             // 2. تحضير بيئة التطبيق
             prepareAppEnvironment(packageName, userId);
             
-            // 3. إطلاق التطبيق
-            boolean success = performAppLaunch(packageName, userId);
+            // 3. ربط التطبيق بعملية بديلة دافئة (إطار الخطافات وCameraHook محملان فيها مسبقاً)
+            StubProcessPool stubPool = StubProcessPool.getInstance(mContext);
+            String process = stubPool.acquire(packageName);
+            if (process != null) {
+                ErrorLogger.log(TAG, "Bound " + packageName + " to stub process " + process);
+            } else {
+                ErrorLogger.log(TAG, "No stub process available for: " + packageName);
+            }
+            
+            // 4. إطلاق التطبيق
+            // performAppLaunch لا يحمّل التطبيق في العملية البديلة بعد، فالربط لا يبقى بعد انتهاء الإطلاق أو فشله
+            boolean success;
+            try {
+                success = performAppLaunch(packageName, userId);
+            } finally {
+                stubPool.release(packageName);
+            }
             
             if (success) {
                 ErrorLogger.log(TAG, "App launched successfully: " + packageName);
@@ -0,0 +1,288 @@
+package com.vcamera.app.virtual;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.util.Log;
+import android.view.Surface;
+
+import com.vcamera.pipeline.FrameBuffer;
+import com.vcamera.pipeline.FrameConsumer;
+import com.vcamera.pipeline.FrameMailbox;
+import com.vcamera.pipeline.FramePipelineMetrics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * مسجل فيديو افتراضي يغذي سطح إدخال المرمز (MediaRecorder بمصدر SURFACE) بإطارات خط المعالجة
+ * يرسم الإطارات عبر EGL على خيط خاص مع الطابع الزمني لكل إطار؛ إذا تأخر المرمز تُسقط الإطارات ولا ينتظر خط المعالجة
+ */
+public class VirtualVideoRecorder implements FrameConsumer {
+    private static final String TAG = "VirtualVideoRecorder";
+
+    // EGL_RECORDABLE_ANDROID: سطح يقبله المرمز
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private static final String VERTEX_SHADER =
+            "attribute vec4 aPosition;\n"
+            + "attribute vec2 aTexCoord;\n"
+            + "varying vec2 vTexCoord;\n"
+            + "void main() {\n"
+            + "    gl_Position = aPosition;\n"
+            + "    vTexCoord = aTexCoord;\n"
+            + "}\n";
+
+    // تحويل NV21 إلى RGB داخل المظلل: Y في قناة الإضاءة، و V/U في الإضاءة/الشفافية
+    private static final String FRAGMENT_SHADER =
+            "precision mediump float;\n"
+            + "varying vec2 vTexCoord;\n"
+            + "uniform sampler2D uLuma;\n"
+            + "uniform sampler2D uChroma;\n"
+            + "void main() {\n"
+            + "    float y = 1.164 * (texture2D(uLuma, vTexCoord).r - 0.0625);\n"
+            + "    vec4 vu = texture2D(uChroma, vTexCoord);\n"
+            + "    float v = vu.r - 0.5;\n"
+            + "    float u = vu.a - 0.5;\n"
+            + "    gl_FragColor = vec4(y + 1.596 * v, y - 0.391 * u - 0.813 * v, y + 2.018 * u, 1.0);\n"
+            + "}\n";
+
+    // مستطيل ملء الشاشة: x, y, s, t (الصف الأول من الصورة في أعلى الإطار)
+    private static final float[] QUAD = {
+        -1f, -1f, 0f, 1f,
+        1f, -1f, 1f, 1f,
+        -1f, 1f, 0f, 0f,
+        1f, 1f, 1f, 0f
+    };
+
+    private final Surface mSurface;
+    private final FramePipelineMetrics mMetrics;
+    private final FrameMailbox mMailbox;
+    private Thread mThread;
+
+    // آخر طابع زمني مُرسل، على خيط خط المعالجة فقط
+    private long mLastTimestampNanos;
+
+    // حالة EGL/GL، على خيط التسجيل فقط
+    private EGLDisplay mEglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext mEglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface mEglSurface = EGL14.EGL_NO_SURFACE;
+    private int mProgram;
+    private final int[] mTextures = new int[2];
+    private ByteBuffer mUploadBuffer;
+
+    /**
+     * @param surface سطح الإدخال من MediaRecorder.getSurface()
+     * @param metrics مقاييس خط المعالجة لاحتساب الإطارات المسقطة
+     */
+    public VirtualVideoRecorder(Surface surface, int width, int height, FramePipelineMetrics metrics) {
+        mSurface = surface;
+        mMetrics = metrics;
+        mMailbox = new FrameMailbox(width, height);
+    }
+
+    /**
+     * بدء خيط التسجيل
+     */
+    public synchronized void start(String threadName) {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new Thread(this::renderLoop, threadName);
+        mThread.start();
+    }
+
+    /**
+     * إيقاف التسجيل وانتظار انتهاء خيطه (قبل إيقاف MediaRecorder)
+     */
+    public synchronized void stop() {
+        mMailbox.close();
+        if (mThread == null) {
+            return;
+        }
+        try {
+            mThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+        Log.i(TAG, "أُسقط " + mMailbox.getDroppedCount() + " إطار أثناء التسجيل بسبب بطء المرمز");
+    }
+
+    @Override
+    public void onFrame(FrameBuffer frame) {
+        // الإطار المكرر يحمل طابع مصدره، فيُعطى وقت تسليمه ليبقى الطابع متزايداً
+        long timestamp = frame.getTimestampNanos();
+        if (timestamp <= mLastTimestampNanos) {
+            timestamp = Math.max(System.nanoTime(), mLastTimestampNanos + 1);
+        }
+        mLastTimestampNanos = timestamp;
+
+        if (!mMailbox.offer(frame, timestamp) && mMetrics != null) {
+            mMetrics.onFramesDropped(1);
+        }
+    }
+
+    /**
+     * دورة الرسم على خيط التسجيل
+     */
+    private void renderLoop() {
+        try {
+            setupEgl();
+            setupGl();
+
+            FrameBuffer frame;
+            while ((frame = mMailbox.take()) != null) {
+                drawFrame(frame);
+                EGLExt.eglPresentationTimeANDROID(mEglDisplay, mEglSurface, frame.getTimestampNanos());
+                // قد ينتظر هنا حتى يحرر المرمز مخزناً؛ خط المعالجة لا يتأثر بفضل صندوق التسليم
+                if (!EGL14.eglSwapBuffers(mEglDisplay, mEglSurface)) {
+                    Log.w(TAG, "فشل eglSwapBuffers: 0x" + Integer.toHexString(EGL14.eglGetError()));
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "خطأ في خيط التسجيل", e);
+        } finally {
+            mMailbox.close();
+            releaseEgl();
+        }
+    }
+
+    private void setupEgl() {
+        mEglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (mEglDisplay == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(mEglDisplay, version, 0, version, 1)) {
+            throw new IllegalStateException("تعذر تهيئة EGL");
+        }
+
+        int[] attributes = {
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL_RECORDABLE_ANDROID, 1,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] count = new int[1];
+        if (!EGL14.eglChooseConfig(mEglDisplay, attributes, 0, configs, 0, 1, count, 0) || count[0] == 0) {
+            throw new IllegalStateException("لا يوجد تكوين EGL قابل للتسجيل");
+        }
+
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        mEglContext = EGL14.eglCreateContext(mEglDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        int[] surfaceAttributes = {EGL14.EGL_NONE};
+        mEglSurface = EGL14.eglCreateWindowSurface(mEglDisplay, configs[0], mSurface, surfaceAttributes, 0);
+        if (mEglContext == EGL14.EGL_NO_CONTEXT || mEglSurface == EGL14.EGL_NO_SURFACE
+                || !EGL14.eglMakeCurrent(mEglDisplay, mEglSurface, mEglSurface, mEglContext)) {
+            throw new IllegalStateException("تعذر إنشاء سطح EGL: 0x" + Integer.toHexString(EGL14.eglGetError()));
+        }
+    }
+
+    private void setupGl() {
+        mProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(mProgram, compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER));
+        GLES20.glAttachShader(mProgram, compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER));
+        GLES20.glLinkProgram(mProgram);
+        GLES20.glUseProgram(mProgram);
+
+        FloatBuffer quad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        quad.put(QUAD);
+        int position = GLES20.glGetAttribLocation(mProgram, "aPosition");
+        int texCoord = GLES20.glGetAttribLocation(mProgram, "aTexCoord");
+        quad.position(0);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(position);
+        quad.position(2);
+        GLES20.glVertexAttribPointer(texCoord, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(texCoord);
+
+        GLES20.glGenTextures(2, mTextures, 0);
+        for (int i = 0; i < 2; i++) {
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + i);
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgram, "uLuma"), 0);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(mProgram, "uChroma"), 1);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+
+        // أبعاد العرض من السطح نفسه (setVideoSize لدى المستدعي)؛ يُحجَّم الإطار ليملأه
+        int[] size = new int[2];
+        EGL14.eglQuerySurface(mEglDisplay, mEglSurface, EGL14.EGL_WIDTH, size, 0);
+        EGL14.eglQuerySurface(mEglDisplay, mEglSurface, EGL14.EGL_HEIGHT, size, 1);
+        GLES20.glViewport(0, 0, size[0], size[1]);
+    }
+
+    /**
+     * رفع مستويي NV21 كنسيجين ورسم الإطار
+     */
+    private void drawFrame(FrameBuffer frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int size = frame.getSize();
+        if (mUploadBuffer == null || mUploadBuffer.capacity() < size) {
+            mUploadBuffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        mUploadBuffer.clear();
+        mUploadBuffer.put(frame.getData(), 0, size);
+
+        mUploadBuffer.position(0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[0]);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, width, height, 0,
+                GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, mUploadBuffer);
+
+        mUploadBuffer.position(width * height);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[1]);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE_ALPHA, (width + 1) / 2, (height + 1) / 2, 0,
+                GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE, mUploadBuffer);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    }
+
+    private static int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("فشل تجميع المظلل: " + log);
+        }
+        return shader;
+    }
+
+    private void releaseEgl() {
+        if (mEglDisplay == EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+        EGL14.eglMakeCurrent(mEglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        if (mEglSurface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(mEglDisplay, mEglSurface);
+        }
+        if (mEglContext != EGL14.EGL_NO_CONTEXT) {
+            EGL14.eglDestroyContext(mEglDisplay, mEglContext);
+        }
+        EGL14.eglReleaseThread();
+        EGL14.eglTerminate(mEglDisplay);
+        mEglDisplay = EGL14.EGL_NO_DISPLAY;
+        mEglContext = EGL14.EGL_NO_CONTEXT;
+        mEglSurface = EGL14.EGL_NO_SURFACE;
+    }
+}
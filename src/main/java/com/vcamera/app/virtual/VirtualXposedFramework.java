@@ -272,9 +272,20 @@ public class VirtualXposedFramework {
             
             // تسجيل الخطافات الخاصة بالكاميرا للحزمة
             registerHookForPackage(packageName, "android.hardware.Camera", "open", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.hardware.Camera", "getNumberOfCameras", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.hardware.Camera", "getCameraInfo", HOOK_CAMERA);
             registerHookForPackage(packageName, "android.hardware.Camera", "setPreviewCallback", HOOK_CAMERA);
             registerHookForPackage(packageName, "android.hardware.camera2.CameraManager", "openCamera", HOOK_CAMERA);
             
+            // تسجيل الخطافات الخاصة بتسجيل الفيديو
+            registerHookForPackage(packageName, "android.hardware.Camera", "unlock", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.media.MediaRecorder", "setCamera", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.media.MediaRecorder", "setVideoSource", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.media.MediaRecorder", "start", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.media.MediaRecorder", "stop", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.media.MediaRecorder", "reset", HOOK_CAMERA);
+            registerHookForPackage(packageName, "android.media.MediaRecorder", "release", HOOK_CAMERA);
+            
             // تسجيل الخطافات الخاصة بعرض الكاميرا
             registerHookForPackage(packageName, "android.view.SurfaceView", "getHolder", HOOK_CAMERA);
             registerHookForPackage(packageName, "android.view.TextureView", "getSurfaceTexture", HOOK_CAMERA);